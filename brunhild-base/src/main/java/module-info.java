@@ -2,6 +2,7 @@ module org.brunhild.base {
   requires static org.jetbrains.annotations;
   requires transitive kala.base;
   requires transitive kala.collection;
+  requires jdk.management;
 
   exports org.brunhild.concrete;
   exports org.brunhild.concrete.problem;
@@ -16,4 +17,8 @@ module org.brunhild.base {
   exports org.brunhild.compiling;
   exports org.brunhild.compiling.optimize;
   exports org.brunhild.compiling.generate;
+  exports org.brunhild.compiling.interpret;
+  exports org.brunhild.compiling.generate.aarch64;
+  exports org.brunhild.compiling.generate.riscv;
+  exports org.brunhild.compiling.ir;
 }
@@ -16,6 +16,11 @@ public interface Pipeline<I, O> {
     return then(pass.pipelining(param));
   }
 
+  /** Like {@link #then(Pass, Object)}, with the pass measured by the profiler under the given name. */
+  default <O2, P> @NotNull Pipeline<I, O2> then(@NotNull String name, @NotNull Pass<O, O2, P> pass, P param, @NotNull Profiler profiler) {
+    return then(profiler.measure(name, pass.pipelining(param)));
+  }
+
   default @NotNull Pipeline<I, O> peek(@NotNull Consumer<O> peek) {
     return then(i -> {
       peek.accept(i);
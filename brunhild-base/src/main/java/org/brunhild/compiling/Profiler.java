@@ -0,0 +1,265 @@
+package org.brunhild.compiling;
+
+import kala.collection.immutable.ImmutableSeq;
+import kala.collection.mutable.MutableLinkedHashMap;
+import kala.collection.mutable.MutableList;
+import kala.collection.mutable.MutableMap;
+import org.brunhild.concrete.Decl;
+import org.brunhild.concrete.Expr;
+import org.brunhild.concrete.Stmt;
+import org.brunhild.core.Def;
+import org.brunhild.core.Proclaim;
+import org.brunhild.core.Term;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Records wall time, CPU time and allocated bytes of the passes of a pipeline, together
+ * with the number of statement and expression nodes going in and out of each of them.
+ * CPU time and allocations are those of the calling thread, work handed to other
+ * threads is only visible in the wall time. Passes may also bump named event
+ * {@linkplain #count counters}, like how often the parser needed its slow path.
+ *
+ * @see Pipeline#then(String, Pass, Object, Profiler)
+ */
+public final class Profiler {
+  /** Measures nothing, {@link #measure} hands the stage back as is. */
+  public static final @NotNull Profiler NONE = new Profiler(false);
+
+  /**
+   * @param in  the size of the input, null when it is not a tree of statements
+   * @param out the size of the output, likewise
+   */
+  public record Entry(
+    @NotNull String pass,
+    long wallNanos,
+    long cpuNanos,
+    long allocatedBytes,
+    @Nullable Nodes in,
+    @Nullable Nodes out
+  ) {}
+
+  /** Statements are {@link Stmt}s or {@link Proclaim}s, expressions {@link Expr}s or {@link Term}s. */
+  public record Nodes(long statements, long expressions) {}
+
+  private static final com.sun.management.ThreadMXBean THREADS =
+    (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+  private final boolean enabled;
+  private final @NotNull MutableList<Entry> entries = MutableList.create();
+  private final @NotNull MutableMap<String, Long> counters = MutableLinkedHashMap.of();
+
+  private Profiler(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  public static @NotNull Profiler create() {
+    return new Profiler(true);
+  }
+
+  public @NotNull ImmutableSeq<Entry> entries() {
+    return entries.toImmutableSeq();
+  }
+
+  public long counter(@NotNull String counter) {
+    return counters.getOrDefault(counter, 0L);
+  }
+
+  public void count(@NotNull String counter) {
+    if (enabled) counters.put(counter, counter(counter) + 1);
+  }
+
+  public <I, O> @NotNull Pipeline<I, O> measure(@NotNull String pass, @NotNull Pipeline<I, O> stage) {
+    if (!enabled) return stage;
+    return input -> {
+      var in = nodes(input);
+      var thread = Thread.currentThread().getId();
+      var allocated = THREADS.getThreadAllocatedBytes(thread);
+      var cpu = THREADS.getCurrentThreadCpuTime();
+      var wall = System.nanoTime();
+      var output = stage.perform(input);
+      wall = System.nanoTime() - wall;
+      cpu = THREADS.getCurrentThreadCpuTime() - cpu;
+      allocated = THREADS.getThreadAllocatedBytes(thread) - allocated;
+      entries.append(new Entry(pass, wall, cpu, allocated, in, nodes(output)));
+      return output;
+    };
+  }
+
+  // region Reports
+
+  /** A table for humans, one line per pass and a total, followed by the counters. */
+  public @NotNull String report() {
+    var builder = new StringBuilder(String.format("%-12s %10s %10s %12s %20s %20s%n",
+      "pass", "wall ms", "cpu ms", "alloc KiB", "nodes in", "nodes out"));
+    long wall = 0, cpu = 0, allocated = 0;
+    for (var entry : entries) {
+      builder.append(String.format("%-12s %10.3f %10.3f %12d %20s %20s%n", entry.pass,
+        entry.wallNanos / 1e6, entry.cpuNanos / 1e6, entry.allocatedBytes >> 10,
+        describe(entry.in), describe(entry.out)));
+      wall += entry.wallNanos;
+      cpu += entry.cpuNanos;
+      allocated += entry.allocatedBytes;
+    }
+    builder.append(String.format("%-12s %10.3f %10.3f %12d%n", "total", wall / 1e6, cpu / 1e6, allocated >> 10));
+    counters.forEach((counter, count) -> builder.append(String.format("%-24s %10d%n", counter, count)));
+    return builder.toString();
+  }
+
+  /**
+   * The same as {@link #report()} as a JSON object, with an array of passes (times in
+   * nanoseconds) under {@code "passes"} and an object of counters under {@code "counters"}.
+   */
+  public @NotNull String toJson() {
+    var builder = new StringBuilder("{\n\"passes\": [");
+    for (int i = 0; i < entries.size(); i++) {
+      var entry = entries.get(i);
+      builder.append(i == 0 ? "\n" : ",\n")
+        .append("  {\"pass\": ").append(string(entry.pass))
+        .append(", \"wallNanos\": ").append(entry.wallNanos)
+        .append(", \"cpuNanos\": ").append(entry.cpuNanos)
+        .append(", \"allocatedBytes\": ").append(entry.allocatedBytes)
+        .append(", \"in\": ").append(json(entry.in))
+        .append(", \"out\": ").append(json(entry.out)).append('}');
+    }
+    builder.append("\n],\n\"counters\": {");
+    var first = true;
+    for (var counter : counters.keysView()) {
+      builder.append(first ? "\n" : ",\n").append("  ").append(string(counter)).append(": ").append(counter(counter));
+      first = false;
+    }
+    return builder.append("\n}\n}\n").toString();
+  }
+
+  private static @NotNull String string(@NotNull String s) {
+    return '"' + s.replace("\\", "\\\\").replace("\"", "\\\"") + '"';
+  }
+
+  private static @NotNull String describe(@Nullable Nodes nodes) {
+    return nodes == null ? "-" : nodes.statements + "/" + nodes.expressions;
+  }
+
+  private static @NotNull String json(@Nullable Nodes nodes) {
+    return nodes == null ? "null" : "{\"statements\": " + nodes.statements + ", \"expressions\": " + nodes.expressions + "}";
+  }
+
+  // endregion
+
+  // region Node counting
+
+  private static @Nullable Nodes nodes(@Nullable Object artifact) {
+    if (!(artifact instanceof ImmutableSeq<?> seq) || seq.isEmpty()) return null;
+    var counter = new long[2];
+    if (seq.first() instanceof Stmt) for (var stmt : seq) count((Stmt) stmt, counter);
+    else if (seq.first() instanceof Proclaim) for (var proclaim : seq) count((Proclaim) proclaim, counter);
+    else return null;
+    return new Nodes(counter[0], counter[1]);
+  }
+
+  private static void count(@NotNull Stmt stmt, long @NotNull [] counter) {
+    counter[0]++;
+    switch (stmt) {
+      case Decl.FnDecl fn -> count(fn.body, counter);
+      case Decl.VarDecl var -> var.body.forEach(e -> count(e, counter));
+      case Stmt.AssignStmt assign -> {
+        count(assign.lvalue(), counter);
+        count(assign.rvalue(), counter);
+      }
+      case Stmt.ExprStmt expr -> count(expr.expr(), counter);
+      case Stmt.BlockStmt block -> block.block().forEach(s -> count(s, counter));
+      case Stmt.IfStmt ifStmt -> {
+        count(ifStmt.cond(), counter);
+        count(ifStmt.thenBranch(), counter);
+        ifStmt.elseBranch().forEach(s -> count(s, counter));
+      }
+      case Stmt.WhileStmt whileStmt -> {
+        count(whileStmt.cond(), counter);
+        count(whileStmt.body(), counter);
+      }
+      case Stmt.ReturnStmt ret -> ret.expr().forEach(e -> count(e, counter));
+      case Stmt.BreakStmt brk -> {}
+      case Stmt.ContinueStmt cont -> {}
+    }
+  }
+
+  /** Chains lean left as deep as they are long, so their left operands are counted in a loop. */
+  private static void count(@NotNull Expr expr, long @NotNull [] counter) {
+    while (true) {
+      counter[1]++;
+      if (expr instanceof Expr.BinaryExpr binary) {
+        count(binary.rhs(), counter);
+        expr = binary.lhs();
+      } else if (expr instanceof Expr.UnaryExpr unary) expr = unary.expr();
+      else break;
+    }
+    switch (expr) {
+      case Expr.IndexExpr index -> {
+        count(index.expr(), counter);
+        count(index.index(), counter);
+      }
+      case Expr.AppExpr app -> {
+        count(app.fn(), counter);
+        app.args().forEach(e -> count(e, counter));
+      }
+      case Expr.LitArrayExpr array -> array.values().forEach(e -> count(e, counter));
+      case Expr.LitPackedArrayExpr array -> counter[1] += array.values().length;
+      default -> {}
+    }
+  }
+
+  private static void count(@NotNull Proclaim proclaim, long @NotNull [] counter) {
+    counter[0]++;
+    switch (proclaim) {
+      case Def.FnDef fn -> count(fn.body, counter);
+      case Def.VarDef var -> count(var.body, counter);
+      case Def.PrimDef prim -> {}
+      case Proclaim.VarAssignProclaim assign -> count(assign.rvalue(), counter);
+      case Proclaim.IndexAssignProclaim assign -> {
+        count(assign.term(), counter);
+        count(assign.index(), counter);
+        count(assign.rvalue(), counter);
+      }
+      case Proclaim.TermProclaim term -> count(term.term(), counter);
+      case Proclaim.BlockProclaim block -> block.block().forEach(p -> count(p, counter));
+      case Proclaim.IfProclaim ifProclaim -> {
+        count(ifProclaim.cond(), counter);
+        count(ifProclaim.thenBranch(), counter);
+        ifProclaim.elseBranch().forEach(p -> count(p, counter));
+      }
+      case Proclaim.WhileProclaim whileProclaim -> {
+        count(whileProclaim.cond(), counter);
+        count(whileProclaim.body(), counter);
+      }
+      case Proclaim.ReturnProclaim ret -> ret.term().forEach(t -> count(t, counter));
+      case Proclaim.BreakProclaim brk -> {}
+      case Proclaim.ContinueProclaim cont -> {}
+    }
+  }
+
+  private static void count(@NotNull Term term, long @NotNull [] counter) {
+    while (true) {
+      counter[1]++;
+      if (term instanceof Term.BinaryTerm binary) {
+        count(binary.rhs(), counter);
+        term = binary.lhs();
+      } else if (term instanceof Term.UnaryTerm unary) term = unary.term();
+      else if (term instanceof Term.CoerceTerm coerce) term = coerce.term();
+      else break;
+    }
+    switch (term) {
+      case Term.IndexTerm index -> {
+        count(index.term(), counter);
+        count(index.index(), counter);
+      }
+      case Term.FnCall call -> call.args().forEach(t -> count(t, counter));
+      case Term.PrimCall call -> call.args().forEach(t -> count(t, counter));
+      case Term.InitializedArray array -> array.values().forEach(t -> count(t, counter));
+      case Term.PackedArray array -> counter[1] += array.values().size();
+      default -> {}
+    }
+  }
+
+  // endregion
+}
@@ -0,0 +1,335 @@
+package org.brunhild.compiling.generate;
+
+import org.brunhild.compiling.ir.Function;
+import org.brunhild.compiling.ir.Module;
+import org.brunhild.compiling.ir.Opcode;
+import org.brunhild.compiling.ir.ValueType;
+import org.brunhild.core.Def;
+import org.brunhild.core.Term;
+import org.brunhild.generic.Type;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.Writer;
+
+/**
+ * Emits textual LLVM IR (opaque pointers, LLVM 15 or later) for a lowered module.
+ * The SSA form maps almost one-to-one, comparisons additionally keep their {@code i1}
+ * result so that branches can use it directly.
+ */
+public final class LlvmGenerator implements Generator<Module, Writer, Writer> {
+  public static final @NotNull LlvmGenerator Pass = new LlvmGenerator();
+
+  private static final @NotNull String MEMSET = "llvm.memset.p0.i64";
+
+  @Override public @NotNull Writer perform(@NotNull Module module, Writer writer) {
+    var sink = new TextSink(writer);
+    sink.append("; ModuleID = '").append(module.name).append('\'').line();
+    sink.append("source_filename = \"").append(module.name).append('"').line().line();
+    for (var global : module.globals) global(sink, global);
+    if (!module.globals.isEmpty()) sink.line();
+    var usesMemset = false;
+    for (var fn : module.functions) usesMemset |= new FnEmitter(module, fn, sink).emit();
+    runtime(sink);
+    if (usesMemset) sink.append("declare void @").append(MEMSET).append("(ptr, i8, i64, i1)").line();
+    sink.flush();
+    return writer;
+  }
+
+  // region Module level
+
+  private static void global(@NotNull TextSink sink, @NotNull Module.Global global) {
+    sink.append('@').append(global.name()).append(" = global ");
+    var init = global.init();
+    if (!global.isArray()) {
+      sink.append(type(global.elementType())).append(' ');
+      scalar(sink, global.elementType(), init == null ? 0 : init[0]);
+    } else {
+      arrayType(sink, global.elementType(), global.dims(), 0);
+      sink.append(' ');
+      if (global.isZero()) sink.append("zeroinitializer");
+      else aggregate(sink, global.elementType(), global.dims(), 0, init, 0);
+    }
+    sink.append(", align 4").line();
+  }
+
+  private static void arrayType(@NotNull TextSink sink, @NotNull ValueType element, int @NotNull [] dims, int depth) {
+    if (depth == dims.length) {
+      sink.append(type(element));
+      return;
+    }
+    sink.append('[').append(dims[depth]).append(" x ");
+    arrayType(sink, element, dims, depth + 1);
+    sink.append(']');
+  }
+
+  /** Nested initializer in which all-zero sub-arrays collapse to {@code zeroinitializer}. */
+  private static void aggregate(
+    @NotNull TextSink sink, @NotNull ValueType element, int @NotNull [] dims,
+    int depth, int @NotNull [] init, int offset
+  ) {
+    var stride = 1;
+    for (int i = depth + 1; i < dims.length; i++) stride *= dims[i];
+    sink.append('[');
+    for (int i = 0; i < dims[depth]; i++) {
+      if (i > 0) sink.append(", ");
+      var at = offset + i * stride;
+      if (depth + 1 == dims.length) {
+        sink.append(type(element)).append(' ');
+        scalar(sink, element, init[at]);
+        // initializers of big arrays are long, give the sink line boundaries to flush at
+        if (i % 16 == 15) sink.line().append("  ");
+        continue;
+      }
+      arrayType(sink, element, dims, depth + 1);
+      sink.append(' ');
+      if (isZero(init, at, stride)) sink.append("zeroinitializer");
+      else aggregate(sink, element, dims, depth + 1, init, at);
+      if (depth == 0) sink.line().append("  ");
+    }
+    sink.append(']');
+  }
+
+  private static boolean isZero(int @NotNull [] init, int from, int length) {
+    for (int i = from; i < from + length; i++) if (init[i] != 0) return false;
+    return true;
+  }
+
+  private static void scalar(@NotNull TextSink sink, @NotNull ValueType type, int bits) {
+    if (type == ValueType.F32) sink.append(floatLiteral(Float.intBitsToFloat(bits)));
+    else sink.append(bits);
+  }
+
+  /** LLVM spells float constants as the hexadecimal bits of the equal double. */
+  static @NotNull String floatLiteral(float f) {
+    return String.format("0x%016X", Double.doubleToRawLongBits(f));
+  }
+
+  static @NotNull String type(@NotNull ValueType type) {
+    return switch (type) {
+      case I32 -> "i32";
+      case F32 -> "float";
+      case Ptr -> "ptr";
+      case Void -> "void";
+    };
+  }
+
+  private static @NotNull String type(@NotNull Type<Term> type) {
+    return type.unconst() instanceof Type.String<Term> ? "ptr" : type(ValueType.of(type));
+  }
+
+  /** Declares every runtime function once under its ABI name, aliases like {@code starttime} are desugared. */
+  private static void runtime(@NotNull TextSink sink) {
+    sink.line();
+    for (var prim : Def.PrimFactory.PRIMITIVES) {
+      var def = prim.prim;
+      if (!def.ref.name().equals(prim.abiName)) continue;
+      sink.append("declare ").append(type(def.result)).append(" @").append(prim.abiName).append('(');
+      def.telescope.forEachIndexed((i, param) -> {
+        if (i > 0) sink.append(", ");
+        sink.append(type(param.type()));
+      });
+      if (prim == Def.PrimFactory.Printf) sink.append(", ...");
+      sink.append(')').line();
+    }
+  }
+
+  // endregion
+
+  private static final class FnEmitter {
+    private final @NotNull Module module;
+    private final @NotNull Function fn;
+    private final @NotNull TextSink sink;
+    private boolean usesMemset = false;
+
+    FnEmitter(@NotNull Module module, @NotNull Function fn, @NotNull TextSink sink) {
+      this.module = module;
+      this.fn = fn;
+      this.sink = sink;
+    }
+
+    /** @return whether the function clears memory with the {@code memset} intrinsic */
+    boolean emit() {
+      var paramValues = new int[fn.params.length];
+      java.util.Arrays.fill(paramValues, -1);
+      var entry = fn.instructions(Function.ENTRY);
+      for (int i = 0; i < entry.size(); i++) {
+        var value = entry.get(i);
+        if (fn.op(value) == Opcode.Param) paramValues[fn.imm(value)] = value;
+      }
+      sink.append("define ").append(type(fn.result)).append(" @").append(fn.name).append('(');
+      for (int i = 0; i < fn.params.length; i++) {
+        if (i > 0) sink.append(", ");
+        sink.append(type(fn.params[i])).append(' ');
+        if (paramValues[i] >= 0) sink.append('%').append('v').append(paramValues[i]);
+        else sink.append("%arg").append(i);
+      }
+      sink.append(") {").line();
+      for (int b = 0; b < fn.blockCount(); b++) {
+        sink.append("bb").append(b).append(':').line();
+        var instructions = fn.instructions(b);
+        for (int i = 0; i < instructions.size(); i++) instruction(instructions.get(i));
+      }
+      sink.append('}').line().line();
+      return usesMemset;
+    }
+
+    private @NotNull TextSink value(int value) {
+      return switch (fn.op(value)) {
+        case IConst -> sink.append(fn.imm(value));
+        case FConst -> sink.append(floatLiteral(fn.floatImm(value)));
+        case Undef -> sink.append("undef");
+        case GlobalAddr -> sink.append('@').append(module.globals.get(fn.imm(value)).name());
+        default -> sink.append("%v").append(value);
+      };
+    }
+
+    private @NotNull TextSink typed(int value) {
+      sink.append(type(fn.type(value))).append(' ');
+      return value(value);
+    }
+
+    private @NotNull TextSink define(int value) {
+      return sink.append("  %v").append(value).append(" = ");
+    }
+
+    private void binary(int value, @NotNull String mnemonic) {
+      define(value).append(mnemonic).append(' ');
+      typed(fn.operand(value, 0)).append(", ");
+      value(fn.operand(value, 1)).line();
+    }
+
+    private void compare(int value, @NotNull String mnemonic) {
+      sink.append("  %v").append(value).append(".b = ").append(mnemonic).append(' ');
+      typed(fn.operand(value, 0)).append(", ");
+      value(fn.operand(value, 1)).line();
+      define(value).append("zext i1 %v").append(value).append(".b to i32").line();
+    }
+
+    private void call(int value, @NotNull String callee) {
+      if (fn.type(value) == ValueType.Void) sink.append("  ");
+      else define(value);
+      sink.append("call ").append(type(fn.type(value))).append(" @").append(callee).append('(');
+      for (int i = 0; i < fn.arity(value); i++) {
+        if (i > 0) sink.append(", ");
+        typed(fn.operand(value, i));
+      }
+      sink.append(')').line();
+    }
+
+    private void instruction(int value) {
+      switch (fn.op(value)) {
+        case Param -> {}
+        case Add -> binary(value, "add");
+        case Sub -> binary(value, "sub");
+        case Mul -> binary(value, "mul");
+        case Div -> binary(value, "sdiv");
+        case Rem -> binary(value, "srem");
+        case MulHi -> {
+          for (int i = 0; i < 2; i++) {
+            sink.append("  %v").append(value).append(".w").append(i).append(" = sext ");
+            typed(fn.operand(value, i)).append(" to i64").line();
+          }
+          sink.append("  %v").append(value).append(".p = mul i64 %v").append(value).append(".w0, %v").append(value).append(".w1").line();
+          sink.append("  %v").append(value).append(".h = ashr i64 %v").append(value).append(".p, 32").line();
+          define(value).append("trunc i64 %v").append(value).append(".h to i32").line();
+        }
+        case Shl -> binary(value, "shl");
+        case Sar -> binary(value, "ashr");
+        case Shr -> binary(value, "lshr");
+        case Neg -> {
+          define(value).append("sub i32 0, ");
+          value(fn.operand(value, 0)).line();
+        }
+        case FAdd -> binary(value, "fadd");
+        case FSub -> binary(value, "fsub");
+        case FMul -> binary(value, "fmul");
+        case FDiv -> binary(value, "fdiv");
+        case FNeg -> {
+          define(value).append("fneg ");
+          typed(fn.operand(value, 0)).line();
+        }
+        case Eq -> compare(value, "icmp eq");
+        case Ne -> compare(value, "icmp ne");
+        case Lt -> compare(value, "icmp slt");
+        case Le -> compare(value, "icmp sle");
+        case Gt -> compare(value, "icmp sgt");
+        case Ge -> compare(value, "icmp sge");
+        case FEq -> compare(value, "fcmp oeq");
+        // C's != holds for NaN
+        case FNe -> compare(value, "fcmp une");
+        case FLt -> compare(value, "fcmp olt");
+        case FLe -> compare(value, "fcmp ole");
+        case FGt -> compare(value, "fcmp ogt");
+        case FGe -> compare(value, "fcmp oge");
+        case IToF -> {
+          define(value).append("sitofp ");
+          typed(fn.operand(value, 0)).append(" to float").line();
+        }
+        case FToI -> {
+          define(value).append("fptosi ");
+          typed(fn.operand(value, 0)).append(" to i32").line();
+        }
+        case Alloca -> {
+          define(value).append("alloca ");
+          if (fn.imm(value) == 1) sink.append("i32");
+          else sink.append('[').append(fn.imm(value)).append(" x i32]");
+          sink.append(", align 4").line();
+        }
+        case Load -> {
+          define(value).append("load ").append(type(fn.type(value))).append(", ");
+          typed(fn.operand(value, 0)).append(", align 4").line();
+        }
+        case Store -> {
+          sink.append("  store ");
+          typed(fn.operand(value, 1)).append(", ");
+          typed(fn.operand(value, 0)).append(", align 4").line();
+        }
+        case Gep -> {
+          define(value).append("getelementptr inbounds ");
+          if (fn.imm(value) == 1) sink.append("i32");
+          else sink.append('[').append(fn.imm(value)).append(" x i32]");
+          sink.append(", ");
+          typed(fn.operand(value, 0)).append(", ");
+          typed(fn.operand(value, 1)).line();
+        }
+        case MemZero -> {
+          usesMemset = true;
+          sink.append("  call void @").append(MEMSET).append('(');
+          typed(fn.operand(value, 0)).append(", i8 0, i64 ").append(4L * fn.imm(value)).append(", i1 false)").line();
+        }
+        case Call -> call(value, module.functions.get(fn.imm(value)).name);
+        case CallPrim -> call(value, Def.PrimFactory.values()[fn.imm(value)].abiName);
+        case Phi -> {
+          define(value).append("phi ").append(type(fn.type(value))).append(' ');
+          for (int i = 0; i < fn.phiIncomingCount(value); i++) {
+            sink.append(i == 0 ? "[ " : ", [ ");
+            value(fn.phiValue(value, i)).append(", %bb").append(fn.phiBlock(value, i)).append(" ]");
+          }
+          sink.line();
+        }
+        case Jump -> sink.append("  br label %bb").append(fn.operand(value, 0)).line();
+        case Branch -> {
+          var cond = fn.operand(value, 0);
+          var flag = "%v" + cond + ".b";
+          if (!fn.op(cond).isComparison()) {
+            // materialize the truth value in front of the branch
+            flag = "%c" + fn.block(value);
+            sink.append("  ").append(flag).append(" = icmp ne ");
+            typed(cond).append(", 0").line();
+          }
+          sink.append("  br i1 ").append(flag)
+            .append(", label %bb").append(fn.operand(value, 1))
+            .append(", label %bb").append(fn.operand(value, 2)).line();
+        }
+        case Return -> {
+          if (fn.arity(value) == 0) sink.append("  ret void").line();
+          else {
+            sink.append("  ret ");
+            typed(fn.operand(value, 0)).line();
+          }
+        }
+        case IConst, FConst, GlobalAddr, Undef -> throw new IllegalStateException("constants are not placed in blocks");
+      }
+    }
+  }
+}
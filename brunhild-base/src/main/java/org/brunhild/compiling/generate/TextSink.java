@@ -0,0 +1,90 @@
+package org.brunhild.compiling.generate;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+
+/**
+ * Streams generated text into a {@link Writer} through one buffer that is flushed
+ * in chunks, so huge outputs never exist as a single string. Text that has to be
+ * produced out of order (e.g. a function body before its prologue) is built in
+ * scratch builders borrowed from a pool and returned after being written.
+ */
+public final class TextSink {
+  private static final int FLUSH_THRESHOLD = 1 << 14;
+
+  private final @NotNull Writer writer;
+  private final @NotNull StringBuilder buffer = new StringBuilder(FLUSH_THRESHOLD * 2);
+  private final @NotNull ArrayDeque<StringBuilder> pool = new ArrayDeque<>();
+
+  public TextSink(@NotNull Writer writer) {
+    this.writer = writer;
+  }
+
+  public @NotNull TextSink append(@NotNull CharSequence text) {
+    buffer.append(text);
+    return this;
+  }
+
+  public @NotNull TextSink append(char c) {
+    buffer.append(c);
+    return this;
+  }
+
+  public @NotNull TextSink append(int i) {
+    buffer.append(i);
+    return this;
+  }
+
+  public @NotNull TextSink append(long l) {
+    buffer.append(l);
+    return this;
+  }
+
+  /** Ends the current line, the buffer is only flushed at line boundaries. */
+  public @NotNull TextSink line() {
+    buffer.append('\n');
+    if (buffer.length() >= FLUSH_THRESHOLD) drain();
+    return this;
+  }
+
+  public @NotNull StringBuilder acquire() {
+    var builder = pool.poll();
+    return builder == null ? new StringBuilder(256) : builder;
+  }
+
+  /** Writes the scratch builder and returns it to the pool. */
+  public void release(@NotNull StringBuilder builder) {
+    if (buffer.length() + builder.length() >= FLUSH_THRESHOLD) {
+      drain();
+      write(builder);
+    } else buffer.append(builder);
+    builder.setLength(0);
+    pool.push(builder);
+  }
+
+  public void flush() {
+    drain();
+    try {
+      writer.flush();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private void drain() {
+    write(buffer);
+    buffer.setLength(0);
+  }
+
+  private void write(@NotNull StringBuilder builder) {
+    try {
+      writer.append(builder);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
@@ -0,0 +1,73 @@
+package org.brunhild.compiling.generate.aarch64;
+
+import org.brunhild.compiling.generate.machine.MFunction;
+import org.brunhild.compiling.generate.machine.RegisterFile;
+import org.brunhild.compiling.ir.IntList;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Registers of AArch64 under AAPCS64. Number 31 stands for the zero register, the
+ * stack pointer only appears literally in instruction templates. {@code x16},
+ * {@code x17}, {@code s30} and {@code s31} are kept out of allocation as scratch
+ * registers, {@code x18} (platform), {@code x29} (frame) and {@code x30} (link) are
+ * never allocated.
+ */
+public final class AArch64Registers implements RegisterFile {
+  public static final @NotNull AArch64Registers INSTANCE = new AArch64Registers();
+
+  public static final int X0 = 0, X16 = 16, X17 = 17, LR = 30, ZR = 31;
+  public static final int S0 = MFunction.FIRST_FLOAT;
+  public static final int S30 = MFunction.FIRST_FLOAT + 30, S31 = MFunction.FIRST_FLOAT + 31;
+  public static final int ARGUMENT_REGISTERS = 8;
+
+  private static final int @NotNull [] INT_ALLOCATABLE = {
+    9, 10, 11, 12, 13, 14, 15, 8, 7, 6, 5, 4, 3, 2, 1, 0,
+    19, 20, 21, 22, 23, 24, 25, 26, 27, 28,
+  };
+  private static final int @NotNull [] FLOAT_ALLOCATABLE;
+  /** Everything a call may clobber, scratch registers included. */
+  static final int @NotNull [] CALLER_SAVED;
+
+  static {
+    var floats = new IntList(30);
+    for (int v = 16; v < 30; v++) floats.add(MFunction.FIRST_FLOAT + v);
+    for (int v = 7; v >= 0; v--) floats.add(MFunction.FIRST_FLOAT + v);
+    for (int v = 8; v < 16; v++) floats.add(MFunction.FIRST_FLOAT + v);
+    FLOAT_ALLOCATABLE = floats.toArray();
+    var clobbered = new IntList(64);
+    for (int r = 0; r <= 18; r++) clobbered.add(r);
+    clobbered.add(LR);
+    for (int v = 0; v < 32; v++) if (v < 8 || v >= 16) clobbered.add(MFunction.FIRST_FLOAT + v);
+    CALLER_SAVED = clobbered.toArray();
+  }
+
+  private AArch64Registers() {
+  }
+
+  @Override public int @NotNull [] allocatable(boolean isFloat) {
+    return isFloat ? FLOAT_ALLOCATABLE : INT_ALLOCATABLE;
+  }
+
+  @Override public boolean isCalleeSaved(int reg) {
+    return reg < MFunction.FIRST_FLOAT
+      ? reg >= 19 && reg <= 28
+      : reg >= MFunction.FIRST_FLOAT + 8 && reg < MFunction.FIRST_FLOAT + 16;
+  }
+
+  /** @return the 64-bit name of general purpose registers, the single precision name of the others */
+  @Override public @NotNull String name(int reg) {
+    if (reg >= MFunction.FIRST_FLOAT) return "s" + (reg - MFunction.FIRST_FLOAT);
+    return reg == ZR ? "xzr" : "x" + reg;
+  }
+
+  /** @return the 32-bit view of general purpose registers, the single precision name of the others */
+  public @NotNull String word(int reg) {
+    if (reg >= MFunction.FIRST_FLOAT) return name(reg);
+    return reg == ZR ? "wzr" : "w" + reg;
+  }
+
+  /** @return the 64-bit view of any register, used to save and restore them */
+  public @NotNull String doubleword(int reg) {
+    return reg >= MFunction.FIRST_FLOAT ? "d" + (reg - MFunction.FIRST_FLOAT) : name(reg);
+  }
+}
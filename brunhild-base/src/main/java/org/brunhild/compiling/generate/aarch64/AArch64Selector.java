@@ -0,0 +1,543 @@
+package org.brunhild.compiling.generate.aarch64;
+
+import org.brunhild.compiling.generate.machine.MFunction;
+import org.brunhild.compiling.generate.machine.MInstr;
+import org.brunhild.compiling.ir.DominatorTree;
+import org.brunhild.compiling.ir.Function;
+import org.brunhild.compiling.ir.IntList;
+import org.brunhild.compiling.ir.Module;
+import org.brunhild.compiling.ir.Opcode;
+import org.brunhild.compiling.ir.ValueType;
+import org.brunhild.core.Def;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+import static org.brunhild.compiling.generate.aarch64.AArch64Registers.*;
+import static org.brunhild.compiling.generate.machine.MInstr.NONE;
+
+/**
+ * Instruction selection from the SSA IR to AArch64 over virtual registers, in the
+ * same shape as the RISC-V selector: reverse postorder layout, rematerialized
+ * constants and addresses, folded constant offsets and one temporary per phi.
+ * In templates {@code $d0}/{@code $u0} name the 64-bit (or single precision)
+ * register and {@code $D0}/{@code $U0} the 32-bit view of integer registers.
+ * Comparisons set the flags right before their {@code cset} or conditional branch,
+ * nothing the allocator inserts in between touches the flags.
+ */
+final class AArch64Selector {
+  /** Where an argument lives, {@code register} is {@code -1} for stack arguments. */
+  record Location(int register, int stackOffset) {}
+
+  private record Address(int base, boolean isFrame, int offset) {}
+
+  private final @NotNull Module module;
+  private final @NotNull Function fn;
+  private final @NotNull MFunction mf;
+  private final int @NotNull [] layout;
+  private final int @NotNull [] vreg;
+  private final int @NotNull [] phiTemp;
+  private final int @NotNull [] useCount;
+  private final int @NotNull [] localOffset;
+  private final boolean @NotNull [] fused;
+  private final boolean @NotNull [] folded;
+  private MFunction.MBlock current;
+  private int currentBlock;
+  private int next;
+
+  private AArch64Selector(@NotNull Module module, @NotNull Function fn) {
+    this.module = module;
+    this.fn = fn;
+    this.mf = new MFunction(fn.name);
+    this.layout = new int[fn.blockCount()];
+    this.vreg = new int[fn.valueCount()];
+    this.phiTemp = new int[fn.valueCount()];
+    this.useCount = new int[fn.valueCount()];
+    this.localOffset = new int[fn.valueCount()];
+    this.fused = new boolean[fn.valueCount()];
+    this.folded = new boolean[fn.valueCount()];
+    Arrays.fill(vreg, -1);
+    Arrays.fill(phiTemp, -1);
+  }
+
+  static @NotNull MFunction select(@NotNull Module module, @NotNull Function fn) {
+    return new AArch64Selector(module, fn).select();
+  }
+
+  /** Immediates of {@code add}, {@code sub} and {@code cmp}: 12 bits, optionally shifted by 12. */
+  static boolean fitsArithmetic(long value) {
+    return value >= 0 && (value < 4096 || (value & 0xfff) == 0 && value < (1 << 24));
+  }
+
+  /** Offsets of word loads and stores: scaled unsigned 12 bits, or unscaled signed 9 bits. */
+  static boolean fitsOffset(long offset) {
+    return offset >= -256 && offset < 256 || offset >= 0 && offset < 16384 && offset % 4 == 0;
+  }
+
+  /** Assigns AAPCS64 locations: eight registers of each class, then 8-byte stack slots. */
+  static @NotNull Location @NotNull [] classify(@NotNull ValueType @NotNull [] types) {
+    var locations = new Location[types.length];
+    int ints = 0, floats = 0, stack = 0;
+    for (int i = 0; i < types.length; i++) {
+      var isFloat = types[i] == ValueType.F32;
+      if (isFloat && floats < ARGUMENT_REGISTERS) locations[i] = new Location(S0 + floats++, 0);
+      else if (!isFloat && ints < ARGUMENT_REGISTERS) locations[i] = new Location(X0 + ints++, 0);
+      else {
+        locations[i] = new Location(-1, stack);
+        stack += 8;
+      }
+    }
+    return locations;
+  }
+
+  private @NotNull MFunction select() {
+    var order = DominatorTree.of(fn).reversePostorder();
+    for (int i = 0; i < order.length; i++) {
+      layout[order[i]] = i;
+      mf.blocks.add(new MFunction.MBlock(".L" + fn.name + "_" + i));
+    }
+    analyze();
+    for (int i = 0; i < order.length; i++) {
+      current = mf.blocks.get(i);
+      currentBlock = order[i];
+      next = i + 1;
+      for (var succ : fn.successors(order[i])) current.succs.add(layout[succ]);
+      if (order[i] == Function.ENTRY) parameters();
+      var instructions = fn.instructions(order[i]);
+      for (int j = 0; j < instructions.size(); j++) instruction(instructions.get(j));
+    }
+    mf.localSize = (mf.localSize + 7) & ~7;
+    mf.outgoingSize = (mf.outgoingSize + 15) & ~15;
+    return mf;
+  }
+
+  /** Counts uses, lays out local arrays and decides which instructions fold into their user. */
+  private void analyze() {
+    for (int b = 0; b < fn.blockCount(); b++) {
+      var instructions = fn.instructions(b);
+      for (int i = 0; i < instructions.size(); i++) {
+        var value = instructions.get(i);
+        for (int k = 0; k < fn.arity(value); k++)
+          if (!fn.isBlockOperand(value, k)) useCount[fn.operand(value, k)]++;
+        if (fn.op(value) == Opcode.Alloca) {
+          localOffset[value] = mf.localSize;
+          mf.localSize += 4 * fn.imm(value);
+        }
+      }
+    }
+    for (int b = 0; b < fn.blockCount(); b++) {
+      var instructions = fn.instructions(b);
+      for (int i = 0; i < instructions.size(); i++) {
+        var value = instructions.get(i);
+        var op = fn.op(value);
+        if (op == Opcode.Gep && fn.op(fn.operand(value, 1)) == Opcode.IConst) {
+          var offset = 4L * fn.imm(value) * fn.imm(fn.operand(value, 1));
+          folded[value] = fn.op(fn.operand(value, 0)) == Opcode.Alloca || fitsOffset(offset);
+        }
+        if (op == Opcode.Branch) {
+          var cond = fn.operand(value, 0);
+          fused[cond] = fn.op(cond).isComparison() && fn.block(cond) == b && useCount[cond] == 1;
+        }
+      }
+    }
+    // a folded gep must only be used as the address of loads and stores
+    for (int b = 0; b < fn.blockCount(); b++) {
+      var instructions = fn.instructions(b);
+      for (int i = 0; i < instructions.size(); i++) {
+        var value = instructions.get(i);
+        var op = fn.op(value);
+        for (int k = 0; k < fn.arity(value); k++) {
+          if (fn.isBlockOperand(value, k)) continue;
+          var isAddress = k == 0 && (op == Opcode.Load || op == Opcode.Store);
+          if (!isAddress) folded[fn.operand(value, k)] = false;
+        }
+      }
+    }
+  }
+
+  // region Emitting
+
+  private void emit(@NotNull MInstr instr) {
+    current.instrs.add(instr);
+  }
+
+  private int def(int value) {
+    if (vreg[value] < 0) vreg[value] = mf.newVirtual(fn.type(value) == ValueType.F32);
+    return vreg[value];
+  }
+
+  private int temp(boolean isFloat) {
+    return mf.newVirtual(isFloat);
+  }
+
+  /** Materializes a 32-bit constant with {@code movz}/{@code movn} and at most one {@code movk}. */
+  private int li(int constant) {
+    var reg = temp(false);
+    if (constant >= -65536 && constant < 65536) plain("mov $D0, #" + constant, reg);
+    else {
+      plain("mov $D0, #" + (constant & 0xffff), reg);
+      plain("movk $D0, #" + (constant >>> 16) + ", lsl #16", reg, reg);
+    }
+    return reg;
+  }
+
+  /** Materializes a sign-extended 64-bit offset. */
+  private int li(long constant) {
+    var reg = li((int) constant);
+    if (constant < 0) plain("sxtw $d0, $U0", reg, reg);
+    return reg;
+  }
+
+  private void move(int def, int use, boolean isFloat) {
+    emit(MInstr.move(isFloat ? "fmov $d0, $u0" : "mov $d0, $u0", def, use));
+  }
+
+  private void plain(@NotNull String format, int def, int @NotNull ... uses) {
+    emit(MInstr.plain(format, new int[]{def}, uses));
+  }
+
+  /** @return a register holding the value, materializing constants and addresses in place */
+  private int use(int value) {
+    return switch (fn.op(value)) {
+      case IConst -> fn.imm(value) == 0 ? ZR : li(fn.imm(value));
+      case FConst -> {
+        var bits = fn.imm(value);
+        var reg = temp(true);
+        plain("fmov $d0, $U0", reg, bits == 0 ? ZR : li(bits));
+        yield reg;
+      }
+      case Undef -> {
+        if (fn.type(value) != ValueType.F32) yield ZR;
+        var reg = temp(true);
+        plain("fmov $d0, $U0", reg, ZR);
+        yield reg;
+      }
+      case GlobalAddr -> {
+        var reg = temp(false);
+        var name = module.globals.get(fn.imm(value)).name();
+        plain("adrp $d0, " + name, reg);
+        plain("add $d0, $u0, :lo12:" + name, reg, reg);
+        yield reg;
+      }
+      case Alloca -> {
+        var reg = temp(false);
+        emit(MInstr.frame("add $d0, sp, #$o", new MInstr.FrameRef(MInstr.Area.Local, localOffset[value]), new int[]{reg}));
+        yield reg;
+      }
+      default -> def(value);
+    };
+  }
+
+  private @NotNull Address address(int pointer) {
+    var offset = 0;
+    if (folded[pointer]) {
+      offset = 4 * fn.imm(pointer) * fn.imm(fn.operand(pointer, 1));
+      pointer = fn.operand(pointer, 0);
+    }
+    if (fn.op(pointer) == Opcode.Alloca) return new Address(-1, true, localOffset[pointer] + offset);
+    return new Address(use(pointer), false, offset);
+  }
+
+  // endregion
+
+  private void parameters() {
+    var locations = classify(fn.params);
+    var entry = fn.instructions(Function.ENTRY);
+    for (int i = 0; i < entry.size(); i++) {
+      var value = entry.get(i);
+      if (fn.op(value) != Opcode.Param) continue;
+      var isFloat = fn.type(value) == ValueType.F32;
+      var location = locations[fn.imm(value)];
+      var reg = def(value);
+      if (location.register() >= 0) move(reg, location.register(), isFloat);
+      else {
+        var ref = new MInstr.FrameRef(MInstr.Area.Incoming, location.stackOffset());
+        emit(MInstr.frame("ldr $d0, [sp, #$o]", ref, new int[]{reg}));
+      }
+    }
+  }
+
+  private int call(@NotNull String callee, @NotNull ValueType result, int @NotNull [] args, @NotNull ValueType @NotNull [] types) {
+    var locations = classify(types);
+    var argRegs = new IntList(args.length);
+    for (int i = 0; i < args.length; i++) {
+      var isFloat = types[i] == ValueType.F32;
+      var location = locations[i];
+      if (location.register() >= 0) {
+        move(location.register(), args[i], isFloat);
+        argRegs.add(location.register());
+        continue;
+      }
+      var ref = new MInstr.FrameRef(MInstr.Area.Outgoing, location.stackOffset());
+      emit(MInstr.frame("str $u0, [sp, #$o]", ref, NONE, args[i]));
+      mf.outgoingSize = Math.max(mf.outgoingSize, location.stackOffset() + 8);
+    }
+    mf.hasCalls = true;
+    emit(new MInstr(MInstr.Kind.Call, "bl " + callee, CALLER_SAVED, argRegs.toArray(), NONE, null));
+    if (result == ValueType.Void) return -1;
+    var isFloat = result == ValueType.F32;
+    var reg = temp(isFloat);
+    move(reg, isFloat ? S0 : X0, isFloat);
+    return reg;
+  }
+
+  private void instruction(int value) {
+    var op = fn.op(value);
+    switch (op) {
+      case Param, Alloca -> {}
+      case Phi -> move(def(value), phiTemp(value), fn.type(value) == ValueType.F32);
+      case Add, Sub -> {
+        var lhs = fn.operand(value, 0);
+        var rhs = fn.operand(value, 1);
+        if (op == Opcode.Add && fn.op(lhs) == Opcode.IConst) {
+          var swap = lhs;
+          lhs = rhs;
+          rhs = swap;
+        }
+        if (fn.op(rhs) == Opcode.IConst) {
+          long constant = op == Opcode.Add ? fn.imm(rhs) : -(long) fn.imm(rhs);
+          if (fitsArithmetic(constant)) {
+            plain("add $D0, $U0, #" + constant, def(value), use(lhs));
+            return;
+          }
+          if (fitsArithmetic(-constant)) {
+            plain("sub $D0, $U0, #" + -constant, def(value), use(lhs));
+            return;
+          }
+        }
+        plain(op == Opcode.Add ? "add $D0, $U0, $U1" : "sub $D0, $U0, $U1", def(value), use(lhs), use(rhs));
+      }
+      case Mul -> {
+        var lhs = fn.operand(value, 0);
+        var rhs = fn.operand(value, 1);
+        if (fn.op(lhs) == Opcode.IConst) {
+          var swap = lhs;
+          lhs = rhs;
+          rhs = swap;
+        }
+        if (fn.op(rhs) == Opcode.IConst && fn.imm(rhs) > 0 && Integer.bitCount(fn.imm(rhs)) == 1)
+          plain("lsl $D0, $U0, #" + Integer.numberOfTrailingZeros(fn.imm(rhs)), def(value), use(lhs));
+        else plain("mul $D0, $U0, $U1", def(value), use(lhs), use(rhs));
+      }
+      case Div -> binary(value, "sdiv $D0, $U0, $U1");
+      case Rem -> {
+        var lhs = use(fn.operand(value, 0));
+        var rhs = use(fn.operand(value, 1));
+        var quotient = temp(false);
+        plain("sdiv $D0, $U0, $U1", quotient, lhs, rhs);
+        plain("msub $D0, $U0, $U1, $U2", def(value), quotient, rhs, lhs);
+      }
+      case Neg -> plain("neg $D0, $U0", def(value), use(fn.operand(value, 0)));
+      case MulHi -> {
+        var product = temp(false);
+        plain("smull $d0, $U0, $U1", product, use(fn.operand(value, 0)), use(fn.operand(value, 1)));
+        plain("asr $d0, $u0, #32", def(value), product);
+      }
+      case Shl, Sar, Shr -> {
+        var mnemonic = op == Opcode.Shl ? "lsl" : op == Opcode.Sar ? "asr" : "lsr";
+        var rhs = fn.operand(value, 1);
+        if (fn.op(rhs) == Opcode.IConst)
+          plain(mnemonic + " $D0, $U0, #" + (fn.imm(rhs) & 31), def(value), use(fn.operand(value, 0)));
+        else binary(value, mnemonic + " $D0, $U0, $U1");
+      }
+      case FAdd -> binary(value, "fadd $d0, $u0, $u1");
+      case FSub -> binary(value, "fsub $d0, $u0, $u1");
+      case FMul -> binary(value, "fmul $d0, $u0, $u1");
+      case FDiv -> binary(value, "fdiv $d0, $u0, $u1");
+      case FNeg -> plain("fneg $d0, $u0", def(value), use(fn.operand(value, 0)));
+      case Eq, Ne, Lt, Le, Gt, Ge, FEq, FNe, FLt, FLe, FGt, FGe -> {
+        if (fused[value]) return;
+        plain("cset $D0, " + compare(value), def(value));
+      }
+      case IToF -> plain("scvtf $d0, $U0", def(value), use(fn.operand(value, 0)));
+      case FToI -> plain("fcvtzs $D0, $u0", def(value), use(fn.operand(value, 0)));
+      case Load -> {
+        var target = fn.type(value) == ValueType.F32 ? "$d0" : "$D0";
+        var address = address(fn.operand(value, 0));
+        if (address.isFrame()) {
+          var ref = new MInstr.FrameRef(MInstr.Area.Local, address.offset());
+          emit(MInstr.frame("ldr " + target + ", [sp, #$o]", ref, new int[]{def(value)}));
+        } else plain("ldr " + target + ", [$u0, #" + address.offset() + "]", def(value), address.base());
+      }
+      case Store -> {
+        var stored = fn.operand(value, 1);
+        var source = fn.type(stored) == ValueType.F32 ? "$u0" : "$U0";
+        var address = address(fn.operand(value, 0));
+        var reg = use(stored);
+        if (address.isFrame()) {
+          var ref = new MInstr.FrameRef(MInstr.Area.Local, address.offset());
+          emit(MInstr.frame("str " + source + ", [sp, #$o]", ref, NONE, reg));
+        } else emit(MInstr.plain("str " + source + ", [$u1, #" + address.offset() + "]", NONE, reg, address.base()));
+      }
+      case Gep -> {
+        if (folded[value]) return;
+        gep(value);
+      }
+      case MemZero -> call("memset", ValueType.Void,
+        new int[]{use(fn.operand(value, 0)), ZR, li(4 * fn.imm(value))},
+        new ValueType[]{ValueType.Ptr, ValueType.I32, ValueType.I32});
+      case Call, CallPrim -> {
+        var callee = op == Opcode.Call
+          ? module.functions.get(fn.imm(value)).name
+          : Def.PrimFactory.values()[fn.imm(value)].abiName;
+        var args = new int[fn.arity(value)];
+        var types = new ValueType[args.length];
+        for (int i = 0; i < args.length; i++) {
+          args[i] = use(fn.operand(value, i));
+          types[i] = fn.type(fn.operand(value, i));
+        }
+        var result = call(callee, fn.type(value), args, types);
+        if (result >= 0) move(def(value), result, fn.type(value) == ValueType.F32);
+      }
+      case Jump -> {
+        phiCopies();
+        jump(fn.operand(value, 0));
+      }
+      case Branch -> {
+        phiCopies();
+        branch(value);
+      }
+      case Return -> {
+        phiCopies();
+        if (fn.arity(value) == 0) {
+          emit(new MInstr(MInstr.Kind.Return, "ret", NONE, NONE, NONE, null));
+          return;
+        }
+        var isFloat = fn.type(fn.operand(value, 0)) == ValueType.F32;
+        var result = isFloat ? S0 : X0;
+        move(result, use(fn.operand(value, 0)), isFloat);
+        emit(new MInstr(MInstr.Kind.Return, "ret", NONE, new int[]{result}, NONE, null));
+      }
+      case IConst, FConst, GlobalAddr, Undef -> throw new IllegalStateException("constants are not placed in blocks");
+    }
+  }
+
+  private void binary(int value, @NotNull String format) {
+    plain(format, def(value), use(fn.operand(value, 0)), use(fn.operand(value, 1)));
+  }
+
+  private void gep(int value) {
+    var base = use(fn.operand(value, 0));
+    var index = fn.operand(value, 1);
+    long scale = 4L * fn.imm(value);
+    if (fn.op(index) == Opcode.IConst) {
+      var offset = scale * fn.imm(index);
+      if (offset == 0) move(def(value), base, false);
+      else if (fitsArithmetic(offset)) plain("add $d0, $u0, #" + offset, def(value), base);
+      else if (fitsArithmetic(-offset)) plain("sub $d0, $u0, #" + -offset, def(value), base);
+      else plain("add $d0, $u0, $u1", def(value), base, li(offset));
+      return;
+    }
+    var shift = Long.numberOfTrailingZeros(scale);
+    if (Long.bitCount(scale) == 1 && shift <= 4)
+      plain("add $d0, $u0, $U1, sxtw #" + shift, def(value), base, use(index));
+    else plain("smaddl $d0, $U0, $U1, $u2", def(value), use(index), li((int) scale), base);
+  }
+
+  // region Control flow
+
+  /** Sets the flags for a comparison. @return the condition code that holds when it is true */
+  private @NotNull String compare(int value) {
+    var op = fn.op(value);
+    var lhs = fn.operand(value, 0);
+    var rhs = fn.operand(value, 1);
+    if (op.compareTo(Opcode.FEq) >= 0) {
+      if (fn.op(rhs) == Opcode.FConst && fn.imm(rhs) == 0)
+        emit(MInstr.plain("fcmp $u0, #0.0", NONE, use(lhs)));
+      else emit(MInstr.plain("fcmp $u0, $u1", NONE, use(lhs), use(rhs)));
+      return switch (op) {
+        case FEq -> "eq";
+        // unordered operands compare not equal
+        case FNe -> "ne";
+        case FLt -> "mi";
+        case FLe -> "ls";
+        case FGt -> "gt";
+        case FGe -> "ge";
+        default -> throw new IllegalStateException("unreachable");
+      };
+    }
+    var swapped = false;
+    if (fn.op(lhs) == Opcode.IConst && fn.op(rhs) != Opcode.IConst) {
+      var swap = lhs;
+      lhs = rhs;
+      rhs = swap;
+      swapped = true;
+    }
+    if (fn.op(rhs) == Opcode.IConst && fitsArithmetic(fn.imm(rhs)))
+      emit(MInstr.plain("cmp $U0, #" + fn.imm(rhs), NONE, use(lhs)));
+    else if (fn.op(rhs) == Opcode.IConst && fitsArithmetic(-(long) fn.imm(rhs)))
+      emit(MInstr.plain("cmn $U0, #" + -fn.imm(rhs), NONE, use(lhs)));
+    else emit(MInstr.plain("cmp $U0, $U1", NONE, use(lhs), use(rhs)));
+    return switch (op) {
+      case Eq -> "eq";
+      case Ne -> "ne";
+      case Lt -> swapped ? "gt" : "lt";
+      case Le -> swapped ? "ge" : "le";
+      case Gt -> swapped ? "lt" : "gt";
+      case Ge -> swapped ? "le" : "ge";
+      default -> throw new IllegalStateException("unreachable");
+    };
+  }
+
+  private static @NotNull String invert(@NotNull String condition) {
+    return switch (condition) {
+      case "eq" -> "ne";
+      case "ne" -> "eq";
+      case "lt" -> "ge";
+      case "ge" -> "lt";
+      case "gt" -> "le";
+      case "le" -> "gt";
+      case "mi" -> "pl";
+      case "ls" -> "hi";
+      default -> throw new IllegalStateException("unreachable");
+    };
+  }
+
+  private int phiTemp(int phi) {
+    if (phiTemp[phi] < 0) phiTemp[phi] = temp(fn.type(phi) == ValueType.F32);
+    return phiTemp[phi];
+  }
+
+  /** Copies the incoming values of every successor's phis into their temporaries. */
+  private void phiCopies() {
+    for (var succ : fn.successors(currentBlock)) {
+      var instructions = fn.instructions(succ);
+      for (int i = 0; i < instructions.size(); i++) {
+        var phi = instructions.get(i);
+        if (fn.op(phi) != Opcode.Phi) break;
+        var incoming = fn.phiValueFrom(phi, currentBlock);
+        move(phiTemp(phi), use(incoming), fn.type(phi) == ValueType.F32);
+      }
+    }
+  }
+
+  private @NotNull MInstr branchTo(@NotNull String format, int target, int @NotNull ... uses) {
+    return new MInstr(MInstr.Kind.Branch, format, NONE, uses, new int[]{layout[target]}, null);
+  }
+
+  private void jump(int target) {
+    if (layout[target] == next) return;
+    emit(new MInstr(MInstr.Kind.Jump, "b $l0", NONE, NONE, new int[]{layout[target]}, null));
+  }
+
+  private void branch(int value) {
+    var cond = fn.operand(value, 0);
+    var then = fn.operand(value, 1);
+    var otherwise = fn.operand(value, 2);
+    if (then == otherwise) {
+      jump(then);
+      return;
+    }
+    // branch to whichever target does not follow
+    var invert = layout[then] == next;
+    var target = invert ? otherwise : then;
+    var fallthrough = invert ? then : otherwise;
+    if (fused[cond]) {
+      var condition = compare(cond);
+      emit(branchTo("b." + (invert ? invert(condition) : condition) + " $l0", target));
+    } else emit(branchTo(invert ? "cbz $U0, $l0" : "cbnz $U0, $l0", target, use(cond)));
+    jump(fallthrough);
+  }
+
+  // endregion
+}
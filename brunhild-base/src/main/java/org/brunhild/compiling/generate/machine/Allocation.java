@@ -0,0 +1,49 @@
+package org.brunhild.compiling.generate.machine;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/** The result of register allocation: a physical register or a stack slot for every virtual register. */
+public final class Allocation {
+  private final int @NotNull [] assignment;
+  private final int @NotNull [] spillSlot;
+  private int spillSlots = 0;
+  public final @NotNull BitSet usedCalleeSaved = new BitSet();
+
+  public Allocation(int registerCount) {
+    assignment = new int[registerCount];
+    spillSlot = new int[registerCount];
+    for (int r = 0; r < registerCount; r++) assignment[r] = MFunction.isVirtual(r) ? -1 : r;
+    Arrays.fill(spillSlot, -1);
+  }
+
+  public void assign(int reg, int physical) {
+    assignment[reg] = physical;
+    spillSlot[reg] = -1;
+  }
+
+  public void spill(int reg) {
+    assignment[reg] = -1;
+    if (spillSlot[reg] < 0) spillSlot[reg] = spillSlots++;
+  }
+
+  /** @return the physical register, or {@code -1} if it lives on the stack */
+  public int physical(int reg) {
+    return assignment[reg];
+  }
+
+  public boolean isSpilled(int reg) {
+    return spillSlot[reg] >= 0;
+  }
+
+  public int spillSlot(int reg) {
+    return spillSlot[reg];
+  }
+
+  /** Spill slots are 8 bytes each. */
+  public int spillSlots() {
+    return spillSlots;
+  }
+}
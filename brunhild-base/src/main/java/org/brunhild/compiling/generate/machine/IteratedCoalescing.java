@@ -0,0 +1,424 @@
+package org.brunhild.compiling.generate.machine;
+
+import org.brunhild.compiling.ir.IntList;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+
+/**
+ * Graph-coloring register allocation with iterated register coalescing (George and
+ * Appel), following the presentation in Appel's Modern Compiler Implementation.
+ * Integer and floating-point registers are colored in the same graph, but never
+ * interfere with each other and have their own number of colors.
+ * <p>
+ * Actual spills are not rewritten into new temporaries: targets keep scratch
+ * registers for reloading spilled values around each instruction, so a single
+ * round of coloring is enough. Spill candidates are chosen by the number of
+ * occurrences, weighted by the loop depth estimated from back edges in the layout.
+ */
+public final class IteratedCoalescing {
+  private static final int PRECOLORED = 0, INITIAL = 1, SIMPLIFY = 2, FREEZE = 3, SPILL = 4,
+    SPILLED = 5, COALESCED = 6, COLORED = 7, SELECT = 8;
+  private static final int MOVE_COALESCED = 0, MOVE_CONSTRAINED = 1, MOVE_FROZEN = 2,
+    MOVE_WORKLIST = 3, MOVE_ACTIVE = 4;
+  private static final int INFINITE_DEGREE = Integer.MAX_VALUE / 2;
+
+  private final @NotNull MFunction fn;
+  private final @NotNull RegisterFile registers;
+  private final int count;
+  private final boolean @NotNull [] allocatable = new boolean[MFunction.FIRST_VIRTUAL];
+  private final int @NotNull [] state;
+  private final int @NotNull [] degree;
+  private final int @NotNull [] alias;
+  private final int @NotNull [] color;
+  private final double @NotNull [] spillCost;
+  private final @NotNull IntList @NotNull [] adjList;
+  private final @NotNull IntList @NotNull [] moveList;
+  private final @NotNull HashSet<Long> adjSet = new HashSet<>();
+  private final @NotNull IntList moveDst = new IntList();
+  private final @NotNull IntList moveSrc = new IntList();
+  private final @NotNull IntList moveState = new IntList();
+  private final @NotNull LinkedHashSet<Integer> simplifyWorklist = new LinkedHashSet<>();
+  private final @NotNull LinkedHashSet<Integer> freezeWorklist = new LinkedHashSet<>();
+  private final @NotNull LinkedHashSet<Integer> spillWorklist = new LinkedHashSet<>();
+  private final @NotNull LinkedHashSet<Integer> worklistMoves = new LinkedHashSet<>();
+  private final @NotNull IntList selectStack = new IntList();
+
+  private IteratedCoalescing(@NotNull MFunction fn, @NotNull RegisterFile registers) {
+    this.fn = fn;
+    this.registers = registers;
+    this.count = fn.registerCount();
+    for (var isFloat : new boolean[]{false, true})
+      for (var reg : registers.allocatable(isFloat)) allocatable[reg] = true;
+    state = new int[count];
+    degree = new int[count];
+    alias = new int[count];
+    color = new int[count];
+    spillCost = new double[count];
+    adjList = new IntList[count];
+    moveList = new IntList[count];
+    for (int r = 0; r < count; r++) {
+      alias[r] = r;
+      color[r] = -1;
+      if (MFunction.isVirtual(r)) state[r] = -1;
+      else {
+        state[r] = PRECOLORED;
+        degree[r] = INFINITE_DEGREE;
+        color[r] = r;
+      }
+    }
+  }
+
+  public static @NotNull Allocation allocate(@NotNull MFunction fn, @NotNull RegisterFile registers) {
+    var allocator = new IteratedCoalescing(fn, registers);
+    allocator.build();
+    allocator.makeWorklist();
+    allocator.run();
+    return allocator.assignColors();
+  }
+
+  private boolean isTracked(int reg) {
+    return MFunction.isVirtual(reg) || allocatable[reg];
+  }
+
+  private int colors(int reg) {
+    return registers.allocatable(fn.isFloat(reg)).length;
+  }
+
+  // region Build
+
+  /** Loop depth per block, assuming loop bodies are contiguous in the layout. */
+  private int @NotNull [] loopDepths() {
+    var depth = new int[fn.blocks.size()];
+    for (int b = 0; b < fn.blocks.size(); b++) {
+      var succs = fn.blocks.get(b).succs;
+      for (int i = 0; i < succs.size(); i++) {
+        var header = succs.get(i);
+        if (header <= b) for (int l = header; l <= b; l++) depth[l]++;
+      }
+    }
+    return depth;
+  }
+
+  private void touch(int reg, double weight) {
+    if (!MFunction.isVirtual(reg)) return;
+    if (state[reg] < 0) {
+      state[reg] = INITIAL;
+      adjList[reg] = new IntList(8);
+    }
+    spillCost[reg] += weight;
+  }
+
+  private void build() {
+    var liveness = Liveness.of(fn, this::isTracked);
+    var depths = loopDepths();
+    for (int b = 0; b < fn.blocks.size(); b++) {
+      var weight = Math.pow(10, Math.min(depths[b], 6));
+      for (var instr : fn.blocks.get(b).instrs) {
+        for (var reg : instr.defs) touch(reg, weight);
+        for (var reg : instr.uses) touch(reg, weight);
+      }
+    }
+    for (int b = 0; b < fn.blocks.size(); b++) {
+      var instrs = fn.blocks.get(b).instrs;
+      var live = (BitSet) liveness.liveOut[b].clone();
+      for (int i = instrs.size() - 1; i >= 0; i--) {
+        var instr = instrs.get(i);
+        if (instr.kind == MInstr.Kind.Move && isTracked(instr.defs[0]) && isTracked(instr.uses[0])) {
+          var dst = instr.defs[0];
+          var src = instr.uses[0];
+          live.clear(src);
+          var move = moveDst.size();
+          moveDst.add(dst);
+          moveSrc.add(src);
+          moveState.add(MOVE_WORKLIST);
+          moves(dst).add(move);
+          moves(src).add(move);
+          worklistMoves.add(move);
+        }
+        for (var def : instr.defs) if (isTracked(def)) live.set(def);
+        for (var def : instr.defs) {
+          if (!isTracked(def)) continue;
+          for (int l = live.nextSetBit(0); l >= 0; l = live.nextSetBit(l + 1)) addEdge(l, def);
+        }
+        for (var def : instr.defs) live.clear(def);
+        for (var use : instr.uses) if (isTracked(use)) live.set(use);
+      }
+    }
+  }
+
+  private @NotNull IntList moves(int reg) {
+    if (moveList[reg] == null) moveList[reg] = new IntList(2);
+    return moveList[reg];
+  }
+
+  private static long edge(int u, int v) {
+    return ((long) u << 32) | v;
+  }
+
+  private void addEdge(int u, int v) {
+    if (u == v || fn.isFloat(u) != fn.isFloat(v) || adjSet.contains(edge(u, v))) return;
+    adjSet.add(edge(u, v));
+    adjSet.add(edge(v, u));
+    if (state[u] != PRECOLORED) {
+      adjList[u].add(v);
+      degree[u]++;
+    }
+    if (state[v] != PRECOLORED) {
+      adjList[v].add(u);
+      degree[v]++;
+    }
+  }
+
+  private void makeWorklist() {
+    for (int r = MFunction.FIRST_VIRTUAL; r < count; r++) {
+      if (state[r] != INITIAL) continue;
+      if (degree[r] >= colors(r)) setState(r, SPILL);
+      else if (isMoveRelated(r)) setState(r, FREEZE);
+      else setState(r, SIMPLIFY);
+    }
+  }
+
+  // endregion
+
+  // region Worklists
+
+  private void setState(int reg, int newState) {
+    switch (state[reg]) {
+      case SIMPLIFY -> simplifyWorklist.remove(reg);
+      case FREEZE -> freezeWorklist.remove(reg);
+      case SPILL -> spillWorklist.remove(reg);
+      default -> {}
+    }
+    state[reg] = newState;
+    switch (newState) {
+      case SIMPLIFY -> simplifyWorklist.add(reg);
+      case FREEZE -> freezeWorklist.add(reg);
+      case SPILL -> spillWorklist.add(reg);
+      default -> {}
+    }
+  }
+
+  private boolean isAdjacent(int reg) {
+    return state[reg] != SELECT && state[reg] != COALESCED;
+  }
+
+  private boolean isMoveActive(int move) {
+    return moveState.get(move) == MOVE_ACTIVE || moveState.get(move) == MOVE_WORKLIST;
+  }
+
+  private boolean isMoveRelated(int reg) {
+    var moves = moveList[reg];
+    if (moves == null) return false;
+    for (int i = 0; i < moves.size(); i++) if (isMoveActive(moves.get(i))) return true;
+    return false;
+  }
+
+  private void run() {
+    while (true) {
+      if (!simplifyWorklist.isEmpty()) simplify();
+      else if (!worklistMoves.isEmpty()) coalesce();
+      else if (!freezeWorklist.isEmpty()) freeze();
+      else if (!spillWorklist.isEmpty()) selectSpill();
+      else return;
+    }
+  }
+
+  private static int pop(@NotNull LinkedHashSet<Integer> set) {
+    var iterator = set.iterator();
+    var value = iterator.next();
+    iterator.remove();
+    return value;
+  }
+
+  private void simplify() {
+    var reg = simplifyWorklist.iterator().next();
+    setState(reg, SELECT);
+    selectStack.add(reg);
+    var adjacent = adjList[reg];
+    for (int i = 0; i < adjacent.size(); i++) {
+      var other = adjacent.get(i);
+      if (isAdjacent(other)) decrementDegree(other);
+    }
+  }
+
+  private void decrementDegree(int reg) {
+    if (state[reg] == PRECOLORED) return;
+    var old = degree[reg]--;
+    if (old != colors(reg)) return;
+    enableMoves(reg);
+    var adjacent = adjList[reg];
+    for (int i = 0; i < adjacent.size(); i++) {
+      var other = adjacent.get(i);
+      if (isAdjacent(other)) enableMoves(other);
+    }
+    setState(reg, isMoveRelated(reg) ? FREEZE : SIMPLIFY);
+  }
+
+  private void enableMoves(int reg) {
+    var moves = moveList[reg];
+    if (moves == null) return;
+    for (int i = 0; i < moves.size(); i++) {
+      var move = moves.get(i);
+      if (moveState.get(move) != MOVE_ACTIVE) continue;
+      moveState.set(move, MOVE_WORKLIST);
+      worklistMoves.add(move);
+    }
+  }
+
+  private int alias(int reg) {
+    while (state[reg] == COALESCED) reg = alias[reg];
+    return reg;
+  }
+
+  private void addWorklist(int reg) {
+    if (state[reg] != PRECOLORED && !isMoveRelated(reg) && degree[reg] < colors(reg))
+      setState(reg, SIMPLIFY);
+  }
+
+  private boolean ok(int t, int r) {
+    return degree[t] < colors(t) || state[t] == PRECOLORED || adjSet.contains(edge(t, r));
+  }
+
+  /** Briggs: the merged node has fewer than K neighbors of significant degree. */
+  private boolean conservative(int u, int v) {
+    var seen = new HashSet<Integer>();
+    var significant = 0;
+    for (var node : new int[]{u, v}) {
+      var adjacent = adjList[node];
+      for (int i = 0; i < adjacent.size(); i++) {
+        var other = adjacent.get(i);
+        if (isAdjacent(other) && seen.add(other) && degree[other] >= colors(other)) significant++;
+      }
+    }
+    return significant < colors(u);
+  }
+
+  private void coalesce() {
+    var move = pop(worklistMoves);
+    var x = alias(moveSrc.get(move));
+    var y = alias(moveDst.get(move));
+    int u = x, v = y;
+    if (state[y] == PRECOLORED) {
+      u = y;
+      v = x;
+    }
+    if (u == v) {
+      moveState.set(move, MOVE_COALESCED);
+      addWorklist(u);
+    } else if (state[v] == PRECOLORED || adjSet.contains(edge(u, v))) {
+      moveState.set(move, MOVE_CONSTRAINED);
+      addWorklist(u);
+      addWorklist(v);
+    } else if (state[u] == PRECOLORED ? georgeTest(u, v) : conservative(u, v)) {
+      moveState.set(move, MOVE_COALESCED);
+      combine(u, v);
+      addWorklist(u);
+    } else moveState.set(move, MOVE_ACTIVE);
+  }
+
+  /** George: every neighbor of {@code v} already interferes with {@code u} or is insignificant. */
+  private boolean georgeTest(int u, int v) {
+    var adjacent = adjList[v];
+    for (int i = 0; i < adjacent.size(); i++) {
+      var t = adjacent.get(i);
+      if (isAdjacent(t) && !ok(t, u)) return false;
+    }
+    return true;
+  }
+
+  private void combine(int u, int v) {
+    setState(v, COALESCED);
+    alias[v] = u;
+    if (moveList[v] != null) moves(u).addAll(moveList[v]);
+    spillCost[u] += spillCost[v];
+    enableMoves(v);
+    var adjacent = adjList[v];
+    for (int i = 0; i < adjacent.size(); i++) {
+      var t = adjacent.get(i);
+      if (!isAdjacent(t)) continue;
+      addEdge(t, u);
+      decrementDegree(t);
+    }
+    if (state[u] == FREEZE && degree[u] >= colors(u)) setState(u, SPILL);
+  }
+
+  private void freeze() {
+    var reg = freezeWorklist.iterator().next();
+    setState(reg, SIMPLIFY);
+    freezeMoves(reg);
+  }
+
+  private void freezeMoves(int reg) {
+    var moves = moveList[reg];
+    if (moves == null) return;
+    for (int i = 0; i < moves.size(); i++) {
+      var move = moves.get(i);
+      if (!isMoveActive(move)) continue;
+      var x = moveSrc.get(move);
+      var y = moveDst.get(move);
+      var v = alias(y) == alias(reg) ? alias(x) : alias(y);
+      worklistMoves.remove(move);
+      moveState.set(move, MOVE_FROZEN);
+      if (state[v] == FREEZE && !isMoveRelated(v) && degree[v] < colors(v)) setState(v, SIMPLIFY);
+    }
+  }
+
+  private void selectSpill() {
+    var best = -1;
+    var bestMetric = Double.MAX_VALUE;
+    for (var reg : spillWorklist) {
+      var metric = spillCost[reg] / Math.max(1, degree[reg]);
+      if (metric < bestMetric) {
+        best = reg;
+        bestMetric = metric;
+      }
+    }
+    setState(best, SIMPLIFY);
+    freezeMoves(best);
+  }
+
+  // endregion
+
+  private @NotNull Allocation assignColors() {
+    var allocation = new Allocation(count);
+    var taken = new BitSet(MFunction.FIRST_VIRTUAL);
+    while (!selectStack.isEmpty()) {
+      var reg = selectStack.removeLast();
+      taken.clear();
+      var adjacent = adjList[reg];
+      for (int i = 0; i < adjacent.size(); i++) {
+        var other = alias(adjacent.get(i));
+        if (state[other] == COLORED || state[other] == PRECOLORED) taken.set(color[other]);
+      }
+      var chosen = -1;
+      for (var candidate : registers.allocatable(fn.isFloat(reg))) {
+        if (!taken.get(candidate)) {
+          chosen = candidate;
+          break;
+        }
+      }
+      if (chosen < 0) {
+        state[reg] = SPILLED;
+        allocation.spill(reg);
+      } else {
+        state[reg] = COLORED;
+        color[reg] = chosen;
+        allocation.assign(reg, chosen);
+      }
+    }
+    for (int r = MFunction.FIRST_VIRTUAL; r < count; r++) {
+      if (state[r] != COALESCED) continue;
+      var target = alias(r);
+      if (state[target] == SPILLED) allocation.spill(r);
+      else allocation.assign(r, color[target]);
+    }
+    for (int r = MFunction.FIRST_VIRTUAL; r < count; r++) {
+      var physical = allocation.physical(r);
+      if (physical >= 0 && registers.isCalleeSaved(physical)) allocation.usedCalleeSaved.set(physical);
+    }
+    return allocation;
+  }
+}
@@ -0,0 +1,167 @@
+package org.brunhild.compiling.generate.machine;
+
+import org.brunhild.compiling.ir.IntList;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Linear-scan register allocation (Poletto and Sarkar) over one conservative live
+ * interval per virtual register. Instruction {@code i} reads at position {@code 2i}
+ * and writes at {@code 2i + 1}. Physical registers have fixed ranges from each
+ * definition to its last use (argument setup, call results, call clobbers), and an
+ * interval may only take a register whose fixed ranges it does not overlap. Since a
+ * call clobbers every caller-saved register, values live across calls end up in
+ * callee-saved registers or on the stack without any special casing.
+ */
+public final class LinearScan {
+  private final @NotNull MFunction fn;
+  private final @NotNull RegisterFile registers;
+  private final int @NotNull [] start;
+  private final int @NotNull [] end;
+  /** Sorted disjoint {@code [start, end]} pairs per physical register. */
+  private final @NotNull IntList @NotNull [] fixed = new IntList[MFunction.FIRST_VIRTUAL];
+  private final int @NotNull [] hint;
+  private final @NotNull Allocation allocation;
+
+  private LinearScan(@NotNull MFunction fn, @NotNull RegisterFile registers) {
+    this.fn = fn;
+    this.registers = registers;
+    var count = fn.registerCount();
+    this.start = new int[count];
+    this.end = new int[count];
+    this.hint = new int[count];
+    this.allocation = new Allocation(count);
+    Arrays.fill(start, Integer.MAX_VALUE);
+    Arrays.fill(end, -1);
+    Arrays.fill(hint, -1);
+    for (int r = 0; r < fixed.length; r++) fixed[r] = new IntList(4);
+  }
+
+  public static @NotNull Allocation allocate(@NotNull MFunction fn, @NotNull RegisterFile registers) {
+    var scan = new LinearScan(fn, registers);
+    scan.buildIntervals();
+    scan.scan();
+    return scan.allocation;
+  }
+
+  private void extend(int reg, int position) {
+    if (position < start[reg]) start[reg] = position;
+    if (position > end[reg]) end[reg] = position;
+  }
+
+  private void buildIntervals() {
+    var liveness = Liveness.of(fn, MFunction::isVirtual);
+    var index = 0;
+    for (int b = 0; b < fn.blocks.size(); b++) {
+      var block = fn.blocks.get(b);
+      var first = index;
+      var last = index + block.instrs.size() - 1;
+      var in = liveness.liveIn[b];
+      for (int r = in.nextSetBit(0); r >= 0; r = in.nextSetBit(r + 1)) extend(r, 2 * first);
+      var out = liveness.liveOut[b];
+      for (int r = out.nextSetBit(0); r >= 0; r = out.nextSetBit(r + 1)) extend(r, 2 * last + 1);
+      // physical registers never live across blocks except for the parameters at the entry
+      var defined = new boolean[MFunction.FIRST_VIRTUAL];
+      for (var instr : block.instrs) {
+        for (var use : instr.uses) {
+          if (MFunction.isVirtual(use)) extend(use, 2 * index);
+          else if (defined[use]) fixed[use].set(fixed[use].size() - 1, 2 * index);
+          else {
+            fixed[use].add(2 * first);
+            fixed[use].add(2 * index);
+            defined[use] = true;
+          }
+        }
+        for (var def : instr.defs) {
+          if (MFunction.isVirtual(def)) extend(def, 2 * index + 1);
+          else {
+            fixed[def].add(2 * index + 1);
+            fixed[def].add(2 * index + 1);
+            defined[def] = true;
+          }
+        }
+        if (instr.kind == MInstr.Kind.Move) {
+          var dst = instr.defs[0];
+          var src = instr.uses[0];
+          if (MFunction.isVirtual(dst) && hint[dst] < 0) hint[dst] = src;
+          if (MFunction.isVirtual(src) && hint[src] < 0) hint[src] = dst;
+        }
+        index++;
+      }
+    }
+  }
+
+  private boolean overlapsFixed(int physical, int from, int to) {
+    var ranges = fixed[physical];
+    // binary search for the first range ending at or after `from`
+    int lo = 0, hi = ranges.size() / 2;
+    while (lo < hi) {
+      var mid = (lo + hi) >>> 1;
+      if (ranges.get(mid * 2 + 1) < from) lo = mid + 1;
+      else hi = mid;
+    }
+    return lo < ranges.size() / 2 && ranges.get(lo * 2) <= to;
+  }
+
+  private void scan() {
+    var intervals = new IntList();
+    for (int r = MFunction.FIRST_VIRTUAL; r < fn.registerCount(); r++) if (end[r] >= 0) intervals.add(r);
+    var sorted = Arrays.stream(intervals.toArray()).boxed()
+      .sorted((a, b) -> Integer.compare(start[a], start[b])).mapToInt(Integer::intValue).toArray();
+    var active = new ArrayList<Integer>();
+    var holder = new int[MFunction.FIRST_VIRTUAL];
+    Arrays.fill(holder, -1);
+    for (var current : sorted) {
+      active.removeIf(reg -> {
+        if (end[reg] >= start[current]) return false;
+        holder[allocation.physical(reg)] = -1;
+        return true;
+      });
+      var chosen = choose(current, holder);
+      if (chosen >= 0) {
+        take(current, chosen, holder, active);
+        continue;
+      }
+      // steal the register of the interval that ends last, if it ends after us
+      var victim = -1;
+      for (var reg : active) {
+        if (fn.isFloat(reg) != fn.isFloat(current) || end[reg] <= end[current]) continue;
+        if (overlapsFixed(allocation.physical(reg), start[current], end[current])) continue;
+        if (victim < 0 || end[reg] > end[victim]) victim = reg;
+      }
+      if (victim < 0) {
+        allocation.spill(current);
+        continue;
+      }
+      var physical = allocation.physical(victim);
+      active.remove((Integer) victim);
+      allocation.spill(victim);
+      take(current, physical, holder, active);
+    }
+  }
+
+  private void take(int reg, int physical, int @NotNull [] holder, @NotNull ArrayList<Integer> active) {
+    allocation.assign(reg, physical);
+    holder[physical] = reg;
+    active.add(reg);
+    if (registers.isCalleeSaved(physical)) allocation.usedCalleeSaved.set(physical);
+  }
+
+  private int choose(int reg, int @NotNull [] holder) {
+    var preferred = hint[reg];
+    if (preferred >= 0 && MFunction.isVirtual(preferred)) preferred = allocation.physical(preferred);
+    if (preferred >= 0 && isFree(reg, preferred, holder)) return preferred;
+    for (var physical : registers.allocatable(fn.isFloat(reg)))
+      if (isFree(reg, physical, holder)) return physical;
+    return -1;
+  }
+
+  private boolean isFree(int reg, int physical, int @NotNull [] holder) {
+    if (holder[physical] >= 0 || fn.isFloat(physical) != fn.isFloat(reg)) return false;
+    var allowed = false;
+    for (var candidate : registers.allocatable(fn.isFloat(reg))) allowed |= candidate == physical;
+    return allowed && !overlapsFixed(physical, start[reg], end[reg]);
+  }
+}
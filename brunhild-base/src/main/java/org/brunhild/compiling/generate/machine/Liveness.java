@@ -0,0 +1,54 @@
+package org.brunhild.compiling.generate.machine;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.BitSet;
+import java.util.function.IntPredicate;
+
+/** Live registers at block boundaries, by the usual backward dataflow. */
+public final class Liveness {
+  public final @NotNull BitSet @NotNull [] liveIn;
+  public final @NotNull BitSet @NotNull [] liveOut;
+
+  private Liveness(@NotNull BitSet @NotNull [] liveIn, @NotNull BitSet @NotNull [] liveOut) {
+    this.liveIn = liveIn;
+    this.liveOut = liveOut;
+  }
+
+  /** @param tracked registers taking part in the analysis, others are never live */
+  public static @NotNull Liveness of(@NotNull MFunction fn, @NotNull IntPredicate tracked) {
+    var count = fn.blocks.size();
+    var gen = new BitSet[count];
+    var kill = new BitSet[count];
+    var liveIn = new BitSet[count];
+    var liveOut = new BitSet[count];
+    for (int b = 0; b < count; b++) {
+      gen[b] = new BitSet();
+      kill[b] = new BitSet();
+      liveIn[b] = new BitSet();
+      liveOut[b] = new BitSet();
+      for (var instr : fn.blocks.get(b).instrs) {
+        for (var use : instr.uses) if (tracked.test(use) && !kill[b].get(use)) gen[b].set(use);
+        for (var def : instr.defs) if (tracked.test(def)) kill[b].set(def);
+      }
+    }
+    var changed = true;
+    while (changed) {
+      changed = false;
+      for (int b = count - 1; b >= 0; b--) {
+        var out = new BitSet();
+        var succs = fn.blocks.get(b).succs;
+        for (int i = 0; i < succs.size(); i++) out.or(liveIn[succs.get(i)]);
+        var in = (BitSet) out.clone();
+        in.andNot(kill[b]);
+        in.or(gen[b]);
+        if (!in.equals(liveIn[b]) || !out.equals(liveOut[b])) {
+          liveIn[b] = in;
+          liveOut[b] = out;
+          changed = true;
+        }
+      }
+    }
+    return new Liveness(liveIn, liveOut);
+  }
+}
@@ -0,0 +1,70 @@
+package org.brunhild.compiling.generate.machine;
+
+import org.brunhild.compiling.ir.IntList;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+
+/**
+ * A function after instruction selection. Registers below {@link #FIRST_VIRTUAL}
+ * are physical: {@code 0..31} general purpose and {@code 32..63} floating point,
+ * which covers both RISC-V and AArch64.
+ */
+public final class MFunction {
+  public static final int FIRST_VIRTUAL = 64;
+  public static final int FIRST_FLOAT = 32;
+
+  public static final class MBlock {
+    public final @NotNull String label;
+    public final @NotNull ArrayList<MInstr> instrs = new ArrayList<>();
+    public final @NotNull IntList succs = new IntList(2);
+
+    public MBlock(@NotNull String label) {
+      this.label = label;
+    }
+  }
+
+  public final @NotNull String name;
+  public final @NotNull ArrayList<MBlock> blocks = new ArrayList<>();
+  private final @NotNull BitSet floatVirtuals = new BitSet();
+  private int nextVirtual = FIRST_VIRTUAL;
+  /** Bytes of the outgoing argument area, the maximum over all calls. */
+  public int outgoingSize = 0;
+  /** Bytes of local arrays. */
+  public int localSize = 0;
+  public boolean hasCalls = false;
+
+  public MFunction(@NotNull String name) {
+    this.name = name;
+  }
+
+  public int newVirtual(boolean isFloat) {
+    var reg = nextVirtual++;
+    if (isFloat) floatVirtuals.set(reg);
+    return reg;
+  }
+
+  /** @return one past the largest register number in use */
+  public int registerCount() {
+    return nextVirtual;
+  }
+
+  public boolean isFloat(int reg) {
+    return reg < FIRST_VIRTUAL ? reg >= FIRST_FLOAT : floatVirtuals.get(reg);
+  }
+
+  public static boolean isVirtual(int reg) {
+    return reg >= FIRST_VIRTUAL;
+  }
+
+  public @NotNull ArrayList<IntList> predecessors() {
+    var preds = new ArrayList<IntList>(blocks.size());
+    for (int b = 0; b < blocks.size(); b++) preds.add(new IntList(2));
+    for (int b = 0; b < blocks.size(); b++) {
+      var succs = blocks.get(b).succs;
+      for (int i = 0; i < succs.size(); i++) preds.get(succs.get(i)).add(b);
+    }
+    return preds;
+  }
+}
@@ -0,0 +1,78 @@
+package org.brunhild.compiling.generate.machine;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A target instruction over physical and virtual registers. The text is a template:
+ * {@code $d0}/{@code $u0} stand for the registers in {@link #defs}/{@link #uses},
+ * {@code $l0} for the label of {@link #targets} and {@code $o} for the resolved
+ * offset of a frame reference. Physical registers that are read or clobbered
+ * implicitly (arguments, results, call clobbers) are listed as well, so
+ * liveness and allocation see them.
+ */
+public final class MInstr {
+  public enum Kind {
+    Plain,
+    /** {@code $d0 = $u0}, a candidate for coalescing */
+    Move,
+    Call,
+    /** conditional branch, falls through or is followed by a jump */
+    Branch,
+    Jump,
+    /** expands to the epilogue */
+    Return,
+  }
+
+  /** Stack areas, laid out by the target once their sizes are known. */
+  public enum Area {
+    /** arguments passed on the stack by our caller */
+    Incoming,
+    /** arguments we pass on the stack */
+    Outgoing,
+    /** local arrays */
+    Local,
+    /** spilled virtual registers */
+    Spill,
+  }
+
+  public record FrameRef(@NotNull Area area, int offset) {}
+
+  public final @NotNull Kind kind;
+  public final @NotNull String format;
+  public final int @NotNull [] defs;
+  public final int @NotNull [] uses;
+  public final int @NotNull [] targets;
+  public final @Nullable FrameRef frame;
+
+  public MInstr(
+    @NotNull Kind kind, @NotNull String format,
+    int @NotNull [] defs, int @NotNull [] uses,
+    int @NotNull [] targets, @Nullable FrameRef frame
+  ) {
+    this.kind = kind;
+    this.format = format;
+    this.defs = defs;
+    this.uses = uses;
+    this.targets = targets;
+    this.frame = frame;
+  }
+
+  public static @NotNull MInstr plain(@NotNull String format, int @NotNull [] defs, int @NotNull ... uses) {
+    return new MInstr(Kind.Plain, format, defs, uses, new int[0], null);
+  }
+
+  public static @NotNull MInstr move(@NotNull String format, int def, int use) {
+    return new MInstr(Kind.Move, format, new int[]{def}, new int[]{use}, new int[0], null);
+  }
+
+  public static @NotNull MInstr frame(@NotNull String format, @NotNull FrameRef frame, int @NotNull [] defs, int @NotNull ... uses) {
+    return new MInstr(Kind.Plain, format, defs, uses, new int[0], frame);
+  }
+
+  public static final int @NotNull [] NONE = new int[0];
+
+  @Override public @NotNull String toString() {
+    return format;
+  }
+}
@@ -0,0 +1,13 @@
+package org.brunhild.compiling.generate.machine;
+
+import org.jetbrains.annotations.NotNull;
+
+/** What a register allocator needs to know about a target. */
+public interface RegisterFile {
+  /** @return allocatable registers of a class, caller-saved ones first */
+  int @NotNull [] allocatable(boolean isFloat);
+
+  boolean isCalleeSaved(int reg);
+
+  @NotNull String name(int reg);
+}
@@ -0,0 +1,264 @@
+package org.brunhild.compiling.generate.riscv;
+
+import org.brunhild.compiling.generate.Generator;
+import org.brunhild.compiling.generate.TextSink;
+import org.brunhild.compiling.generate.machine.Allocation;
+import org.brunhild.compiling.generate.machine.LinearScan;
+import org.brunhild.compiling.generate.machine.MFunction;
+import org.brunhild.compiling.generate.machine.MInstr;
+import org.brunhild.compiling.ir.IntList;
+import org.brunhild.compiling.ir.Module;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.Writer;
+
+import static org.brunhild.compiling.generate.riscv.RiscvRegisters.*;
+
+/**
+ * Emits GNU assembler syntax for RV64GC (LP64D) from a lowered module. Each function
+ * goes through {@link RiscvSelector}, {@link LinearScan} and then the emitter here,
+ * which lays out the frame and rewrites spilled registers through the scratch registers.
+ * <p>
+ * The frame, from {@code sp} upwards: outgoing stack arguments, spill slots, local
+ * arrays, and the saved {@code ra} and callee-saved registers at the top.
+ * Incoming stack arguments start right above the frame.
+ */
+public final class RiscvGenerator implements Generator<Module, Writer, Writer> {
+  public static final @NotNull RiscvGenerator Pass = new RiscvGenerator();
+
+  @Override public @NotNull Writer perform(@NotNull Module module, Writer writer) {
+    var sink = new TextSink(writer);
+    sink.append("  .file \"").append(module.name).append('"').line();
+    sink.append("  .option nopic").line();
+    sink.append("  .text").line();
+    for (var fn : module.functions) {
+      var mf = RiscvSelector.select(module, fn);
+      new FnEmitter(mf, LinearScan.allocate(mf, RiscvRegisters.INSTANCE), sink).emit();
+    }
+    globals(sink, module);
+    sink.flush();
+    return writer;
+  }
+
+  private static void globals(@NotNull TextSink sink, @NotNull Module module) {
+    for (var global : module.globals) {
+      var zero = global.isZero();
+      sink.line().append(zero ? "  .bss" : "  .data").line();
+      sink.append("  .globl ").append(global.name()).line();
+      sink.append("  .p2align 2").line();
+      sink.append("  .type ").append(global.name()).append(", @object").line();
+      sink.append("  .size ").append(global.name()).append(", ").append(4 * global.size()).line();
+      sink.append(global.name()).append(':').line();
+      var init = global.init();
+      if (zero || init == null) {
+        sink.append("  .zero ").append(4 * global.size()).line();
+        continue;
+      }
+      for (int i = 0; i < init.length; ) {
+        var run = i;
+        while (run < init.length && init[run] == 0) run++;
+        if (run > i) {
+          sink.append("  .zero ").append(4 * (run - i)).line();
+          i = run;
+        } else sink.append("  .word ").append(init[i++]).line();
+      }
+    }
+  }
+
+  private static final class FnEmitter {
+    private final @NotNull MFunction fn;
+    private final @NotNull Allocation allocation;
+    private final @NotNull TextSink sink;
+    private final @NotNull IntList saved = new IntList();
+    private int spillBase;
+    private int localBase;
+    private int savedSize;
+    private int frameSize;
+
+    FnEmitter(@NotNull MFunction fn, @NotNull Allocation allocation, @NotNull TextSink sink) {
+      this.fn = fn;
+      this.allocation = allocation;
+      this.sink = sink;
+    }
+
+    void emit() {
+      layoutFrame();
+      sink.line().append("  .globl ").append(fn.name).line();
+      sink.append("  .p2align 2").line();
+      sink.append("  .type ").append(fn.name).append(", @function").line();
+      sink.append(fn.name).append(':').line();
+      prologue();
+      for (int b = 0; b < fn.blocks.size(); b++) {
+        var block = fn.blocks.get(b);
+        if (b > 0) sink.append(block.label).append(':').line();
+        for (var instr : block.instrs) instruction(instr);
+      }
+      sink.append("  .size ").append(fn.name).append(", .-").append(fn.name).line();
+    }
+
+    // region Frame
+
+    private void layoutFrame() {
+      if (fn.hasCalls) saved.add(RA);
+      var callee = allocation.usedCalleeSaved;
+      for (int r = callee.nextSetBit(0); r >= 0; r = callee.nextSetBit(r + 1)) saved.add(r);
+      spillBase = fn.outgoingSize;
+      localBase = spillBase + 8 * allocation.spillSlots();
+      var body = (localBase + fn.localSize + 15) & ~15;
+      savedSize = (8 * saved.size() + 15) & ~15;
+      frameSize = body + savedSize;
+    }
+
+    private int offset(@NotNull MInstr.FrameRef ref) {
+      return switch (ref.area()) {
+        case Incoming -> frameSize + ref.offset();
+        case Outgoing -> ref.offset();
+        case Local -> localBase + ref.offset();
+        case Spill -> spillBase + 8 * ref.offset();
+      };
+    }
+
+    private boolean isSmallFrame() {
+      return RiscvSelector.fitsImm12(frameSize);
+    }
+
+    /** Saved registers sit at the top, so their offsets only depend on {@code sp} at that point. */
+    private void saveOrRestore(boolean save, int top) {
+      for (int i = 0; i < saved.size(); i++) {
+        var reg = saved.get(i);
+        var mnemonic = fn.isFloat(reg) ? (save ? "fsd" : "fld") : (save ? "sd" : "ld");
+        sink.append("  ").append(mnemonic).append(' ').append(name(reg)).append(", ")
+          .append(top - 8 * (i + 1)).append("(sp)").line();
+      }
+    }
+
+    private void prologue() {
+      if (frameSize == 0) return;
+      if (isSmallFrame()) {
+        sink.append("  addi sp, sp, ").append(-frameSize).line();
+        saveOrRestore(true, frameSize);
+        return;
+      }
+      // two steps, so that the saved registers stay within reach of 12-bit offsets
+      if (savedSize > 0) sink.append("  addi sp, sp, ").append(-savedSize).line();
+      saveOrRestore(true, savedSize);
+      sink.append("  li t6, ").append(frameSize - savedSize).line();
+      sink.append("  sub sp, sp, t6").line();
+    }
+
+    private void epilogue() {
+      if (frameSize > 0) {
+        if (isSmallFrame()) {
+          saveOrRestore(false, frameSize);
+          sink.append("  addi sp, sp, ").append(frameSize).line();
+        } else {
+          sink.append("  li t6, ").append(frameSize - savedSize).line();
+          sink.append("  add sp, sp, t6").line();
+          saveOrRestore(false, savedSize);
+          if (savedSize > 0) sink.append("  addi sp, sp, ").append(savedSize).line();
+        }
+      }
+      sink.append("  ret").line();
+    }
+
+    // endregion
+
+    private @NotNull String name(int reg) {
+      return RiscvRegisters.INSTANCE.name(reg);
+    }
+
+    /** Accesses {@code offset(sp)}, going through {@code t6} when the offset is out of range. */
+    private void stackAccess(@NotNull String mnemonic, int reg, int offset, int temp) {
+      if (RiscvSelector.fitsImm12(offset)) {
+        sink.append("  ").append(mnemonic).append(' ').append(name(reg)).append(", ")
+          .append(offset).append("(sp)").line();
+        return;
+      }
+      sink.append("  li ").append(name(temp)).append(", ").append(offset).line();
+      sink.append("  add ").append(name(temp)).append(", sp, ").append(name(temp)).line();
+      sink.append("  ").append(mnemonic).append(' ').append(name(reg)).append(", 0(")
+        .append(name(temp)).append(')').line();
+    }
+
+    private int spillOffset(int reg) {
+      return spillBase + 8 * allocation.spillSlot(reg);
+    }
+
+    private void instruction(@NotNull MInstr instr) {
+      if (instr.kind == MInstr.Kind.Return) {
+        epilogue();
+        return;
+      }
+      if (instr.kind == MInstr.Kind.Move) {
+        var def = allocation.physical(instr.defs[0]);
+        if (def >= 0 && def == allocation.physical(instr.uses[0])) return;
+      }
+      var uses = new int[instr.uses.length];
+      int intScratch = 0, floatScratch = 0;
+      // floats first: their reloads may borrow t6 for a large offset
+      for (var pass = 0; pass < 2; pass++) {
+        for (int i = 0; i < uses.length; i++) {
+          var reg = instr.uses[i];
+          var isFloat = fn.isFloat(reg);
+          if (isFloat != (pass == 0)) continue;
+          uses[i] = allocation.physical(reg);
+          if (uses[i] >= 0) continue;
+          uses[i] = isFloat ? (floatScratch++ == 0 ? FT10 : FT11) : (intScratch++ == 0 ? T5 : T6);
+          stackAccess(isFloat ? "flw" : "ld", uses[i], spillOffset(reg), isFloat ? T6 : uses[i]);
+        }
+      }
+      var defs = new int[instr.defs.length];
+      for (int i = 0; i < defs.length; i++) {
+        defs[i] = allocation.physical(instr.defs[i]);
+        if (defs[i] < 0) defs[i] = fn.isFloat(instr.defs[i]) ? FT10 : T5;
+      }
+      var text = substitute(instr, defs, uses);
+      if (instr.frame != null) frameAccess(text, defs, offset(instr.frame));
+      // a move between two spilled registers only goes through the scratch register
+      else if (instr.kind != MInstr.Kind.Move || defs[0] != uses[0]) sink.append("  ").append(text).line();
+      for (int i = 0; i < defs.length; i++) {
+        var reg = instr.defs[i];
+        if (!MFunction.isVirtual(reg) || allocation.physical(reg) >= 0) continue;
+        stackAccess(fn.isFloat(reg) ? "fsw" : "sd", defs[i], spillOffset(reg), T6);
+      }
+    }
+
+    /** Either {@code op reg, $o(sp)} or {@code addi reg, sp, $o}. */
+    private void frameAccess(@NotNull String text, int @NotNull [] defs, int offset) {
+      if (RiscvSelector.fitsImm12(offset)) {
+        sink.append("  ").append(text.replace("$o", Integer.toString(offset))).line();
+        return;
+      }
+      if (text.startsWith("addi ")) {
+        sink.append("  li ").append(name(defs[0])).append(", ").append(offset).line();
+        sink.append("  add ").append(name(defs[0])).append(", sp, ").append(name(defs[0])).line();
+        return;
+      }
+      sink.append("  li t6, ").append(offset).line();
+      sink.append("  add t6, sp, t6").line();
+      sink.append("  ").append(text.replace("$o(sp)", "0(t6)")).line();
+    }
+
+    private @NotNull String substitute(@NotNull MInstr instr, int @NotNull [] defs, int @NotNull [] uses) {
+      var format = instr.format;
+      var builder = new StringBuilder(format.length() + 16);
+      for (int i = 0; i < format.length(); i++) {
+        var c = format.charAt(i);
+        if (c != '$' || format.charAt(i + 1) == 'o') {
+          builder.append(c);
+          continue;
+        }
+        var kind = format.charAt(i + 1);
+        var index = format.charAt(i + 2) - '0';
+        switch (kind) {
+          case 'd' -> builder.append(name(defs[index]));
+          case 'u' -> builder.append(name(uses[index]));
+          case 'l' -> builder.append(fn.blocks.get(instr.targets[index]).label);
+          default -> throw new IllegalStateException("unknown placeholder in " + format);
+        }
+        i += 2;
+      }
+      return builder.toString();
+    }
+  }
+}
@@ -0,0 +1,71 @@
+package org.brunhild.compiling.generate.riscv;
+
+import org.brunhild.compiling.generate.machine.MFunction;
+import org.brunhild.compiling.generate.machine.RegisterFile;
+import org.brunhild.compiling.ir.IntList;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Registers of RV64GC under the LP64D calling convention. {@code t5}, {@code t6},
+ * {@code ft10} and {@code ft11} are kept out of allocation as scratch registers
+ * for spill code and large frame offsets.
+ */
+public final class RiscvRegisters implements RegisterFile {
+  public static final @NotNull RiscvRegisters INSTANCE = new RiscvRegisters();
+
+  public static final int ZERO = 0, RA = 1, SP = 2;
+  public static final int T5 = 30, T6 = 31;
+  public static final int A0 = 10, FA0 = MFunction.FIRST_FLOAT + 10;
+  public static final int FT10 = MFunction.FIRST_FLOAT + 30, FT11 = MFunction.FIRST_FLOAT + 31;
+  public static final int ARGUMENT_REGISTERS = 8;
+
+  private static final @NotNull String @NotNull [] INT_NAMES = {
+    "zero", "ra", "sp", "gp", "tp", "t0", "t1", "t2",
+    "s0", "s1", "a0", "a1", "a2", "a3", "a4", "a5",
+    "a6", "a7", "s2", "s3", "s4", "s5", "s6", "s7",
+    "s8", "s9", "s10", "s11", "t3", "t4", "t5", "t6",
+  };
+  private static final @NotNull String @NotNull [] FLOAT_NAMES = {
+    "ft0", "ft1", "ft2", "ft3", "ft4", "ft5", "ft6", "ft7",
+    "fs0", "fs1", "fa0", "fa1", "fa2", "fa3", "fa4", "fa5",
+    "fa6", "fa7", "fs2", "fs3", "fs4", "fs5", "fs6", "fs7",
+    "fs8", "fs9", "fs10", "fs11", "ft8", "ft9", "ft10", "ft11",
+  };
+
+  private static final int @NotNull [] INT_ALLOCATABLE = {
+    5, 6, 7, 28, 29, 17, 16, 15, 14, 13, 12, 11, 10,
+    8, 9, 18, 19, 20, 21, 22, 23, 24, 25, 26, 27,
+  };
+  private static final int @NotNull [] FLOAT_ALLOCATABLE;
+  /** Everything a call may clobber, scratch registers included. */
+  static final int @NotNull [] CALLER_SAVED;
+
+  static {
+    var floats = new int[INT_ALLOCATABLE.length];
+    for (int i = 0; i < floats.length; i++) floats[i] = MFunction.FIRST_FLOAT + INT_ALLOCATABLE[i];
+    FLOAT_ALLOCATABLE = floats;
+    var clobbered = new IntList(64);
+    for (int r = 0; r < MFunction.FIRST_FLOAT; r++) {
+      var temporary = (r >= 10 && r <= 17) || r >= 28;
+      if (r == RA || (r >= 5 && r <= 7) || temporary) clobbered.add(r);
+      if (r <= 7 || temporary) clobbered.add(MFunction.FIRST_FLOAT + r);
+    }
+    CALLER_SAVED = clobbered.toArray();
+  }
+
+  private RiscvRegisters() {
+  }
+
+  @Override public int @NotNull [] allocatable(boolean isFloat) {
+    return isFloat ? FLOAT_ALLOCATABLE : INT_ALLOCATABLE;
+  }
+
+  @Override public boolean isCalleeSaved(int reg) {
+    var r = reg % MFunction.FIRST_FLOAT;
+    return r == 8 || r == 9 || (r >= 18 && r <= 27);
+  }
+
+  @Override public @NotNull String name(int reg) {
+    return reg < MFunction.FIRST_FLOAT ? INT_NAMES[reg] : FLOAT_NAMES[reg - MFunction.FIRST_FLOAT];
+  }
+}
@@ -0,0 +1,521 @@
+package org.brunhild.compiling.generate.riscv;
+
+import org.brunhild.compiling.generate.machine.MFunction;
+import org.brunhild.compiling.generate.machine.MInstr;
+import org.brunhild.compiling.ir.DominatorTree;
+import org.brunhild.compiling.ir.Function;
+import org.brunhild.compiling.ir.IntList;
+import org.brunhild.compiling.ir.Module;
+import org.brunhild.compiling.ir.Opcode;
+import org.brunhild.compiling.ir.ValueType;
+import org.brunhild.core.Def;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+import static org.brunhild.compiling.generate.machine.MInstr.NONE;
+import static org.brunhild.compiling.generate.riscv.RiscvRegisters.*;
+
+/**
+ * Instruction selection from the SSA IR to RV64 over virtual registers. Blocks are
+ * laid out in reverse postorder. Constants, global and local addresses are
+ * rematerialized at each use, constant offsets fold into loads and stores, and an
+ * integer comparison used only by the branch right after it becomes a compare-and-branch.
+ * Phis go through one temporary each: predecessors copy into the temporary, the phi
+ * block copies out of it, so parallel copies and critical edges need no special care.
+ */
+final class RiscvSelector {
+  /** Where an argument lives, {@code register} is {@code -1} for stack arguments. */
+  record Location(int register, int stackOffset) {}
+
+  private record Address(int base, boolean isFrame, int offset) {}
+
+  private final @NotNull Module module;
+  private final @NotNull Function fn;
+  private final @NotNull MFunction mf;
+  private final int @NotNull [] layout;
+  private final int @NotNull [] vreg;
+  private final int @NotNull [] phiTemp;
+  private final int @NotNull [] useCount;
+  private final int @NotNull [] localOffset;
+  private final boolean @NotNull [] fused;
+  private final boolean @NotNull [] folded;
+  private MFunction.MBlock current;
+  private int currentBlock;
+  private int next;
+
+  private RiscvSelector(@NotNull Module module, @NotNull Function fn) {
+    this.module = module;
+    this.fn = fn;
+    this.mf = new MFunction(fn.name);
+    this.layout = new int[fn.blockCount()];
+    this.vreg = new int[fn.valueCount()];
+    this.phiTemp = new int[fn.valueCount()];
+    this.useCount = new int[fn.valueCount()];
+    this.localOffset = new int[fn.valueCount()];
+    this.fused = new boolean[fn.valueCount()];
+    this.folded = new boolean[fn.valueCount()];
+    Arrays.fill(vreg, -1);
+    Arrays.fill(phiTemp, -1);
+  }
+
+  static @NotNull MFunction select(@NotNull Module module, @NotNull Function fn) {
+    return new RiscvSelector(module, fn).select();
+  }
+
+  static boolean fitsImm12(long value) {
+    return value >= -2048 && value < 2048;
+  }
+
+  /** Assigns LP64D locations: floats use {@code fa*}, then spare {@code a*}, then the stack. */
+  static @NotNull Location @NotNull [] classify(@NotNull ValueType @NotNull [] types) {
+    var locations = new Location[types.length];
+    int ints = 0, floats = 0, stack = 0;
+    for (int i = 0; i < types.length; i++) {
+      if (types[i] == ValueType.F32 && floats < ARGUMENT_REGISTERS)
+        locations[i] = new Location(FA0 + floats++, 0);
+      else if (ints < ARGUMENT_REGISTERS)
+        locations[i] = new Location(A0 + ints++, 0);
+      else {
+        locations[i] = new Location(-1, stack);
+        stack += 8;
+      }
+    }
+    return locations;
+  }
+
+  private @NotNull MFunction select() {
+    var order = DominatorTree.of(fn).reversePostorder();
+    for (int i = 0; i < order.length; i++) {
+      layout[order[i]] = i;
+      mf.blocks.add(new MFunction.MBlock(".L" + fn.name + "_" + i));
+    }
+    analyze();
+    for (int i = 0; i < order.length; i++) {
+      current = mf.blocks.get(i);
+      currentBlock = order[i];
+      next = i + 1;
+      for (var succ : fn.successors(order[i])) current.succs.add(layout[succ]);
+      if (order[i] == Function.ENTRY) parameters();
+      var instructions = fn.instructions(order[i]);
+      for (int j = 0; j < instructions.size(); j++) instruction(instructions.get(j));
+    }
+    mf.localSize = (mf.localSize + 7) & ~7;
+    mf.outgoingSize = (mf.outgoingSize + 15) & ~15;
+    return mf;
+  }
+
+  /** Counts uses, lays out local arrays and decides which instructions fold into their user. */
+  private void analyze() {
+    for (int b = 0; b < fn.blockCount(); b++) {
+      var instructions = fn.instructions(b);
+      for (int i = 0; i < instructions.size(); i++) {
+        var value = instructions.get(i);
+        for (int k = 0; k < fn.arity(value); k++)
+          if (!fn.isBlockOperand(value, k)) useCount[fn.operand(value, k)]++;
+        if (fn.op(value) == Opcode.Alloca) {
+          localOffset[value] = mf.localSize;
+          mf.localSize += 4 * fn.imm(value);
+        }
+      }
+    }
+    for (int b = 0; b < fn.blockCount(); b++) {
+      var instructions = fn.instructions(b);
+      for (int i = 0; i < instructions.size(); i++) {
+        var value = instructions.get(i);
+        var op = fn.op(value);
+        if (op == Opcode.Gep && fn.op(fn.operand(value, 1)) == Opcode.IConst) {
+          var offset = 4L * fn.imm(value) * fn.imm(fn.operand(value, 1));
+          folded[value] = fn.op(fn.operand(value, 0)) == Opcode.Alloca || fitsImm12(offset);
+        }
+        if (op == Opcode.Branch) {
+          var cond = fn.operand(value, 0);
+          var condOp = fn.op(cond);
+          fused[cond] = condOp.compareTo(Opcode.Eq) >= 0 && condOp.compareTo(Opcode.Ge) <= 0
+            && fn.block(cond) == b && useCount[cond] == 1;
+        }
+      }
+    }
+    // a folded gep must only be used as the address of loads and stores
+    for (int b = 0; b < fn.blockCount(); b++) {
+      var instructions = fn.instructions(b);
+      for (int i = 0; i < instructions.size(); i++) {
+        var value = instructions.get(i);
+        var op = fn.op(value);
+        for (int k = 0; k < fn.arity(value); k++) {
+          if (fn.isBlockOperand(value, k)) continue;
+          var isAddress = k == 0 && (op == Opcode.Load || op == Opcode.Store);
+          if (!isAddress) folded[fn.operand(value, k)] = false;
+        }
+      }
+    }
+  }
+
+  // region Emitting
+
+  private void emit(@NotNull MInstr instr) {
+    current.instrs.add(instr);
+  }
+
+  private int def(int value) {
+    if (vreg[value] < 0) vreg[value] = mf.newVirtual(fn.type(value) == ValueType.F32);
+    return vreg[value];
+  }
+
+  private int temp(boolean isFloat) {
+    return mf.newVirtual(isFloat);
+  }
+
+  private int li(long constant) {
+    var reg = temp(false);
+    emit(MInstr.plain("li $d0, " + constant, new int[]{reg}));
+    return reg;
+  }
+
+  private void move(int def, int use, boolean isFloat) {
+    emit(MInstr.move(isFloat ? "fmv.s $d0, $u0" : "mv $d0, $u0", def, use));
+  }
+
+  private void plain(@NotNull String format, int def, int @NotNull ... uses) {
+    emit(MInstr.plain(format, new int[]{def}, uses));
+  }
+
+  /** @return a register holding the value, materializing constants and addresses in place */
+  private int use(int value) {
+    return switch (fn.op(value)) {
+      case IConst -> fn.imm(value) == 0 ? ZERO : li(fn.imm(value));
+      case FConst -> {
+        var bits = fn.imm(value);
+        var reg = temp(true);
+        plain("fmv.w.x $d0, $u0", reg, bits == 0 ? ZERO : li(bits));
+        yield reg;
+      }
+      case Undef -> {
+        if (fn.type(value) != ValueType.F32) yield ZERO;
+        var reg = temp(true);
+        plain("fmv.w.x $d0, $u0", reg, ZERO);
+        yield reg;
+      }
+      case GlobalAddr -> {
+        var reg = temp(false);
+        plain("la $d0, " + module.globals.get(fn.imm(value)).name(), reg);
+        yield reg;
+      }
+      case Alloca -> {
+        var reg = temp(false);
+        emit(MInstr.frame("addi $d0, sp, $o", new MInstr.FrameRef(MInstr.Area.Local, localOffset[value]), new int[]{reg}));
+        yield reg;
+      }
+      default -> def(value);
+    };
+  }
+
+  private @NotNull Address address(int pointer) {
+    var offset = 0;
+    if (folded[pointer]) {
+      offset = 4 * fn.imm(pointer) * fn.imm(fn.operand(pointer, 1));
+      pointer = fn.operand(pointer, 0);
+    }
+    if (fn.op(pointer) == Opcode.Alloca) return new Address(-1, true, localOffset[pointer] + offset);
+    return new Address(use(pointer), false, offset);
+  }
+
+  // endregion
+
+  private void parameters() {
+    var locations = classify(fn.params);
+    var entry = fn.instructions(Function.ENTRY);
+    for (int i = 0; i < entry.size(); i++) {
+      var value = entry.get(i);
+      if (fn.op(value) != Opcode.Param) continue;
+      var isFloat = fn.type(value) == ValueType.F32;
+      var location = locations[fn.imm(value)];
+      var reg = def(value);
+      if (location.register() < 0) {
+        var ref = new MInstr.FrameRef(MInstr.Area.Incoming, location.stackOffset());
+        emit(MInstr.frame(isFloat ? "flw $d0, $o(sp)" : "ld $d0, $o(sp)", ref, new int[]{reg}));
+      } else if (isFloat && location.register() < MFunction.FIRST_FLOAT)
+        plain("fmv.w.x $d0, $u0", reg, location.register());
+      else move(reg, location.register(), isFloat);
+    }
+  }
+
+  private int call(@NotNull String callee, @NotNull ValueType result, int @NotNull [] args, @NotNull ValueType @NotNull [] types) {
+    var locations = classify(types);
+    var argRegs = new IntList(args.length);
+    for (int i = 0; i < args.length; i++) {
+      var isFloat = types[i] == ValueType.F32;
+      var location = locations[i];
+      if (location.register() < 0) {
+        var ref = new MInstr.FrameRef(MInstr.Area.Outgoing, location.stackOffset());
+        emit(MInstr.frame(isFloat ? "fsw $u0, $o(sp)" : "sd $u0, $o(sp)", ref, NONE, args[i]));
+        mf.outgoingSize = Math.max(mf.outgoingSize, location.stackOffset() + 8);
+        continue;
+      }
+      if (isFloat && location.register() < MFunction.FIRST_FLOAT)
+        plain("fmv.x.w $d0, $u0", location.register(), args[i]);
+      else move(location.register(), args[i], isFloat);
+      argRegs.add(location.register());
+    }
+    mf.hasCalls = true;
+    emit(new MInstr(MInstr.Kind.Call, "call " + callee, CALLER_SAVED, argRegs.toArray(), NONE, null));
+    if (result == ValueType.Void) return -1;
+    var isFloat = result == ValueType.F32;
+    var reg = temp(isFloat);
+    move(reg, isFloat ? FA0 : A0, isFloat);
+    return reg;
+  }
+
+  private void instruction(int value) {
+    var op = fn.op(value);
+    switch (op) {
+      case Param, Alloca -> {}
+      case Phi -> move(def(value), phiTemp(value), fn.type(value) == ValueType.F32);
+      case Add, Mul -> {
+        var lhs = fn.operand(value, 0);
+        var rhs = fn.operand(value, 1);
+        if (fn.op(lhs) == Opcode.IConst) {
+          var swap = lhs;
+          lhs = rhs;
+          rhs = swap;
+        }
+        if (fn.op(rhs) == Opcode.IConst) {
+          var constant = fn.imm(rhs);
+          if (op == Opcode.Add && fitsImm12(constant)) {
+            plain("addiw $d0, $u0, " + constant, def(value), use(lhs));
+            return;
+          }
+          if (op == Opcode.Mul && constant > 0 && Integer.bitCount(constant) == 1) {
+            plain("slliw $d0, $u0, " + Integer.numberOfTrailingZeros(constant), def(value), use(lhs));
+            return;
+          }
+        }
+        plain(op == Opcode.Add ? "addw $d0, $u0, $u1" : "mulw $d0, $u0, $u1", def(value), use(lhs), use(rhs));
+      }
+      case Sub -> {
+        var rhs = fn.operand(value, 1);
+        if (fn.op(rhs) == Opcode.IConst && fitsImm12(-(long) fn.imm(rhs)))
+          plain("addiw $d0, $u0, " + -fn.imm(rhs), def(value), use(fn.operand(value, 0)));
+        else binary(value, "subw");
+      }
+      case Div -> binary(value, "divw");
+      case Rem -> binary(value, "remw");
+      case MulHi -> {
+        // both are sign-extended, so the 64-bit product is exact
+        var product = temp(false);
+        plain("mul $d0, $u0, $u1", product, use(fn.operand(value, 0)), use(fn.operand(value, 1)));
+        plain("srai $d0, $u0, 32", def(value), product);
+      }
+      case Shl, Sar, Shr -> {
+        var mnemonic = op == Opcode.Shl ? "sll" : op == Opcode.Sar ? "sra" : "srl";
+        var rhs = fn.operand(value, 1);
+        if (fn.op(rhs) == Opcode.IConst)
+          plain(mnemonic + "iw $d0, $u0, " + (fn.imm(rhs) & 31), def(value), use(fn.operand(value, 0)));
+        else binary(value, mnemonic + "w");
+      }
+      case Neg -> plain("negw $d0, $u0", def(value), use(fn.operand(value, 0)));
+      case FAdd -> binary(value, "fadd.s");
+      case FSub -> binary(value, "fsub.s");
+      case FMul -> binary(value, "fmul.s");
+      case FDiv -> binary(value, "fdiv.s");
+      case FNeg -> plain("fneg.s $d0, $u0", def(value), use(fn.operand(value, 0)));
+      case Eq, Ne -> {
+        if (fused[value]) return;
+        var lhs = fn.operand(value, 0);
+        var rhs = fn.operand(value, 1);
+        if (fn.op(lhs) == Opcode.IConst) {
+          var swap = lhs;
+          lhs = rhs;
+          rhs = swap;
+        }
+        var difference = use(lhs);
+        if (fn.op(rhs) != Opcode.IConst || fn.imm(rhs) != 0) {
+          var reg = temp(false);
+          if (fn.op(rhs) == Opcode.IConst && fitsImm12(-(long) fn.imm(rhs)))
+            plain("addiw $d0, $u0, " + -fn.imm(rhs), reg, difference);
+          else plain("subw $d0, $u0, $u1", reg, difference, use(rhs));
+          difference = reg;
+        }
+        plain(op == Opcode.Eq ? "seqz $d0, $u0" : "snez $d0, $u0", def(value), difference);
+      }
+      case Lt, Ge, Gt, Le -> {
+        if (fused[value]) return;
+        // a < b, a >= b as !(a < b), a > b as b < a, a <= b as !(b < a)
+        var swapped = op == Opcode.Gt || op == Opcode.Le;
+        var negated = op == Opcode.Ge || op == Opcode.Le;
+        var lhs = fn.operand(value, swapped ? 1 : 0);
+        var rhs = fn.operand(value, swapped ? 0 : 1);
+        var reg = negated ? temp(false) : def(value);
+        if (fn.op(rhs) == Opcode.IConst && fitsImm12(fn.imm(rhs)))
+          plain("slti $d0, $u0, " + fn.imm(rhs), reg, use(lhs));
+        else plain("slt $d0, $u0, $u1", reg, use(lhs), use(rhs));
+        if (negated) plain("xori $d0, $u0, 1", def(value), reg);
+      }
+      case FEq -> binary(value, "feq.s");
+      case FNe -> {
+        var reg = temp(false);
+        plain("feq.s $d0, $u0, $u1", reg, use(fn.operand(value, 0)), use(fn.operand(value, 1)));
+        plain("xori $d0, $u0, 1", def(value), reg);
+      }
+      case FLt -> binary(value, "flt.s");
+      case FLe -> binary(value, "fle.s");
+      case FGt -> plain("flt.s $d0, $u0, $u1", def(value), use(fn.operand(value, 1)), use(fn.operand(value, 0)));
+      case FGe -> plain("fle.s $d0, $u0, $u1", def(value), use(fn.operand(value, 1)), use(fn.operand(value, 0)));
+      case IToF -> plain("fcvt.s.w $d0, $u0", def(value), use(fn.operand(value, 0)));
+      case FToI -> plain("fcvt.w.s $d0, $u0, rtz", def(value), use(fn.operand(value, 0)));
+      case Load -> {
+        var mnemonic = fn.type(value) == ValueType.F32 ? "flw" : "lw";
+        var address = address(fn.operand(value, 0));
+        if (address.isFrame()) {
+          var ref = new MInstr.FrameRef(MInstr.Area.Local, address.offset());
+          emit(MInstr.frame(mnemonic + " $d0, $o(sp)", ref, new int[]{def(value)}));
+        } else plain(mnemonic + " $d0, " + address.offset() + "($u0)", def(value), address.base());
+      }
+      case Store -> {
+        var stored = fn.operand(value, 1);
+        var mnemonic = fn.type(stored) == ValueType.F32 ? "fsw" : "sw";
+        var address = address(fn.operand(value, 0));
+        var reg = use(stored);
+        if (address.isFrame()) {
+          var ref = new MInstr.FrameRef(MInstr.Area.Local, address.offset());
+          emit(MInstr.frame(mnemonic + " $u0, $o(sp)", ref, NONE, reg));
+        } else emit(MInstr.plain(mnemonic + " $u0, " + address.offset() + "($u1)", NONE, reg, address.base()));
+      }
+      case Gep -> {
+        if (folded[value]) return;
+        gep(value);
+      }
+      case MemZero -> call("memset", ValueType.Void,
+        new int[]{use(fn.operand(value, 0)), ZERO, li(4L * fn.imm(value))},
+        new ValueType[]{ValueType.Ptr, ValueType.I32, ValueType.I32});
+      case Call, CallPrim -> {
+        var callee = op == Opcode.Call
+          ? module.functions.get(fn.imm(value)).name
+          : Def.PrimFactory.values()[fn.imm(value)].abiName;
+        var args = new int[fn.arity(value)];
+        var types = new ValueType[args.length];
+        for (int i = 0; i < args.length; i++) {
+          args[i] = use(fn.operand(value, i));
+          types[i] = fn.type(fn.operand(value, i));
+        }
+        var result = call(callee, fn.type(value), args, types);
+        if (result >= 0) move(def(value), result, fn.type(value) == ValueType.F32);
+      }
+      case Jump -> {
+        phiCopies();
+        jump(fn.operand(value, 0));
+      }
+      case Branch -> {
+        phiCopies();
+        branch(value);
+      }
+      case Return -> {
+        phiCopies();
+        if (fn.arity(value) == 0) {
+          emit(new MInstr(MInstr.Kind.Return, "ret", NONE, NONE, NONE, null));
+          return;
+        }
+        var isFloat = fn.type(fn.operand(value, 0)) == ValueType.F32;
+        var result = isFloat ? FA0 : A0;
+        move(result, use(fn.operand(value, 0)), isFloat);
+        emit(new MInstr(MInstr.Kind.Return, "ret", NONE, new int[]{result}, NONE, null));
+      }
+      case IConst, FConst, GlobalAddr, Undef -> throw new IllegalStateException("constants are not placed in blocks");
+    }
+  }
+
+  private void binary(int value, @NotNull String mnemonic) {
+    plain(mnemonic + " $d0, $u0, $u1", def(value), use(fn.operand(value, 0)), use(fn.operand(value, 1)));
+  }
+
+  private void gep(int value) {
+    var base = use(fn.operand(value, 0));
+    var index = fn.operand(value, 1);
+    long scale = 4L * fn.imm(value);
+    if (fn.op(index) == Opcode.IConst) {
+      var offset = scale * fn.imm(index);
+      if (offset == 0) move(def(value), base, false);
+      else if (fitsImm12(offset)) plain("addi $d0, $u0, " + offset, def(value), base);
+      else plain("add $d0, $u0, $u1", def(value), base, li(offset));
+      return;
+    }
+    var scaled = temp(false);
+    if (Long.bitCount(scale) == 1)
+      plain("slli $d0, $u0, " + Long.numberOfTrailingZeros(scale), scaled, use(index));
+    else plain("mul $d0, $u0, $u1", scaled, use(index), li(scale));
+    plain("add $d0, $u0, $u1", def(value), base, scaled);
+  }
+
+  // region Control flow
+
+  private int phiTemp(int phi) {
+    if (phiTemp[phi] < 0) phiTemp[phi] = temp(fn.type(phi) == ValueType.F32);
+    return phiTemp[phi];
+  }
+
+  /** Copies the incoming values of every successor's phis into their temporaries. */
+  private void phiCopies() {
+    var block = currentBlock;
+    for (var succ : fn.successors(block)) {
+      var instructions = fn.instructions(succ);
+      for (int i = 0; i < instructions.size(); i++) {
+        var phi = instructions.get(i);
+        if (fn.op(phi) != Opcode.Phi) break;
+        var incoming = fn.phiValueFrom(phi, block);
+        var isFloat = fn.type(phi) == ValueType.F32;
+        if (fn.op(incoming) == Opcode.IConst && fn.imm(incoming) != 0)
+          plain("li $d0, " + fn.imm(incoming), phiTemp(phi));
+        else move(phiTemp(phi), use(incoming), isFloat);
+      }
+    }
+  }
+
+  private @NotNull MInstr branchTo(@NotNull String format, int target, int @NotNull ... uses) {
+    return new MInstr(MInstr.Kind.Branch, format, NONE, uses, new int[]{layout[target]}, null);
+  }
+
+  private void jump(int target) {
+    if (layout[target] == next) return;
+    emit(new MInstr(MInstr.Kind.Jump, "j $l0", NONE, NONE, new int[]{layout[target]}, null));
+  }
+
+  private void branch(int value) {
+    var cond = fn.operand(value, 0);
+    var then = fn.operand(value, 1);
+    var otherwise = fn.operand(value, 2);
+    if (then == otherwise) {
+      jump(then);
+      return;
+    }
+    // branch to whichever target does not follow
+    var invert = layout[then] == next;
+    var target = invert ? otherwise : then;
+    var fallthrough = invert ? then : otherwise;
+    if (fused[cond]) {
+      var op = fn.op(cond);
+      var lhs = use(fn.operand(cond, 0));
+      var rhs = use(fn.operand(cond, 1));
+      if (invert) op = switch (op) {
+        case Eq -> Opcode.Ne;
+        case Ne -> Opcode.Eq;
+        case Lt -> Opcode.Ge;
+        case Ge -> Opcode.Lt;
+        case Gt -> Opcode.Le;
+        case Le -> Opcode.Gt;
+        default -> throw new IllegalStateException("unreachable");
+      };
+      emit(switch (op) {
+        case Eq -> branchTo("beq $u0, $u1, $l0", target, lhs, rhs);
+        case Ne -> branchTo("bne $u0, $u1, $l0", target, lhs, rhs);
+        case Lt -> branchTo("blt $u0, $u1, $l0", target, lhs, rhs);
+        case Ge -> branchTo("bge $u0, $u1, $l0", target, lhs, rhs);
+        case Gt -> branchTo("blt $u0, $u1, $l0", target, rhs, lhs);
+        case Le -> branchTo("bge $u0, $u1, $l0", target, rhs, lhs);
+        default -> throw new IllegalStateException("unreachable");
+      });
+    } else emit(branchTo(invert ? "beqz $u0, $l0" : "bnez $u0, $l0", target, use(cond)));
+    jump(fallthrough);
+  }
+
+  // endregion
+}
@@ -0,0 +1,47 @@
+package org.brunhild.compiling.interpret;
+
+import org.brunhild.core.Term;
+import org.brunhild.generic.Type;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A reference into a flat row-major storage, sub-arrays share the storage of their parent
+ * and only differ in {@link #offset}, just like pointers in C.
+ */
+public record ArrayRef(int @Nullable [] ints, float @Nullable [] floats, int offset) {
+  public static @NotNull ArrayRef allocate(@NotNull Type.Array<Term> type) {
+    var size = type.flatSize();
+    return type.scalarType() instanceof Type.Float<Term>
+      ? new ArrayRef(null, new float[size], 0)
+      : new ArrayRef(new int[size], null, 0);
+  }
+
+  public @NotNull ArrayRef slice(int offset) {
+    return new ArrayRef(ints, floats, this.offset + offset);
+  }
+
+  public int getInt(int index) {
+    assert ints != null;
+    return ints[offset + index];
+  }
+
+  public float getFloat(int index) {
+    assert floats != null;
+    return floats[offset + index];
+  }
+
+  public void setInt(int index, int value) {
+    assert ints != null;
+    ints[offset + index] = value;
+  }
+
+  public void setFloat(int index, float value) {
+    assert floats != null;
+    floats[offset + index] = value;
+  }
+
+  @Override public @NotNull String toString() {
+    return String.format("<array@%d>", offset);
+  }
+}
@@ -0,0 +1,167 @@
+package org.brunhild.compiling.interpret;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Register bytecode executed by {@link BytecodeVM}. Every function owns three register banks:
+ * {@code int}, {@code float} and array references, and operands of an instruction index into
+ * the bank implied by the opcode. Parameters occupy the lowest registers of their banks.
+ *
+ * @implNote operands are listed after each opcode, {@code i}/{@code f}/{@code a} denote
+ * registers of the corresponding bank, {@code #} an immediate, {@code @} a code offset
+ * and {@code g} a global slot.
+ */
+public interface Bytecode {
+  int NOP = 0;
+  /** ICONST i #value */
+  int ICONST = 1;
+  /** FCONST f #bits */
+  int FCONST = 2;
+  /** IMOV i i */
+  int IMOV = 3;
+  int FMOV = 4;
+  int AMOV = 5;
+
+  /** IADD i i i */
+  int IADD = 10;
+  int ISUB = 11;
+  int IMUL = 12;
+  int IDIV = 13;
+  int IMOD = 14;
+  int IEQ = 15;
+  int INE = 16;
+  int ILT = 17;
+  int ILE = 18;
+  int IGT = 19;
+  int IGE = 20;
+  /** INEG i i */
+  int INEG = 21;
+  /** INOT i i, the logical not */
+  int INOT = 22;
+  /** IBOOL i i, normalizes to 0 or 1 */
+  int IBOOL = 23;
+  /** IADDI i i #value */
+  int IADDI = 24;
+  /** IMULI i i #value */
+  int IMULI = 25;
+  /** ISHL i i i */
+  int ISHL = 26;
+  /** ISHR i i i, the arithmetic shift */
+  int ISHR = 27;
+  /** IUSHR i i i, the logical shift */
+  int IUSHR = 28;
+  /** IMULHI i i i, the high half of the 64-bit product */
+  int IMULHI = 29;
+
+  /** FADD f f f */
+  int FADD = 30;
+  int FSUB = 31;
+  int FMUL = 32;
+  int FDIV = 33;
+  /** FEQ i f f */
+  int FEQ = 34;
+  int FNE = 35;
+  int FLT = 36;
+  int FLE = 37;
+  int FGT = 38;
+  int FGE = 39;
+  /** FNEG f f */
+  int FNEG = 40;
+  /** FBOOL i f */
+  int FBOOL = 41;
+  /** I2F f i */
+  int I2F = 42;
+  /** F2I i f */
+  int F2I = 43;
+
+  /** JMP @target */
+  int JMP = 50;
+  /** JZ i @target */
+  int JZ = 51;
+  int JNZ = 52;
+  /** JEQ i i @target, jumps if the comparison holds */
+  int JEQ = 53;
+  int JNE = 54;
+  int JLT = 55;
+  int JLE = 56;
+  int JGT = 57;
+  int JGE = 58;
+
+  /** ILOAD i a i */
+  int ILOAD = 60;
+  /** FLOAD f a i */
+  int FLOAD = 61;
+  /** ISTORE a i i, stores the last operand */
+  int ISTORE = 62;
+  /** FSTORE a i f */
+  int FSTORE = 63;
+  /** ASLICE a a i, offsets an array by an element count */
+  int ASLICE = 64;
+  /** NEWI a #size #template, the template is an index into the constant pool or -1 */
+  int NEWI = 65;
+  int NEWF = 66;
+
+  /** GILOAD i g */
+  int GILOAD = 70;
+  int GFLOAD = 71;
+  int GALOAD = 72;
+  /** GISTORE g i */
+  int GISTORE = 73;
+  int GFSTORE = 74;
+  int GASTORE = 75;
+
+  /** CALL #function dst #argc (kind << 24 | reg)... */
+  int CALL = 80;
+  /** PRIM #primitive dst #argc (kind << 24 | reg)... */
+  int PRIM = 81;
+  /** IRET i */
+  int IRET = 82;
+  int FRET = 83;
+  int RET = 84;
+
+  int KIND_INT = 0;
+  int KIND_FLOAT = 1;
+  int KIND_ARRAY = 2;
+  /** The register is an index into the constant pool holding a string. */
+  int KIND_STRING = 3;
+  int KIND_VOID = 4;
+  int KIND_SHIFT = 24;
+  int REG_MASK = (1 << KIND_SHIFT) - 1;
+
+  /** Operand count of each opcode, used by the disassembler, calls are variadic and marked -1. */
+  static int arity(int opcode) {
+    return switch (opcode) {
+      case NOP, RET -> 0;
+      case JMP, IRET, FRET -> 1;
+      case ICONST, FCONST, IMOV, FMOV, AMOV, INEG, INOT, IBOOL, FNEG, FBOOL, I2F, F2I, JZ, JNZ,
+        GILOAD, GFLOAD, GALOAD, GISTORE, GFSTORE, GASTORE -> 2;
+      case CALL, PRIM -> -1;
+      default -> 3;
+    };
+  }
+
+  record Chunk(
+    @NotNull String name,
+    int @NotNull [] code,
+    @NotNull Object @NotNull [] pool,
+    int intRegs,
+    int floatRegs,
+    int arrayRegs,
+    byte @NotNull [] paramKinds,
+    int resultKind
+  ) {
+    public @NotNull String disassemble() {
+      var sb = new StringBuilder(name).append(":\n");
+      for (int pc = 0; pc < code.length; ) {
+        var op = code[pc];
+        sb.append(String.format("%5d: %3d", pc, op));
+        var arity = arity(op);
+        if (arity < 0) arity = 3 + code[pc + 3];
+        for (int i = 1; i <= arity; i++) sb.append(' ').append(code[pc + i]);
+        sb.append('\n');
+        pc += arity + 1;
+      }
+      return sb.toString();
+    }
+  }
+}
@@ -0,0 +1,636 @@
+package org.brunhild.compiling.interpret;
+
+import kala.collection.immutable.ImmutableSeq;
+import org.brunhild.concrete.Expr;
+import org.brunhild.core.Def;
+import org.brunhild.core.Proclaim;
+import org.brunhild.core.Term;
+import org.brunhild.generic.DefVar;
+import org.brunhild.generic.Type;
+import org.brunhild.generic.Var;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.brunhild.compiling.interpret.Bytecode.*;
+
+/**
+ * Compiles core functions into {@link Bytecode}. Local variables are pinned to registers,
+ * temporaries are allocated like a stack and released after every statement.
+ */
+public final class BytecodeCompiler {
+  public record Program(
+    @NotNull ImmutableSeq<Chunk> functions,
+    @NotNull Chunk init,
+    int main,
+    int globalInts,
+    int globalFloats,
+    int globalArrays
+  ) {}
+
+  record Slot(int kind, int reg) {}
+
+  private final @NotNull Map<DefVar<?, ?>, Integer> functions = new HashMap<>();
+  private final @NotNull Map<Var, Slot> globals = new HashMap<>();
+  private final int[] globalCount = new int[3];
+
+  public static @NotNull Program compile(@NotNull ImmutableSeq<Proclaim> program) {
+    return new BytecodeCompiler().compileProgram(program);
+  }
+
+  private @NotNull Program compileProgram(@NotNull ImmutableSeq<Proclaim> program) {
+    var fnDefs = program.filterIsInstance(Def.FnDef.class);
+    fnDefs.forEachIndexed((i, fn) -> functions.put(fn.ref, i));
+    var init = new FnCompiler("<init>", ImmutableSeq.empty(), Type.Void.of());
+    program.filterIsInstance(Def.VarDef.class).forEach(varDef -> {
+      var kind = kindOf(varDef.result);
+      var slot = new Slot(kind, globalCount[kind]++);
+      var mark = init.mark();
+      var reg = init.expr(varDef.body, -1);
+      init.emit(switch (kind) {
+        case KIND_INT -> GISTORE;
+        case KIND_FLOAT -> GFSTORE;
+        default -> GASTORE;
+      }, slot.reg, reg);
+      init.release(mark);
+      // registered after its initializer, as it is not visible to itself
+      globals.put(varDef.ref, slot);
+    });
+    init.emit(RET);
+    var chunks = fnDefs.map(fn -> {
+      var compiler = new FnCompiler(fn.ref.name(), fn.telescope, fn.result);
+      compiler.stmt(fn.body);
+      compiler.implicitReturn();
+      return compiler.finish();
+    });
+    var main = fnDefs.indexWhere(fn -> fn.ref.name().equals("main"));
+    if (main < 0) throw new IllegalArgumentException("no main function");
+    return new Program(chunks, init.finish(), main, globalCount[KIND_INT], globalCount[KIND_FLOAT], globalCount[KIND_ARRAY]);
+  }
+
+  static int kindOf(@NotNull Type<Term> type) {
+    return switch (type.unconst()) {
+      case Type.Int<Term> ignored -> KIND_INT;
+      case Type.Float<Term> ignored -> KIND_FLOAT;
+      case Type.Array<Term> ignored -> KIND_ARRAY;
+      case Type.String<Term> ignored -> KIND_STRING;
+      case Type.Void<Term> ignored -> KIND_VOID;
+      default -> throw new IllegalArgumentException("no runtime representation for " + type);
+    };
+  }
+
+  private final class FnCompiler {
+    private final @NotNull String name;
+    private final int resultKind;
+    private final byte @NotNull [] paramKinds;
+    private int[] code = new int[64];
+    private int size = 0;
+    private final @NotNull ArrayList<Object> pool = new ArrayList<>();
+    private final @NotNull Map<Var, Slot> locals = new HashMap<>();
+    private final int[] top = new int[3];
+    private final int[] max = new int[3];
+    /** Positions of unresolved jump targets, and the label they refer to. */
+    private final @NotNull ArrayList<int[]> fixups = new ArrayList<>();
+    private final @NotNull ArrayList<Integer> labels = new ArrayList<>();
+    private int breakLabel = -1;
+    private int continueLabel = -1;
+
+    FnCompiler(@NotNull String name, @NotNull ImmutableSeq<Term.Param> telescope, @NotNull Type<Term> result) {
+      this.name = name;
+      this.resultKind = kindOf(result);
+      this.paramKinds = new byte[telescope.size()];
+      telescope.forEachIndexed((i, param) -> {
+        var kind = kindOf(param.type());
+        paramKinds[i] = (byte) kind;
+        locals.put(param.ref(), new Slot(kind, alloc(kind)));
+      });
+    }
+
+    @NotNull Chunk finish() {
+      for (var fixup : fixups) code[fixup[0]] = labels.get(fixup[1]);
+      return new Chunk(name, Arrays.copyOf(code, size), pool.toArray(),
+        max[KIND_INT], max[KIND_FLOAT], max[KIND_ARRAY], paramKinds, resultKind);
+    }
+
+    // region Emission
+
+    void emit(int... ops) {
+      if (size + ops.length > code.length) code = Arrays.copyOf(code, Math.max(code.length * 2, size + ops.length));
+      System.arraycopy(ops, 0, code, size, ops.length);
+      size += ops.length;
+    }
+
+    int newLabel() {
+      labels.add(-1);
+      return labels.size() - 1;
+    }
+
+    void bind(int label) {
+      labels.set(label, size);
+    }
+
+    /** Emits an instruction whose last operand is a jump target. */
+    void jump(int label, int... ops) {
+      emit(ops);
+      emit(0);
+      fixups.add(new int[]{size - 1, label});
+    }
+
+    int constant(@NotNull Object value) {
+      pool.add(value);
+      return pool.size() - 1;
+    }
+
+    int alloc(int kind) {
+      var reg = top[kind]++;
+      if (top[kind] > max[kind]) max[kind] = top[kind];
+      return reg;
+    }
+
+    int @NotNull [] mark() {
+      return top.clone();
+    }
+
+    void release(int @NotNull [] mark) {
+      System.arraycopy(mark, 0, top, 0, top.length);
+    }
+
+    int target(int dst, int kind) {
+      return dst >= 0 ? dst : alloc(kind);
+    }
+
+    // endregion
+
+    // region Statements
+
+    void implicitReturn() {
+      switch (resultKind) {
+        case KIND_INT -> {
+          var reg = alloc(KIND_INT);
+          emit(ICONST, reg, 0);
+          emit(IRET, reg);
+        }
+        case KIND_FLOAT -> {
+          var reg = alloc(KIND_FLOAT);
+          emit(FCONST, reg, 0);
+          emit(FRET, reg);
+        }
+        default -> emit(RET);
+      }
+    }
+
+    void stmt(@NotNull Proclaim proclaim) {
+      switch (proclaim) {
+        case Def.VarDef varDef -> {
+          var kind = kindOf(varDef.result);
+          var reg = alloc(kind);
+          var mark = mark();
+          expr(varDef.body, reg);
+          release(mark);
+          locals.put(varDef.ref, new Slot(kind, reg));
+        }
+        case Proclaim.BlockProclaim block -> {
+          var mark = mark();
+          block.block().forEach(this::stmt);
+          release(mark);
+        }
+        default -> {
+          var mark = mark();
+          control(proclaim);
+          release(mark);
+        }
+      }
+    }
+
+    private void control(@NotNull Proclaim proclaim) {
+      switch (proclaim) {
+        case Proclaim.VarAssignProclaim assign -> {
+          var local = locals.get(assign.var());
+          if (local != null) {
+            expr(assign.rvalue(), local.reg);
+            return;
+          }
+          var global = globals.get(assign.var());
+          var value = expr(assign.rvalue(), -1);
+          emit(switch (global.kind) {
+            case KIND_INT -> GISTORE;
+            case KIND_FLOAT -> GFSTORE;
+            default -> GASTORE;
+          }, global.reg, value);
+        }
+        case Proclaim.IndexAssignProclaim assign -> {
+          var address = address(assign.term(), ImmutableSeq.of(assign.index()));
+          var value = expr(assign.rvalue(), -1);
+          var store = kindOf(assign.rvalue().type()) == KIND_FLOAT ? FSTORE : ISTORE;
+          emit(store, address.base, address.offset, value);
+        }
+        case Proclaim.TermProclaim term -> {
+          var kind = kindOf(term.term().type());
+          expr(term.term(), kind == KIND_VOID ? -1 : alloc(kind));
+        }
+        case Proclaim.IfProclaim ifProclaim -> {
+          var elseLabel = newLabel();
+          jumpIfFalse(ifProclaim.cond(), elseLabel);
+          stmt(ifProclaim.thenBranch());
+          if (ifProclaim.elseBranch().isDefined()) {
+            var end = newLabel();
+            jump(end, JMP);
+            bind(elseLabel);
+            stmt(ifProclaim.elseBranch().get());
+            bind(end);
+          } else bind(elseLabel);
+        }
+        case Proclaim.WhileProclaim whileProclaim -> {
+          // the condition is rotated to the bottom, so each iteration takes one branch
+          var outerBreak = breakLabel;
+          var outerContinue = continueLabel;
+          var body = newLabel();
+          breakLabel = newLabel();
+          continueLabel = newLabel();
+          jump(continueLabel, JMP);
+          bind(body);
+          stmt(whileProclaim.body());
+          bind(continueLabel);
+          var mark = mark();
+          jumpIfTrue(whileProclaim.cond(), body);
+          release(mark);
+          bind(breakLabel);
+          breakLabel = outerBreak;
+          continueLabel = outerContinue;
+        }
+        case Proclaim.ReturnProclaim ret -> {
+          if (ret.term().isEmpty()) emit(RET);
+          else emit(resultKind == KIND_FLOAT ? FRET : IRET, expr(ret.term().get(), -1));
+        }
+        case Proclaim.BreakProclaim ignored -> jump(breakLabel, JMP);
+        case Proclaim.ContinueProclaim ignored -> jump(continueLabel, JMP);
+        case Def.FnDef ignored -> throw new IllegalStateException("nested function");
+        case Def.PrimDef ignored -> throw new IllegalStateException("nested primitive");
+        default -> throw new IllegalStateException("unreachable");
+      }
+    }
+
+    private void jumpIfFalse(@NotNull Term cond, int label) {
+      switch (cond) {
+        case Term.BinaryTerm bin && bin.op() == Term.BinOP.LOGICAL_AND -> {
+          jumpIfFalse(bin.lhs(), label);
+          jumpIfFalse(bin.rhs(), label);
+        }
+        case Term.BinaryTerm bin && bin.op() == Term.BinOP.LOGICAL_OR -> {
+          var taken = newLabel();
+          jumpIfTrue(bin.lhs(), taken);
+          jumpIfFalse(bin.rhs(), label);
+          bind(taken);
+        }
+        case Term.UnaryTerm unary && unary.op() == Expr.UnaryOP.LOGICAL_NOT ->
+          jumpIfTrue(unary.term(), label);
+        default -> branch(cond, label, true);
+      }
+    }
+
+    private void jumpIfTrue(@NotNull Term cond, int label) {
+      switch (cond) {
+        case Term.BinaryTerm bin && bin.op() == Term.BinOP.LOGICAL_OR -> {
+          jumpIfTrue(bin.lhs(), label);
+          jumpIfTrue(bin.rhs(), label);
+        }
+        case Term.BinaryTerm bin && bin.op() == Term.BinOP.LOGICAL_AND -> {
+          var skip = newLabel();
+          jumpIfFalse(bin.lhs(), skip);
+          jumpIfTrue(bin.rhs(), label);
+          bind(skip);
+        }
+        case Term.UnaryTerm unary && unary.op() == Expr.UnaryOP.LOGICAL_NOT ->
+          jumpIfFalse(unary.term(), label);
+        default -> branch(cond, label, false);
+      }
+    }
+
+    /** Fuses integer comparisons into the branch instruction. */
+    private void branch(@NotNull Term cond, int label, boolean negate) {
+      if (cond instanceof Term.BinaryTerm bin && kindOf(bin.lhs().type()) == KIND_INT) {
+        var op = switch (bin.op()) {
+          case EQ -> negate ? JNE : JEQ;
+          case NE -> negate ? JEQ : JNE;
+          case LT -> negate ? JGE : JLT;
+          case LE -> negate ? JGT : JLE;
+          case GT -> negate ? JLE : JGT;
+          case GE -> negate ? JLT : JGE;
+          default -> -1;
+        };
+        if (op >= 0) {
+          var lhs = expr(bin.lhs(), -1);
+          var rhs = expr(bin.rhs(), -1);
+          jump(label, op, lhs, rhs);
+          return;
+        }
+      }
+      var kind = kindOf(cond.type());
+      var value = expr(cond, -1);
+      if (kind == KIND_FLOAT) {
+        var bool = alloc(KIND_INT);
+        emit(FBOOL, bool, value);
+        value = bool;
+      }
+      jump(label, negate ? JZ : JNZ, value);
+    }
+
+    // endregion
+
+    // region Expressions
+
+    /**
+     * Compiles a term, the result is placed in {@code dst} if it is non-negative.
+     * Only the last instruction writes {@code dst}, so it can be read by the term itself.
+     *
+     * @return the register holding the result
+     */
+    int expr(@NotNull Term term, int dst) {
+      return switch (term) {
+        case Term.LitTerm lit -> {
+          var literal = lit.literal();
+          if (literal.isRight()) throw new IllegalStateException("string literals are only allowed in primitive calls");
+          var number = literal.getLeftValue();
+          if (number.isLeft()) {
+            var reg = target(dst, KIND_INT);
+            emit(ICONST, reg, number.getLeftValue());
+            yield reg;
+          }
+          var reg = target(dst, KIND_FLOAT);
+          emit(FCONST, reg, Float.floatToRawIntBits(number.getRightValue()));
+          yield reg;
+        }
+        case Term.RefTerm ref -> {
+          var local = locals.get(ref.var());
+          if (local != null) {
+            if (dst < 0 || dst == local.reg) yield local.reg;
+            emit(switch (local.kind) {
+              case KIND_INT -> IMOV;
+              case KIND_FLOAT -> FMOV;
+              default -> AMOV;
+            }, dst, local.reg);
+            yield dst;
+          }
+          var global = globals.get(ref.var());
+          if (global == null) throw new IllegalStateException("unbound variable: " + ref.var().name());
+          var reg = target(dst, global.kind);
+          emit(switch (global.kind) {
+            case KIND_INT -> GILOAD;
+            case KIND_FLOAT -> GFLOAD;
+            default -> GALOAD;
+          }, reg, global.reg);
+          yield reg;
+        }
+        case Term.IndexTerm index -> {
+          var indices = new ArrayList<Term>();
+          Term root = index;
+          while (root instanceof Term.IndexTerm sub) {
+            indices.add(0, sub.index());
+            root = sub.term();
+          }
+          var address = address(root, ImmutableSeq.from(indices));
+          var kind = kindOf(index.type());
+          var reg = target(dst, kind);
+          emit(switch (kind) {
+            case KIND_INT -> ILOAD;
+            case KIND_FLOAT -> FLOAD;
+            default -> ASLICE;
+          }, reg, address.base, address.offset);
+          yield reg;
+        }
+        case Term.FnCall call -> call(CALL, functions.get(call.fn()), call.args(), kindOf(call.type()), dst);
+        case Term.PrimCall call -> {
+          var prim = PrimRuntime.factoryOf(call.prim().core);
+          yield call(PRIM, prim.ordinal(), call.args(), kindOf(call.type()), dst);
+        }
+        case Term.CoerceTerm coerce -> {
+          var from = kindOf(coerce.fromType());
+          var to = kindOf(coerce.toType());
+          if (from == to) yield expr(coerce.term(), dst);
+          var value = expr(coerce.term(), -1);
+          var reg = target(dst, to);
+          emit(to == KIND_FLOAT ? I2F : F2I, reg, value);
+          yield reg;
+        }
+        case Term.UnaryTerm unary -> {
+          var kind = kindOf(unary.type());
+          if (unary.op() == Expr.UnaryOP.POS) yield expr(unary.term(), dst);
+          var value = expr(unary.term(), -1);
+          var reg = target(dst, unary.op() == Expr.UnaryOP.NEG ? kind : KIND_INT);
+          emit(switch (unary.op()) {
+            case NEG -> kind == KIND_FLOAT ? FNEG : INEG;
+            case LOGICAL_NOT -> INOT;
+            case POS -> throw new IllegalStateException("unreachable");
+          }, reg, value);
+          yield reg;
+        }
+        case Term.BinaryTerm bin -> binary(bin, dst);
+        case Term.InitializedArray array -> newArray(array, dst);
+        case Term.PackedArray array -> newArray(array, dst);
+        case Term.UninitializedArray array -> {
+          var reg = target(dst, KIND_ARRAY);
+          var isFloat = array.type().scalarType() instanceof Type.Float<Term>;
+          emit(isFloat ? NEWF : NEWI, reg, array.type().flatSize(), -1);
+          yield reg;
+        }
+      };
+    }
+
+    /** Literal elements come from a constant template, the others are stored one by one. */
+    private int newArray(@NotNull Term.ArrayTerm array, int dst) {
+      var reg = target(dst, KIND_ARRAY);
+      var isFloat = array.type().scalarType() instanceof Type.Float<Term>;
+      var size = array.type().flatSize();
+      var template = isFloat ? (Object) new float[size] : new int[size];
+      var dynamic = new ArrayList<Term>();
+      var offsets = new ArrayList<Integer>();
+      layout(array, 0, template, dynamic, offsets);
+      var constant = isZero(template) ? -1 : constant(template);
+      // the fresh array is not visible until the last store, so it is safe to build it in `dst`
+      emit(isFloat ? NEWF : NEWI, reg, size, constant);
+      for (int i = 0; i < dynamic.size(); i++) {
+        var mark = mark();
+        var offset = alloc(KIND_INT);
+        emit(ICONST, offset, offsets.get(i));
+        var value = expr(dynamic.get(i), -1);
+        emit(isFloat ? FSTORE : ISTORE, reg, offset, value);
+        release(mark);
+      }
+      return reg;
+    }
+
+    private int binary(@NotNull Term.BinaryTerm bin, int dst) {
+      switch (bin.op()) {
+        case LOGICAL_AND, LOGICAL_OR -> {
+          var isAnd = bin.op() == Term.BinOP.LOGICAL_AND;
+          var shortCircuit = newLabel();
+          var end = newLabel();
+          var lhs = expr(bin.lhs(), -1);
+          jump(shortCircuit, isAnd ? JZ : JNZ, lhs);
+          var rhs = expr(bin.rhs(), -1);
+          var reg = target(dst, KIND_INT);
+          emit(IBOOL, reg, rhs);
+          jump(end, JMP);
+          bind(shortCircuit);
+          emit(ICONST, reg, isAnd ? 0 : 1);
+          bind(end);
+          return reg;
+        }
+        default -> {}
+      }
+      var isFloat = kindOf(bin.lhs().type()) == KIND_FLOAT;
+      if (!isFloat && bin.rhs() instanceof Term.LitTerm lit && lit.literal().isLeft()
+        && lit.literal().getLeftValue().isLeft()) {
+        int imm = lit.literal().getLeftValue().getLeftValue();
+        var op = switch (bin.op()) {
+          case ADD -> IADDI;
+          case SUB -> {
+            imm = -imm;
+            yield IADDI;
+          }
+          case MUL -> IMULI;
+          default -> -1;
+        };
+        if (op >= 0) {
+          var lhs = expr(bin.lhs(), -1);
+          var reg = target(dst, KIND_INT);
+          emit(op, reg, lhs, imm);
+          return reg;
+        }
+      }
+      var lhs = expr(bin.lhs(), -1);
+      var rhs = expr(bin.rhs(), -1);
+      var op = isFloat ? switch (bin.op()) {
+        case ADD -> FADD;
+        case SUB -> FSUB;
+        case MUL -> FMUL;
+        case DIV -> FDIV;
+        case EQ -> FEQ;
+        case NE -> FNE;
+        case LT -> FLT;
+        case LE -> FLE;
+        case GT -> FGT;
+        case GE -> FGE;
+        default -> throw new IllegalStateException("type checker bug?");
+      } : switch (bin.op()) {
+        case ADD -> IADD;
+        case SUB -> ISUB;
+        case MUL -> IMUL;
+        case DIV -> IDIV;
+        case MOD -> IMOD;
+        case EQ -> IEQ;
+        case NE -> INE;
+        case LT -> ILT;
+        case LE -> ILE;
+        case GT -> IGT;
+        case GE -> IGE;
+        case SHL -> ISHL;
+        case SHR -> ISHR;
+        case USHR -> IUSHR;
+        case MULHI -> IMULHI;
+        default -> throw new IllegalStateException("unreachable");
+      };
+      var resultKind = isFloat && op <= FDIV ? KIND_FLOAT : KIND_INT;
+      var reg = target(dst, resultKind);
+      emit(op, reg, lhs, rhs);
+      return reg;
+    }
+
+    private int call(int opcode, int callee, @NotNull ImmutableSeq<Term> args, int resultKind, int dst) {
+      var operands = new int[args.size()];
+      args.forEachIndexed((i, arg) -> {
+        var kind = kindOf(arg.type());
+        if (kind == KIND_STRING) {
+          var string = ((Term.LitTerm) arg).literal().getRightValue();
+          operands[i] = KIND_STRING << KIND_SHIFT | constant(string);
+        } else operands[i] = kind << KIND_SHIFT | expr(arg, -1);
+      });
+      var reg = resultKind == KIND_VOID ? -1 : target(dst, resultKind);
+      emit(opcode, callee, reg, args.size());
+      emit(operands);
+      return reg;
+    }
+
+    record Address(int base, int offset) {}
+
+    /** Linearizes a chain of subscripts into one offset, constant subscripts are folded. */
+    private @NotNull Address address(@NotNull Term array, @NotNull ImmutableSeq<Term> indices) {
+      var base = expr(array, -1);
+      var type = array.type().unconst();
+      var constant = 0;
+      var offset = -1;
+      for (var index : indices) {
+        var element = ((Type.Array<Term>) type).elementType().unconst();
+        var stride = element.flatSize();
+        type = element;
+        if (index instanceof Term.LitTerm lit && lit.literal().isLeft() && lit.literal().getLeftValue().isLeft()) {
+          constant += lit.literal().getLeftValue().getLeftValue() * stride;
+          continue;
+        }
+        var reg = expr(index, -1);
+        if (stride != 1) {
+          var scaled = alloc(KIND_INT);
+          emit(IMULI, scaled, reg, stride);
+          reg = scaled;
+        }
+        if (offset < 0) offset = reg;
+        else {
+          var sum = alloc(KIND_INT);
+          emit(IADD, sum, offset, reg);
+          offset = sum;
+        }
+      }
+      if (offset < 0) {
+        offset = alloc(KIND_INT);
+        emit(ICONST, offset, constant);
+      } else if (constant != 0) {
+        var sum = alloc(KIND_INT);
+        emit(IADDI, sum, offset, constant);
+        offset = sum;
+      }
+      return new Address(base, offset);
+    }
+
+    /** Places literal elements into the template and collects the others. */
+    private void layout(
+      @NotNull Term.ArrayTerm array, int offset, @NotNull Object template,
+      @NotNull ArrayList<Term> dynamic, @NotNull ArrayList<Integer> offsets
+    ) {
+      if (array instanceof Term.PackedArray packed) {
+        packed.values().forEachNonZero((i, word) -> {
+          if (template instanceof int[] ints) ints[offset + i] = word;
+          else ((float[]) template)[offset + i] = Float.intBitsToFloat(word);
+        });
+        return;
+      }
+      if (!(array instanceof Term.InitializedArray initialized)) return;
+      var stride = array.type().elementType().flatSize();
+      initialized.values().forEachIndexed((i, value) -> {
+        var at = offset + i * stride;
+        switch (value) {
+          case Term.ArrayTerm sub -> layout(sub, at, template, dynamic, offsets);
+          case Term.LitTerm lit && lit.literal().isLeft() -> {
+            var number = lit.literal().getLeftValue();
+            if (template instanceof int[] ints) ints[at] = number.isLeft() ? number.getLeftValue() : (int) (float) number.getRightValue();
+            else ((float[]) template)[at] = number.isLeft() ? number.getLeftValue() : number.getRightValue();
+          }
+          default -> {
+            dynamic.add(value);
+            offsets.add(at);
+          }
+        }
+      });
+    }
+
+    private static boolean isZero(@NotNull Object template) {
+      if (template instanceof int[] ints) return Arrays.stream(ints).allMatch(i -> i == 0);
+      for (var f : (float[]) template) if (Float.floatToRawIntBits(f) != 0) return false;
+      return true;
+    }
+
+    // endregion
+  }
+}
@@ -0,0 +1,376 @@
+package org.brunhild.compiling.interpret;
+
+import kala.collection.immutable.ImmutableSeq;
+import org.brunhild.core.Def;
+import org.jetbrains.annotations.NotNull;
+
+import static org.brunhild.compiling.interpret.Bytecode.*;
+
+/**
+ * Executes {@link BytecodeCompiler.Program}s. Calls do not consume the Java stack,
+ * so deeply recursive programs only need heap for their frames.
+ */
+public final class BytecodeVM {
+  private final @NotNull BytecodeCompiler.Program program;
+  private final @NotNull Chunk @NotNull [] functions;
+  private final @NotNull PrimRuntime runtime;
+  private final int @NotNull [] globalInts;
+  private final float @NotNull [] globalFloats;
+  private final @NotNull ArrayRef @NotNull [] globalArrays;
+
+  public BytecodeVM(@NotNull BytecodeCompiler.Program program, @NotNull PrimRuntime runtime) {
+    this.program = program;
+    this.functions = program.functions().toArray(Chunk.class);
+    this.runtime = runtime;
+    this.globalInts = new int[program.globalInts()];
+    this.globalFloats = new float[program.globalFloats()];
+    this.globalArrays = new ArrayRef[program.globalArrays()];
+  }
+
+  private static final class Frame {
+    final @NotNull Chunk chunk;
+    final int @NotNull [] ints;
+    final float @NotNull [] floats;
+    final @NotNull ArrayRef @NotNull [] arrays;
+    final Frame caller;
+    /** The register of the caller receiving the result. */
+    final int dst;
+    /** The pc to resume from, only valid for suspended frames. */
+    int pc;
+
+    Frame(@NotNull Chunk chunk, Frame caller, int dst) {
+      this.chunk = chunk;
+      this.ints = new int[chunk.intRegs()];
+      this.floats = new float[chunk.floatRegs()];
+      this.arrays = new ArrayRef[chunk.arrayRegs()];
+      this.caller = caller;
+      this.dst = dst;
+    }
+  }
+
+  public int run() {
+    execute(program.init());
+    return execute(functions[program.main()]);
+  }
+
+  private int execute(@NotNull Chunk entry) {
+    var frame = new Frame(entry, null, -1);
+    var code = entry.code();
+    var ir = frame.ints;
+    var fr = frame.floats;
+    var ar = frame.arrays;
+    var pc = 0;
+    var gi = globalInts;
+    var gf = globalFloats;
+    var ga = globalArrays;
+    while (true) {
+      switch (code[pc]) {
+        case NOP -> pc += 1;
+        case ICONST -> {
+          ir[code[pc + 1]] = code[pc + 2];
+          pc += 3;
+        }
+        case FCONST -> {
+          fr[code[pc + 1]] = Float.intBitsToFloat(code[pc + 2]);
+          pc += 3;
+        }
+        case IMOV -> {
+          ir[code[pc + 1]] = ir[code[pc + 2]];
+          pc += 3;
+        }
+        case FMOV -> {
+          fr[code[pc + 1]] = fr[code[pc + 2]];
+          pc += 3;
+        }
+        case AMOV -> {
+          ar[code[pc + 1]] = ar[code[pc + 2]];
+          pc += 3;
+        }
+        case IADD -> {
+          ir[code[pc + 1]] = ir[code[pc + 2]] + ir[code[pc + 3]];
+          pc += 4;
+        }
+        case ISUB -> {
+          ir[code[pc + 1]] = ir[code[pc + 2]] - ir[code[pc + 3]];
+          pc += 4;
+        }
+        case IMUL -> {
+          ir[code[pc + 1]] = ir[code[pc + 2]] * ir[code[pc + 3]];
+          pc += 4;
+        }
+        case IDIV -> {
+          ir[code[pc + 1]] = ir[code[pc + 2]] / ir[code[pc + 3]];
+          pc += 4;
+        }
+        case IMOD -> {
+          ir[code[pc + 1]] = ir[code[pc + 2]] % ir[code[pc + 3]];
+          pc += 4;
+        }
+        case IEQ -> {
+          ir[code[pc + 1]] = ir[code[pc + 2]] == ir[code[pc + 3]] ? 1 : 0;
+          pc += 4;
+        }
+        case INE -> {
+          ir[code[pc + 1]] = ir[code[pc + 2]] != ir[code[pc + 3]] ? 1 : 0;
+          pc += 4;
+        }
+        case ILT -> {
+          ir[code[pc + 1]] = ir[code[pc + 2]] < ir[code[pc + 3]] ? 1 : 0;
+          pc += 4;
+        }
+        case ILE -> {
+          ir[code[pc + 1]] = ir[code[pc + 2]] <= ir[code[pc + 3]] ? 1 : 0;
+          pc += 4;
+        }
+        case IGT -> {
+          ir[code[pc + 1]] = ir[code[pc + 2]] > ir[code[pc + 3]] ? 1 : 0;
+          pc += 4;
+        }
+        case IGE -> {
+          ir[code[pc + 1]] = ir[code[pc + 2]] >= ir[code[pc + 3]] ? 1 : 0;
+          pc += 4;
+        }
+        case ISHL -> {
+          ir[code[pc + 1]] = ir[code[pc + 2]] << ir[code[pc + 3]];
+          pc += 4;
+        }
+        case ISHR -> {
+          ir[code[pc + 1]] = ir[code[pc + 2]] >> ir[code[pc + 3]];
+          pc += 4;
+        }
+        case IUSHR -> {
+          ir[code[pc + 1]] = ir[code[pc + 2]] >>> ir[code[pc + 3]];
+          pc += 4;
+        }
+        case IMULHI -> {
+          ir[code[pc + 1]] = (int) ((long) ir[code[pc + 2]] * ir[code[pc + 3]] >> 32);
+          pc += 4;
+        }
+        case INEG -> {
+          ir[code[pc + 1]] = -ir[code[pc + 2]];
+          pc += 3;
+        }
+        case INOT -> {
+          ir[code[pc + 1]] = ir[code[pc + 2]] == 0 ? 1 : 0;
+          pc += 3;
+        }
+        case IBOOL -> {
+          ir[code[pc + 1]] = ir[code[pc + 2]] != 0 ? 1 : 0;
+          pc += 3;
+        }
+        case IADDI -> {
+          ir[code[pc + 1]] = ir[code[pc + 2]] + code[pc + 3];
+          pc += 4;
+        }
+        case IMULI -> {
+          ir[code[pc + 1]] = ir[code[pc + 2]] * code[pc + 3];
+          pc += 4;
+        }
+        case FADD -> {
+          fr[code[pc + 1]] = fr[code[pc + 2]] + fr[code[pc + 3]];
+          pc += 4;
+        }
+        case FSUB -> {
+          fr[code[pc + 1]] = fr[code[pc + 2]] - fr[code[pc + 3]];
+          pc += 4;
+        }
+        case FMUL -> {
+          fr[code[pc + 1]] = fr[code[pc + 2]] * fr[code[pc + 3]];
+          pc += 4;
+        }
+        case FDIV -> {
+          fr[code[pc + 1]] = fr[code[pc + 2]] / fr[code[pc + 3]];
+          pc += 4;
+        }
+        case FEQ -> {
+          ir[code[pc + 1]] = fr[code[pc + 2]] == fr[code[pc + 3]] ? 1 : 0;
+          pc += 4;
+        }
+        case FNE -> {
+          ir[code[pc + 1]] = fr[code[pc + 2]] != fr[code[pc + 3]] ? 1 : 0;
+          pc += 4;
+        }
+        case FLT -> {
+          ir[code[pc + 1]] = fr[code[pc + 2]] < fr[code[pc + 3]] ? 1 : 0;
+          pc += 4;
+        }
+        case FLE -> {
+          ir[code[pc + 1]] = fr[code[pc + 2]] <= fr[code[pc + 3]] ? 1 : 0;
+          pc += 4;
+        }
+        case FGT -> {
+          ir[code[pc + 1]] = fr[code[pc + 2]] > fr[code[pc + 3]] ? 1 : 0;
+          pc += 4;
+        }
+        case FGE -> {
+          ir[code[pc + 1]] = fr[code[pc + 2]] >= fr[code[pc + 3]] ? 1 : 0;
+          pc += 4;
+        }
+        case FNEG -> {
+          fr[code[pc + 1]] = -fr[code[pc + 2]];
+          pc += 3;
+        }
+        case FBOOL -> {
+          ir[code[pc + 1]] = fr[code[pc + 2]] != 0 ? 1 : 0;
+          pc += 3;
+        }
+        case I2F -> {
+          fr[code[pc + 1]] = ir[code[pc + 2]];
+          pc += 3;
+        }
+        case F2I -> {
+          ir[code[pc + 1]] = (int) fr[code[pc + 2]];
+          pc += 3;
+        }
+        case JMP -> pc = code[pc + 1];
+        case JZ -> pc = ir[code[pc + 1]] == 0 ? code[pc + 2] : pc + 3;
+        case JNZ -> pc = ir[code[pc + 1]] != 0 ? code[pc + 2] : pc + 3;
+        case JEQ -> pc = ir[code[pc + 1]] == ir[code[pc + 2]] ? code[pc + 3] : pc + 4;
+        case JNE -> pc = ir[code[pc + 1]] != ir[code[pc + 2]] ? code[pc + 3] : pc + 4;
+        case JLT -> pc = ir[code[pc + 1]] < ir[code[pc + 2]] ? code[pc + 3] : pc + 4;
+        case JLE -> pc = ir[code[pc + 1]] <= ir[code[pc + 2]] ? code[pc + 3] : pc + 4;
+        case JGT -> pc = ir[code[pc + 1]] > ir[code[pc + 2]] ? code[pc + 3] : pc + 4;
+        case JGE -> pc = ir[code[pc + 1]] >= ir[code[pc + 2]] ? code[pc + 3] : pc + 4;
+        case ILOAD -> {
+          var array = ar[code[pc + 2]];
+          ir[code[pc + 1]] = array.ints()[array.offset() + ir[code[pc + 3]]];
+          pc += 4;
+        }
+        case FLOAD -> {
+          var array = ar[code[pc + 2]];
+          fr[code[pc + 1]] = array.floats()[array.offset() + ir[code[pc + 3]]];
+          pc += 4;
+        }
+        case ISTORE -> {
+          var array = ar[code[pc + 1]];
+          array.ints()[array.offset() + ir[code[pc + 2]]] = ir[code[pc + 3]];
+          pc += 4;
+        }
+        case FSTORE -> {
+          var array = ar[code[pc + 1]];
+          array.floats()[array.offset() + ir[code[pc + 2]]] = fr[code[pc + 3]];
+          pc += 4;
+        }
+        case ASLICE -> {
+          ar[code[pc + 1]] = ar[code[pc + 2]].slice(ir[code[pc + 3]]);
+          pc += 4;
+        }
+        case NEWI -> {
+          var template = code[pc + 3];
+          var ints = template < 0 ? new int[code[pc + 2]] : ((int[]) frame.chunk.pool()[template]).clone();
+          ar[code[pc + 1]] = new ArrayRef(ints, null, 0);
+          pc += 4;
+        }
+        case NEWF -> {
+          var template = code[pc + 3];
+          var floats = template < 0 ? new float[code[pc + 2]] : ((float[]) frame.chunk.pool()[template]).clone();
+          ar[code[pc + 1]] = new ArrayRef(null, floats, 0);
+          pc += 4;
+        }
+        case GILOAD -> {
+          ir[code[pc + 1]] = gi[code[pc + 2]];
+          pc += 3;
+        }
+        case GFLOAD -> {
+          fr[code[pc + 1]] = gf[code[pc + 2]];
+          pc += 3;
+        }
+        case GALOAD -> {
+          ar[code[pc + 1]] = ga[code[pc + 2]];
+          pc += 3;
+        }
+        case GISTORE -> {
+          gi[code[pc + 1]] = ir[code[pc + 2]];
+          pc += 3;
+        }
+        case GFSTORE -> {
+          gf[code[pc + 1]] = fr[code[pc + 2]];
+          pc += 3;
+        }
+        case GASTORE -> {
+          ga[code[pc + 1]] = ar[code[pc + 2]];
+          pc += 3;
+        }
+        case CALL -> {
+          var callee = new Frame(functions[code[pc + 1]], frame, code[pc + 2]);
+          var argc = code[pc + 3];
+          int ni = 0, nf = 0, na = 0;
+          for (int i = 0; i < argc; i++) {
+            var operand = code[pc + 4 + i];
+            var reg = operand & REG_MASK;
+            switch (operand >>> KIND_SHIFT) {
+              case KIND_INT -> callee.ints[ni++] = ir[reg];
+              case KIND_FLOAT -> callee.floats[nf++] = fr[reg];
+              default -> callee.arrays[na++] = ar[reg];
+            }
+          }
+          frame.pc = pc + 4 + argc;
+          frame = callee;
+          code = callee.chunk.code();
+          ir = callee.ints;
+          fr = callee.floats;
+          ar = callee.arrays;
+          pc = 0;
+        }
+        case PRIM -> {
+          var argc = code[pc + 3];
+          var result = prim(code[pc + 1], code, pc + 4, argc, frame);
+          var dst = code[pc + 2];
+          if (dst >= 0) {
+            if (result instanceof Float f) fr[dst] = f;
+            else ir[dst] = (Integer) result;
+          }
+          pc += 4 + argc;
+        }
+        case IRET, FRET, RET -> {
+          var op = code[pc];
+          var caller = frame.caller;
+          var dst = frame.dst;
+          if (caller == null) return op == IRET ? ir[code[pc + 1]] : 0;
+          if (op == IRET) caller.ints[dst] = ir[code[pc + 1]];
+          else if (op == FRET) caller.floats[dst] = fr[code[pc + 1]];
+          frame = caller;
+          code = caller.chunk.code();
+          ir = caller.ints;
+          fr = caller.floats;
+          ar = caller.arrays;
+          pc = caller.pc;
+        }
+        default -> throw new IllegalStateException("bad opcode " + code[pc] + " at " + pc + " in " + frame.chunk.name());
+      }
+    }
+  }
+
+  private static final Def.PrimFactory[] PRIMITIVES = Def.PrimFactory.values();
+
+  private Object prim(int primitive, int @NotNull [] code, int from, int argc, @NotNull Frame frame) {
+    var prim = PRIMITIVES[primitive];
+    // hot primitives skip the boxed dispatch
+    switch (prim) {
+      case PutInt -> {
+        runtime.putint(frame.ints[code[from] & REG_MASK]);
+        return null;
+      }
+      case PutChar -> {
+        runtime.putch(frame.ints[code[from] & REG_MASK]);
+        return null;
+      }
+      case GetInt -> {
+        return runtime.getint();
+      }
+      default -> {}
+    }
+    var args = new Object[argc];
+    for (int i = 0; i < argc; i++) {
+      var operand = code[from + i];
+      var reg = operand & REG_MASK;
+      args[i] = switch (operand >>> KIND_SHIFT) {
+        case KIND_INT -> frame.ints[reg];
+        case KIND_FLOAT -> frame.floats[reg];
+        case KIND_ARRAY -> frame.arrays[reg];
+        default -> frame.chunk.pool()[reg];
+      };
+    }
+    return runtime.invoke(prim, ImmutableSeq.from(args));
+  }
+}
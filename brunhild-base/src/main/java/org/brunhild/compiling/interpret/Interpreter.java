@@ -0,0 +1,46 @@
+package org.brunhild.compiling.interpret;
+
+import kala.collection.immutable.ImmutableSeq;
+import org.brunhild.core.Proclaim;
+import org.jetbrains.annotations.NotNull;
+
+/** Runs checked programs without a native toolchain, mainly for testing and timing optimizations. */
+public interface Interpreter {
+  /** Recursive programs can be deep, the tree interpreter uses the Java stack for them. */
+  long STACK_SIZE = 1L << 30;
+
+  enum Engine {
+    /** {@link TreeInterpreter}, the reference semantics */
+    Tree,
+    /** {@link BytecodeVM}, the fast path */
+    Bytecode,
+  }
+
+  static int run(@NotNull ImmutableSeq<Proclaim> program, @NotNull PrimRuntime runtime, @NotNull Engine engine) {
+    var exit = new int[1];
+    var failure = new Throwable[1];
+    var thread = new Thread(null, () -> {
+      try {
+        exit[0] = switch (engine) {
+          case Tree -> new TreeInterpreter(runtime).run(program);
+          case Bytecode -> new BytecodeVM(BytecodeCompiler.compile(program), runtime).run();
+        };
+      } catch (Throwable e) {
+        failure[0] = e;
+      } finally {
+        runtime.exit();
+      }
+    }, "brunhild-interpreter", STACK_SIZE);
+    thread.start();
+    try {
+      thread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(e);
+    }
+    if (failure[0] instanceof RuntimeException e) throw e;
+    if (failure[0] instanceof Error e) throw e;
+    // the exit code is truncated to a byte by the operating system
+    return exit[0] & 0xFF;
+  }
+}
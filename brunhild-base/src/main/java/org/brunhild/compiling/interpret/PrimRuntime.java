@@ -0,0 +1,233 @@
+package org.brunhild.compiling.interpret;
+
+import kala.collection.immutable.ImmutableSeq;
+import org.brunhild.core.Def;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+
+/**
+ * The SysY runtime library ({@code libsysy}) described by {@link Def.PrimFactory},
+ * the output format follows the reference C implementation.
+ */
+public final class PrimRuntime {
+  private final @NotNull InputStream in;
+  private final @NotNull PrintStream out;
+  private final @NotNull PrintStream err;
+  private int peeked = -2;
+
+  private static final int MAX_TIMERS = 1024;
+  private final int[] timerStartLine = new int[MAX_TIMERS];
+  private final int[] timerStopLine = new int[MAX_TIMERS];
+  private final long[] timerNanos = new long[MAX_TIMERS];
+  private int timerCount = 0;
+  private long timerStart = 0;
+  private long totalNanos = 0;
+
+  public PrimRuntime(@NotNull InputStream in, @NotNull PrintStream out, @NotNull PrintStream err) {
+    this.in = in;
+    this.out = out;
+    this.err = err;
+  }
+
+  public static @NotNull PrimRuntime stdio() {
+    return new PrimRuntime(System.in, new PrintStream(System.out, false), System.err);
+  }
+
+  private int read() {
+    if (peeked != -2) {
+      var c = peeked;
+      peeked = -2;
+      return c;
+    }
+    try {
+      return in.read();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private int peek() {
+    if (peeked == -2) peeked = read();
+    return peeked;
+  }
+
+  private @NotNull String token() {
+    var c = peek();
+    while (c != -1 && Character.isWhitespace(c)) {
+      read();
+      c = peek();
+    }
+    var sb = new StringBuilder();
+    while (c != -1 && !Character.isWhitespace(c)) {
+      sb.append((char) read());
+      c = peek();
+    }
+    return sb.toString();
+  }
+
+  /** Reads a signed decimal like {@code scanf("%d")}, a leading zero does not make it octal. */
+  public int getint() {
+    var token = token();
+    if (token.isEmpty()) return 0;
+    return Integer.parseInt(token);
+  }
+
+  public int getch() {
+    return read();
+  }
+
+  public float getfloat() {
+    var token = token();
+    if (token.isEmpty()) return 0;
+    return Float.parseFloat(token);
+  }
+
+  public int getarray(@NotNull ArrayRef array) {
+    var n = getint();
+    for (int i = 0; i < n; i++) array.setInt(i, getint());
+    return n;
+  }
+
+  public int getfarray(@NotNull ArrayRef array) {
+    var n = getint();
+    for (int i = 0; i < n; i++) array.setFloat(i, getfloat());
+    return n;
+  }
+
+  public static @NotNull Def.PrimFactory factoryOf(@NotNull Def.PrimDef prim) {
+    return Def.PrimFactory.PRIMITIVES.find(f -> f.prim == prim)
+      .getOrThrow(() -> new IllegalArgumentException("unknown primitive: " + prim.ref.name()));
+  }
+
+  /** Boxed entry used by the reference interpreter, returns {@code null} for {@code void} primitives. */
+  public Object invoke(@NotNull Def.PrimFactory prim, @NotNull ImmutableSeq<Object> args) {
+    return switch (prim) {
+      case GetInt -> getint();
+      case GetChar -> getch();
+      case GetFloat -> getfloat();
+      case GetArray -> getarray((ArrayRef) args.get(0));
+      case GetFloatArray -> getfarray((ArrayRef) args.get(0));
+      case PutInt -> {
+        putint((Integer) args.get(0));
+        yield null;
+      }
+      case PutChar -> {
+        putch((Integer) args.get(0));
+        yield null;
+      }
+      case PutFloat -> {
+        putfloat((Float) args.get(0));
+        yield null;
+      }
+      case PutArray -> {
+        putarray((Integer) args.get(0), (ArrayRef) args.get(1));
+        yield null;
+      }
+      case PutFloatArray -> {
+        putfarray((Integer) args.get(0), (ArrayRef) args.get(1));
+        yield null;
+      }
+      case Printf -> {
+        putf((String) args.get(0), args.drop(1));
+        yield null;
+      }
+      case StartTime, StartTimeABI -> {
+        starttime(args.isEmpty() ? 0 : (Integer) args.get(0));
+        yield null;
+      }
+      case StopTime, StopTimeABI -> {
+        stoptime(args.isEmpty() ? 0 : (Integer) args.get(0));
+        yield null;
+      }
+    };
+  }
+
+  public void putint(int i) {
+    out.print(i);
+  }
+
+  public void putch(int c) {
+    out.print((char) c);
+  }
+
+  public void putfloat(float f) {
+    out.print(hexFloat(f));
+  }
+
+  public void putarray(int n, @NotNull ArrayRef array) {
+    out.print(n);
+    out.print(':');
+    for (int i = 0; i < n; i++) {
+      out.print(' ');
+      out.print(array.getInt(i));
+    }
+    out.print('\n');
+  }
+
+  public void putfarray(int n, @NotNull ArrayRef array) {
+    out.print(n);
+    out.print(':');
+    for (int i = 0; i < n; i++) {
+      out.print(' ');
+      out.print(hexFloat(array.getFloat(i)));
+    }
+    out.print('\n');
+  }
+
+  public void putf(@NotNull String fmt, @NotNull ImmutableSeq<Object> args) {
+    var cFmt = fmt.replace("%a", "%s");
+    out.print(String.format(cFmt, args.map(a -> a instanceof Float f ? hexFloat(f) : a).toArray(Object.class)));
+  }
+
+  public void starttime(int line) {
+    if (timerCount >= MAX_TIMERS) return;
+    timerStartLine[timerCount] = line;
+    timerStart = System.nanoTime();
+  }
+
+  public void stoptime(int line) {
+    if (timerCount >= MAX_TIMERS) return;
+    var elapsed = System.nanoTime() - timerStart;
+    timerStopLine[timerCount] = line;
+    timerNanos[timerCount] = elapsed;
+    totalNanos += elapsed;
+    timerCount++;
+  }
+
+  /** Flushes the output and prints the timers like {@code libsysy}'s destructor. */
+  public void exit() {
+    out.flush();
+    for (int i = 0; i < timerCount; i++) {
+      err.printf("Timer@%04d-%04d: %s%n", timerStartLine[i], timerStopLine[i], formatTime(timerNanos[i]));
+    }
+    if (timerCount > 0) err.printf("TOTAL: %s%n", formatTime(totalNanos));
+    err.flush();
+  }
+
+  public long totalTimerNanos() {
+    return totalNanos;
+  }
+
+  private static @NotNull String formatTime(long nanos) {
+    var us = nanos / 1000;
+    return String.format("%dH-%dM-%dS-%dus", us / 3600_000_000L, us / 60_000_000L % 60, us / 1000_000L % 60, us % 1000_000L);
+  }
+
+  /** Formats a float like C's {@code printf("%a", f)}. */
+  public static @NotNull String hexFloat(float f) {
+    if (Float.isNaN(f)) return "nan";
+    if (Float.isInfinite(f)) return f > 0 ? "inf" : "-inf";
+    if (f == 0) return (1 / f) < 0 ? "-0x0p+0" : "0x0p+0";
+    // widening keeps subnormal floats normalized, as C does when passing floats to varargs
+    var java = Double.toHexString(f);
+    var p = java.indexOf('p');
+    var mantissa = java.substring(0, p);
+    var exponent = java.substring(p + 1);
+    if (mantissa.endsWith(".0")) mantissa = mantissa.substring(0, mantissa.length() - 2);
+    return mantissa + "p" + (exponent.startsWith("-") ? exponent : "+" + exponent);
+  }
+}
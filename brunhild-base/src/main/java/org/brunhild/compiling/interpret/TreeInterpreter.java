@@ -0,0 +1,246 @@
+package org.brunhild.compiling.interpret;
+
+import kala.collection.immutable.ImmutableSeq;
+import org.brunhild.core.Def;
+import org.brunhild.core.Proclaim;
+import org.brunhild.core.Term;
+import org.brunhild.generic.Type;
+import org.brunhild.generic.Var;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The reference interpreter which directly walks the core tree with boxed values.
+ * It is slow but obviously correct, use {@link BytecodeVM} to run benchmarks.
+ */
+public final class TreeInterpreter {
+  private final @NotNull PrimRuntime runtime;
+  private final @NotNull Map<Var, Object> globals = new HashMap<>();
+
+  public TreeInterpreter(@NotNull PrimRuntime runtime) {
+    this.runtime = runtime;
+  }
+
+  private enum Completion {
+    Normal, Break, Continue, Return,
+  }
+
+  private static final class Frame {
+    final @NotNull Map<Var, Object> locals = new HashMap<>();
+    Object returnValue;
+  }
+
+  public int run(@NotNull ImmutableSeq<Proclaim> program) {
+    var init = new Frame();
+    Def.FnDef main = null;
+    for (var proclaim : program) {
+      switch (proclaim) {
+        case Def.VarDef varDef -> globals.put(varDef.ref, initialize(varDef, init));
+        case Def.FnDef fnDef -> {
+          if (fnDef.ref.name().equals("main")) main = fnDef;
+        }
+        default -> {}
+      }
+    }
+    if (main == null) throw new IllegalArgumentException("no main function");
+    var result = call(main, ImmutableSeq.empty());
+    return result instanceof Integer i ? i : 0;
+  }
+
+  private Object call(@NotNull Def.FnDef fn, @NotNull ImmutableSeq<Object> args) {
+    var frame = new Frame();
+    fn.telescope.forEachIndexed((i, param) -> frame.locals.put(param.ref(), args.get(i)));
+    exec(fn.body, frame);
+    if (frame.returnValue == null) return defaultValueOf(fn.result);
+    return frame.returnValue;
+  }
+
+  private @NotNull Completion exec(@NotNull Proclaim proclaim, @NotNull Frame frame) {
+    switch (proclaim) {
+      case Def.VarDef varDef -> frame.locals.put(varDef.ref, initialize(varDef, frame));
+      case Proclaim.VarAssignProclaim assign -> store(assign.var(), eval(assign.rvalue(), frame), frame);
+      case Proclaim.IndexAssignProclaim assign -> {
+        var array = (ArrayRef) eval(assign.term(), frame);
+        var index = (Integer) eval(assign.index(), frame);
+        var value = eval(assign.rvalue(), frame);
+        if (value instanceof Float f) array.setFloat(index, f);
+        else array.setInt(index, (Integer) value);
+      }
+      case Proclaim.TermProclaim term -> eval(term.term(), frame);
+      case Proclaim.BlockProclaim block -> {
+        for (var p : block.block()) {
+          var completion = exec(p, frame);
+          if (completion != Completion.Normal) return completion;
+        }
+      }
+      case Proclaim.IfProclaim ifProclaim -> {
+        if (truthy(eval(ifProclaim.cond(), frame))) return exec(ifProclaim.thenBranch(), frame);
+        if (ifProclaim.elseBranch().isDefined()) return exec(ifProclaim.elseBranch().get(), frame);
+      }
+      case Proclaim.WhileProclaim whileProclaim -> {
+        while (truthy(eval(whileProclaim.cond(), frame))) {
+          var completion = exec(whileProclaim.body(), frame);
+          if (completion == Completion.Break) break;
+          if (completion == Completion.Return) return completion;
+        }
+      }
+      case Proclaim.ReturnProclaim ret -> {
+        frame.returnValue = ret.term().map(t -> eval(t, frame)).getOrNull();
+        return Completion.Return;
+      }
+      case Proclaim.BreakProclaim ignored -> {
+        return Completion.Break;
+      }
+      case Proclaim.ContinueProclaim ignored -> {
+        return Completion.Continue;
+      }
+      case Def.FnDef ignored -> throw new IllegalStateException("nested function");
+      case Def.PrimDef ignored -> throw new IllegalStateException("nested primitive");
+    }
+    return Completion.Normal;
+  }
+
+  private Object eval(@NotNull Term term, @NotNull Frame frame) {
+    return switch (term) {
+      case Term.LitTerm lit -> lit.literal().fold(l -> l.fold(i -> i, f -> f), s -> s);
+      case Term.RefTerm ref -> load(ref.var(), frame);
+      case Term.IndexTerm index -> {
+        var array = (ArrayRef) eval(index.term(), frame);
+        var i = (Integer) eval(index.index(), frame);
+        var type = (Type.Array<Term>) index.term().type().unconst();
+        yield switch (type.elementType().unconst()) {
+          case Type.Array<Term> sub -> array.slice(i * sub.flatSize());
+          case Type.Float<Term> ignored -> array.getFloat(i);
+          default -> array.getInt(i);
+        };
+      }
+      case Term.FnCall call -> call(call.fn().core, call.args().map(a -> eval(a, frame)));
+      case Term.PrimCall call -> {
+        var args = call.args().map(a -> eval(a, frame));
+        yield runtime.invoke(PrimRuntime.factoryOf(call.prim().core), args);
+      }
+      case Term.CoerceTerm coerce -> {
+        var value = eval(coerce.term(), frame);
+        yield switch (coerce.toType().unconst()) {
+          case Type.Float<Term> ignored -> value instanceof Integer i ? (Object) (float) i : value;
+          case Type.Int<Term> ignored -> value instanceof Float f ? (Object) (int) (float) f : value;
+          default -> value;
+        };
+      }
+      case Term.UnaryTerm unary -> {
+        var value = eval(unary.term(), frame);
+        yield switch (unary.op()) {
+          case POS -> value;
+          case NEG -> value instanceof Float f ? (Object) (-f) : (Object) (-(Integer) value);
+          case LOGICAL_NOT -> truthy(value) ? 0 : 1;
+        };
+      }
+      case Term.BinaryTerm bin -> switch (bin.op()) {
+        case LOGICAL_AND -> truthy(eval(bin.lhs(), frame)) && truthy(eval(bin.rhs(), frame)) ? 1 : 0;
+        case LOGICAL_OR -> truthy(eval(bin.lhs(), frame)) || truthy(eval(bin.rhs(), frame)) ? 1 : 0;
+        default -> {
+          var lhs = eval(bin.lhs(), frame);
+          var rhs = eval(bin.rhs(), frame);
+          if (lhs instanceof Float l && rhs instanceof Float r) yield switch (bin.op()) {
+            case ADD -> l + r;
+            case SUB -> l - r;
+            case MUL -> l * r;
+            case DIV -> l / r;
+            case EQ -> l.floatValue() == r ? 1 : 0;
+            case NE -> l.floatValue() != r ? 1 : 0;
+            case LT -> l < r ? 1 : 0;
+            case LE -> l <= r ? 1 : 0;
+            case GT -> l > r ? 1 : 0;
+            case GE -> l >= r ? 1 : 0;
+            default -> throw new IllegalStateException("type checker bug?");
+          };
+          int l = (Integer) lhs, r = (Integer) rhs;
+          yield switch (bin.op()) {
+            case ADD -> l + r;
+            case SUB -> l - r;
+            case MUL -> l * r;
+            case DIV -> l / r;
+            case MOD -> l % r;
+            case EQ -> l == r ? 1 : 0;
+            case NE -> l != r ? 1 : 0;
+            case LT -> l < r ? 1 : 0;
+            case LE -> l <= r ? 1 : 0;
+            case GT -> l > r ? 1 : 0;
+            case GE -> l >= r ? 1 : 0;
+            case SHL -> l << r;
+            case SHR -> l >> r;
+            case USHR -> l >>> r;
+            case MULHI -> (int) ((long) l * r >> 32);
+            default -> throw new IllegalStateException("unreachable");
+          };
+        }
+      };
+      case Term.InitializedArray array -> {
+        var ref = ArrayRef.allocate(array.type());
+        fill(ref, 0, array, frame);
+        yield ref;
+      }
+      case Term.PackedArray array -> {
+        var ref = ArrayRef.allocate(array.type());
+        unpack(ref, 0, array);
+        yield ref;
+      }
+      case Term.UninitializedArray array -> ArrayRef.allocate(array.type());
+    };
+  }
+
+  private void unpack(@NotNull ArrayRef ref, int offset, @NotNull Term.PackedArray array) {
+    var isFloat = array.isFloat();
+    array.values().forEachNonZero((i, word) -> {
+      if (isFloat) ref.setFloat(offset + i, Float.intBitsToFloat(word));
+      else ref.setInt(offset + i, word);
+    });
+  }
+
+  private void fill(@NotNull ArrayRef ref, int offset, @NotNull Term.InitializedArray array, @NotNull Frame frame) {
+    var stride = array.type().elementType().flatSize();
+    array.values().forEachIndexed((i, value) -> {
+      switch (value) {
+        case Term.InitializedArray sub -> fill(ref, offset + i * stride, sub, frame);
+        case Term.PackedArray sub -> unpack(ref, offset + i * stride, sub);
+        case Term.UninitializedArray ignored -> {}
+        default -> {
+          var v = eval(value, frame);
+          if (v instanceof Float f) ref.setFloat(offset + i, f);
+          else ref.setInt(offset + i, (Integer) v);
+        }
+      }
+    });
+  }
+
+  private Object initialize(@NotNull Def.VarDef varDef, @NotNull Frame frame) {
+    return eval(varDef.body, frame);
+  }
+
+  private Object load(@NotNull Var var, @NotNull Frame frame) {
+    var local = frame.locals.get(var);
+    if (local != null) return local;
+    var global = globals.get(var);
+    if (global == null) throw new IllegalStateException("unbound variable: " + var.name());
+    return global;
+  }
+
+  private void store(@NotNull Var var, @NotNull Object value, @NotNull Frame frame) {
+    if (frame.locals.containsKey(var)) frame.locals.put(var, value);
+    else globals.put(var, value);
+  }
+
+  private static boolean truthy(Object value) {
+    return value instanceof Float f ? f != 0 : (Integer) value != 0;
+  }
+
+  private static Object defaultValueOf(@NotNull Type<Term> type) {
+    return switch (type.unconst()) {
+      case Type.Int<Term> ignored -> 0;
+      case Type.Float<Term> ignored -> 0f;
+      default -> null;
+    };
+  }
+}
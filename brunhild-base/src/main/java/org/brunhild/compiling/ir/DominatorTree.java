@@ -0,0 +1,165 @@
+package org.brunhild.compiling.ir;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+/**
+ * Dominators computed by the iterative algorithm of Cooper, Harvey and Kennedy
+ * over reverse postorder. Unreachable blocks have no immediate dominator.
+ */
+public final class DominatorTree {
+  private final int @NotNull [] idom;
+  private final int @NotNull [] rpo;
+  private final int @NotNull [] rpoIndex;
+  private final @NotNull IntList @NotNull [] children;
+  /** Preorder entry and exit numbers in the tree, for constant-time dominance queries. */
+  private final int @NotNull [] enter;
+  private final int @NotNull [] exit;
+
+  private DominatorTree(int @NotNull [] idom, int @NotNull [] rpo, int @NotNull [] rpoIndex) {
+    this.idom = idom;
+    this.rpo = rpo;
+    this.rpoIndex = rpoIndex;
+    var count = idom.length;
+    this.children = new IntList[count];
+    for (int b = 0; b < count; b++) children[b] = new IntList(2);
+    for (var b : rpo) if (b != Function.ENTRY) children[idom[b]].add(b);
+    this.enter = new int[count];
+    this.exit = new int[count];
+    number();
+  }
+
+  public static @NotNull DominatorTree of(@NotNull Function fn) {
+    var count = fn.blockCount();
+    var successors = new int[count][];
+    for (int b = 0; b < count; b++) successors[b] = fn.successors(b);
+    var rpo = reversePostorder(successors);
+    var rpoIndex = new int[count];
+    Arrays.fill(rpoIndex, -1);
+    for (int i = 0; i < rpo.length; i++) rpoIndex[rpo[i]] = i;
+
+    var idom = new int[count];
+    Arrays.fill(idom, -1);
+    idom[Function.ENTRY] = Function.ENTRY;
+    var changed = true;
+    while (changed) {
+      changed = false;
+      for (int i = 1; i < rpo.length; i++) {
+        var b = rpo[i];
+        var preds = fn.predecessors(b);
+        var newIdom = -1;
+        for (int j = 0; j < preds.size(); j++) {
+          var p = preds.get(j);
+          if (idom[p] < 0) continue;
+          newIdom = newIdom < 0 ? p : intersect(idom, rpoIndex, p, newIdom);
+        }
+        if (idom[b] != newIdom) {
+          idom[b] = newIdom;
+          changed = true;
+        }
+      }
+    }
+    return new DominatorTree(idom, rpo, rpoIndex);
+  }
+
+  private static int intersect(int @NotNull [] idom, int @NotNull [] rpoIndex, int a, int b) {
+    while (a != b) {
+      while (rpoIndex[a] > rpoIndex[b]) a = idom[a];
+      while (rpoIndex[b] > rpoIndex[a]) b = idom[b];
+    }
+    return a;
+  }
+
+  /** Iterative depth-first search, deeply nested programs would overflow a recursive one. */
+  static int @NotNull [] reversePostorder(int @NotNull [] @NotNull [] successors) {
+    var count = successors.length;
+    var visited = new boolean[count];
+    var postorder = new IntList(count);
+    var stack = new IntList();
+    var cursor = new IntList();
+    stack.add(Function.ENTRY);
+    cursor.add(0);
+    visited[Function.ENTRY] = true;
+    while (!stack.isEmpty()) {
+      var b = stack.last();
+      var i = cursor.last();
+      if (i < successors[b].length) {
+        cursor.set(cursor.size() - 1, i + 1);
+        var succ = successors[b][i];
+        if (!visited[succ]) {
+          visited[succ] = true;
+          stack.add(succ);
+          cursor.add(0);
+        }
+      } else {
+        postorder.add(b);
+        stack.removeLast();
+        cursor.removeLast();
+      }
+    }
+    var rpo = new int[postorder.size()];
+    for (int i = 0; i < rpo.length; i++) rpo[i] = postorder.get(rpo.length - 1 - i);
+    return rpo;
+  }
+
+  private void number() {
+    var counter = 0;
+    var stack = new IntList();
+    var cursor = new IntList();
+    stack.add(Function.ENTRY);
+    cursor.add(0);
+    enter[Function.ENTRY] = counter++;
+    while (!stack.isEmpty()) {
+      var b = stack.last();
+      var i = cursor.last();
+      if (i < children[b].size()) {
+        cursor.set(cursor.size() - 1, i + 1);
+        var child = children[b].get(i);
+        enter[child] = counter++;
+        stack.add(child);
+        cursor.add(0);
+      } else {
+        exit[b] = counter++;
+        stack.removeLast();
+        cursor.removeLast();
+      }
+    }
+  }
+
+  /** @return the immediate dominator, the entry for itself and {@code -1} for unreachable blocks */
+  public int idom(int block) {
+    return idom[block];
+  }
+
+  public boolean isReachable(int block) {
+    return rpoIndex[block] >= 0;
+  }
+
+  public boolean dominates(int a, int b) {
+    if (!isReachable(a) || !isReachable(b)) return false;
+    return enter[a] <= enter[b] && exit[b] <= exit[a];
+  }
+
+  public boolean strictlyDominates(int a, int b) {
+    return a != b && dominates(a, b);
+  }
+
+  public @NotNull IntList children(int block) {
+    return children[block];
+  }
+
+  /** @return reachable blocks in reverse postorder, a topological order ignoring back edges */
+  public int @NotNull [] reversePostorder() {
+    return rpo;
+  }
+
+  public int rpoIndex(int block) {
+    return rpoIndex[block];
+  }
+
+  /** @return whether the edge goes to a block dominating its source, i.e. it closes a natural loop */
+  public boolean isBackEdge(int from, int to) {
+    return dominates(to, from);
+  }
+}
@@ -0,0 +1,381 @@
+package org.brunhild.compiling.ir;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * A function in SSA form. Values and blocks are dense integers indexing into
+ * parallel tables, every instruction defines exactly one value (possibly of type
+ * {@code void}). Operands are stored in a shared pool, blocks are referred to by
+ * their index in operands of {@link Opcode#Jump}, {@link Opcode#Branch} and
+ * {@link Opcode#Phi}. Block {@code 0} is the entry.
+ */
+public final class Function {
+  public static final int ENTRY = 0;
+
+  public final @NotNull String name;
+  public final @NotNull ValueType result;
+  public final @NotNull ValueType @NotNull [] params;
+
+  private Opcode[] ops = new Opcode[64];
+  private ValueType[] types = new ValueType[64];
+  private int[] imms = new int[64];
+  private int[] operandStart = new int[64];
+  private int[] operandCount = new int[64];
+  private int[] blockOf = new int[64];
+  private int valueCount = 0;
+  private final @NotNull IntList operands = new IntList(256);
+  private final @NotNull HashMap<Long, Integer> constants = new HashMap<>();
+
+  private final @NotNull ArrayList<IntList> blocks = new ArrayList<>();
+  private final @NotNull ArrayList<IntList> preds = new ArrayList<>();
+
+  public Function(@NotNull String name, @NotNull ValueType result, @NotNull ValueType @NotNull [] params) {
+    this.name = name;
+    this.result = result;
+    this.params = params;
+  }
+
+  // region Values
+
+  public int valueCount() {
+    return valueCount;
+  }
+
+  public @NotNull Opcode op(int value) {
+    return ops[value];
+  }
+
+  public @NotNull ValueType type(int value) {
+    return types[value];
+  }
+
+  public int imm(int value) {
+    return imms[value];
+  }
+
+  public float floatImm(int value) {
+    return Float.intBitsToFloat(imms[value]);
+  }
+
+  public int arity(int value) {
+    return operandCount[value];
+  }
+
+  public int operand(int value, int index) {
+    assert index < operandCount[value];
+    return operands.get(operandStart[value] + index);
+  }
+
+  public void setOperand(int value, int index, int operand) {
+    assert index < operandCount[value];
+    operands.set(operandStart[value] + index, operand);
+  }
+
+  /** Replaces all operands, the old operand slots are abandoned when the arity changes. */
+  public void setOperands(int value, int @NotNull ... newOperands) {
+    if (newOperands.length <= operandCount[value]) {
+      for (int i = 0; i < newOperands.length; i++) operands.set(operandStart[value] + i, newOperands[i]);
+    } else {
+      operandStart[value] = operands.size();
+      for (var operand : newOperands) operands.add(operand);
+    }
+    operandCount[value] = newOperands.length;
+  }
+
+  public int @NotNull [] operands(int value) {
+    var result = new int[operandCount[value]];
+    for (int i = 0; i < result.length; i++) result[i] = operands.get(operandStart[value] + i);
+    return result;
+  }
+
+  /** @return whether the operand refers to a block rather than a value */
+  public boolean isBlockOperand(int value, int index) {
+    return switch (ops[value]) {
+      case Jump -> true;
+      case Branch -> index > 0;
+      case Phi -> index % 2 == 0;
+      default -> false;
+    };
+  }
+
+  /** @return the block containing the instruction, or {@code -1} for constants and removed instructions */
+  public int block(int value) {
+    return blockOf[value];
+  }
+
+  /** Constants, global addresses and undefined values belong to no block and are shared by all uses. */
+  public boolean isConstant(int value) {
+    return switch (ops[value]) {
+      case IConst, FConst, GlobalAddr, Undef -> true;
+      default -> false;
+    };
+  }
+
+  public int global(int index) {
+    return constant(Opcode.GlobalAddr, ValueType.Ptr, index);
+  }
+
+  public int iconst(int value) {
+    return constant(Opcode.IConst, ValueType.I32, value);
+  }
+
+  public int fconst(float value) {
+    return constant(Opcode.FConst, ValueType.F32, Float.floatToRawIntBits(value));
+  }
+
+  public int undef(@NotNull ValueType type) {
+    return constant(Opcode.Undef, type, 0);
+  }
+
+  private int constant(@NotNull Opcode op, @NotNull ValueType type, int bits) {
+    var key = (long) op.ordinal() << 40 | (long) type.ordinal() << 32 | (bits & 0xFFFFFFFFL);
+    var cached = constants.get(key);
+    if (cached != null) return cached;
+    var value = newValue(-1, op, type, bits, new int[0]);
+    constants.put(key, value);
+    return value;
+  }
+
+  public void mutate(int value, @NotNull Opcode op, @NotNull ValueType type, int imm, int @NotNull ... newOperands) {
+    ops[value] = op;
+    types[value] = type;
+    imms[value] = imm;
+    setOperands(value, newOperands);
+  }
+
+  private int newValue(int block, @NotNull Opcode op, @NotNull ValueType type, int imm, int @NotNull [] newOperands) {
+    if (valueCount == ops.length) {
+      var capacity = valueCount * 2;
+      ops = Arrays.copyOf(ops, capacity);
+      types = Arrays.copyOf(types, capacity);
+      imms = Arrays.copyOf(imms, capacity);
+      operandStart = Arrays.copyOf(operandStart, capacity);
+      operandCount = Arrays.copyOf(operandCount, capacity);
+      blockOf = Arrays.copyOf(blockOf, capacity);
+    }
+    var value = valueCount++;
+    ops[value] = op;
+    types[value] = type;
+    imms[value] = imm;
+    blockOf[value] = block;
+    operandStart[value] = operands.size();
+    operandCount[value] = newOperands.length;
+    for (var operand : newOperands) operands.add(operand);
+    return value;
+  }
+
+  /** Appends an instruction to the end of the block. */
+  public int append(int block, @NotNull Opcode op, @NotNull ValueType type, int imm, int @NotNull ... newOperands) {
+    var value = newValue(block, op, type, imm, newOperands);
+    blocks.get(block).add(value);
+    return value;
+  }
+
+  /** Inserts an instruction before the {@code index}-th instruction of the block. */
+  public int insert(int block, int index, @NotNull Opcode op, @NotNull ValueType type, int imm, int @NotNull ... newOperands) {
+    var value = newValue(block, op, type, imm, newOperands);
+    blocks.get(block).insert(index, value);
+    return value;
+  }
+
+  /** Creates a phi without incoming values after the existing phis of the block. */
+  public int insertPhi(int block, @NotNull ValueType type) {
+    var instructions = blocks.get(block);
+    var index = 0;
+    while (index < instructions.size() && ops[instructions.get(index)] == Opcode.Phi) index++;
+    return insert(block, index, Opcode.Phi, type, 0);
+  }
+
+  /** Moves the instruction before the {@code index}-th instruction of the block, keeping its value. */
+  public void move(int value, int block, int index) {
+    remove(value);
+    blockOf[value] = block;
+    blocks.get(block).insert(index, value);
+  }
+
+  /** Detaches the instruction from its block, its uses must have been rewritten. */
+  public void remove(int value) {
+    var block = blockOf[value];
+    if (block < 0) return;
+    var instructions = blocks.get(block);
+    instructions.remove(instructions.indexOf(value));
+    blockOf[value] = -1;
+  }
+
+  /** Rewrites every value operand through the mapping, which returns the operand itself if unchanged. */
+  public void rewriteOperands(@NotNull java.util.function.IntUnaryOperator mapping) {
+    for (var instructions : blocks)
+      for (int i = 0; i < instructions.size(); i++) {
+        var value = instructions.get(i);
+        for (int j = 0; j < operandCount[value]; j++) {
+          if (isBlockOperand(value, j)) continue;
+          var slot = operandStart[value] + j;
+          operands.set(slot, mapping.applyAsInt(operands.get(slot)));
+        }
+      }
+  }
+
+  public void replaceAllUses(int from, int to) {
+    rewriteOperands(v -> v == from ? to : v);
+  }
+
+  // endregion
+
+  // region Blocks
+
+  public int newBlock() {
+    blocks.add(new IntList());
+    preds.add(new IntList(2));
+    return blocks.size() - 1;
+  }
+
+  public int blockCount() {
+    return blocks.size();
+  }
+
+  /** @return the instructions of the block in order, phis first and the terminator last */
+  public @NotNull IntList instructions(int block) {
+    return blocks.get(block);
+  }
+
+  /** @return the terminator, or {@code -1} if the block is still open */
+  public int terminator(int block) {
+    var instructions = blocks.get(block);
+    if (instructions.isEmpty()) return -1;
+    var last = instructions.last();
+    return ops[last].isTerminator() ? last : -1;
+  }
+
+  public @NotNull IntList predecessors(int block) {
+    return preds.get(block);
+  }
+
+  public int @NotNull [] successors(int block) {
+    var terminator = terminator(block);
+    if (terminator < 0) return new int[0];
+    return switch (ops[terminator]) {
+      case Jump -> new int[]{operand(terminator, 0)};
+      case Branch -> operand(terminator, 1) == operand(terminator, 2)
+        ? new int[]{operand(terminator, 1)}
+        : new int[]{operand(terminator, 1), operand(terminator, 2)};
+      default -> new int[0];
+    };
+  }
+
+  public void addEdge(int from, int to) {
+    var list = preds.get(to);
+    if (!list.contains(from)) list.add(from);
+  }
+
+  public void recomputePredecessors() {
+    preds.forEach(IntList::clear);
+    for (int b = 0; b < blocks.size(); b++)
+      for (var succ : successors(b)) addEdge(b, succ);
+  }
+
+  public int phiIncomingCount(int phi) {
+    return operandCount[phi] / 2;
+  }
+
+  public int phiBlock(int phi, int index) {
+    return operand(phi, index * 2);
+  }
+
+  public int phiValue(int phi, int index) {
+    return operand(phi, index * 2 + 1);
+  }
+
+  /** @return the value flowing into the phi from the predecessor, or {@code -1} */
+  public int phiValueFrom(int phi, int pred) {
+    for (int i = 0; i < phiIncomingCount(phi); i++)
+      if (phiBlock(phi, i) == pred) return phiValue(phi, i);
+    return -1;
+  }
+
+  /**
+   * Drops blocks for which {@code keep} is false and renumbers the others densely,
+   * preserving their order. Edges into dropped blocks must already be gone,
+   * phi operands from dropped blocks are removed.
+   */
+  public void retainBlocks(boolean @NotNull [] keep) {
+    var renumber = new int[blocks.size()];
+    var count = 0;
+    for (int b = 0; b < blocks.size(); b++) renumber[b] = keep[b] ? count++ : -1;
+    var newBlocks = new ArrayList<IntList>(count);
+    for (int b = 0; b < blocks.size(); b++) {
+      var instructions = blocks.get(b);
+      if (!keep[b]) {
+        for (int i = 0; i < instructions.size(); i++) blockOf[instructions.get(i)] = -1;
+        continue;
+      }
+      for (int i = 0; i < instructions.size(); i++) {
+        var value = instructions.get(i);
+        blockOf[value] = renumber[b];
+        if (ops[value] == Opcode.Phi) {
+          var incoming = new IntList(operandCount[value]);
+          for (int j = 0; j < phiIncomingCount(value); j++) {
+            var pred = renumber[phiBlock(value, j)];
+            if (pred < 0) continue;
+            incoming.add(pred);
+            incoming.add(phiValue(value, j));
+          }
+          setOperands(value, incoming.toArray());
+        } else for (int j = 0; j < operandCount[value]; j++)
+          if (isBlockOperand(value, j)) setOperand(value, j, renumber[operand(value, j)]);
+      }
+      newBlocks.add(instructions);
+    }
+    blocks.clear();
+    blocks.addAll(newBlocks);
+    preds.clear();
+    for (int b = 0; b < count; b++) preds.add(new IntList(2));
+    recomputePredecessors();
+  }
+
+  // endregion
+
+  public @NotNull String valueName(int value) {
+    return switch (ops[value]) {
+      case IConst -> String.valueOf(imms[value]);
+      case FConst -> Float.intBitsToFloat(imms[value]) + "f";
+      case Undef -> "undef";
+      case GlobalAddr -> "@" + imms[value];
+      default -> "%" + value;
+    };
+  }
+
+  @Override public @NotNull String toString() {
+    var builder = new StringBuilder();
+    builder.append("fn @").append(name).append('(');
+    for (int i = 0; i < params.length; i++) builder.append(i == 0 ? "" : ", ").append(params[i]);
+    builder.append("): ").append(result).append(" {\n");
+    for (int b = 0; b < blocks.size(); b++) {
+      builder.append("bb").append(b).append(":");
+      var predecessors = preds.get(b);
+      if (!predecessors.isEmpty()) {
+        builder.append(" ; preds =");
+        for (int i = 0; i < predecessors.size(); i++) builder.append(" bb").append(predecessors.get(i));
+      }
+      builder.append('\n');
+      var instructions = blocks.get(b);
+      for (int i = 0; i < instructions.size(); i++) {
+        var value = instructions.get(i);
+        builder.append("  ");
+        if (types[value] != ValueType.Void) builder.append('%').append(value).append(": ").append(types[value]).append(" = ");
+        builder.append(ops[value].mnemonic);
+        if (ops[value].hasImmediate()) builder.append(" #").append(imms[value]);
+        for (int j = 0; j < operandCount[value]; j++) {
+          var operand = operand(value, j);
+          builder.append(j == 0 ? " " : ", ");
+          builder.append(isBlockOperand(value, j) ? "bb" + operand : valueName(operand));
+        }
+        builder.append('\n');
+      }
+    }
+    return builder.append("}").toString();
+  }
+}
@@ -0,0 +1,99 @@
+package org.brunhild.compiling.ir;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+/** A growable {@code int[]}, the building block of the dense IR tables. */
+public final class IntList {
+  private int[] data;
+  private int size;
+
+  public IntList() {
+    this(8);
+  }
+
+  public IntList(int capacity) {
+    this.data = new int[Math.max(capacity, 1)];
+  }
+
+  public static @NotNull IntList of(int... values) {
+    var list = new IntList(values.length);
+    for (var v : values) list.add(v);
+    return list;
+  }
+
+  public void add(int value) {
+    if (size == data.length) data = Arrays.copyOf(data, size * 2);
+    data[size++] = value;
+  }
+
+  public void addAll(@NotNull IntList other) {
+    for (int i = 0; i < other.size; i++) add(other.data[i]);
+  }
+
+  public int get(int index) {
+    assert index < size;
+    return data[index];
+  }
+
+  public void set(int index, int value) {
+    assert index < size;
+    data[index] = value;
+  }
+
+  public int last() {
+    return data[size - 1];
+  }
+
+  public int removeLast() {
+    return data[--size];
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  public boolean contains(int value) {
+    return indexOf(value) >= 0;
+  }
+
+  public int indexOf(int value) {
+    for (int i = 0; i < size; i++) if (data[i] == value) return i;
+    return -1;
+  }
+
+  public void insert(int index, int value) {
+    add(0);
+    System.arraycopy(data, index, data, index + 1, size - index - 1);
+    data[index] = value;
+  }
+
+  public void remove(int index) {
+    System.arraycopy(data, index + 1, data, index, size - index - 1);
+    size--;
+  }
+
+  /** Keeps elements satisfying the predicate in their order. */
+  public void retain(@NotNull java.util.function.IntPredicate keep) {
+    int j = 0;
+    for (int i = 0; i < size; i++) if (keep.test(data[i])) data[j++] = data[i];
+    size = j;
+  }
+
+  public void clear() {
+    size = 0;
+  }
+
+  public int @NotNull [] toArray() {
+    return Arrays.copyOf(data, size);
+  }
+
+  @Override public @NotNull String toString() {
+    return Arrays.toString(toArray());
+  }
+}
@@ -0,0 +1,605 @@
+package org.brunhild.compiling.ir;
+
+import kala.collection.immutable.ImmutableSeq;
+import org.brunhild.compiling.Pass;
+import org.brunhild.compiling.interpret.PrimRuntime;
+import org.brunhild.concrete.Expr;
+import org.brunhild.core.Def;
+import org.brunhild.core.PackedInts;
+import org.brunhild.core.Proclaim;
+import org.brunhild.core.Term;
+import org.brunhild.generic.DefVar;
+import org.brunhild.generic.Type;
+import org.brunhild.generic.Var;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Lowers checked core into SSA, using the on-the-fly construction of Braun et al.
+ * (Simple and Efficient Construction of Static Single Assignment Form): scalar locals
+ * never touch memory, every block remembers the current definition of each variable
+ * and phis are only created where definitions actually meet. Control flow, including
+ * short-circuit {@code &&} and {@code ||}, becomes explicit branches.
+ */
+public final class Lowering {
+  /** The parameter is the name of the produced module. */
+  public static final @NotNull Pass<ImmutableSeq<Proclaim>, Module, String> Pass =
+    (program, name) -> new Lowering(name).lower(program);
+
+  private final @NotNull Module module;
+  private final @NotNull Map<DefVar<?, ?>, Integer> functions = new HashMap<>();
+  private final @NotNull Map<Var, Integer> globals = new HashMap<>();
+
+  private Lowering(@NotNull String name) {
+    this.module = new Module(name);
+  }
+
+  private @NotNull Module lower(@NotNull ImmutableSeq<Proclaim> program) {
+    var fnDefs = program.filterIsInstance(Def.FnDef.class);
+    fnDefs.forEachIndexed((i, fn) -> functions.put(fn.ref, i));
+    program.filterIsInstance(Def.VarDef.class).forEach(varDef -> {
+      globals.put(varDef.ref, module.globals.size());
+      module.globals.add(global(varDef));
+    });
+    fnDefs.forEach(fn -> module.functions.add(new FnLowering(fn).lower()));
+    return module;
+  }
+
+  // region Globals
+
+  private static @NotNull Module.Global global(@NotNull Def.VarDef varDef) {
+    var name = varDef.ref.name();
+    var type = varDef.result.unconst();
+    if (!(type instanceof Type.Array<Term> array)) {
+      var elementType = ValueType.of(type);
+      var bits = constantBits(varDef.body, elementType);
+      return new Module.Global(name, elementType, new int[0], bits == 0 ? null : new int[]{bits});
+    }
+    var elementType = ValueType.of(array.scalarType());
+    var dims = dimensions(array);
+    if (varDef.body instanceof Term.UninitializedArray)
+      return new Module.Global(name, elementType, dims, null);
+    var init = new int[array.flatSize()];
+    var leaves = new ArrayList<Leaf>();
+    var runs = new ArrayList<Run>();
+    flatten(varDef.body, 0, leaves, runs);
+    for (var leaf : leaves) init[leaf.offset] = constantBits(leaf.term, elementType);
+    for (var run : runs) run.words.forEachNonZero((i, word) -> init[run.offset + i] = word);
+    return new Module.Global(name, elementType, dims, init);
+  }
+
+  private static int @NotNull [] dimensions(@NotNull Type.Array<Term> array) {
+    var dims = new IntList(4);
+    Type<Term> type = array;
+    while (type instanceof Type.Array<Term> sub) {
+      if (!(sub.dimension() instanceof Type.DimConst dim))
+        throw new IllegalStateException("array dimension is not known: " + sub.dimension());
+      dims.add(dim.dimension());
+      type = sub.elementType().unconst();
+    }
+    return dims.toArray();
+  }
+
+  private static int constantBits(@NotNull Term term, @NotNull ValueType type) {
+    var value = constant(term);
+    if (type == ValueType.F32) return Float.floatToRawIntBits(value.floatValue());
+    return value instanceof Float f ? (int) (float) f : value.intValue();
+  }
+
+  private static @NotNull Number constant(@NotNull Term term) {
+    return switch (term) {
+      case Term.LitTerm lit && lit.literal().isLeft() ->
+        lit.literal().getLeftValue().fold(i -> (Number) i, f -> (Number) f);
+      case Term.CoerceTerm coerce -> {
+        var value = constant(coerce.term());
+        yield ValueType.of(coerce.toType()) == ValueType.F32 ? (Number) value.floatValue() : (Number) (
+          value instanceof Float f ? (int) (float) f : value.intValue());
+      }
+      case Term.UnaryTerm unary && unary.op() == Expr.UnaryOP.NEG -> {
+        var value = constant(unary.term());
+        yield value instanceof Float f ? (Number) (-f) : (Number) (-value.intValue());
+      }
+      case Term.UnaryTerm unary && unary.op() == Expr.UnaryOP.POS -> constant(unary.term());
+      default -> throw new IllegalArgumentException("global initializer is not a constant: " + term);
+    };
+  }
+
+  /** A scalar element of an array initializer at a row-major offset. */
+  private record Leaf(int offset, @NotNull Term term) {}
+
+  /** The words of a {@link Term.PackedArray}, already in the representation of the element type. */
+  private record Run(int offset, @NotNull PackedInts words) {}
+
+  private static void flatten(
+    @NotNull Term term, int offset,
+    @NotNull ArrayList<Leaf> leaves, @NotNull ArrayList<Run> runs
+  ) {
+    switch (term) {
+      case Term.InitializedArray array -> {
+        var stride = array.type().elementType().flatSize();
+        array.values().forEachIndexed((i, value) -> flatten(value, offset + i * stride, leaves, runs));
+      }
+      case Term.PackedArray packed -> runs.add(new Run(offset, packed.values()));
+      case Term.UninitializedArray ignored -> {}
+      default -> leaves.add(new Leaf(offset, term));
+    }
+  }
+
+  // endregion
+
+  private final class FnLowering {
+    private final @NotNull Def.FnDef def;
+    private final @NotNull Function fn;
+    /** The current definition of each local variable, per block. */
+    private final @NotNull ArrayList<HashMap<Var, Integer>> defs = new ArrayList<>();
+    private final @NotNull ArrayList<LinkedHashMap<Var, Integer>> incompletePhis = new ArrayList<>();
+    private final @NotNull BitSet sealed = new BitSet();
+    private final @NotNull Map<Var, ValueType> locals = new HashMap<>();
+    /** Trivial phis are forwarded to the value they are equivalent to. */
+    private final @NotNull IntList forward = new IntList();
+    private int current;
+    private int entryCursor = 0;
+    private int breakTarget = -1;
+    private int continueTarget = -1;
+
+    FnLowering(@NotNull Def.FnDef def) {
+      this.def = def;
+      var params = def.telescope.map(p -> ValueType.of(p.type())).toArray(ValueType.class);
+      this.fn = new Function(def.ref.name(), ValueType.of(def.result), params);
+    }
+
+    @NotNull Function lower() {
+      current = newBlock();
+      seal(current);
+      def.telescope.forEachIndexed((i, param) -> {
+        var type = fn.params[i];
+        var value = fn.append(current, Opcode.Param, type, i);
+        entryCursor++;
+        locals.put(param.ref(), type);
+        write(param.ref(), current, value);
+      });
+      stmt(def.body);
+      if (!terminated()) {
+        if (fn.result == ValueType.Void) terminate(Opcode.Return);
+        else terminate(Opcode.Return, fn.result == ValueType.F32 ? fn.fconst(0) : fn.iconst(0));
+      }
+      assert sealed.cardinality() == fn.blockCount() : "unsealed blocks";
+      pruneUnreachable();
+      removeTrivialPhis();
+      fn.rewriteOperands(this::find);
+      return fn;
+    }
+
+    // region SSA construction
+
+    private int newBlock() {
+      defs.add(new HashMap<>());
+      incompletePhis.add(new LinkedHashMap<>());
+      return fn.newBlock();
+    }
+
+    private void write(@NotNull Var var, int block, int value) {
+      defs.get(block).put(var, value);
+    }
+
+    private int read(@NotNull Var var, int block) {
+      var value = defs.get(block).get(var);
+      if (value != null) return find(value);
+      return readRecursive(var, block);
+    }
+
+    private int readRecursive(@NotNull Var var, int block) {
+      var type = locals.get(var);
+      if (type == null) throw new IllegalStateException("unbound variable: " + var.name());
+      int value;
+      var preds = fn.predecessors(block);
+      if (!sealed.get(block)) {
+        value = fn.insertPhi(block, type);
+        incompletePhis.get(block).put(var, value);
+      } else if (preds.size() == 1) {
+        value = read(var, preds.get(0));
+      } else if (preds.isEmpty()) {
+        value = fn.undef(type);
+      } else {
+        // break cycles before visiting predecessors
+        var phi = fn.insertPhi(block, type);
+        write(var, block, phi);
+        value = addPhiOperands(var, phi);
+      }
+      write(var, block, value);
+      return value;
+    }
+
+    private int addPhiOperands(@NotNull Var var, int phi) {
+      var preds = fn.predecessors(fn.block(phi));
+      var incoming = new int[preds.size() * 2];
+      for (int i = 0; i < preds.size(); i++) {
+        incoming[i * 2] = preds.get(i);
+        incoming[i * 2 + 1] = read(var, preds.get(i));
+      }
+      fn.setOperands(phi, incoming);
+      return tryRemoveTrivialPhi(phi);
+    }
+
+    private int tryRemoveTrivialPhi(int phi) {
+      var same = -1;
+      for (int i = 0; i < fn.phiIncomingCount(phi); i++) {
+        var value = find(fn.phiValue(phi, i));
+        if (value == same || value == phi) continue;
+        if (same >= 0) return phi;
+        same = value;
+      }
+      if (same < 0) same = fn.undef(fn.type(phi));
+      fn.remove(phi);
+      while (forward.size() <= phi) forward.add(-1);
+      forward.set(phi, same);
+      return same;
+    }
+
+    private int find(int value) {
+      var root = value;
+      while (root < forward.size() && forward.get(root) >= 0) root = forward.get(root);
+      while (value != root) {
+        var next = forward.get(value);
+        forward.set(value, root);
+        value = next;
+      }
+      return root;
+    }
+
+    private void seal(int block) {
+      var phis = incompletePhis.get(block);
+      sealed.set(block);
+      phis.forEach(this::addPhiOperands);
+      phis.clear();
+    }
+
+    /** Removing one trivial phi may make others trivial, so we iterate to a fixpoint. */
+    private void removeTrivialPhis() {
+      var changed = true;
+      while (changed) {
+        changed = false;
+        for (int b = 0; b < fn.blockCount(); b++) {
+          for (var value : fn.instructions(b).toArray()) {
+            if (fn.op(value) != Opcode.Phi) break;
+            if (tryRemoveTrivialPhi(value) != value) changed = true;
+          }
+        }
+      }
+    }
+
+    private void pruneUnreachable() {
+      var keep = new boolean[fn.blockCount()];
+      var worklist = new IntList();
+      worklist.add(Function.ENTRY);
+      keep[Function.ENTRY] = true;
+      while (!worklist.isEmpty()) {
+        for (var succ : fn.successors(worklist.removeLast())) {
+          if (keep[succ]) continue;
+          keep[succ] = true;
+          worklist.add(succ);
+        }
+      }
+      fn.retainBlocks(keep);
+    }
+
+    // endregion
+
+    // region Control flow
+
+    private boolean terminated() {
+      return fn.terminator(current) >= 0;
+    }
+
+    private void terminate(@NotNull Opcode op, int... operands) {
+      fn.append(current, op, ValueType.Void, 0, operands);
+      switch (op) {
+        case Jump -> fn.addEdge(current, operands[0]);
+        case Branch -> {
+          fn.addEdge(current, operands[1]);
+          fn.addEdge(current, operands[2]);
+        }
+        default -> {}
+      }
+    }
+
+    private void jump(int target) {
+      terminate(Opcode.Jump, target);
+    }
+
+    /** Statements after a jump are unreachable, they go to a fresh block that is pruned later. */
+    private void ensureOpen() {
+      if (!terminated()) return;
+      current = newBlock();
+      seal(current);
+    }
+
+    private void stmt(@NotNull Proclaim proclaim) {
+      ensureOpen();
+      switch (proclaim) {
+        case Def.VarDef varDef -> {
+          var type = ValueType.of(varDef.result);
+          locals.put(varDef.ref, type);
+          if (varDef.body instanceof Term.ArrayTerm array) {
+            var size = array.type().flatSize();
+            var ptr = fn.insert(Function.ENTRY, entryCursor++, Opcode.Alloca, ValueType.Ptr, size);
+            initialize(ptr, array);
+            write(varDef.ref, current, ptr);
+          } else write(varDef.ref, current, expr(varDef.body));
+        }
+        case Proclaim.BlockProclaim block -> block.block().forEach(this::stmt);
+        case Proclaim.VarAssignProclaim assign -> {
+          var value = expr(assign.rvalue());
+          var global = globals.get(assign.var());
+          if (global != null) store(fn.global(global), value);
+          else write(assign.var(), current, value);
+        }
+        case Proclaim.IndexAssignProclaim assign -> {
+          var ptr = address(assign.term(), assign.index());
+          store(ptr, expr(assign.rvalue()));
+        }
+        case Proclaim.TermProclaim term -> expr(term.term());
+        case Proclaim.IfProclaim ifProclaim -> {
+          var then = newBlock();
+          var merge = newBlock();
+          var otherwise = ifProclaim.elseBranch().isDefined() ? newBlock() : merge;
+          branch(ifProclaim.cond(), then, otherwise);
+          seal(then);
+          current = then;
+          stmt(ifProclaim.thenBranch());
+          if (!terminated()) jump(merge);
+          if (ifProclaim.elseBranch().isDefined()) {
+            seal(otherwise);
+            current = otherwise;
+            stmt(ifProclaim.elseBranch().get());
+            if (!terminated()) jump(merge);
+          }
+          seal(merge);
+          current = merge;
+        }
+        // as a guarded do-while, the condition is tested once before the loop and then at its end,
+        // so the preheader, left empty here, only runs when the body does
+        case Proclaim.WhileProclaim whileProclaim -> {
+          var preheader = newBlock();
+          var body = newBlock();
+          var latch = newBlock();
+          var exit = newBlock();
+          branch(whileProclaim.cond(), preheader, exit);
+          seal(preheader);
+          current = preheader;
+          jump(body);
+          var outerBreak = breakTarget;
+          var outerContinue = continueTarget;
+          breakTarget = exit;
+          continueTarget = latch;
+          current = body;
+          stmt(whileProclaim.body());
+          if (!terminated()) jump(latch);
+          breakTarget = outerBreak;
+          continueTarget = outerContinue;
+          seal(latch);
+          current = latch;
+          branch(whileProclaim.cond(), body, exit);
+          seal(body);
+          seal(exit);
+          current = exit;
+        }
+        case Proclaim.ReturnProclaim ret -> {
+          if (ret.term().isEmpty()) terminate(Opcode.Return);
+          else terminate(Opcode.Return, expr(ret.term().get()));
+        }
+        case Proclaim.BreakProclaim ignored -> jump(breakTarget);
+        case Proclaim.ContinueProclaim ignored -> jump(continueTarget);
+        case Def.FnDef ignored -> throw new IllegalStateException("nested function");
+        case Def.PrimDef ignored -> throw new IllegalStateException("nested primitive");
+      }
+    }
+
+    /** Lowers a condition into branches, every block it creates is sealed before it returns. */
+    /**
+     * Chains of {@code &&} and {@code ||} lean left as deep as they are long, so the
+     * targets of the operands on their left spine are worked out first, going down, and
+     * the operands are then branched on from the innermost one up in a loop.
+     */
+    private void branch(@NotNull Term cond, int ifTrue, int ifFalse) {
+      switch (cond) {
+        case Term.BinaryTerm bin && isLogical(bin.op()) -> {
+          var spine = new ArrayList<Logical>();
+          Term left = bin;
+          while (left instanceof Term.BinaryTerm chain && isLogical(chain.op())) {
+            var rhs = newBlock();
+            spine.add(new Logical(chain.rhs(), rhs, ifTrue, ifFalse));
+            if (chain.op() == Term.BinOP.LOGICAL_AND) ifTrue = rhs;
+            else ifFalse = rhs;
+            left = chain.lhs();
+          }
+          branch(left, ifTrue, ifFalse);
+          for (int i = spine.size() - 1; i >= 0; i--) {
+            var logical = spine.get(i);
+            seal(logical.block);
+            current = logical.block;
+            branch(logical.rhs, logical.ifTrue, logical.ifFalse);
+          }
+        }
+        case Term.UnaryTerm unary && unary.op() == Expr.UnaryOP.LOGICAL_NOT -> branch(unary.term(), ifFalse, ifTrue);
+        case Term.LitTerm lit && lit.literal().isLeft() && lit.literal().getLeftValue().isLeft() ->
+          jump(lit.literal().getLeftValue().getLeftValue() != 0 ? ifTrue : ifFalse);
+        default -> {
+          var value = expr(cond);
+          if (fn.type(value) == ValueType.F32) value = emit(Opcode.FNe, ValueType.I32, 0, value, fn.fconst(0));
+          terminate(Opcode.Branch, value, ifTrue, ifFalse);
+        }
+      }
+    }
+
+    /** The right operand of a logical operator, branched on in its own block. */
+    private record Logical(@NotNull Term rhs, int block, int ifTrue, int ifFalse) {}
+
+    private static boolean isLogical(@NotNull Term.BinOP op) {
+      return op == Term.BinOP.LOGICAL_AND || op == Term.BinOP.LOGICAL_OR;
+    }
+
+    // endregion
+
+    // region Expressions
+
+    private int emit(@NotNull Opcode op, @NotNull ValueType type, int imm, int... operands) {
+      return fn.append(current, op, type, imm, operands);
+    }
+
+    private void store(int ptr, int value) {
+      emit(Opcode.Store, ValueType.Void, 0, ptr, value);
+    }
+
+    private int expr(@NotNull Term term) {
+      return switch (term) {
+        case Term.LitTerm lit -> {
+          var literal = lit.literal();
+          if (literal.isRight()) throw new IllegalStateException("string literals are not supported in native code");
+          var number = literal.getLeftValue();
+          yield number.isLeft() ? fn.iconst(number.getLeftValue()) : fn.fconst(number.getRightValue());
+        }
+        case Term.RefTerm ref -> {
+          var global = globals.get(ref.var());
+          if (global == null) yield read(ref.var(), current);
+          var ptr = fn.global(global);
+          if (module.globals.get(global).isArray()) yield ptr;
+          yield emit(Opcode.Load, ValueType.of(ref.type()), 0, ptr);
+        }
+        case Term.IndexTerm index -> {
+          var ptr = address(index.term(), index.index());
+          if (index.type().unconst() instanceof Type.Array<Term>) yield ptr;
+          yield emit(Opcode.Load, ValueType.of(index.type()), 0, ptr);
+        }
+        case Term.FnCall call -> emit(Opcode.Call, ValueType.of(call.type()),
+          functions.get(call.fn()), args(call.args()));
+        case Term.PrimCall call -> emit(Opcode.CallPrim, ValueType.of(call.type()),
+          PrimRuntime.factoryOf(call.prim().core).ordinal(), args(call.args()));
+        case Term.CoerceTerm coerce -> {
+          var from = ValueType.of(coerce.fromType());
+          var to = ValueType.of(coerce.toType());
+          var value = expr(coerce.term());
+          if (from == to) yield value;
+          yield emit(to == ValueType.F32 ? Opcode.IToF : Opcode.FToI, to, 0, value);
+        }
+        case Term.UnaryTerm unary -> {
+          var value = expr(unary.term());
+          var isFloat = fn.type(value) == ValueType.F32;
+          yield switch (unary.op()) {
+            case POS -> value;
+            case NEG -> emit(isFloat ? Opcode.FNeg : Opcode.Neg, fn.type(value), 0, value);
+            case LOGICAL_NOT -> isFloat
+              ? emit(Opcode.FEq, ValueType.I32, 0, value, fn.fconst(0))
+              : emit(Opcode.Eq, ValueType.I32, 0, value, fn.iconst(0));
+          };
+        }
+        case Term.BinaryTerm bin -> binary(bin);
+        case Term.ArrayTerm array -> throw new IllegalStateException("array literal outside of a definition: " + array);
+      };
+    }
+
+    private int @NotNull [] args(@NotNull ImmutableSeq<Term> args) {
+      var values = new int[args.size()];
+      args.forEachIndexed((i, arg) -> values[i] = expr(arg));
+      return values;
+    }
+
+    private int binary(@NotNull Term.BinaryTerm bin) {
+      if (isLogical(bin.op())) {
+        var ifTrue = newBlock();
+        var ifFalse = newBlock();
+        var merge = newBlock();
+        branch(bin, ifTrue, ifFalse);
+        seal(ifTrue);
+        seal(ifFalse);
+        current = ifTrue;
+        jump(merge);
+        current = ifFalse;
+        jump(merge);
+        seal(merge);
+        current = merge;
+        var phi = fn.insertPhi(merge, ValueType.I32);
+        fn.setOperands(phi, ifTrue, fn.iconst(1), ifFalse, fn.iconst(0));
+        return phi;
+      }
+      // the left spine of a chain of arithmetic is lowered in a loop, from its innermost operand up
+      var spine = new ArrayList<Term.BinaryTerm>();
+      Term left = bin;
+      while (left instanceof Term.BinaryTerm chain && !isLogical(chain.op())) {
+        spine.add(chain);
+        left = chain.lhs();
+      }
+      var value = expr(left);
+      for (int i = spine.size() - 1; i >= 0; i--) value = arithmetic(spine.get(i).op(), value, expr(spine.get(i).rhs()));
+      return value;
+    }
+
+    private int arithmetic(@NotNull Term.BinOP binOP, int lhs, int rhs) {
+      var isFloat = fn.type(lhs) == ValueType.F32;
+      var op = isFloat ? switch (binOP) {
+        case ADD -> Opcode.FAdd;
+        case SUB -> Opcode.FSub;
+        case MUL -> Opcode.FMul;
+        case DIV -> Opcode.FDiv;
+        case EQ -> Opcode.FEq;
+        case NE -> Opcode.FNe;
+        case LT -> Opcode.FLt;
+        case LE -> Opcode.FLe;
+        case GT -> Opcode.FGt;
+        case GE -> Opcode.FGe;
+        default -> throw new IllegalStateException("type checker bug?");
+      } : switch (binOP) {
+        case ADD -> Opcode.Add;
+        case SUB -> Opcode.Sub;
+        case MUL -> Opcode.Mul;
+        case DIV -> Opcode.Div;
+        case MOD -> Opcode.Rem;
+        case SHL -> Opcode.Shl;
+        case SHR -> Opcode.Sar;
+        case USHR -> Opcode.Shr;
+        case MULHI -> Opcode.MulHi;
+        case EQ -> Opcode.Eq;
+        case NE -> Opcode.Ne;
+        case LT -> Opcode.Lt;
+        case LE -> Opcode.Le;
+        case GT -> Opcode.Gt;
+        case GE -> Opcode.Ge;
+        default -> throw new IllegalStateException("unreachable");
+      };
+      return emit(op, op.isComparison() ? ValueType.I32 : fn.type(lhs), 0, lhs, rhs);
+    }
+
+    private int address(@NotNull Term array, @NotNull Term index) {
+      var base = expr(array);
+      var element = ((Type.Array<Term>) array.type().unconst()).elementType();
+      return emit(Opcode.Gep, ValueType.Ptr, element.flatSize(), base, expr(index));
+    }
+
+    /** Partially initialized arrays are cleared first, then explicit non-zero elements are stored. */
+    private void initialize(int ptr, @NotNull Term.ArrayTerm array) {
+      if (array instanceof Term.UninitializedArray) return;
+      var leaves = new ArrayList<Leaf>();
+      var runs = new ArrayList<Run>();
+      flatten(array, 0, leaves, runs);
+      // zeros of packed runs are left to the clearing, even if the source spelled them out
+      var complete = leaves.size() + runs.stream().mapToInt(run -> run.words.nonZeros()).sum() == array.type().flatSize();
+      if (!complete) emit(Opcode.MemZero, ValueType.Void, array.type().flatSize(), ptr);
+      var isFloat = array.type().scalarType() instanceof Type.Float<Term>;
+      for (var run : runs) run.words.forEachNonZero((i, word) -> store(
+        emit(Opcode.Gep, ValueType.Ptr, 1, ptr, fn.iconst(run.offset + i)),
+        isFloat ? fn.fconst(Float.intBitsToFloat(word)) : fn.iconst(word)));
+      for (var leaf : leaves) {
+        var value = expr(leaf.term);
+        if (!complete && fn.isConstant(value) && fn.imm(value) == 0) continue;
+        store(emit(Opcode.Gep, ValueType.Ptr, 1, ptr, fn.iconst(leaf.offset)), value);
+      }
+    }
+
+    // endregion
+  }
+}
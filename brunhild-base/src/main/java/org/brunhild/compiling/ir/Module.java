@@ -0,0 +1,65 @@
+package org.brunhild.compiling.ir;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+
+/** A lowered program: functions are referred to by their index in {@link #functions}. */
+public final class Module {
+  /**
+   * A global scalar, or an array with the given dimensions, outermost first.
+   *
+   * @param init raw bits of the initial elements in row-major order (floats via
+   *             {@link Float#floatToRawIntBits}), {@code null} for zero-initialized globals
+   */
+  public record Global(
+    @NotNull String name,
+    @NotNull ValueType elementType,
+    int @NotNull [] dims,
+    int @Nullable [] init
+  ) {
+    public boolean isArray() {
+      return dims.length > 0;
+    }
+
+    /** @return number of scalar elements */
+    public int size() {
+      var size = 1;
+      for (var dim : dims) size *= dim;
+      return size;
+    }
+
+    public boolean isZero() {
+      if (init == null) return true;
+      for (var bits : init) if (bits != 0) return false;
+      return true;
+    }
+  }
+
+  public final @NotNull String name;
+  public final @NotNull ArrayList<Function> functions = new ArrayList<>();
+  public final @NotNull ArrayList<Global> globals = new ArrayList<>();
+
+  public Module(@NotNull String name) {
+    this.name = name;
+  }
+
+  public int indexOf(@NotNull String function) {
+    for (int i = 0; i < functions.size(); i++) if (functions.get(i).name.equals(function)) return i;
+    return -1;
+  }
+
+  @Override public @NotNull String toString() {
+    var builder = new StringBuilder();
+    for (int i = 0; i < globals.size(); i++) {
+      var global = globals.get(i);
+      builder.append("global @").append(i).append(' ').append(global.name).append(": ")
+        .append(global.elementType);
+      for (var dim : global.dims) builder.append('[').append(dim).append(']');
+      builder.append(global.isZero() ? " = zero\n" : " = data\n");
+    }
+    for (var function : functions) builder.append(function).append('\n');
+    return builder.toString();
+  }
+}
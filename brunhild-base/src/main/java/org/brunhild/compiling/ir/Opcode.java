@@ -0,0 +1,101 @@
+package org.brunhild.compiling.ir;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Instructions of the SSA IR. Integer comparisons and logical operations produce
+ * {@code i32} zero or one, pointers are untyped and address 4-byte elements.
+ *
+ * @see Function for operand layout
+ */
+public enum Opcode {
+  /** imm: the value */
+  IConst("iconst"),
+  /** imm: raw float bits */
+  FConst("fconst"),
+  /** imm: the index of the parameter */
+  Param("param"),
+  /** imm: the index of the global in the module */
+  GlobalAddr("global"),
+  Undef("undef"),
+
+  Add("add"), Sub("sub"), Mul("mul"), Div("div"), Rem("rem"),
+  /** the high half of the 64-bit product */
+  MulHi("mulhi"),
+  /** the arithmetic and logical right shifts */
+  Shl("shl"), Sar("sar"), Shr("shr"),
+  Neg("neg"),
+  FAdd("fadd"), FSub("fsub"), FMul("fmul"), FDiv("fdiv"),
+  FNeg("fneg"),
+  Eq("eq"), Ne("ne"), Lt("lt"), Le("le"), Gt("gt"), Ge("ge"),
+  FEq("feq"), FNe("fne"), FLt("flt"), FLe("fle"), FGt("fgt"), FGe("fge"),
+  IToF("itof"), FToI("ftoi"),
+
+  /** imm: number of elements, only appears in the entry block */
+  Alloca("alloca"),
+  /** operands: pointer */
+  Load("load"),
+  /** operands: pointer, value */
+  Store("store"),
+  /** operands: pointer, index; imm: stride in elements */
+  Gep("gep"),
+  /** operands: pointer; imm: number of elements to clear */
+  MemZero("memzero"),
+
+  /** operands: arguments; imm: the index of the function in the module */
+  Call("call"),
+  /** operands: arguments; imm: the ordinal of the {@link org.brunhild.core.Def.PrimFactory} */
+  CallPrim("callprim"),
+
+  /** operands: pairs of predecessor block and incoming value */
+  Phi("phi"),
+
+  /** operands: target block */
+  Jump("jump"),
+  /** operands: condition, then block, else block */
+  Branch("br"),
+  /** operands: an optional value */
+  Return("ret"),
+  ;
+
+  public final @NotNull String mnemonic;
+
+  Opcode(@NotNull String mnemonic) {
+    this.mnemonic = mnemonic;
+  }
+
+  public boolean isTerminator() {
+    return this == Jump || this == Branch || this == Return;
+  }
+
+  public boolean isCommutative() {
+    return switch (this) {
+      case Add, Mul, MulHi, FAdd, FMul, Eq, Ne, FEq, FNe -> true;
+      default -> false;
+    };
+  }
+
+  public boolean isComparison() {
+    return compareTo(Eq) >= 0 && compareTo(FGe) <= 0;
+  }
+
+  /** Instructions with effects observable other than their results. */
+  public boolean hasSideEffect() {
+    return switch (this) {
+      case Store, MemZero, Call, CallPrim, Jump, Branch, Return -> true;
+      default -> false;
+    };
+  }
+
+  /** Instructions that may trap and cannot be speculated, division by zero is undefined. */
+  public boolean mayTrap() {
+    return this == Div || this == Rem || this == Load;
+  }
+
+  public boolean hasImmediate() {
+    return switch (this) {
+      case IConst, FConst, Param, GlobalAddr, Alloca, Gep, MemZero, Call, CallPrim -> true;
+      default -> false;
+    };
+  }
+}
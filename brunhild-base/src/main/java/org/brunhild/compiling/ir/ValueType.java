@@ -0,0 +1,33 @@
+package org.brunhild.compiling.ir;
+
+import org.brunhild.core.Term;
+import org.brunhild.generic.Type;
+import org.jetbrains.annotations.NotNull;
+
+public enum ValueType {
+  I32("i32"),
+  F32("f32"),
+  Ptr("ptr"),
+  Void("void"),
+  ;
+
+  public final @NotNull String name;
+
+  ValueType(@NotNull String name) {
+    this.name = name;
+  }
+
+  public static @NotNull ValueType of(@NotNull Type<Term> type) {
+    return switch (type.unconst()) {
+      case Type.Int<Term> ignored -> I32;
+      case Type.Float<Term> ignored -> F32;
+      case Type.Array<Term> ignored -> Ptr;
+      case Type.Void<Term> ignored -> Void;
+      default -> throw new IllegalArgumentException("no IR representation for " + type);
+    };
+  }
+
+  @Override public @NotNull String toString() {
+    return name;
+  }
+}
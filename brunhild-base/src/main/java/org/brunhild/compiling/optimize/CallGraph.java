@@ -0,0 +1,74 @@
+package org.brunhild.compiling.optimize;
+
+import kala.collection.immutable.ImmutableSeq;
+import org.brunhild.core.Def;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/** Which functions call which, for the passes visiting callees before their callers. */
+final class CallGraph {
+  private CallGraph() {}
+
+  /** @return the strongly connected components of the call graph, callees before callers, by Tarjan's algorithm */
+  static @NotNull List<Set<Def.FnDef>> components(
+    @NotNull ImmutableSeq<Def.FnDef> fns, @NotNull Map<Def.FnDef, Set<Def.FnDef>> callees
+  ) {
+    var components = new ArrayList<Set<Def.FnDef>>();
+    var index = new HashMap<Def.FnDef, Integer>();
+    var lowLink = new HashMap<Def.FnDef, Integer>();
+    var stack = new ArrayDeque<Def.FnDef>();
+    var onStack = new HashSet<Def.FnDef>();
+    for (var root : fns) {
+      if (index.containsKey(root)) continue;
+      // the call stack of a recursive formulation, with the callees still to visit
+      var frames = new ArrayDeque<Map.Entry<Def.FnDef, Iterator<Def.FnDef>>>();
+      visit(root, callees, index, lowLink, stack, onStack, frames);
+      while (!frames.isEmpty()) {
+        var frame = frames.peek();
+        var fn = frame.getKey();
+        if (frame.getValue().hasNext()) {
+          var callee = frame.getValue().next();
+          if (!index.containsKey(callee)) visit(callee, callees, index, lowLink, stack, onStack, frames);
+          else if (onStack.contains(callee)) lowLink.put(fn, Math.min(lowLink.get(fn), index.get(callee)));
+          continue;
+        }
+        frames.pop();
+        if (!frames.isEmpty()) {
+          var caller = frames.peek().getKey();
+          lowLink.put(caller, Math.min(lowLink.get(caller), lowLink.get(fn)));
+        }
+        if (!lowLink.get(fn).equals(index.get(fn))) continue;
+        var component = new HashSet<Def.FnDef>();
+        Def.FnDef member;
+        do {
+          member = stack.pop();
+          onStack.remove(member);
+          component.add(member);
+        } while (member != fn);
+        components.add(component);
+      }
+    }
+    return components;
+  }
+
+  private static void visit(
+    @NotNull Def.FnDef fn, @NotNull Map<Def.FnDef, Set<Def.FnDef>> callees,
+    @NotNull Map<Def.FnDef, Integer> index, @NotNull Map<Def.FnDef, Integer> lowLink,
+    @NotNull ArrayDeque<Def.FnDef> stack, @NotNull Set<Def.FnDef> onStack,
+    @NotNull ArrayDeque<Map.Entry<Def.FnDef, Iterator<Def.FnDef>>> frames
+  ) {
+    index.put(fn, index.size());
+    lowLink.put(fn, index.get(fn));
+    stack.push(fn);
+    onStack.add(fn);
+    frames.push(Map.entry(fn, callees.getOrDefault(fn, Set.of()).iterator()));
+  }
+}
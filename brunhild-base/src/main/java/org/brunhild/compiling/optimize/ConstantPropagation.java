@@ -0,0 +1,232 @@
+package org.brunhild.compiling.optimize;
+
+import kala.collection.immutable.ImmutableSeq;
+import kala.tuple.Unit;
+import org.brunhild.compiling.Pass;
+import org.brunhild.core.Def;
+import org.brunhild.core.Proclaim;
+import org.brunhild.core.Term;
+import org.brunhild.core.ops.ProclaimOps;
+import org.brunhild.core.ops.TermFold;
+import org.brunhild.generic.Type;
+import org.brunhild.generic.Var;
+import org.brunhild.tyck.Gamma;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Sparse conditional constant propagation on the proclaim tree: the scalar locals known
+ * to hold one number where they are used are replaced by it, and the terms folded. A
+ * branch is only followed if its condition may be true, so a variable assigned another
+ * value only there is still constant, and conditions found constant are left as literals
+ * for {@link DeadCode} to remove what they never run. Loops are followed to a fixpoint.
+ * <p>
+ * {@link TreeFold} does the same for {@code const} definitions only. Globals that no
+ * function assigns are constant here as well, scalars are never written through pointers.
+ */
+public final class ConstantPropagation {
+  public static final @NotNull Pass<ImmutableSeq<Proclaim>, ImmutableSeq<Proclaim>, Unit> Pass =
+    (program, unit) -> {
+      var propagation = new ConstantPropagation(program);
+      program.filterIsInstance(Def.FnDef.class).forEach(propagation::function);
+      return program;
+    };
+
+  private static final @NotNull Gamma.ConstGamma EMPTY = new Gamma.ConstGamma();
+
+  private final @NotNull Set<Var> globals = new HashSet<>();
+  /** Globals of a literal value no function assigns. */
+  private final @NotNull HashMap<Var, Term> fixed = new HashMap<>();
+  private final @NotNull Substitute substitute = new Substitute();
+
+  /**
+   * The number each local known to be constant holds, those not in it may hold any, or
+   * null where nothing runs.
+   */
+  private @Nullable HashMap<Var, Term> state;
+  /** What the breaks and continues of the innermost loop so far leave. */
+  private @Nullable HashMap<Var, Term> breaks, continues;
+
+  private ConstantPropagation(@NotNull ImmutableSeq<Proclaim> program) {
+    program.filterIsInstance(Def.VarDef.class).forEach(varDef -> {
+      globals.add(varDef.ref);
+      if (isNumber(varDef.body) && !(varDef.result.unconst() instanceof Type.Array<Term>))
+        fixed.put(varDef.ref, varDef.body);
+    });
+    var assigns = new ProclaimOps<Unit>() {
+      @Override public @Nullable Proclaim pre(@NotNull Proclaim proclaim, Unit unit) {
+        if (proclaim instanceof Proclaim.VarAssignProclaim assign) fixed.remove(assign.var());
+        return null;
+      }
+    };
+    program.filterIsInstance(Def.FnDef.class).forEach(fn -> assigns.traverse(fn.body, Unit.unit()));
+  }
+
+  private void function(@NotNull Def.FnDef fn) {
+    // parameters may hold anything
+    state = new HashMap<>();
+    breaks = continues = null;
+    fn.body = visit(fn.body, true);
+  }
+
+  // region Folding
+
+  /** Folds a term with the values of the variables known constant. */
+  private final class Substitute implements TermFold {
+    @Override public @Nullable Term pre(@NotNull Term term, @NotNull Gamma.ConstGamma gamma) {
+      if (!(term instanceof Term.RefTerm ref)) return TermFold.super.pre(term, gamma);
+      var value = fixed.get(ref.var());
+      if (value == null && state != null) value = state.get(ref.var());
+      return value != null ? value : ref;
+    }
+  }
+
+  private @NotNull Term fold(@NotNull Term term) {
+    try {
+      return substitute.traverse(term, EMPTY);
+    } catch (ArithmeticException e) {
+      // a division by zero where it runs, which is left to trap there
+      return term;
+    }
+  }
+
+  private static boolean isNumber(@NotNull Term term) {
+    return term instanceof Term.LitTerm lit && lit.literal().isLeft();
+  }
+
+  /** @return whether a condition folded to a literal is true, or null if it is not a literal */
+  private static @Nullable Boolean truth(@NotNull Term cond) {
+    if (!isNumber(cond)) return null;
+    var number = ((Term.LitTerm) cond).literal().getLeftValue();
+    return number.isLeft() ? number.getLeftValue() != 0 : number.getRightValue() != 0;
+  }
+
+  // endregion
+
+  // region Lattice
+
+  /** Arrays are never numbers, so they are never constant. */
+  private void define(@NotNull Var var, @NotNull Term value) {
+    assert state != null;
+    if (globals.contains(var)) return;
+    if (isNumber(value)) state.put(var, value);
+    else state.remove(var);
+  }
+
+  /** @return the values the two states agree on, which is what holds after either */
+  private static @Nullable HashMap<Var, Term> meet(@Nullable HashMap<Var, Term> a, @Nullable HashMap<Var, Term> b) {
+    if (a == null) return b == null ? null : new HashMap<>(b);
+    if (b == null) return new HashMap<>(a);
+    var met = new HashMap<Var, Term>();
+    a.forEach((var, value) -> {
+      if (value.equals(b.get(var))) met.put(var, value);
+    });
+    return met;
+  }
+
+  // endregion
+
+  /**
+   * Runs {@code proclaim} from {@link #state}, which is left as what holds after it.
+   *
+   * @return {@code proclaim} with the constants substituted, if {@code rewrite} is set
+   */
+  private @NotNull Proclaim visit(@NotNull Proclaim proclaim, boolean rewrite) {
+    if (state == null) return proclaim;
+    return switch (proclaim) {
+      case Def.VarDef varDef -> {
+        var body = fold(varDef.body);
+        define(varDef.ref, body);
+        if (rewrite) varDef.body = body;
+        yield varDef;
+      }
+      case Proclaim.VarAssignProclaim assign -> {
+        var rvalue = fold(assign.rvalue());
+        define(assign.var(), rvalue);
+        yield rewrite ? new Proclaim.VarAssignProclaim(assign.var(), rvalue) : assign;
+      }
+      case Proclaim.IndexAssignProclaim assign -> rewrite
+        ? new Proclaim.IndexAssignProclaim(fold(assign.term()), fold(assign.index()), fold(assign.rvalue()))
+        : assign;
+      case Proclaim.TermProclaim term -> rewrite ? new Proclaim.TermProclaim(fold(term.term())) : term;
+      case Proclaim.ReturnProclaim ret -> {
+        var rewritten = rewrite ? new Proclaim.ReturnProclaim(ret.term().map(this::fold)) : ret;
+        state = null;
+        yield rewritten;
+      }
+      case Proclaim.BreakProclaim ignored -> {
+        breaks = meet(breaks, state);
+        state = null;
+        yield proclaim;
+      }
+      case Proclaim.ContinueProclaim ignored -> {
+        continues = meet(continues, state);
+        state = null;
+        yield proclaim;
+      }
+      case Proclaim.BlockProclaim block -> {
+        var statements = block.block().map(statement -> visit(statement, rewrite));
+        yield rewrite ? new Proclaim.BlockProclaim(statements) : block;
+      }
+      case Proclaim.IfProclaim ifProclaim -> {
+        var cond = fold(ifProclaim.cond());
+        var truth = truth(cond);
+        // the branch never taken is left as it is, it goes away with the literal condition
+        if (truth != null) {
+          var then = truth ? visit(ifProclaim.thenBranch(), rewrite) : ifProclaim.thenBranch();
+          var otherwise = truth ? ifProclaim.elseBranch() : ifProclaim.elseBranch().map(branch -> visit(branch, rewrite));
+          yield rewrite ? new Proclaim.IfProclaim(cond, then, otherwise) : ifProclaim;
+        }
+        var entry = new HashMap<>(state);
+        var then = visit(ifProclaim.thenBranch(), rewrite);
+        var thenState = state;
+        state = entry;
+        var otherwise = ifProclaim.elseBranch().map(branch -> visit(branch, rewrite));
+        state = meet(thenState, state);
+        yield rewrite ? new Proclaim.IfProclaim(cond, then, otherwise) : ifProclaim;
+      }
+      case Proclaim.WhileProclaim whileProclaim -> {
+        var outerBreaks = breaks;
+        var outerContinues = continues;
+        var entry = state;
+        // what holds whenever the condition is evaluated only loses values each time around
+        var head = new HashMap<>(entry);
+        while (true) {
+          iterate(whileProclaim, head, false);
+          var next = meet(entry, meet(state, continues));
+          if (head.equals(next)) break;
+          head = next;
+        }
+        var rewritten = iterate(whileProclaim, head, rewrite);
+        var truth = truth(fold(whileProclaim.cond(), head));
+        state = truth == Boolean.TRUE ? breaks : meet(head, breaks);
+        breaks = outerBreaks;
+        continues = outerContinues;
+        yield rewritten;
+      }
+      case Def.FnDef ignored -> throw new IllegalStateException("nested function");
+      case Def.PrimDef ignored -> throw new IllegalStateException("nested primitive");
+    };
+  }
+
+  /** Runs the condition and the body of a loop once from {@code head}. */
+  private @NotNull Proclaim iterate(@NotNull Proclaim.WhileProclaim whileProclaim, @NotNull HashMap<Var, Term> head, boolean rewrite) {
+    breaks = continues = null;
+    var cond = fold(whileProclaim.cond(), head);
+    state = truth(cond) == Boolean.FALSE ? null : new HashMap<>(head);
+    var body = visit(whileProclaim.body(), rewrite);
+    return rewrite ? new Proclaim.WhileProclaim(cond, body) : whileProclaim;
+  }
+
+  private @NotNull Term fold(@NotNull Term term, @NotNull HashMap<Var, Term> at) {
+    var saved = state;
+    state = at;
+    var folded = fold(term);
+    state = saved;
+    return folded;
+  }
+}
@@ -0,0 +1,393 @@
+package org.brunhild.compiling.optimize;
+
+import kala.collection.immutable.ImmutableSeq;
+import kala.collection.mutable.MutableList;
+import kala.control.Option;
+import kala.tuple.Unit;
+import org.brunhild.compiling.Pass;
+import org.brunhild.core.Def;
+import org.brunhild.core.Proclaim;
+import org.brunhild.core.Term;
+import org.brunhild.core.ops.ProclaimOps;
+import org.brunhild.core.ops.TermFold;
+import org.brunhild.core.ops.TermOps;
+import org.brunhild.generic.Type;
+import org.brunhild.generic.Var;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Removes what cannot run or whose result is never used: branches on literals, loops
+ * that never start, statements after a return, break or continue, and assignments and
+ * definitions of locals that are dead, by liveness computed backwards over the tree,
+ * to a fixpoint around loops. So are local arrays that nothing reads but what is written
+ * into such arrays, assignments of a variable to itself, loops that do nothing but count
+ * a variable dead after them to a bound they surely reach, and loops that do nothing but
+ * break out in their first iteration, like those inlining leaves of unused calls.
+ * <p>
+ * What is removed keeps its effects, which are those of calls to primitives and to
+ * functions that are not {@link Effects.Summary#isPure pure}: a call is only left out if
+ * the function has no side effect and surely returns, so a loop that may never end is
+ * never removed with it.
+ */
+public final class DeadCode {
+  public static final @NotNull Pass<ImmutableSeq<Proclaim>, ImmutableSeq<Proclaim>, Unit> Pass =
+    (program, unit) -> {
+      var dead = new DeadCode(program);
+      program.filterIsInstance(Def.FnDef.class).forEach(dead::function);
+      return program;
+    };
+
+  private final @NotNull Set<Var> globals = new HashSet<>();
+  private final @NotNull Effects effects;
+
+  private DeadCode(@NotNull ImmutableSeq<Proclaim> program) {
+    program.filterIsInstance(Def.VarDef.class).forEach(varDef -> globals.add(varDef.ref));
+    effects = Effects.of(program);
+  }
+
+  // region Purity
+
+  /** @return whether the term itself, not counting its children, has no effect */
+  private boolean isPure(@NotNull Term term) {
+    return switch (term) {
+      case Term.CallTerm call -> effects.isPure(call);
+      default -> true;
+    };
+  }
+
+  /** @return whether evaluating the whole term has no effect */
+  private boolean hasNoEffect(@NotNull Term term) {
+    var pure = new boolean[]{true};
+    new TermOps<Unit>() {
+      @Override public @Nullable Term pre(@NotNull Term term, Unit unit) {
+        if (!isPure(term)) pure[0] = false;
+        // a call deciding it is enough
+        return pure[0] ? null : term;
+      }
+    }.traverse(term, Unit.unit());
+    return pure[0];
+  }
+
+  private static @Nullable Var root(@NotNull Term term) {
+    while (term instanceof Term.IndexTerm index) term = index.term();
+    return term instanceof Term.RefTerm ref ? ref.var() : null;
+  }
+
+  // endregion
+
+  // region Functions
+
+  /** The liveness and rewriting of one function body. */
+  private final class Function {
+    /** Local arrays with storage of their own that nothing reads. */
+    private final @NotNull Set<Var> unread = new HashSet<>();
+    /** The variables mentioned by what is kept after the statement being visited. */
+    private final @NotNull Set<Var> mentioned = new HashSet<>();
+    private @NotNull Set<Var> breakLive = new HashSet<>();
+    private @NotNull Set<Var> continueLive = new HashSet<>();
+
+    private Function(@NotNull Def.FnDef fn) {
+      var read = new HashSet<Var>();
+      // what writes into an array reads, which only counts if the array is read
+      var writes = new ArrayList<Proclaim.IndexAssignProclaim>();
+      new ProclaimOps<Unit>() {
+        @Override public @Nullable Proclaim pre(@NotNull Proclaim proclaim, Unit unit) {
+          switch (proclaim) {
+            case Def.VarDef varDef && varDef.body instanceof Term.ArrayTerm -> unread.add(varDef.ref);
+            case Proclaim.IndexAssignProclaim assign -> {
+              writes.add(assign);
+              return proclaim;
+            }
+            default -> {}
+          }
+          return null;
+        }
+
+        @Override public @Nullable Term pre(@NotNull Term term, Unit unit) {
+          if (term instanceof Term.RefTerm ref) read.add(ref.var());
+          return null;
+        }
+      }.traverse(fn.body, Unit.unit());
+      unread.removeAll(read);
+      for (var changed = true; changed; ) {
+        changed = false;
+        for (var assign : writes) {
+          if (unread.contains(root(assign.term()))) continue;
+          var reads = new HashSet<Var>();
+          for (var term = assign.term(); term instanceof Term.IndexTerm index; term = index.term())
+            uses(index.index(), reads);
+          uses(assign.index(), reads);
+          uses(assign.rvalue(), reads);
+          changed |= unread.removeAll(reads);
+        }
+      }
+    }
+
+    /**
+     * @param live the locals live after {@code proclaim}, updated to those live before it
+     * @return what is left of {@code proclaim}, or null if nothing is
+     */
+    private @Nullable Proclaim visit(@NotNull Proclaim proclaim, @NotNull Set<Var> live, boolean rewrite) {
+      return switch (proclaim) {
+        case Def.VarDef varDef -> {
+          var ref = varDef.ref;
+          if (varDef.body instanceof Term.ArrayTerm && unread.contains(ref) && hasNoEffect(varDef.body)) yield null;
+          if (live.contains(ref) || varDef.result.unconst() instanceof Type.Array<Term>) {
+            live.remove(ref);
+            uses(varDef.body, live);
+            yield mention(varDef, rewrite);
+          }
+          var effect = hasNoEffect(varDef.body) ? null : new Proclaim.TermProclaim(varDef.body);
+          if (effect != null) uses(varDef.body, live);
+          if (!rewrite) yield null;
+          // assigned later, which the definition still declares it for, in the scope it is in
+          if (mentioned.contains(ref)) {
+            if (effect == null) varDef.body = TermFold.defaultValueOf(varDef.result.unconst());
+            yield mention(varDef, true);
+          }
+          yield mention(effect, true);
+        }
+        case Proclaim.VarAssignProclaim assign -> {
+          var var = assign.var();
+          if (assign.rvalue() instanceof Term.RefTerm ref && ref.var() == var) yield null;
+          if (globals.contains(var) || live.contains(var)) {
+            live.remove(var);
+            uses(assign.rvalue(), live);
+            yield mention(assign, rewrite);
+          }
+          if (hasNoEffect(assign.rvalue())) yield null;
+          uses(assign.rvalue(), live);
+          yield mention(new Proclaim.TermProclaim(assign.rvalue()), rewrite);
+        }
+        case Proclaim.IndexAssignProclaim assign -> {
+          if (!unread.contains(root(assign.term()))) {
+            uses(assign.term(), live);
+            uses(assign.index(), live);
+            uses(assign.rvalue(), live);
+            yield mention(assign, rewrite);
+          }
+          // the array is gone with its definition, what is evaluated is the indices into it
+          var evaluated = MutableList.of(assign.index(), assign.rvalue());
+          for (var term = assign.term(); term instanceof Term.IndexTerm index; term = index.term())
+            evaluated.prepend(index.index());
+          var effects = MutableList.<Proclaim>create();
+          for (var term : evaluated) {
+            if (hasNoEffect(term)) continue;
+            uses(term, live);
+            effects.append(new Proclaim.TermProclaim(term));
+          }
+          if (effects.isEmpty()) yield null;
+          yield mention(effects.sizeEquals(1) ? effects.first() : new Proclaim.BlockProclaim(effects.toImmutableSeq()), rewrite);
+        }
+        case Proclaim.TermProclaim term -> {
+          if (hasNoEffect(term.term())) yield null;
+          uses(term.term(), live);
+          yield mention(term, rewrite);
+        }
+        case Proclaim.ReturnProclaim ret -> {
+          live.clear();
+          ret.term().forEach(term -> uses(term, live));
+          yield mention(ret, rewrite);
+        }
+        case Proclaim.BreakProclaim ignored -> {
+          live.clear();
+          live.addAll(breakLive);
+          yield proclaim;
+        }
+        case Proclaim.ContinueProclaim ignored -> {
+          live.clear();
+          live.addAll(continueLive);
+          yield proclaim;
+        }
+        case Proclaim.BlockProclaim block -> {
+          var statements = reachable(block.block());
+          var kept = MutableList.<Proclaim>create();
+          for (var statement : statements.reversed()) {
+            var left = visit(statement, live, rewrite);
+            if (left != null) kept.prepend(left);
+          }
+          if (kept.isEmpty()) yield null;
+          // the statements kept are mentioned already
+          yield rewrite ? new Proclaim.BlockProclaim(kept.toImmutableSeq()) : block;
+        }
+        case Proclaim.IfProclaim ifProclaim -> {
+          var literal = literal(ifProclaim.cond());
+          if (literal != null) {
+            var taken = literal != 0 ? ifProclaim.thenBranch() : ifProclaim.elseBranch().getOrNull();
+            yield taken == null ? null : visit(taken, live, rewrite);
+          }
+          var otherwiseLive = new HashSet<>(live);
+          var then = visit(ifProclaim.thenBranch(), live, rewrite);
+          var otherwise = ifProclaim.elseBranch().isDefined()
+            ? visit(ifProclaim.elseBranch().get(), otherwiseLive, rewrite) : null;
+          live.addAll(otherwiseLive);
+          uses(ifProclaim.cond(), live);
+          if (then == null && otherwise == null) {
+            if (hasNoEffect(ifProclaim.cond())) yield null;
+            yield mention(new Proclaim.TermProclaim(ifProclaim.cond()), rewrite);
+          }
+          if (rewrite) uses(ifProclaim.cond(), mentioned);
+          yield new Proclaim.IfProclaim(ifProclaim.cond(),
+            then != null ? then : new Proclaim.BlockProclaim(ImmutableSeq.empty()), Option.of(otherwise));
+        }
+        case Proclaim.WhileProclaim whileProclaim -> {
+          var literal = literal(whileProclaim.cond());
+          if (literal != null && literal == 0) yield null;
+          var after = new HashSet<>(live);
+          var head = new HashSet<>(after);
+          uses(whileProclaim.cond(), head);
+          var outerBreak = breakLive;
+          var outerContinue = continueLive;
+          breakLive = after;
+          while (true) {
+            continueLive = head;
+            var bodyLive = new HashSet<>(head);
+            visit(whileProclaim.body(), bodyLive, false);
+            if (head.containsAll(bodyLive)) break;
+            head.addAll(bodyLive);
+          }
+          continueLive = head;
+          // what the body mentions is forgotten if nothing is left of the loop
+          var counter = rewrite ? counter(whileProclaim, after) : null;
+          var mentionedBefore = rewrite ? new HashSet<>(mentioned) : null;
+          var body = visit(whileProclaim.body(), new HashSet<>(head), rewrite);
+          breakLive = outerBreak;
+          continueLive = outerContinue;
+          if (rewrite && body != null && (counter != null && onlyCounts(counter, whileProclaim.cond(), body)
+            || hasNoEffect(whileProclaim.cond()) && !fallsThrough(body) && onlyBreaks(body))) {
+            mentioned.clear();
+            mentioned.addAll(mentionedBefore);
+            yield null;
+          }
+          live.clear();
+          live.addAll(head);
+          if (rewrite) uses(whileProclaim.cond(), mentioned);
+          yield new Proclaim.WhileProclaim(whileProclaim.cond(),
+            body != null ? body : new Proclaim.BlockProclaim(ImmutableSeq.empty()));
+        }
+        case Def.FnDef ignored -> throw new IllegalStateException("nested function");
+        case Def.PrimDef ignored -> throw new IllegalStateException("nested primitive");
+      };
+    }
+
+    /** @return the local the body of {@code loop} ends stepping, an operand of its condition dead after it */
+    private @Nullable Var counter(@NotNull Proclaim.WhileProclaim loop, @NotNull Set<Var> after) {
+      if (!(loop.cond() instanceof Term.BinaryTerm bin)) return null;
+      var last = loop.body() instanceof Proclaim.BlockProclaim block
+        ? (block.block().isEmpty() ? null : block.block().last()) : loop.body();
+      if (last == null) return null;
+      for (var operand : ImmutableSeq.of(bin.lhs(), bin.rhs()))
+        if (operand instanceof Term.RefTerm ref && !globals.contains(ref.var()) && !after.contains(ref.var())
+          && LoopUnroller.step(ref.var(), last) != null) return ref.var();
+      return null;
+    }
+
+    /** Records the variables a kept statement without substatements mentions, when rewriting. */
+    private @Nullable Proclaim mention(@Nullable Proclaim proclaim, boolean rewrite) {
+      if (proclaim == null || !rewrite) return proclaim;
+      new ProclaimOps<Unit>() {
+        @Override public @Nullable Proclaim pre(@NotNull Proclaim proclaim, Unit unit) {
+          if (proclaim instanceof Proclaim.VarAssignProclaim assign) mentioned.add(assign.var());
+          if (proclaim instanceof Proclaim.IndexAssignProclaim assign) uses(assign.term(), mentioned);
+          return null;
+        }
+
+        @Override public @Nullable Term pre(@NotNull Term term, Unit unit) {
+          if (term instanceof Term.RefTerm ref) mentioned.add(ref.var());
+          return null;
+        }
+      }.traverse(proclaim, Unit.unit());
+      return proclaim;
+    }
+  }
+
+  private void function(@NotNull Def.FnDef fn) {
+    var body = new Function(fn).visit(fn.body, new HashSet<>(), true);
+    fn.body = body != null ? body : new Proclaim.BlockProclaim(ImmutableSeq.empty());
+  }
+
+  // endregion
+
+  /**
+   * @return whether {@code body} only steps {@code var} by a literal, and a loop on
+   * {@code cond} doing so surely stops, without the variable wrapping around on the way
+   */
+  private static boolean onlyCounts(@NotNull Var var, @NotNull Term cond, @NotNull Proclaim body) {
+    if (body instanceof Proclaim.BlockProclaim block && block.block().sizeEquals(1)) body = block.block().first();
+    var step = LoopUnroller.step(var, body);
+    if (step == null || step == 0 || !(cond instanceof Term.BinaryTerm bin)
+      || !(bin.lhs().type().unconst() instanceof Type.Int<Term>)) return false;
+    var counted = bin.lhs() instanceof Term.RefTerm ref && ref.var() == var;
+    var op = counted ? bin.op() : LoopUnroller.flip(bin.op());
+    var bound = counted ? bin.rhs() : bin.lhs();
+    // only orderings, a counter can go past what it is compared to be equal or not to
+    if (op == null || LoopUnroller.flip(op) == null
+      || !(bound instanceof Term.LitTerm || bound instanceof Term.RefTerm ref && ref.var() != var)) return false;
+    if ((op == Term.BinOP.LT || op == Term.BinOP.LE) != step > 0) return false;
+    // counting by one to a strict bound always reaches it, it cannot be jumped over
+    var strict = op == Term.BinOP.LT || op == Term.BinOP.GT;
+    if (strict && Math.abs(step) == 1) return true;
+    var literal = literal(bound);
+    if (literal == null) return false;
+    long last = strict ? (long) literal - Integer.signum(step) : literal;
+    return step > 0 ? last + step <= Integer.MAX_VALUE : last + step >= Integer.MIN_VALUE;
+  }
+
+  /**
+   * @return whether {@code body} does nothing but break out of its loop, on conditions
+   * without effects, so if it never falls through either, the loop ends where it starts
+   */
+  private boolean onlyBreaks(@NotNull Proclaim body) {
+    return switch (body) {
+      case Proclaim.BreakProclaim ignored -> true;
+      case Proclaim.BlockProclaim block -> block.block().allMatch(this::onlyBreaks);
+      case Proclaim.IfProclaim ifProclaim -> hasNoEffect(ifProclaim.cond()) && onlyBreaks(ifProclaim.thenBranch())
+        && ifProclaim.elseBranch().allMatch(this::onlyBreaks);
+      default -> false;
+    };
+  }
+
+  /** @return the statements up to the first one that never falls through */
+  private static @NotNull ImmutableSeq<Proclaim> reachable(@NotNull ImmutableSeq<Proclaim> statements) {
+    for (int i = 0; i < statements.size(); i++)
+      if (!fallsThrough(statements.get(i))) return statements.take(i + 1);
+    return statements;
+  }
+
+  private static boolean fallsThrough(@NotNull Proclaim proclaim) {
+    return switch (proclaim) {
+      case Proclaim.ReturnProclaim ignored -> false;
+      case Proclaim.BreakProclaim ignored -> false;
+      case Proclaim.ContinueProclaim ignored -> false;
+      case Proclaim.BlockProclaim block -> block.block().allMatch(DeadCode::fallsThrough);
+      case Proclaim.IfProclaim ifProclaim -> {
+        var literal = literal(ifProclaim.cond());
+        if (literal != null) yield literal != 0
+          ? fallsThrough(ifProclaim.thenBranch()) : ifProclaim.elseBranch().allMatch(DeadCode::fallsThrough);
+        yield fallsThrough(ifProclaim.thenBranch()) || ifProclaim.elseBranch().allMatch(DeadCode::fallsThrough);
+      }
+      default -> true;
+    };
+  }
+
+  private static @Nullable Integer literal(@NotNull Term term) {
+    if (term instanceof Term.LitTerm lit && lit.literal().isLeft() && lit.literal().getLeftValue().isLeft())
+      return lit.literal().getLeftValue().getLeftValue();
+    return null;
+  }
+
+  /** Adds the variables {@code term} reads to {@code vars}. */
+  private static void uses(@NotNull Term term, @NotNull Set<Var> vars) {
+    new TermOps<Unit>() {
+      @Override public @Nullable Term pre(@NotNull Term term, Unit unit) {
+        if (term instanceof Term.RefTerm ref) vars.add(ref.var());
+        return null;
+      }
+    }.traverse(term, Unit.unit());
+  }
+}
@@ -0,0 +1,206 @@
+package org.brunhild.compiling.optimize;
+
+import kala.collection.immutable.ImmutableSeq;
+import kala.tuple.Unit;
+import org.brunhild.core.Def;
+import org.brunhild.core.Proclaim;
+import org.brunhild.core.Term;
+import org.brunhild.core.ops.ProclaimOps;
+import org.brunhild.generic.Type;
+import org.brunhild.generic.Var;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * What the functions of a program may do besides returning a value: the globals they read
+ * and write, the array parameters they read and write through, whether they do I/O, which
+ * is what every primitive does, and whether they may not return. Functions are summarized
+ * callees first, a strongly connected component of the call graph at a time, to a
+ * fixpoint inside it.
+ * <p>
+ * Calls are followed through their arguments: an array passed to a parameter the callee
+ * writes is written by the caller, which is a global, a parameter of its own or a local
+ * array no one else sees. A local array defined as another one, like those inlining makes
+ * of array parameters, stands for the array it is defined as. A loop or a recursion anywhere below a function is enough for it
+ * to maybe not return, it is not told apart whether it ends.
+ */
+public final class Effects {
+  /**
+   * @param reads         the globals read, arrays included
+   * @param writes        the globals written, arrays included
+   * @param readParams    the indices of the array parameters read through
+   * @param writtenParams the indices of the array parameters written through
+   * @param io            whether it calls a primitive
+   * @param mayNotReturn  whether it loops or recurses
+   */
+  public record Summary(
+    @NotNull Set<Var> reads, @NotNull Set<Var> writes,
+    @NotNull BitSet readParams, @NotNull BitSet writtenParams,
+    boolean io, boolean mayNotReturn
+  ) {
+    /**
+     * @return whether it changes anything its callers can see, which is not enough for a
+     * call to be left out, it may not return either
+     */
+    public boolean hasSideEffect() {
+      return io || !writes.isEmpty() || !writtenParams.isEmpty();
+    }
+
+    /** @return whether it only computes its result, so a call whose result is unused can be left out */
+    public boolean isPure() {
+      return !hasSideEffect() && !mayNotReturn;
+    }
+
+    /** @return whether what it returns depends on nothing but its scalar arguments */
+    public boolean isConstant() {
+      return isPure() && reads.isEmpty() && readParams.isEmpty();
+    }
+  }
+
+  private final @NotNull Set<Var> globals = new HashSet<>();
+  private final @NotNull Map<Def.FnDef, Summary> summaries = new HashMap<>();
+
+  private Effects() {}
+
+  public static @NotNull Effects of(@NotNull ImmutableSeq<Proclaim> program) {
+    var effects = new Effects();
+    program.filterIsInstance(Def.VarDef.class).forEach(varDef -> effects.globals.add(varDef.ref));
+    var fns = program.filterIsInstance(Def.FnDef.class);
+    var callees = new HashMap<Def.FnDef, Set<Def.FnDef>>();
+    fns.forEach(fn -> callees.put(fn, calls(fn)));
+    for (var component : CallGraph.components(fns, callees)) {
+      var recursive = component.size() > 1 || component.stream().anyMatch(fn -> callees.get(fn).contains(fn));
+      component.forEach(fn -> effects.summaries.put(fn,
+        new Summary(Set.of(), Set.of(), new BitSet(), new BitSet(), false, recursive)));
+      // summaries only grow, a function at a time, until none of the component does
+      var changed = true;
+      while (changed) {
+        changed = false;
+        for (var fn : component) {
+          var summary = effects.summarize(fn, recursive);
+          if (summary.equals(effects.summaries.put(fn, summary))) continue;
+          changed = true;
+        }
+      }
+    }
+    return effects;
+  }
+
+  /** @return the summary of a function of the program analyzed */
+  public @NotNull Summary of(@NotNull Def.FnDef fn) {
+    var summary = summaries.get(fn);
+    if (summary == null) throw new IllegalStateException("not in the program analyzed: " + fn.ref.name());
+    return summary;
+  }
+
+  /**
+   * @return whether a call changes anything the caller can see, which calls to primitives
+   * always do, see {@link #isPure} for whether it can be left out
+   */
+  public boolean hasSideEffect(@NotNull Term.CallTerm call) {
+    return !(call instanceof Term.FnCall fnCall) || of(fnCall.fn().core).hasSideEffect();
+  }
+
+  /** @return whether a call whose result is unused can be left out, which is never the case of primitives */
+  public boolean isPure(@NotNull Term.CallTerm call) {
+    return call instanceof Term.FnCall fnCall && of(fnCall.fn().core).isPure();
+  }
+
+  // region Summarizing
+
+  private static @NotNull Set<Def.FnDef> calls(@NotNull Def.FnDef fn) {
+    var calls = new HashSet<Def.FnDef>();
+    new ProclaimOps<Unit>() {
+      @Override public @Nullable Term pre(@NotNull Term term, Unit unit) {
+        if (term instanceof Term.FnCall call) calls.add(call.fn().core);
+        return null;
+      }
+    }.traverse(fn.body, Unit.unit());
+    return calls;
+  }
+
+  private @NotNull Summary summarize(@NotNull Def.FnDef fn, boolean recursive) {
+    var params = new HashMap<Var, Integer>();
+    var aliases = new HashMap<Var, Var>();
+    fn.telescope.forEachIndexed((i, param) -> {
+      if (param.type().unconst() instanceof Type.Array<Term>) params.put(param.ref(), i);
+    });
+    var reads = new HashSet<Var>();
+    var writes = new HashSet<Var>();
+    var readParams = new BitSet();
+    var writtenParams = new BitSet();
+    var io = new boolean[1];
+    var mayNotReturn = new boolean[]{recursive};
+    new ProclaimOps<Unit>() {
+      private void access(@Nullable Var var, @NotNull Set<Var> globalSet, @NotNull BitSet paramSet) {
+        if (var == null) return;
+        var = aliases.getOrDefault(var, var);
+        if (globals.contains(var)) globalSet.add(var);
+        var param = params.get(var);
+        if (param != null) paramSet.set(param);
+      }
+
+      @Override public @Nullable Proclaim pre(@NotNull Proclaim proclaim, Unit unit) {
+        switch (proclaim) {
+          case Proclaim.WhileProclaim ignored -> mayNotReturn[0] = true;
+          // its definition comes before its uses, so what it is defined as is resolved already
+          case Def.VarDef varDef && varDef.result.unconst() instanceof Type.Array<Term>
+            && !(varDef.body instanceof Term.ArrayTerm) -> {
+            var aliased = root(varDef.body);
+            if (aliased != null) aliases.put(varDef.ref, aliases.getOrDefault(aliased, aliased));
+          }
+          case Proclaim.VarAssignProclaim assign -> access(assign.var(), writes, writtenParams);
+          // the array assigned into is not walked, the indices into it are
+          case Proclaim.IndexAssignProclaim assign -> {
+            var term = assign.term();
+            while (term instanceof Term.IndexTerm index) {
+              traverse(index.index(), unit);
+              term = index.term();
+            }
+            access(root(assign.term()), writes, writtenParams);
+          }
+          default -> {}
+        }
+        return null;
+      }
+
+      @Override public @Nullable Term pre(@NotNull Term term, Unit unit) {
+        switch (term) {
+          case Term.RefTerm ref -> access(ref.var(), reads, readParams);
+          // the primitives reading into arrays write them
+          case Term.PrimCall call -> {
+            io[0] = true;
+            call.args().filter(arg -> arg.type().unconst() instanceof Type.Array<Term>)
+              .forEach(arg -> access(root(arg), writes, writtenParams));
+          }
+          case Term.FnCall call -> {
+            var callee = of(call.fn().core);
+            reads.addAll(callee.reads);
+            writes.addAll(callee.writes);
+            callee.readParams.stream().forEach(j -> access(root(call.args().get(j)), reads, readParams));
+            callee.writtenParams.stream().forEach(j -> access(root(call.args().get(j)), writes, writtenParams));
+            io[0] |= callee.io;
+            mayNotReturn[0] |= callee.mayNotReturn;
+          }
+          default -> {}
+        }
+        return null;
+      }
+    }.traverse(fn.body, Unit.unit());
+    return new Summary(reads, writes, readParams, writtenParams, io[0], mayNotReturn[0]);
+  }
+
+  /** @return the variable of the array {@code term} is an element or a row of */
+  private static @Nullable Var root(@NotNull Term term) {
+    while (term instanceof Term.IndexTerm index) term = index.term();
+    return term instanceof Term.RefTerm ref ? ref.var() : null;
+  }
+
+  // endregion
+}
@@ -0,0 +1,414 @@
+package org.brunhild.compiling.optimize;
+
+import kala.collection.immutable.ImmutableSeq;
+import kala.collection.mutable.MutableList;
+import kala.control.Option;
+import kala.tuple.Unit;
+import org.brunhild.compiling.Pass;
+import org.brunhild.concrete.Decl;
+import org.brunhild.core.Def;
+import org.brunhild.core.Proclaim;
+import org.brunhild.core.Term;
+import org.brunhild.core.ops.ProclaimOps;
+import org.brunhild.core.ops.TermFold;
+import org.brunhild.core.ops.TermOps;
+import org.brunhild.core.ops.Traversal;
+import org.brunhild.generic.DefVar;
+import org.brunhild.generic.Type;
+import org.brunhild.generic.Var;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Replaces calls to small functions by their bodies. Functions are visited callees first,
+ * a strongly connected component of the call graph at a time, so what is inlined has had
+ * its own calls inlined already, while calls inside a component, which are the recursive
+ * ones, never are.
+ * <p>
+ * The parameters and locals of the callee become fresh locals of the caller in a block
+ * put in front of the statement making the call, and its returns assignments to one more
+ * for the result, which the call is replaced by. That moves the call before whatever the
+ * statement evaluates ahead of it, so it is only done if that reads nothing but locals of
+ * the caller, which the callee cannot write.
+ */
+public final class Inliner {
+  /**
+   * The largest callees inlined, counted in nodes of their bodies.
+   *
+   * @param size       at call sites outside loops
+   * @param hotSize    at call sites in loops, and at the only call site of a function
+   * @param callerSize past which nothing more is inlined into a function
+   */
+  public record Thresholds(int size, int hotSize, int callerSize) {
+    public static final @NotNull Thresholds DEFAULT = new Thresholds(32, 128, 4096);
+    public static final @NotNull Thresholds NONE = new Thresholds(0, 0, 0);
+  }
+
+  /** Function bodies are rewritten in place. */
+  public static final @NotNull Pass<ImmutableSeq<Proclaim>, ImmutableSeq<Proclaim>, Thresholds> Pass =
+    (program, thresholds) -> {
+      if (thresholds.callerSize > 0) new Inliner(program, thresholds).inline();
+      return program;
+    };
+
+  /** Stands for the result of an inlined call to a void function, which is only ever a statement. */
+  private static final @NotNull Term VOID = Term.LitTerm.of(0);
+
+  private final @NotNull Thresholds thresholds;
+  private final @NotNull ImmutableSeq<Def.FnDef> fns;
+  private final @NotNull Set<Var> globals = new HashSet<>();
+  private final @NotNull Map<Def.FnDef, Integer> sizes = new HashMap<>();
+  private final @NotNull Map<Def.FnDef, Integer> callSites = new HashMap<>();
+  private final @NotNull Map<Def.FnDef, Set<Def.FnDef>> callees = new HashMap<>();
+
+  private Inliner(@NotNull ImmutableSeq<Proclaim> program, @NotNull Thresholds thresholds) {
+    this.thresholds = thresholds;
+    this.fns = program.filterIsInstance(Def.FnDef.class);
+    program.filterIsInstance(Def.VarDef.class).forEach(varDef -> globals.add(varDef.ref));
+  }
+
+  private void inline() {
+    for (var fn : fns) {
+      var calls = new HashSet<Def.FnDef>();
+      sizes.put(fn, size(fn.body, calls));
+      callees.put(fn, calls);
+    }
+    for (var component : CallGraph.components(fns, callees)) {
+      for (var fn : component) {
+        var rewriter = new Rewriter(component, sizes.get(fn));
+        fn.body = rewriter.block(fn.body);
+        sizes.put(fn, rewriter.size);
+      }
+    }
+  }
+
+  /** Counts the nodes of {@code body}, the calls it makes in {@link #callSites} and their callees in {@code calls}. */
+  private int size(@NotNull Proclaim body, @NotNull Set<Def.FnDef> calls) {
+    var count = new int[1];
+    new ProclaimOps<Unit>() {
+      @Override public @Nullable Term pre(@NotNull Term term, Unit unit) {
+        count[0]++;
+        if (term instanceof Term.FnCall call) {
+          calls.add(call.fn().core);
+          callSites.merge(call.fn().core, 1, Integer::sum);
+        }
+        return null;
+      }
+
+      @Override public @Nullable Proclaim pre(@NotNull Proclaim proclaim, Unit unit) {
+        count[0]++;
+        return null;
+      }
+    }.traverse(body, Unit.unit());
+    return count[0];
+  }
+
+  // region Call sites
+
+  /** Rewrites the body of a function in {@code component}, which is {@code size} nodes so far. */
+  private final class Rewriter {
+    private final @NotNull Set<Def.FnDef> component;
+    private int size;
+    private int loops = 0;
+
+    private Rewriter(@NotNull Set<Def.FnDef> component, int size) {
+      this.component = component;
+      this.size = size;
+    }
+
+    private boolean inlinable(@NotNull Def.FnDef callee) {
+      if (component.contains(callee) || !sizes.containsKey(callee)) return false;
+      var calleeSize = sizes.get(callee);
+      var limit = loops > 0 || callSites.getOrDefault(callee, 0) == 1 ? thresholds.hotSize : thresholds.size;
+      return calleeSize <= limit && size + calleeSize <= thresholds.callerSize;
+    }
+
+    /** @return {@code proclaim} with the statements inlined calls need in front of it, in a block if there are any */
+    private @NotNull Proclaim block(@NotNull Proclaim proclaim) {
+      var out = MutableList.<Proclaim>create();
+      stmt(proclaim, out);
+      return out.size() == 1 ? out.first() : new Proclaim.BlockProclaim(out.toImmutableSeq());
+    }
+
+    private void stmt(@NotNull Proclaim proclaim, @NotNull MutableList<Proclaim> out) {
+      switch (proclaim) {
+        case Def.VarDef varDef -> {
+          varDef.body = new Hoister(out, true).traverse(varDef.body, Unit.unit());
+          out.append(varDef);
+        }
+        case Proclaim.BlockProclaim block -> {
+          var inner = MutableList.<Proclaim>create();
+          block.block().forEach(s -> stmt(s, inner));
+          out.append(new Proclaim.BlockProclaim(inner.toImmutableSeq()));
+        }
+        case Proclaim.VarAssignProclaim assign -> {
+          var rvalue = new Hoister(out, true).traverse(assign.rvalue(), Unit.unit());
+          out.append(rvalue == assign.rvalue() ? assign : new Proclaim.VarAssignProclaim(assign.var(), rvalue));
+        }
+        case Proclaim.IndexAssignProclaim assign -> {
+          var hoister = new Hoister(out, readsOnlyLocals(assign.term()));
+          var index = hoister.traverse(assign.index(), Unit.unit());
+          var rvalue = hoister.traverse(assign.rvalue(), Unit.unit());
+          out.append(index == assign.index() && rvalue == assign.rvalue() ? assign
+            : new Proclaim.IndexAssignProclaim(assign.term(), index, rvalue));
+        }
+        case Proclaim.TermProclaim term -> {
+          var result = new Hoister(out, true).traverse(term.term(), Unit.unit());
+          // what is left of an inlined call has no effect
+          if (result instanceof Term.RefTerm || result == VOID) return;
+          out.append(result == term.term() ? term : new Proclaim.TermProclaim(result));
+        }
+        case Proclaim.ReturnProclaim ret && ret.term().isDefined() -> {
+          var result = new Hoister(out, true).traverse(ret.term().get(), Unit.unit());
+          out.append(result == ret.term().get() ? ret : new Proclaim.ReturnProclaim(Option.some(result)));
+        }
+        case Proclaim.IfProclaim ifProclaim -> {
+          var cond = new Hoister(out, true).traverse(ifProclaim.cond(), Unit.unit());
+          var then = block(ifProclaim.thenBranch());
+          var otherwise = ifProclaim.elseBranch().map(this::block);
+          out.append(cond == ifProclaim.cond() && then == ifProclaim.thenBranch()
+            && otherwise.getOrNull() == ifProclaim.elseBranch().getOrNull()
+            ? ifProclaim : new Proclaim.IfProclaim(cond, then, otherwise));
+        }
+        // the condition is evaluated again for every iteration, so calls in it are left alone
+        case Proclaim.WhileProclaim whileProclaim -> {
+          loops++;
+          var body = block(whileProclaim.body());
+          loops--;
+          out.append(body == whileProclaim.body() ? whileProclaim : new Proclaim.WhileProclaim(whileProclaim.cond(), body));
+        }
+        default -> out.append(proclaim);
+      }
+    }
+
+    /** @return whether evaluating {@code term} cannot observe anything a call might change */
+    private boolean readsOnlyLocals(@NotNull Term term) {
+      var hoister = new Hoister(MutableList.create(), true) {
+        @Override boolean inlinable(@NotNull Def.FnDef callee) {
+          return false;
+        }
+      };
+      hoister.traverse(term, Unit.unit());
+      return hoister.safe;
+    }
+
+    /**
+     * Inlines the calls in a term it can move in front of the statement, which are those
+     * evaluated after nothing but literals, locals of the caller, and addresses of arrays.
+     * Children are walked in evaluation order, so that is what has been walked so far.
+     */
+    private class Hoister implements TermOps<Unit> {
+      private final @NotNull MutableList<Proclaim> out;
+      /** Whether what has been evaluated so far and stays in place reads only locals. */
+      boolean safe;
+      /** The value of {@link #safe} before each call being walked. */
+      private final @NotNull ArrayDeque<Boolean> before = new ArrayDeque<>();
+
+      Hoister(@NotNull MutableList<Proclaim> out, boolean safe) {
+        this.out = out;
+        this.safe = safe;
+      }
+
+      boolean inlinable(@NotNull Def.FnDef callee) {
+        return Rewriter.this.inlinable(callee);
+      }
+
+      @Override public @Nullable Term pre(@NotNull Term term, Unit unit) {
+        switch (term) {
+          case Term.BinaryTerm bin && (bin.op() == Term.BinOP.LOGICAL_AND || bin.op() == Term.BinOP.LOGICAL_OR) -> {
+            // the right-hand side might not be evaluated, so nothing there is moved before it
+            var lhs = traverse(bin.lhs(), unit);
+            safe = false;
+            return lhs == bin.lhs() ? bin : new Term.BinaryTerm(bin.op(), lhs, bin.rhs(), bin.type());
+          }
+          case Term.FnCall call -> before.push(safe);
+          case Term.RefTerm ref && globals.contains(ref.var()) && !isArray(ref.type()) -> safe = false;
+          default -> {}
+        }
+        return null;
+      }
+
+      @Override public @NotNull Term post(@NotNull Term term, @NotNull Traversal<Unit> children, Unit unit) {
+        var rebuilt = children.rebuild(term);
+        switch (rebuilt) {
+          case Term.FnCall call -> {
+            var wasSafe = before.pop();
+            if (wasSafe && inlinable(call.fn().core)) {
+              safe = true;
+              return expand(call, out);
+            }
+            safe = false;
+          }
+          case Term.PrimCall call -> safe = false;
+          case Term.IndexTerm index && !isArray(index.type()) -> safe = false;
+          default -> {}
+        }
+        return rebuilt;
+      }
+    }
+
+    /** @return the result of {@code call}, after the statements that compute it are put into {@code out} */
+    private @NotNull Term expand(@NotNull Term.FnCall call, @NotNull MutableList<Proclaim> out) {
+      var callee = call.fn().core;
+      size += sizes.get(callee);
+      var prefix = callee.ref.name() + ".";
+      var renames = new HashMap<Var, DefVar<Def.VarDef, Decl.VarDecl>>();
+      var block = MutableList.<Proclaim>create();
+      callee.telescope.zip(call.args()).forEach(binding -> {
+        var param = binding._1;
+        var arg = binding._2;
+        var ref = DefVar.<Def.VarDef, Decl.VarDecl>fresh(prefix + param.ref().name());
+        renames.put(param.ref(), ref);
+        block.append(new Def.VarDef(ref, arg, param.type()));
+      });
+      DefVar<Def.VarDef, Decl.VarDecl> result = null;
+      var type = callee.result.unconst();
+      if (!(type instanceof Type.Void<Term>)) {
+        result = DefVar.fresh(prefix + "result");
+        out.append(new Def.VarDef(result, TermFold.defaultValueOf(type), type));
+      }
+      new Body(prefix, renames, result, type).inline(callee.body, block);
+      out.append(new Proclaim.BlockProclaim(block.toImmutableSeq()));
+      return result == null ? VOID : new Term.RefTerm(type, result);
+    }
+  }
+
+  // endregion
+
+  // region Callee bodies
+
+  /**
+   * A copy of the body of a callee with its variables renamed. If it returns anywhere but
+   * at its end, it runs in a loop left once, where a return breaks out, and out of every
+   * loop of the callee it is in, by a flag tested after them.
+   */
+  private static final class Body implements TermOps<Unit> {
+    private final @NotNull String prefix;
+    private final @NotNull Map<Var, DefVar<Def.VarDef, Decl.VarDecl>> renames;
+    private final @Nullable DefVar<Def.VarDef, Decl.VarDecl> result;
+    private final @NotNull Type<Term> type;
+    private @Nullable DefVar<Def.VarDef, Decl.VarDecl> done;
+    private boolean wrapped;
+    private int loops = 0;
+    /** Whether a return has been copied since the innermost loop of the callee began. */
+    private boolean returned = false;
+
+    private Body(
+      @NotNull String prefix, @NotNull Map<Var, DefVar<Def.VarDef, Decl.VarDecl>> renames,
+      @Nullable DefVar<Def.VarDef, Decl.VarDecl> result, @NotNull Type<Term> type
+    ) {
+      this.prefix = prefix;
+      this.renames = renames;
+      this.result = result;
+      this.type = type;
+    }
+
+    private void inline(@NotNull Proclaim body, @NotNull MutableList<Proclaim> out) {
+      var statements = body instanceof Proclaim.BlockProclaim block ? block.block() : ImmutableSeq.of(body);
+      var returns = new int[2];
+      countReturns(body, false, returns);
+      var endsInReturn = statements.isNotEmpty() && statements.last() instanceof Proclaim.ReturnProclaim;
+      wrapped = returns[0] > (endsInReturn ? 1 : 0);
+      if (returns[1] > 0) {
+        done = DefVar.fresh(prefix + "done");
+        out.append(new Def.VarDef(done, Term.LitTerm.of(0), Type.Int.of()));
+      }
+      if (!wrapped) {
+        statements.forEach(s -> out.append(copy(s)));
+        return;
+      }
+      var loop = MutableList.<Proclaim>create();
+      statements.forEach(s -> loop.append(copy(s)));
+      if (!endsInReturn) loop.append(new Proclaim.BreakProclaim());
+      out.append(new Proclaim.WhileProclaim(Term.LitTerm.of(1), new Proclaim.BlockProclaim(loop.toImmutableSeq())));
+    }
+
+    /** Counts the returns in {@code proclaim} into {@code returns[0]}, those in loops into {@code returns[1]}. */
+    private static void countReturns(@NotNull Proclaim proclaim, boolean inLoop, int @NotNull [] returns) {
+      switch (proclaim) {
+        case Proclaim.ReturnProclaim ret -> {
+          returns[0]++;
+          if (inLoop) returns[1]++;
+        }
+        case Proclaim.BlockProclaim block -> block.block().forEach(s -> countReturns(s, inLoop, returns));
+        case Proclaim.IfProclaim ifProclaim -> {
+          countReturns(ifProclaim.thenBranch(), inLoop, returns);
+          ifProclaim.elseBranch().forEach(s -> countReturns(s, inLoop, returns));
+        }
+        case Proclaim.WhileProclaim whileProclaim -> countReturns(whileProclaim.body(), true, returns);
+        default -> {}
+      }
+    }
+
+    private @NotNull Proclaim copy(@NotNull Proclaim proclaim) {
+      return switch (proclaim) {
+        case Def.VarDef varDef -> {
+          var ref = DefVar.<Def.VarDef, Decl.VarDecl>fresh(prefix + varDef.ref.name());
+          var body = term(varDef.body);
+          renames.put(varDef.ref, ref);
+          yield new Def.VarDef(ref, body, varDef.result);
+        }
+        case Proclaim.BlockProclaim block -> new Proclaim.BlockProclaim(block.block().map(this::copy));
+        case Proclaim.VarAssignProclaim assign -> {
+          var renamed = renames.get(assign.var());
+          yield new Proclaim.VarAssignProclaim(renamed != null ? renamed : assign.var(), term(assign.rvalue()));
+        }
+        case Proclaim.IndexAssignProclaim assign ->
+          new Proclaim.IndexAssignProclaim(term(assign.term()), term(assign.index()), term(assign.rvalue()));
+        case Proclaim.TermProclaim term -> new Proclaim.TermProclaim(term(term.term()));
+        case Proclaim.IfProclaim ifProclaim ->
+          new Proclaim.IfProclaim(term(ifProclaim.cond()), copy(ifProclaim.thenBranch()), ifProclaim.elseBranch().map(this::copy));
+        case Proclaim.WhileProclaim whileProclaim -> {
+          var cond = term(whileProclaim.cond());
+          var outer = returned;
+          returned = false;
+          loops++;
+          var loop = new Proclaim.WhileProclaim(cond, copy(whileProclaim.body()));
+          loops--;
+          var exits = returned;
+          returned = outer || exits;
+          if (!exits) yield loop;
+          var exit = new Proclaim.IfProclaim(new Term.RefTerm(Type.Int.of(), done), new Proclaim.BreakProclaim(), Option.none());
+          yield new Proclaim.BlockProclaim(ImmutableSeq.of(loop, exit));
+        }
+        case Proclaim.ReturnProclaim ret -> {
+          returned = true;
+          var block = MutableList.<Proclaim>create();
+          ret.term().forEach(value -> {
+            var copied = term(value);
+            block.append(result == null ? new Proclaim.TermProclaim(copied) : new Proclaim.VarAssignProclaim(result, copied));
+          });
+          if (loops > 0) block.append(new Proclaim.VarAssignProclaim(done, Term.LitTerm.of(1)));
+          if (wrapped) block.append(new Proclaim.BreakProclaim());
+          yield block.sizeEquals(1) ? block.first() : new Proclaim.BlockProclaim(block.toImmutableSeq());
+        }
+        case Proclaim.BreakProclaim ignored -> proclaim;
+        case Proclaim.ContinueProclaim ignored -> proclaim;
+        case Def.FnDef ignored -> throw new IllegalStateException("nested function");
+        case Def.PrimDef ignored -> throw new IllegalStateException("nested primitive");
+      };
+    }
+
+    private @NotNull Term term(@NotNull Term term) {
+      return traverse(term, Unit.unit());
+    }
+
+    @Override public @Nullable Term pre(@NotNull Term term, Unit unit) {
+      if (!(term instanceof Term.RefTerm ref)) return null;
+      var renamed = renames.get(ref.var());
+      return renamed != null ? new Term.RefTerm(ref.type(), renamed) : null;
+    }
+  }
+
+  // endregion
+
+  private static boolean isArray(@NotNull Type<Term> type) {
+    return type.unconst() instanceof Type.Array<Term>;
+  }
+}
@@ -0,0 +1,182 @@
+package org.brunhild.compiling.optimize;
+
+import kala.tuple.Unit;
+import org.brunhild.compiling.Pass;
+import org.brunhild.compiling.ir.DominatorTree;
+import org.brunhild.compiling.ir.Function;
+import org.brunhild.compiling.ir.IntList;
+import org.brunhild.compiling.ir.Module;
+import org.brunhild.compiling.ir.Opcode;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+
+/**
+ * Loop-invariant code motion over SSA: instructions whose operands are all defined
+ * outside a natural loop are moved into its preheader, the block {@link
+ * org.brunhild.compiling.ir.Lowering} puts before every loop, which only runs when the
+ * body does. Loops are visited innermost first, so what leaves an inner loop may leave
+ * the outer one too.
+ * <p>
+ * Pure instructions always move. Those that may trap only move from blocks that run in
+ * every iteration, and loads only if no store and no call in the loop may write the
+ * memory they read, which is told apart by the array or global the pointer is into.
+ */
+public final class LoopInvariants {
+  public static final @NotNull Pass<Module, Module, Unit> Pass = (module, unit) -> {
+    module.functions.forEach(fn -> new LoopInvariants(fn).run());
+    return module;
+  };
+
+  /** The blocks of a natural loop, merged for all back edges into the same header. */
+  private record Loop(int header, @NotNull BitSet blocks) {}
+
+  private final @NotNull Function fn;
+  private final @NotNull DominatorTree dom;
+  /** Allocas whose address is passed to a call, which can then write them. */
+  private final @NotNull BitSet escaped;
+
+  private LoopInvariants(@NotNull Function fn) {
+    this.fn = fn;
+    this.dom = DominatorTree.of(fn);
+    this.escaped = Pointers.escaped(fn);
+  }
+
+  private void run() {
+    for (var loop : loops()) {
+      var preheader = preheader(loop);
+      if (preheader >= 0) hoist(loop, preheader);
+    }
+  }
+
+  /** @return the natural loops, inner ones before the loops containing them */
+  private @NotNull ArrayList<Loop> loops() {
+    var byHeader = new HashMap<Integer, Loop>();
+    for (var header : dom.reversePostorder()) {
+      var preds = fn.predecessors(header);
+      for (int i = 0; i < preds.size(); i++) {
+        var latch = preds.get(i);
+        if (!dom.isBackEdge(latch, header)) continue;
+        var loop = byHeader.computeIfAbsent(header, h -> {
+          var blocks = new BitSet();
+          blocks.set(h);
+          return new Loop(h, blocks);
+        });
+        var worklist = new IntList();
+        if (!loop.blocks.get(latch)) {
+          loop.blocks.set(latch);
+          worklist.add(latch);
+        }
+        while (!worklist.isEmpty()) {
+          var block = worklist.removeLast();
+          var blockPreds = fn.predecessors(block);
+          for (int j = 0; j < blockPreds.size(); j++) {
+            var pred = blockPreds.get(j);
+            if (loop.blocks.get(pred) || !dom.isReachable(pred)) continue;
+            loop.blocks.set(pred);
+            worklist.add(pred);
+          }
+        }
+      }
+    }
+    var loops = new ArrayList<>(byHeader.values());
+    loops.sort(Comparator.comparingInt(loop -> loop.blocks.cardinality()));
+    return loops;
+  }
+
+  /** @return the only block entering the loop, if it jumps nowhere else, or {@code -1} */
+  private int preheader(@NotNull Loop loop) {
+    var preheader = -1;
+    var preds = fn.predecessors(loop.header);
+    for (int i = 0; i < preds.size(); i++) {
+      var pred = preds.get(i);
+      if (loop.blocks.get(pred)) continue;
+      if (preheader >= 0) return -1;
+      preheader = pred;
+    }
+    if (preheader < 0 || fn.successors(preheader).length != 1) return -1;
+    return preheader;
+  }
+
+  private void hoist(@NotNull Loop loop, int preheader) {
+    var exiting = new IntList();
+    var writes = new Writes();
+    for (var block : dom.reversePostorder()) {
+      if (!loop.blocks.get(block)) continue;
+      for (var succ : fn.successors(block))
+        if (!loop.blocks.get(succ)) {
+          exiting.add(block);
+          break;
+        }
+      var instructions = fn.instructions(block);
+      for (int i = 0; i < instructions.size(); i++) writes.add(instructions.get(i));
+    }
+    for (var block : dom.reversePostorder()) {
+      if (!loop.blocks.get(block)) continue;
+      var everyIteration = !exiting.isEmpty();
+      for (int i = 0; i < exiting.size() && everyIteration; i++)
+        everyIteration = dom.dominates(block, exiting.get(i));
+      for (var value : fn.instructions(block).toArray()) {
+        if (!isInvariant(loop, value)) continue;
+        var op = fn.op(value);
+        if (op == Opcode.Load && writes.mayWrite(Pointers.root(fn, fn.operand(value, 0)))) continue;
+        if (op.mayTrap() && !everyIteration && !isSafeDivision(value)) continue;
+        fn.move(value, preheader, fn.instructions(preheader).size() - 1);
+      }
+    }
+  }
+
+  private boolean isInvariant(@NotNull Loop loop, int value) {
+    var op = fn.op(value);
+    if (op.hasSideEffect() || op == Opcode.Phi || op == Opcode.Param || op == Opcode.Alloca) return false;
+    for (int j = 0; j < fn.arity(value); j++) {
+      var operand = fn.operand(value, j);
+      if (!fn.isConstant(operand) && loop.blocks.get(fn.block(operand))) return false;
+    }
+    return true;
+  }
+
+  /** A division by a constant other than zero and minus one never traps. */
+  private boolean isSafeDivision(int value) {
+    var op = fn.op(value);
+    if (op != Opcode.Div && op != Opcode.Rem) return false;
+    var divisor = fn.operand(value, 1);
+    return fn.op(divisor) == Opcode.IConst && fn.imm(divisor) != 0 && fn.imm(divisor) != -1;
+  }
+
+  // region Memory
+
+  /** What the instructions of a loop may write. */
+  private final class Writes {
+    private final @NotNull BitSet roots = new BitSet();
+    private boolean unknown = false;
+    private boolean calls = false;
+
+    void add(int value) {
+      if (fn.op(value) == Opcode.Call) calls = true;
+      for (var pointer : Pointers.written(fn, value)) write(Pointers.root(fn, pointer));
+    }
+
+    private void write(int root) {
+      if (root < 0) unknown = true;
+      else roots.set(root);
+    }
+
+    boolean mayWrite(int root) {
+      if (unknown || root < 0) return true;
+      if (calls && !(fn.op(root) == Opcode.Alloca && !escaped.get(root))) return true;
+      if (roots.get(root)) return true;
+      // parameters may point into globals or the arrays of other parameters, allocas are private
+      return switch (fn.op(root)) {
+        case Alloca -> false;
+        case GlobalAddr -> roots.stream().anyMatch(written -> fn.op(written) == Opcode.Param);
+        default -> roots.stream().anyMatch(written -> fn.op(written) != Opcode.Alloca);
+      };
+    }
+  }
+
+  // endregion
+}
@@ -0,0 +1,353 @@
+package org.brunhild.compiling.optimize;
+
+import kala.collection.Seq;
+import kala.collection.immutable.ImmutableSeq;
+import kala.collection.mutable.MutableList;
+import kala.control.Option;
+import kala.tuple.Unit;
+import org.brunhild.compiling.Pass;
+import org.brunhild.concrete.Decl;
+import org.brunhild.core.Def;
+import org.brunhild.core.Proclaim;
+import org.brunhild.core.Term;
+import org.brunhild.core.ops.ProclaimOps;
+import org.brunhild.core.ops.TermFold;
+import org.brunhild.generic.DefVar;
+import org.brunhild.generic.Type;
+import org.brunhild.generic.Var;
+import org.brunhild.tyck.Gamma;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Unrolls counted loops, the innermost loops of the shape {@code while (i < n) { ...; i =
+ * i + c; }} where nothing else assigns {@code i} or {@code n}, which is a literal or a
+ * local, and which neither break nor continue. The comparison may be any of {@code <},
+ * {@code <=}, {@code >} and {@code >=}, as long as {@code i} steps toward {@code n}.
+ * <p>
+ * A loop of a known small trip count, whose {@code i} is assigned a literal before it in
+ * the same block, is replaced by a copy of its body for each iteration, with {@code i}
+ * replaced by its value there. Others run {@link Options#factor} iterations at a time
+ * while that many are left, and the rest in the loop as it was.
+ */
+public final class LoopUnroller {
+  /**
+   * @param factor the iterations run at a time by a loop of unknown trip count, below 2 for none
+   * @param trips  the most iterations of a loop replaced by copies of its body
+   * @param budget the most nodes the copies of the body of a loop may have together
+   */
+  public record Options(int factor, int trips, int budget) {
+    public static final @NotNull Options DEFAULT = new Options(4, 16, 256);
+    public static final @NotNull Options NONE = new Options(1, 0, 0);
+  }
+
+  /** Function bodies are rewritten in place. */
+  public static final @NotNull Pass<ImmutableSeq<Proclaim>, ImmutableSeq<Proclaim>, Options> Pass =
+    (program, options) -> {
+      if (options.budget > 0) {
+        var unroller = new LoopUnroller(program, options);
+        program.filterIsInstance(Def.FnDef.class).forEach(fn -> fn.body = unroller.rewrite(fn.body, ImmutableSeq.empty()));
+      }
+      return program;
+    };
+
+  private static final @NotNull Gamma.ConstGamma EMPTY = new Gamma.ConstGamma();
+
+  private final @NotNull Options options;
+  private final @NotNull Set<Var> globals = new HashSet<>();
+  /** The copies made so far, which tell the names of their variables apart. */
+  private int copies = 0;
+
+  private LoopUnroller(@NotNull ImmutableSeq<Proclaim> program, @NotNull Options options) {
+    this.options = options;
+    program.filterIsInstance(Def.VarDef.class).forEach(varDef -> globals.add(varDef.ref));
+  }
+
+  /** @param before the statements of the enclosing block before {@code proclaim}, rewritten already */
+  private @NotNull Proclaim rewrite(@NotNull Proclaim proclaim, @NotNull Seq<Proclaim> before) {
+    return switch (proclaim) {
+      case Proclaim.BlockProclaim block -> {
+        var statements = MutableList.<Proclaim>create();
+        block.block().forEach(statement -> statements.append(rewrite(statement, statements)));
+        yield new Proclaim.BlockProclaim(statements.toImmutableSeq());
+      }
+      case Proclaim.IfProclaim ifProclaim -> new Proclaim.IfProclaim(ifProclaim.cond(),
+        rewrite(ifProclaim.thenBranch(), ImmutableSeq.empty()),
+        ifProclaim.elseBranch().map(branch -> rewrite(branch, ImmutableSeq.empty())));
+      case Proclaim.WhileProclaim whileProclaim -> {
+        var loop = new Proclaim.WhileProclaim(whileProclaim.cond(), rewrite(whileProclaim.body(), ImmutableSeq.empty()));
+        var counted = counted(loop);
+        yield counted != null ? unroll(counted, before) : loop;
+      }
+      default -> proclaim;
+    };
+  }
+
+  // region Counted loops
+
+  /**
+   * A counted loop: {@code var op bound} is its condition, and {@code body} what it runs
+   * before {@code var = var + step}.
+   */
+  private record Counted(
+    @NotNull Proclaim.WhileProclaim loop, @NotNull Var var, @NotNull Term.BinOP op,
+    @NotNull Term bound, int step, @NotNull ImmutableSeq<Proclaim> body, int size
+  ) {}
+
+  private @Nullable Counted counted(@NotNull Proclaim.WhileProclaim loop) {
+    if (!(loop.cond() instanceof Term.BinaryTerm cond) || !(cond.lhs().type().unconst() instanceof Type.Int<Term>))
+      return null;
+    Var var;
+    Term bound;
+    Term.BinOP op;
+    if (cond.lhs() instanceof Term.RefTerm ref && !globals.contains(ref.var())) {
+      var = ref.var();
+      bound = cond.rhs();
+      op = cond.op();
+    } else if (cond.rhs() instanceof Term.RefTerm ref && !globals.contains(ref.var())) {
+      var = ref.var();
+      bound = cond.lhs();
+      op = flip(cond.op());
+    } else return null;
+    var boundVar = ref(bound);
+    if (op == null || flip(op) == null || boundVar == var) return null;
+    if (intOf(bound) == null && (boundVar == null || globals.contains(boundVar))) return null;
+    if (!(loop.body() instanceof Proclaim.BlockProclaim block) || block.block().isEmpty()) return null;
+    var step = step(var, block.block().last());
+    if (step == null || step == 0) return null;
+    if ((op == Term.BinOP.LT || op == Term.BinOP.LE) != step > 0) return null;
+    var body = block.block().dropLast(1);
+    // only what the rest of the body may not do is left, counting its nodes on the way
+    var size = new int[1];
+    var counted = new boolean[]{true};
+    var scan = new ProclaimOps<Unit>() {
+      @Override public @Nullable Proclaim pre(@NotNull Proclaim proclaim, Unit unit) {
+        size[0]++;
+        switch (proclaim) {
+          case Proclaim.WhileProclaim ignored -> counted[0] = false;
+          case Proclaim.BreakProclaim ignored -> counted[0] = false;
+          case Proclaim.ContinueProclaim ignored -> counted[0] = false;
+          case Proclaim.VarAssignProclaim assign && (assign.var() == var || assign.var() == boundVar) -> counted[0] = false;
+          default -> {}
+        }
+        return null;
+      }
+
+      @Override public @Nullable Term pre(@NotNull Term term, Unit unit) {
+        size[0]++;
+        return null;
+      }
+    };
+    body.forEach(statement -> scan.traverse(statement, Unit.unit()));
+    return counted[0] ? new Counted(loop, var, op, bound, step, body, size[0] + 1) : null;
+  }
+
+  /** @return the step of {@code var} if {@code proclaim} is {@code var = var + step} or {@code var = var - step} */
+  static @Nullable Integer step(@NotNull Var var, @NotNull Proclaim proclaim) {
+    if (!(proclaim instanceof Proclaim.VarAssignProclaim assign) || assign.var() != var
+      || !(assign.rvalue() instanceof Term.BinaryTerm bin)) return null;
+    if (bin.op() == Term.BinOP.ADD && ref(bin.lhs()) == var) return intOf(bin.rhs());
+    if (bin.op() == Term.BinOP.ADD && ref(bin.rhs()) == var) return intOf(bin.lhs());
+    if (bin.op() == Term.BinOP.SUB && ref(bin.lhs()) == var) {
+      var step = intOf(bin.rhs());
+      return step == null || step == Integer.MIN_VALUE ? null : -step;
+    }
+    return null;
+  }
+
+  /** @return the comparison of the operands swapped, or null if it is not an ordering */
+  static @Nullable Term.BinOP flip(@NotNull Term.BinOP op) {
+    return switch (op) {
+      case LT -> Term.BinOP.GT;
+      case LE -> Term.BinOP.GE;
+      case GT -> Term.BinOP.LT;
+      case GE -> Term.BinOP.LE;
+      default -> null;
+    };
+  }
+
+  /** @return the number of iterations of a loop from {@code initial}, or {@code -1} if it does not stop */
+  private static long trips(@NotNull Counted counted, long initial, long bound) {
+    long step = counted.step;
+    var distance = step > 0 ? bound - initial : initial - bound;
+    var magnitude = Math.abs(step);
+    return switch (counted.op) {
+      case LT, GT -> distance <= 0 ? 0 : (distance + magnitude - 1) / magnitude;
+      case LE, GE -> distance < 0 ? 0 : distance / magnitude + 1;
+      default -> -1;
+    };
+  }
+
+  /** @return the literal {@code var} holds on entering the loop, assigned in the same block before it */
+  private static @Nullable Integer initial(@NotNull Var var, @NotNull Seq<Proclaim> before) {
+    for (int i = before.size() - 1; i >= 0; i--) {
+      var statement = before.get(i);
+      switch (statement) {
+        case Def.VarDef varDef && varDef.ref == var -> {
+          return intOf(varDef.body);
+        }
+        case Proclaim.VarAssignProclaim assign && assign.var() == var -> {
+          return intOf(assign.rvalue());
+        }
+        default -> {}
+      }
+      var assigned = new boolean[1];
+      new ProclaimOps<Unit>() {
+        @Override public @Nullable Proclaim pre(@NotNull Proclaim proclaim, Unit unit) {
+          if (proclaim instanceof Proclaim.VarAssignProclaim assign && assign.var() == var) assigned[0] = true;
+          return null;
+        }
+      }.traverse(statement, Unit.unit());
+      if (assigned[0]) return null;
+    }
+    return null;
+  }
+
+  // endregion
+
+  // region Unrolling
+
+  private @NotNull Proclaim unroll(@NotNull Counted counted, @NotNull Seq<Proclaim> before) {
+    var initial = initial(counted.var, before);
+    var bound = intOf(counted.bound);
+    if (initial != null && bound != null) {
+      var trips = trips(counted, initial, bound);
+      var last = initial + trips * counted.step;
+      if (trips >= 0 && trips <= options.trips && trips * counted.size <= options.budget
+        && last == (int) last) {
+        var full = full(counted, initial, (int) trips, (int) last);
+        if (full != null) return full;
+      }
+    }
+    var factor = options.factor;
+    if (factor < 2 || (long) factor * counted.size > options.budget) return counted.loop;
+    return partial(counted, factor);
+  }
+
+  /** @return the body copied for every iteration, or null if folding one of them divides by zero */
+  private @Nullable Proclaim full(@NotNull Counted counted, int initial, int trips, int last) {
+    var statements = MutableList.<Proclaim>create();
+    try {
+      for (int k = 0; k < trips; k++) {
+        var copy = new Copy(counted.var, TermFold.litInt(initial + k * counted.step));
+        counted.body.forEach(statement -> statements.append(copy.copy(statement)));
+      }
+    } catch (ArithmeticException e) {
+      return null;
+    }
+    statements.append(new Proclaim.VarAssignProclaim(counted.var, TermFold.litInt(last)));
+    return new Proclaim.BlockProclaim(statements.toImmutableSeq());
+  }
+
+  /**
+   * Runs {@code factor} iterations at a time while the last of them would run, which is
+   * while {@code var op bound - (factor - 1) * step}, unless that wraps around, and then
+   * the rest in the original loop.
+   */
+  private @NotNull Proclaim partial(@NotNull Counted counted, int factor) {
+    Type.Int<Term> type = Type.Int.of();
+    var offset = (long) (factor - 1) * counted.step;
+    var var = new Term.RefTerm(type, counted.var);
+    var increment = counted.loop.body() instanceof Proclaim.BlockProclaim block ? block.block().last() : null;
+    assert increment != null;
+    var statements = MutableList.<Proclaim>create();
+    try {
+      for (int k = 0; k < factor; k++) {
+        var copy = new Copy(counted.var, null);
+        counted.body.forEach(statement -> statements.append(copy.copy(statement)));
+        statements.append(increment);
+      }
+    } catch (ArithmeticException e) {
+      return counted.loop;
+    }
+    var body = new Proclaim.BlockProclaim(statements.toImmutableSeq());
+    var literal = intOf(counted.bound);
+    if (literal != null) {
+      var limit = literal - offset;
+      if (limit != (int) limit) return counted.loop;
+      var unrolled = new Proclaim.WhileProclaim(
+        new Term.BinaryTerm(counted.op, var, TermFold.litInt((int) limit), type), body);
+      return new Proclaim.BlockProclaim(ImmutableSeq.of(unrolled, counted.loop));
+    }
+    var limit = DefVar.<Def.VarDef, Decl.VarDecl>fresh(counted.var.name() + ".limit");
+    var limitRef = new Term.RefTerm(type, limit);
+    var limitDef = new Def.VarDef(limit,
+      new Term.BinaryTerm(Term.BinOP.SUB, counted.bound, TermFold.litInt((int) offset), type), type);
+    var unrolled = new Proclaim.WhileProclaim(new Term.BinaryTerm(counted.op, var, limitRef, type), body);
+    // the limit is short of the bound in the direction of the step unless it wrapped around
+    var fits = new Term.BinaryTerm(counted.step > 0 ? Term.BinOP.LT : Term.BinOP.GT, limitRef, counted.bound, type);
+    return new Proclaim.BlockProclaim(ImmutableSeq.of(limitDef,
+      new Proclaim.IfProclaim(fits, unrolled, Option.none()), counted.loop));
+  }
+
+  /**
+   * A copy of the body of a loop for one iteration, with fresh variables for its locals,
+   * and the variable counting the iterations replaced by its value if it is known.
+   */
+  private final class Copy implements TermFold {
+    private final @NotNull Var var;
+    private final @Nullable Term value;
+    private final @NotNull String suffix = "." + ++copies;
+    private final @NotNull Map<Var, DefVar<Def.VarDef, Decl.VarDecl>> renames = new HashMap<>();
+
+    private Copy(@NotNull Var var, @Nullable Term value) {
+      this.var = var;
+      this.value = value;
+    }
+
+    private @NotNull Proclaim copy(@NotNull Proclaim proclaim) {
+      return switch (proclaim) {
+        case Def.VarDef varDef -> {
+          var ref = DefVar.<Def.VarDef, Decl.VarDecl>fresh(varDef.ref.name() + suffix);
+          var body = term(varDef.body);
+          renames.put(varDef.ref, ref);
+          yield new Def.VarDef(ref, body, varDef.result);
+        }
+        case Proclaim.BlockProclaim block -> new Proclaim.BlockProclaim(block.block().map(this::copy));
+        case Proclaim.VarAssignProclaim assign -> {
+          var renamed = renames.get(assign.var());
+          yield new Proclaim.VarAssignProclaim(renamed != null ? renamed : assign.var(), term(assign.rvalue()));
+        }
+        case Proclaim.IndexAssignProclaim assign ->
+          new Proclaim.IndexAssignProclaim(term(assign.term()), term(assign.index()), term(assign.rvalue()));
+        case Proclaim.TermProclaim term -> new Proclaim.TermProclaim(term(term.term()));
+        case Proclaim.IfProclaim ifProclaim ->
+          new Proclaim.IfProclaim(term(ifProclaim.cond()), copy(ifProclaim.thenBranch()), ifProclaim.elseBranch().map(this::copy));
+        case Proclaim.ReturnProclaim ret -> new Proclaim.ReturnProclaim(ret.term().map(this::term));
+        case Proclaim.WhileProclaim ignored -> throw new IllegalStateException("unreachable");
+        case Proclaim.BreakProclaim ignored -> throw new IllegalStateException("unreachable");
+        case Proclaim.ContinueProclaim ignored -> throw new IllegalStateException("unreachable");
+        case Def.FnDef ignored -> throw new IllegalStateException("nested function");
+        case Def.PrimDef ignored -> throw new IllegalStateException("nested primitive");
+      };
+    }
+
+    private @NotNull Term term(@NotNull Term term) {
+      return traverse(term, EMPTY);
+    }
+
+    @Override public @Nullable Term pre(@NotNull Term term, @NotNull Gamma.ConstGamma gamma) {
+      if (!(term instanceof Term.RefTerm ref)) return TermFold.super.pre(term, gamma);
+      if (ref.var() == var && value != null) return value;
+      var renamed = renames.get(ref.var());
+      return renamed != null ? new Term.RefTerm(ref.type(), renamed) : ref;
+    }
+  }
+
+  // endregion
+
+  private static @Nullable Var ref(@NotNull Term term) {
+    return term instanceof Term.RefTerm ref ? ref.var() : null;
+  }
+
+  private static @Nullable Integer intOf(@NotNull Term term) {
+    if (term instanceof Term.LitTerm lit && lit.literal().isLeft() && lit.literal().getLeftValue().isLeft())
+      return lit.literal().getLeftValue().getLeftValue();
+    return null;
+  }
+}
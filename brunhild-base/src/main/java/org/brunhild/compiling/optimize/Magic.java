@@ -0,0 +1,36 @@
+package org.brunhild.compiling.optimize;
+
+/**
+ * The multiplier and shift that replace a signed division by a constant, after Hacker's
+ * Delight, figure 10-1: {@code n / d} is the high half of {@code n * multiplier}, plus
+ * {@code n} if the multiplier is negative, shifted right by {@code shift} and incremented
+ * if {@code n} is negative.
+ */
+record Magic(int multiplier, int shift) {
+  /** @param d at least 2 and not a power of two */
+  static Magic of(int d) {
+    final long two31 = 1L << 31;
+    var anc = two31 - 1 - two31 % d;
+    var p = 31;
+    long q1 = two31 / anc, r1 = two31 - q1 * anc;
+    long q2 = two31 / d, r2 = two31 - q2 * d;
+    long delta;
+    do {
+      p++;
+      q1 *= 2;
+      r1 *= 2;
+      if (r1 >= anc) {
+        q1++;
+        r1 -= anc;
+      }
+      q2 *= 2;
+      r2 *= 2;
+      if (r2 >= d) {
+        q2++;
+        r2 -= d;
+      }
+      delta = d - r2;
+    } while (q1 < delta || q1 == delta && r1 == 0);
+    return new Magic((int) (q2 + 1), p - 32);
+  }
+}
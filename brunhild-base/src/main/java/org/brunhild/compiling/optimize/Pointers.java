@@ -0,0 +1,63 @@
+package org.brunhild.compiling.optimize;
+
+import org.brunhild.compiling.ir.Function;
+import org.brunhild.compiling.ir.Opcode;
+import org.brunhild.compiling.ir.ValueType;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * What pointers in a function may point into. Every pointer is an offset into an alloca,
+ * a global or a parameter, its root: allocas are private to the function, globals are
+ * distinct from each other, and parameters may point into globals or into each other.
+ */
+final class Pointers {
+  private Pointers() {}
+
+  /** @return the alloca, global or parameter a pointer is into, or {@code -1} if it is not known */
+  static int root(@NotNull Function fn, int pointer) {
+    if (fn.type(pointer) != ValueType.Ptr) return -1;
+    while (fn.op(pointer) == Opcode.Gep) pointer = fn.operand(pointer, 0);
+    return switch (fn.op(pointer)) {
+      case Alloca, GlobalAddr, Param -> pointer;
+      default -> -1;
+    };
+  }
+
+  /** @return the allocas whose address is passed to a call or merged by a phi, which calls may then write */
+  static @NotNull BitSet escaped(@NotNull Function fn) {
+    var escaped = new BitSet();
+    for (int b = 0; b < fn.blockCount(); b++) {
+      var instructions = fn.instructions(b);
+      for (int i = 0; i < instructions.size(); i++) {
+        var value = instructions.get(i);
+        var op = fn.op(value);
+        if (op != Opcode.Call && op != Opcode.CallPrim && op != Opcode.Phi) continue;
+        for (int j = 0; j < fn.arity(value); j++) {
+          if (fn.isBlockOperand(value, j)) continue;
+          var root = root(fn, fn.operand(value, j));
+          if (root >= 0 && fn.op(root) == Opcode.Alloca) escaped.set(root);
+        }
+      }
+    }
+    return escaped;
+  }
+
+  /** @return the pointers the instruction writes through, calls to functions aside, which may write anything reachable */
+  static int @NotNull [] written(@NotNull Function fn, int value) {
+    return switch (fn.op(value)) {
+      case Store, MemZero -> new int[]{fn.operand(value, 0)};
+      // the primitives reading into arrays write through their pointer arguments, the others write no memory
+      case CallPrim -> {
+        var pointers = new int[fn.arity(value)];
+        var count = 0;
+        for (int j = 0; j < fn.arity(value); j++)
+          if (fn.type(fn.operand(value, j)) == ValueType.Ptr) pointers[count++] = fn.operand(value, j);
+        yield Arrays.copyOf(pointers, count);
+      }
+      default -> new int[0];
+    };
+  }
+}
@@ -0,0 +1,281 @@
+package org.brunhild.compiling.optimize;
+
+import kala.tuple.Unit;
+import org.brunhild.compiling.Pass;
+import org.brunhild.concrete.Expr;
+import org.brunhild.core.Proclaim;
+import org.brunhild.core.Term;
+import org.brunhild.core.ops.TermFold;
+import org.brunhild.core.ops.Traversal;
+import org.brunhild.generic.Type;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayDeque;
+
+/**
+ * Algebraic identities and strength reduction, run after {@link TreeFold} has combined
+ * the literals. Multiplications by constants become shifts and at most one addition,
+ * divisions and remainders by constants become multiplications by their {@link Magic}
+ * numbers, truncating toward zero like C. Those need the operand more than once, and
+ * terms have nowhere to keep it, so they are only done to pure operands small enough
+ * to be repeated.
+ */
+public interface Simplify extends Pass.AstRewriter<Unit> {
+  /** The most nodes an operand may have to be repeated. */
+  int CHEAP = 6;
+
+  @Override default @NotNull Term post(@NotNull Term term, @NotNull Traversal<Unit> children, Unit unit) {
+    return switch (children.rebuild(term)) {
+      case Term.BinaryTerm bin && bin.type() instanceof Type.Int<Term> -> intBinary(bin);
+      case Term.BinaryTerm bin && bin.op() == Term.BinOP.DIV && bin.rhs() instanceof Term.LitTerm lit
+        && isReciprocable(lit) -> mul(bin.lhs(), TermFold.litFloat(1 / floatOf(lit)), bin.type());
+      case Term.UnaryTerm unary -> unary(unary);
+      case Term rebuilt -> rebuilt;
+    };
+  }
+
+  @Override default @NotNull Proclaim post(@NotNull Proclaim proclaim, @NotNull Traversal<Unit> children, Unit unit) {
+    return switch (AstRewriter.super.post(proclaim, children, unit)) {
+      case Proclaim.IfProclaim ifProclaim && condition(ifProclaim.cond()) != ifProclaim.cond() ->
+        new Proclaim.IfProclaim(condition(ifProclaim.cond()), ifProclaim.thenBranch(), ifProclaim.elseBranch());
+      case Proclaim.WhileProclaim whileProclaim && condition(whileProclaim.cond()) != whileProclaim.cond() ->
+        new Proclaim.WhileProclaim(condition(whileProclaim.cond()), whileProclaim.body());
+      case Proclaim rebuilt -> rebuilt;
+    };
+  }
+
+  private static @NotNull Term intBinary(@NotNull Term.BinaryTerm bin) {
+    var lhs = bin.lhs();
+    var rhs = bin.rhs();
+    var pureSame = same(lhs, rhs) && cost(lhs, Integer.MAX_VALUE - 1) != Integer.MAX_VALUE;
+    Term simplified = switch (bin.op()) {
+      case ADD -> isInt(rhs, 0) ? lhs : isInt(lhs, 0) ? rhs : null;
+      case SUB -> isInt(rhs, 0) ? lhs : isInt(lhs, 0) ? neg(rhs) : pureSame ? TermFold.litInt(0) : null;
+      case MUL -> rhs instanceof Term.LitTerm lit ? multiply(lhs, intOf(lit))
+        : lhs instanceof Term.LitTerm lit ? multiply(rhs, intOf(lit)) : null;
+      case DIV -> rhs instanceof Term.LitTerm lit && intOf(lit) != 0 ? divide(lhs, intOf(lit)) : null;
+      case MOD -> rhs instanceof Term.LitTerm lit && intOf(lit) != 0 ? remainder(lhs, intOf(lit)) : null;
+      case EQ, LE, GE -> pureSame && lhs.type() instanceof Type.Int<Term> ? TermFold.litInt(1) : null;
+      case NE, LT, GT -> pureSame && lhs.type() instanceof Type.Int<Term> ? TermFold.litInt(0) : null;
+      case LOGICAL_AND, LOGICAL_OR -> condition(lhs) != lhs || condition(rhs) != rhs
+        ? new Term.BinaryTerm(bin.op(), condition(lhs), condition(rhs), bin.type()) : null;
+      default -> null;
+    };
+    return simplified != null ? simplified : bin;
+  }
+
+  private static @NotNull Term unary(@NotNull Term.UnaryTerm unary) {
+    var operand = unary.term();
+    return switch (unary.op()) {
+      case POS -> operand;
+      case NEG -> operand instanceof Term.UnaryTerm inner && inner.op() == Expr.UnaryOP.NEG ? inner.term() : unary;
+      // !!x is x != 0, !(x != 0) is x == 0 and so on, ints only since NaN is unordered
+      case LOGICAL_NOT -> switch (operand) {
+        case Term.UnaryTerm inner && inner.op() == Expr.UnaryOP.LOGICAL_NOT ->
+          new Term.BinaryTerm(Term.BinOP.NE, inner.term(), TermFold.litInt(0), unary.type());
+        case Term.BinaryTerm cmp && cmp.lhs().type() instanceof Type.Int<Term> && negation(cmp.op()) != null ->
+          new Term.BinaryTerm(negation(cmp.op()), cmp.lhs(), cmp.rhs(), unary.type());
+        default -> unary;
+      };
+    };
+  }
+
+  private static @Nullable Term.BinOP negation(@NotNull Term.BinOP op) {
+    return switch (op) {
+      case EQ -> Term.BinOP.NE;
+      case NE -> Term.BinOP.EQ;
+      case LT -> Term.BinOP.GE;
+      case LE -> Term.BinOP.GT;
+      case GT -> Term.BinOP.LE;
+      case GE -> Term.BinOP.LT;
+      default -> null;
+    };
+  }
+
+  /** Only the truth of a condition matters, so {@code x != 0} there is just {@code x}. */
+  private static @NotNull Term condition(@NotNull Term cond) {
+    return cond instanceof Term.BinaryTerm bin && bin.op() == Term.BinOP.NE && isInt(bin.rhs(), 0)
+      && bin.lhs().type() instanceof Type.Int<Term> ? bin.lhs() : cond;
+  }
+
+  // region Strength reduction
+
+  /** @return {@code x * c} by shifts and at most one addition, or null */
+  private static @Nullable Term multiply(@NotNull Term x, int c) {
+    if (c == 0) return cost(x, Integer.MAX_VALUE - 1) != Integer.MAX_VALUE ? TermFold.litInt(0) : null;
+    if (c == 1) return x;
+    if (c == -1) return neg(x);
+    if (Integer.bitCount(c) == 1) return shl(x, Integer.numberOfTrailingZeros(c));
+    if (Integer.bitCount(-c) == 1) return neg(shl(x, Integer.numberOfTrailingZeros(-c)));
+    if (cost(x, CHEAP) > CHEAP) return null;
+    if (Integer.bitCount(c) == 2)
+      return add(shl(x, 31 - Integer.numberOfLeadingZeros(c)), shl(x, Integer.numberOfTrailingZeros(c)));
+    if (Integer.bitCount(c + 1) == 1) return sub(shl(x, Integer.numberOfTrailingZeros(c + 1)), x);
+    if (Integer.bitCount(1 - c) == 1) return sub(x, shl(x, Integer.numberOfTrailingZeros(1 - c)));
+    return null;
+  }
+
+  /** @return {@code x / d} without dividing, or null */
+  private static @Nullable Term divide(@NotNull Term x, int d) {
+    if (d == 1) return x;
+    if (d == -1) return neg(x);
+    // only the minimum itself has a quotient other than zero
+    if (d == Integer.MIN_VALUE) return new Term.BinaryTerm(Term.BinOP.EQ, x, TermFold.litInt(d), x.type());
+    if (cost(x, CHEAP) > CHEAP) return null;
+    var abs = Math.abs(d);
+    Term quotient;
+    if (Integer.bitCount(abs) == 1) {
+      // negative dividends are biased by abs - 1 so that the shift truncates toward zero
+      var k = Integer.numberOfTrailingZeros(abs);
+      var bias = shift(Term.BinOP.USHR, shift(Term.BinOP.SHR, x, k - 1), 32 - k);
+      quotient = shift(Term.BinOP.SHR, add(x, bias), k);
+    } else {
+      var magic = Magic.of(abs);
+      Term high = new Term.BinaryTerm(Term.BinOP.MULHI, x, TermFold.litInt(magic.multiplier()), x.type());
+      if (magic.multiplier() < 0) high = add(high, x);
+      quotient = add(shift(Term.BinOP.SHR, high, magic.shift()), shift(Term.BinOP.USHR, x, 31));
+    }
+    return d < 0 ? neg(quotient) : quotient;
+  }
+
+  /** @return {@code x % d} as {@code x - x / d * d}, or null */
+  private static @Nullable Term remainder(@NotNull Term x, int d) {
+    if (d == 1 || d == -1) return cost(x, Integer.MAX_VALUE - 1) != Integer.MAX_VALUE ? TermFold.litInt(0) : null;
+    if (d == Integer.MIN_VALUE) return null;
+    // the sign of the remainder follows the dividend alone
+    var abs = Math.abs(d);
+    var quotient = divide(x, abs);
+    if (quotient == null) return null;
+    var product = multiply(quotient, abs);
+    return sub(x, product != null ? product : mul(quotient, TermFold.litInt(abs), x.type()));
+  }
+
+  // endregion
+
+  // region Terms
+
+  private static @NotNull Term add(@NotNull Term lhs, @NotNull Term rhs) {
+    return new Term.BinaryTerm(Term.BinOP.ADD, lhs, rhs, lhs.type());
+  }
+
+  private static @NotNull Term sub(@NotNull Term lhs, @NotNull Term rhs) {
+    return new Term.BinaryTerm(Term.BinOP.SUB, lhs, rhs, lhs.type());
+  }
+
+  private static @NotNull Term mul(@NotNull Term lhs, @NotNull Term rhs, @NotNull Type<Term> type) {
+    return new Term.BinaryTerm(Term.BinOP.MUL, lhs, rhs, type);
+  }
+
+  private static @NotNull Term neg(@NotNull Term term) {
+    return new Term.UnaryTerm(Expr.UnaryOP.NEG, term, term.type());
+  }
+
+  private static @NotNull Term shl(@NotNull Term term, int amount) {
+    return shift(Term.BinOP.SHL, term, amount);
+  }
+
+  private static @NotNull Term shift(@NotNull Term.BinOP op, @NotNull Term term, int amount) {
+    return amount == 0 ? term : new Term.BinaryTerm(op, term, TermFold.litInt(amount), term.type());
+  }
+
+  private static boolean isInt(@NotNull Term term, int value) {
+    return term instanceof Term.LitTerm lit && lit.literal().isLeft() && lit.literal().getLeftValue().isLeft()
+      && lit.literal().getLeftValue().getLeftValue() == value;
+  }
+
+  private static int intOf(@NotNull Term.LitTerm lit) {
+    return lit.literal().getLeftValue().getLeftValue();
+  }
+
+  private static float floatOf(@NotNull Term.LitTerm lit) {
+    return lit.literal().getLeftValue().getRightValue();
+  }
+
+  /** Dividing by a power of two rounds the same as multiplying by its reciprocal. */
+  private static boolean isReciprocable(@NotNull Term.LitTerm lit) {
+    if (!lit.literal().isLeft() || !lit.literal().getLeftValue().isRight()) return false;
+    var f = Math.abs(floatOf(lit));
+    return f >= Float.MIN_NORMAL && f <= 0x1p126f && f == Math.scalb(1f, Math.getExponent(f));
+  }
+
+  /** @return the number of nodes of {@code term} if at most {@code limit}, or {@link Integer#MAX_VALUE} if it calls */
+  private static int cost(@NotNull Term term, int limit) {
+    var stack = new ArrayDeque<Term>();
+    stack.push(term);
+    var nodes = 0;
+    while (!stack.isEmpty() && nodes <= limit) {
+      nodes++;
+      switch (stack.pop()) {
+        case Term.CallTerm call -> {
+          return Integer.MAX_VALUE;
+        }
+        case Term.CoerceTerm coerce -> stack.push(coerce.term());
+        case Term.UnaryTerm unary -> stack.push(unary.term());
+        case Term.BinaryTerm binary -> {
+          stack.push(binary.lhs());
+          stack.push(binary.rhs());
+        }
+        case Term.IndexTerm index -> {
+          stack.push(index.term());
+          stack.push(index.index());
+        }
+        case Term.InitializedArray array -> array.values().forEach(stack::push);
+        default -> {}
+      }
+    }
+    return nodes;
+  }
+
+  /** @return whether both terms compute the same, if they do not call */
+  private static boolean same(@NotNull Term a, @NotNull Term b) {
+    var stack = new ArrayDeque<Term>();
+    stack.push(a);
+    stack.push(b);
+    while (!stack.isEmpty()) {
+      var r = stack.pop();
+      var l = stack.pop();
+      if (l == r) continue;
+      switch (l) {
+        case Term.RefTerm ref -> {
+          if (!(r instanceof Term.RefTerm other) || ref.var() != other.var()) return false;
+        }
+        case Term.LitTerm lit -> {
+          if (!lit.equals(r)) return false;
+        }
+        case Term.UnaryTerm unary -> {
+          if (!(r instanceof Term.UnaryTerm other) || unary.op() != other.op()) return false;
+          stack.push(unary.term());
+          stack.push(other.term());
+        }
+        case Term.BinaryTerm binary -> {
+          if (!(r instanceof Term.BinaryTerm other) || binary.op() != other.op()) return false;
+          stack.push(binary.lhs());
+          stack.push(other.lhs());
+          stack.push(binary.rhs());
+          stack.push(other.rhs());
+        }
+        case Term.IndexTerm index -> {
+          if (!(r instanceof Term.IndexTerm other)) return false;
+          stack.push(index.term());
+          stack.push(other.term());
+          stack.push(index.index());
+          stack.push(other.index());
+        }
+        case Term.CoerceTerm coerce -> {
+          if (!(r instanceof Term.CoerceTerm other) || !coerce.toType().equals(other.toType())) return false;
+          stack.push(coerce.term());
+          stack.push(other.term());
+        }
+        default -> {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  // endregion
+
+  @NotNull Simplify Pass = new Simplify() {};
+}
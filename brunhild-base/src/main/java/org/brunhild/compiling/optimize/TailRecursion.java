@@ -0,0 +1,228 @@
+package org.brunhild.compiling.optimize;
+
+import kala.collection.immutable.ImmutableSeq;
+import kala.collection.mutable.MutableList;
+import kala.control.Option;
+import kala.tuple.Unit;
+import org.brunhild.compiling.Pass;
+import org.brunhild.concrete.Decl;
+import org.brunhild.core.Def;
+import org.brunhild.core.Proclaim;
+import org.brunhild.core.Term;
+import org.brunhild.core.ops.TermFold;
+import org.brunhild.core.ops.TermOps;
+import org.brunhild.generic.DefVar;
+import org.brunhild.generic.Type;
+import org.brunhild.generic.Var;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Turns self calls in tail position into jumps: the body of the function runs in a loop,
+ * and {@code return f(x)} assigns the arguments to the parameters and continues it. A
+ * call in a sum or product, {@code return n + f(n - 1)}, is one too, with the other
+ * operand added to an accumulator every other return is combined with, since integer
+ * addition and multiplication are associative, even as they wrap around.
+ * <p>
+ * Only calls outside the loops of the function are turned, a continue there would not
+ * reach the loop around the body, and only those passing every array parameter on as it
+ * is. An operand after the call is moved before it, so it has to read nothing but scalar
+ * locals, which the call cannot write.
+ */
+public final class TailRecursion {
+  /** Function bodies are rewritten in place. */
+  public static final @NotNull Pass<ImmutableSeq<Proclaim>, ImmutableSeq<Proclaim>, Unit> Pass =
+    (program, unit) -> {
+      var globals = new HashSet<Var>();
+      program.filterIsInstance(Def.VarDef.class).forEach(varDef -> globals.add(varDef.ref));
+      program.filterIsInstance(Def.FnDef.class).forEach(fn -> new TailRecursion(fn, globals).run());
+      return program;
+    };
+
+  private final @NotNull Def.FnDef fn;
+  private final @NotNull Set<Var> globals;
+  /** The operator of the accumulator, if there is one. */
+  private @Nullable Term.BinOP op;
+  private @Nullable DefVar<Def.VarDef, Decl.VarDecl> accumulator;
+  private int loops = 0;
+  private boolean turned = false;
+
+  private TailRecursion(@NotNull Def.FnDef fn, @NotNull Set<Var> globals) {
+    this.fn = fn;
+    this.globals = globals;
+  }
+
+  private void run() {
+    op = operator(fn.body, 0);
+    if (op != null) accumulator = DefVar.fresh(fn.ref.name() + ".acc");
+    var body = rewrite(fn.body, fn.result.unconst() instanceof Type.Void<Term>);
+    if (!turned) return;
+    var statements = MutableList.<Proclaim>create();
+    statements.append(body);
+    // what the function returns when it falls off its end
+    statements.append(fn.result.unconst() instanceof Type.Void<Term>
+      ? new Proclaim.ReturnProclaim(Option.none())
+      : returning(TermFold.defaultValueOf(fn.result.unconst())));
+    var loop = new Proclaim.WhileProclaim(TermFold.litInt(1), new Proclaim.BlockProclaim(statements.toImmutableSeq()));
+    fn.body = new Proclaim.BlockProclaim(accumulator == null ? ImmutableSeq.of(loop) : ImmutableSeq.of(
+      new Def.VarDef(accumulator, TermFold.litInt(op == Term.BinOP.ADD ? 0 : 1), fn.result.unconst()), loop));
+  }
+
+  // region Tail calls
+
+  /** @return the operator of the first sum or product with a self call returned outside loops */
+  private @Nullable Term.BinOP operator(@NotNull Proclaim proclaim, int loops) {
+    return switch (proclaim) {
+      case Proclaim.ReturnProclaim ret && loops == 0 && ret.term().isDefined()
+        && combined(ret.term().get()) instanceof Term.BinaryTerm bin -> bin.op();
+      case Proclaim.BlockProclaim block -> {
+        for (var statement : block.block()) {
+          var found = operator(statement, loops);
+          if (found != null) yield found;
+        }
+        yield null;
+      }
+      case Proclaim.IfProclaim ifProclaim -> {
+        var then = operator(ifProclaim.thenBranch(), loops);
+        yield then != null ? then : ifProclaim.elseBranch().map(s -> operator(s, loops)).getOrNull();
+      }
+      case Proclaim.WhileProclaim whileProclaim -> operator(whileProclaim.body(), loops + 1);
+      default -> null;
+    };
+  }
+
+  /**
+   * @return {@code term} if it is a sum or product of ints with a self call that can be
+   * turned as one of its operands
+   */
+  private @Nullable Term combined(@NotNull Term term) {
+    if (!(term instanceof Term.BinaryTerm bin) || !(bin.type().unconst() instanceof Type.Int<Term>)
+      || bin.op() != Term.BinOP.ADD && bin.op() != Term.BinOP.MUL) return null;
+    if (self(bin.rhs()) != null && !mentionsSelf(bin.lhs())) return bin;
+    if (self(bin.lhs()) != null && readsOnlyLocals(bin.rhs())) return bin;
+    return null;
+  }
+
+  /** @return {@code term} if it is a self call passing every array parameter on as it is */
+  private @Nullable Term.FnCall self(@NotNull Term term) {
+    if (!(term instanceof Term.FnCall call) || call.fn().core != fn) return null;
+    for (int i = 0; i < fn.telescope.size(); i++) {
+      var param = fn.telescope.get(i);
+      if (!(param.type().unconst() instanceof Type.Array<Term>)) continue;
+      if (!(call.args().get(i) instanceof Term.RefTerm ref) || ref.var() != param.ref()) return null;
+    }
+    return call;
+  }
+
+  private boolean mentionsSelf(@NotNull Term term) {
+    var found = new boolean[1];
+    new TermOps<Unit>() {
+      @Override public @Nullable Term pre(@NotNull Term term, Unit unit) {
+        if (term instanceof Term.FnCall call && call.fn().core == fn) found[0] = true;
+        return null;
+      }
+    }.traverse(term, Unit.unit());
+    return found[0];
+  }
+
+  /** @return whether {@code term} calls nothing and reads no array and no global */
+  private boolean readsOnlyLocals(@NotNull Term term) {
+    var local = new boolean[]{true};
+    new TermOps<Unit>() {
+      @Override public @Nullable Term pre(@NotNull Term term, Unit unit) {
+        switch (term) {
+          case Term.CallTerm ignored -> local[0] = false;
+          case Term.IndexTerm ignored -> local[0] = false;
+          case Term.RefTerm ref && globals.contains(ref.var()) -> local[0] = false;
+          default -> {}
+        }
+        return null;
+      }
+    }.traverse(term, Unit.unit());
+    return local[0];
+  }
+
+  // endregion
+
+  // region Rewriting
+
+  /** @param tail whether {@code proclaim} is the last thing a void function runs */
+  private @NotNull Proclaim rewrite(@NotNull Proclaim proclaim, boolean tail) {
+    return switch (proclaim) {
+      case Proclaim.ReturnProclaim ret -> {
+        if (ret.term().isEmpty()) yield ret;
+        var term = ret.term().get();
+        var call = loops == 0 ? self(term) : null;
+        if (call != null) yield jump(call, null);
+        if (loops == 0 && combined(term) instanceof Term.BinaryTerm bin && bin.op() == op) {
+          call = self(bin.rhs());
+          yield call != null ? jump(call, bin.lhs()) : jump((Term.FnCall) bin.lhs(), bin.rhs());
+        }
+        yield returning(term);
+      }
+      case Proclaim.TermProclaim term && tail && loops == 0 && self(term.term()) != null ->
+        jump((Term.FnCall) term.term(), null);
+      case Proclaim.BlockProclaim block -> {
+        var statements = MutableList.<Proclaim>create();
+        var size = block.block().size();
+        for (int i = 0; i < size; i++) {
+          var statement = block.block().get(i);
+          // a call right before a return of nothing is in tail position as well
+          var next = i + 1 < size ? block.block().get(i + 1) : null;
+          var beforeReturn = next instanceof Proclaim.ReturnProclaim ret && ret.term().isEmpty();
+          statements.append(rewrite(statement, tail && i == size - 1 || beforeReturn));
+        }
+        yield new Proclaim.BlockProclaim(statements.toImmutableSeq());
+      }
+      case Proclaim.IfProclaim ifProclaim -> new Proclaim.IfProclaim(ifProclaim.cond(),
+        rewrite(ifProclaim.thenBranch(), tail), ifProclaim.elseBranch().map(s -> rewrite(s, tail)));
+      case Proclaim.WhileProclaim whileProclaim -> {
+        loops++;
+        var body = rewrite(whileProclaim.body(), false);
+        loops--;
+        yield new Proclaim.WhileProclaim(whileProclaim.cond(), body);
+      }
+      default -> proclaim;
+    };
+  }
+
+  /** @return a return of {@code term} combined with the accumulator */
+  private @NotNull Proclaim returning(@NotNull Term term) {
+    if (accumulator == null || op == null) return new Proclaim.ReturnProclaim(Option.some(term));
+    var type = fn.result.unconst();
+    return new Proclaim.ReturnProclaim(Option.some(
+      new Term.BinaryTerm(op, new Term.RefTerm(type, accumulator), term, type)));
+  }
+
+  /**
+   * @param operand what the call is combined with, added to the accumulator first
+   * @return the arguments of {@code call} assigned to the parameters, through fresh
+   * locals since they may read the parameters, and the loop continued
+   */
+  private @NotNull Proclaim jump(@NotNull Term.FnCall call, @Nullable Term operand) {
+    turned = true;
+    var statements = MutableList.<Proclaim>create();
+    if (operand != null && accumulator != null && op != null) {
+      var type = fn.result.unconst();
+      statements.append(new Proclaim.VarAssignProclaim(accumulator,
+        new Term.BinaryTerm(op, new Term.RefTerm(type, accumulator), operand, type)));
+    }
+    var assigns = MutableList.<Proclaim>create();
+    for (int i = 0; i < fn.telescope.size(); i++) {
+      var param = fn.telescope.get(i);
+      var arg = call.args().get(i);
+      if (arg instanceof Term.RefTerm ref && ref.var() == param.ref()) continue;
+      var next = DefVar.<Def.VarDef, Decl.VarDecl>fresh(param.ref().name() + ".next");
+      statements.append(new Def.VarDef(next, arg, param.type()));
+      assigns.append(new Proclaim.VarAssignProclaim(param.ref(), new Term.RefTerm(param.type(), next)));
+    }
+    statements.appendAll(assigns);
+    statements.append(new Proclaim.ContinueProclaim());
+    return new Proclaim.BlockProclaim(statements.toImmutableSeq());
+  }
+
+  // endregion
+}
@@ -0,0 +1,246 @@
+package org.brunhild.compiling.optimize;
+
+import org.brunhild.compiling.Pass;
+import org.brunhild.compiling.Profiler;
+import org.brunhild.compiling.ir.DominatorTree;
+import org.brunhild.compiling.ir.Function;
+import org.brunhild.compiling.ir.IntList;
+import org.brunhild.compiling.ir.Module;
+import org.brunhild.compiling.ir.Opcode;
+import org.brunhild.compiling.ir.ValueType;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+
+/**
+ * Dominator-based global value numbering: walking the dominator tree with a scoped
+ * table, an instruction computing what a dominating one already has is replaced by it.
+ * Operands of commutative instructions are ordered before they are looked up, so
+ * {@code x * y} and {@code y * x} are the same.
+ * <p>
+ * Loads are numbered together with the version of the memory they read, which every
+ * write that may reach it replaces, so two loads are only the same if nothing in between
+ * may have written there. A store also makes the value it wrote what a later load of the
+ * same pointer reads.
+ *
+ * @see Pointers for what is told apart
+ */
+public final class ValueNumbering {
+  /** The number of instructions replaced, a counter of the profiler given to {@link #Pass}. */
+  public static final @NotNull String REDUNDANT = "gvn.redundant";
+
+  public static final @NotNull Pass<Module, Module, Profiler> Pass = (module, profiler) -> {
+    module.functions.forEach(fn -> new ValueNumbering(fn, profiler).run());
+    return module;
+  };
+
+  /** An instruction up to its result, block operands of phis are what their block is. */
+  private record Key(@NotNull Opcode op, @NotNull ValueType type, int imm, int @NotNull [] operands) {
+    @Override public boolean equals(Object o) {
+      return o instanceof Key key && op == key.op && type == key.type && imm == key.imm
+        && Arrays.equals(operands, key.operands);
+    }
+
+    @Override public int hashCode() {
+      return (op.hashCode() * 31 + type.hashCode()) * 31 + imm + Arrays.hashCode(operands) * 17;
+    }
+  }
+
+  private final @NotNull Function fn;
+  private final @NotNull Profiler profiler;
+  private final @NotNull DominatorTree dom;
+  private final @NotNull BitSet escaped;
+  /** The value each instruction is replaced by, itself if it is not. */
+  private final int @NotNull [] leader;
+  private final @NotNull HashMap<Key, Integer> table = new HashMap<>();
+  /** Memory versions are never reused, a fresh one cannot match anything in the table. */
+  private int versions = 0;
+
+  private ValueNumbering(@NotNull Function fn, @NotNull Profiler profiler) {
+    this.fn = fn;
+    this.profiler = profiler;
+    this.dom = DominatorTree.of(fn);
+    this.escaped = Pointers.escaped(fn);
+    this.leader = new int[fn.valueCount()];
+    for (int v = 0; v < leader.length; v++) leader[v] = v;
+  }
+
+  // region Memory
+
+  /**
+   * The versions of memory at a point: a write through a pointer of unknown root replaces
+   * {@link #epoch}, which every load reads, one through a parameter {@link #shared},
+   * which loads from globals and parameters read, and one into a global its own version
+   * and {@link #params}, read by loads through parameters.
+   */
+  private final class Memory {
+    int epoch, shared, params;
+    /** Whatever is written last, for loads through pointers of unknown root. */
+    int any;
+    final @NotNull HashMap<Integer, Integer> roots;
+
+    Memory(int epoch, int shared, int params, int any, @NotNull HashMap<Integer, Integer> roots) {
+      this.epoch = epoch;
+      this.shared = shared;
+      this.params = params;
+      this.any = any;
+      this.roots = roots;
+    }
+
+    @NotNull Memory copy() {
+      return new Memory(epoch, shared, params, any, new HashMap<>(roots));
+    }
+
+    /** @return the versions a load through {@code pointer} reads */
+    int @NotNull [] read(int pointer) {
+      var root = Pointers.root(fn, pointer);
+      if (root < 0) return new int[]{any};
+      return switch (fn.op(root)) {
+        case Alloca -> new int[]{epoch, version(root)};
+        case GlobalAddr -> new int[]{epoch, shared, version(root)};
+        default -> new int[]{epoch, shared, params};
+      };
+    }
+
+    private int version(int root) {
+      return roots.getOrDefault(root, 0);
+    }
+
+    void write(int value) {
+      if (fn.op(value) == Opcode.Call) {
+        shared = ++versions;
+        escaped.stream().forEach(alloca -> roots.put(alloca, ++versions));
+        any = ++versions;
+      }
+      for (var pointer : Pointers.written(fn, value)) {
+        var root = Pointers.root(fn, pointer);
+        if (root < 0) epoch = ++versions;
+        else switch (fn.op(root)) {
+          case Alloca -> roots.put(root, ++versions);
+          case GlobalAddr -> {
+            roots.put(root, ++versions);
+            params = ++versions;
+          }
+          default -> shared = ++versions;
+        }
+        any = ++versions;
+      }
+    }
+  }
+
+  /**
+   * @return the memory entering {@code block} from its immediate dominator, which left it
+   * as {@code memory}, after the writes of every block on a path between them
+   */
+  private @NotNull Memory entering(int block, @NotNull Memory memory) {
+    var idom = dom.idom(block);
+    var entering = memory.copy();
+    var preds = fn.predecessors(block);
+    if (preds.size() == 1 && preds.get(0) == idom) return entering;
+    var between = new BitSet();
+    var worklist = new IntList();
+    for (int i = 0; i < preds.size(); i++) {
+      var pred = preds.get(i);
+      if (pred == idom || between.get(pred) || !dom.isReachable(pred)) continue;
+      between.set(pred);
+      worklist.add(pred);
+    }
+    while (!worklist.isEmpty()) {
+      var b = worklist.removeLast();
+      var instructions = fn.instructions(b);
+      for (int i = 0; i < instructions.size(); i++) entering.write(instructions.get(i));
+      var bPreds = fn.predecessors(b);
+      for (int i = 0; i < bPreds.size(); i++) {
+        var pred = bPreds.get(i);
+        if (pred == idom || between.get(pred) || !dom.isReachable(pred)) continue;
+        between.set(pred);
+        worklist.add(pred);
+      }
+    }
+    return entering;
+  }
+
+  // endregion
+
+  /** A block of the dominator tree being walked, with the memory it left and what it added to the table. */
+  private record Frame(int block, @NotNull Memory memory, @NotNull ArrayList<Key> added, int @NotNull [] child) {}
+
+  private void run() {
+    var frames = new ArrayList<Frame>();
+    frames.add(visit(Function.ENTRY, new Memory(0, 0, 0, 0, new HashMap<>())));
+    while (!frames.isEmpty()) {
+      var frame = frames.get(frames.size() - 1);
+      var children = dom.children(frame.block);
+      if (frame.child[0] < children.size()) {
+        var child = children.get(frame.child[0]++);
+        frames.add(visit(child, entering(child, frame.memory)));
+        continue;
+      }
+      frames.remove(frames.size() - 1);
+      frame.added.forEach(table::remove);
+    }
+    fn.rewriteOperands(v -> v < leader.length ? leader[v] : v);
+  }
+
+  private @NotNull Frame visit(int block, @NotNull Memory memory) {
+    var added = new ArrayList<Key>();
+    for (var value : fn.instructions(block).toArray()) {
+      var op = fn.op(value);
+      if (op == Opcode.Store) {
+        memory.write(value);
+        // what is stored is what the same pointer loads until the next write
+        var pointer = leader[fn.operand(value, 0)];
+        var stored = leader[fn.operand(value, 1)];
+        var key = new Key(Opcode.Load, fn.type(stored), 0, concat(pointer, memory.read(pointer)));
+        if (table.putIfAbsent(key, stored) == null) added.add(key);
+        continue;
+      }
+      if (op.hasSideEffect()) {
+        memory.write(value);
+        continue;
+      }
+      if (op == Opcode.Alloca || op == Opcode.Param) continue;
+      var key = key(value, memory);
+      var existing = table.get(key);
+      if (existing != null) {
+        leader[value] = existing;
+        fn.remove(value);
+        profiler.count(REDUNDANT);
+        continue;
+      }
+      table.put(key, value);
+      added.add(key);
+    }
+    return new Frame(block, memory, added, new int[1]);
+  }
+
+  private @NotNull Key key(int value, @NotNull Memory memory) {
+    var op = fn.op(value);
+    var operands = new int[fn.arity(value)];
+    for (int j = 0; j < operands.length; j++) {
+      var operand = fn.operand(value, j);
+      operands[j] = fn.isBlockOperand(value, j) ? operand : leader[operand];
+    }
+    if (op.isCommutative() && operands[0] > operands[1]) {
+      var first = operands[0];
+      operands[0] = operands[1];
+      operands[1] = first;
+    }
+    return switch (op) {
+      case Load -> new Key(op, fn.type(value), 0, concat(operands[0], memory.read(operands[0])));
+      // phis are only the same in the same block
+      case Phi -> new Key(op, fn.type(value), fn.block(value), operands);
+      default -> new Key(op, fn.type(value), fn.imm(value), operands);
+    };
+  }
+
+  private static int @NotNull [] concat(int first, int @NotNull [] rest) {
+    var result = new int[rest.length + 1];
+    result[0] = first;
+    System.arraycopy(rest, 0, result, 1, rest.length);
+    return result;
+  }
+}
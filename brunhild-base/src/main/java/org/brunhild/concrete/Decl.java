@@ -13,7 +13,8 @@ import org.jetbrains.annotations.Nullable;
 
 public sealed abstract class Decl implements Stmt {
   public final @NotNull SourcePos sourcePos;
-  public final @NotNull Type<Expr> result;
+  /** Array dimensions in it are resolved together with the body. */
+  public @NotNull Type<Expr> result;
   public @Nullable Context context;
   public @Nullable Def.Signature signature;
 
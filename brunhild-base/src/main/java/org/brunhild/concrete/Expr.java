@@ -9,6 +9,8 @@ import org.brunhild.generic.Type;
 import org.brunhild.generic.Var;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.BitSet;
+
 public sealed interface Expr {
   @NotNull SourcePos sourcePos();
 
@@ -67,6 +69,17 @@ public sealed interface Expr {
     @NotNull ImmutableSeq<Expr> values
   ) implements Expr {}
 
+  /**
+   * A brace list of number literals only, as big lookup tables are, which skips a
+   * node per element. The words are {@code int} values, or {@link Float#floatToRawIntBits}
+   * of the literals whose bits are set in {@code floats}.
+   */
+  record LitPackedArrayExpr(
+    @Override @NotNull SourcePos sourcePos,
+    int @NotNull [] values,
+    @NotNull BitSet floats
+  ) implements Expr {}
+
   record Param(
     @NotNull SourcePos sourcePos,
     @NotNull LocalVar ref,
@@ -1,11 +1,17 @@
 package org.brunhild.concrete.resolve;
 
+import kala.collection.mutable.MutableList;
 import org.brunhild.concrete.Expr;
 import org.brunhild.concrete.resolve.context.Context;
 import org.brunhild.generic.DefVar;
 import org.brunhild.generic.Var;
 import org.jetbrains.annotations.NotNull;
 
+/**
+ * Chains of binary operators lean left as deep as they are long, and prefix operators
+ * nest like them, so both are walked down first and rebuilt in a loop, like
+ * they are produced.
+ */
 public record ExprResolver(@NotNull Context context) {
   public @NotNull Expr resolve(@NotNull Expr expr) {
     return switch (expr) {
@@ -13,11 +19,12 @@ public record ExprResolver(@NotNull Context context) {
       case Expr.LitFloatExpr lit -> lit;
       case Expr.LitIntExpr lit -> lit;
       case Expr.LitStringExpr lit -> lit;
+      case Expr.LitPackedArrayExpr lit -> lit;
 
       case Expr.AppExpr app -> {
         var fn = resolve(app.fn());
         var args = app.args().map(this::resolve);
-        if (fn == app.fn() && args.sameElements(app.args())) yield app;
+        if (fn == app.fn() && args.sameElements(app.args(), true)) yield app;
         yield new Expr.AppExpr(app.sourcePos(), fn, args);
       }
       case Expr.IndexExpr index -> {
@@ -27,19 +34,37 @@ public record ExprResolver(@NotNull Context context) {
         yield new Expr.IndexExpr(index.sourcePos(), e, i);
       }
       case Expr.UnaryExpr unary -> {
-        var e = resolve(unary.expr());
-        if (e == unary.expr()) yield unary;
-        yield new Expr.UnaryExpr(unary.sourcePos(), unary.op(), e);
+        var prefixes = MutableList.<Expr.UnaryExpr>create();
+        Expr operand = unary;
+        while (operand instanceof Expr.UnaryExpr prefix) {
+          prefixes.append(prefix);
+          operand = prefix.expr();
+        }
+        var e = resolve(operand);
+        for (int i = prefixes.size() - 1; i >= 0; i--) {
+          var prefix = prefixes.get(i);
+          e = e == prefix.expr() ? prefix : new Expr.UnaryExpr(prefix.sourcePos(), prefix.op(), e);
+        }
+        yield e;
       }
       case Expr.BinaryExpr binary -> {
-        var l = resolve(binary.lhs());
-        var r = resolve(binary.rhs());
-        if (l == binary.lhs() && r == binary.rhs()) yield binary;
-        yield new Expr.BinaryExpr(binary.sourcePos(), binary.op(), l, r);
+        var spine = MutableList.<Expr.BinaryExpr>create();
+        Expr left = binary;
+        while (left instanceof Expr.BinaryExpr chain) {
+          spine.append(chain);
+          left = chain.lhs();
+        }
+        var l = resolve(left);
+        for (int i = spine.size() - 1; i >= 0; i--) {
+          var chain = spine.get(i);
+          var r = resolve(chain.rhs());
+          l = l == chain.lhs() && r == chain.rhs() ? chain : new Expr.BinaryExpr(chain.sourcePos(), chain.op(), l, r);
+        }
+        yield l;
       }
       case Expr.LitArrayExpr lit -> {
         var values = lit.values().map(this::resolve);
-        if (values.sameElements(lit.values())) yield lit;
+        if (values.sameElements(lit.values(), true)) yield lit;
         yield new Expr.LitArrayExpr(lit.sourcePos(), values);
       }
       case Expr.UnresolvedExpr unresolved -> {
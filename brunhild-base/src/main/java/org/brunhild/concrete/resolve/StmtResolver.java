@@ -9,6 +9,7 @@ import org.brunhild.concrete.Decl;
 import org.brunhild.concrete.Expr;
 import org.brunhild.concrete.Stmt;
 import org.brunhild.concrete.resolve.context.Context;
+import org.brunhild.generic.Type;
 import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
 
@@ -30,6 +31,7 @@ public interface StmtResolver {
       case Decl.VarDecl decl -> {
         var context = decl.context;
         assert context != null : "no shallow resolver?";
+        decl.result = resolveType(decl.result, context);
         decl.body = decl.body.map(e -> e.resolve(context));
         yield decl;
       }
@@ -42,12 +44,26 @@ public interface StmtResolver {
   resolveParams(@NotNull SeqView<Expr.Param> params, @NotNull Context ctx) {
     if (params.isEmpty()) return Tuple2.of(SeqView.empty(), ctx);
     var first = params.first();
-    var type = first.type();
+    var type = resolveType(first.type(), ctx);
     var newCtx = ctx.bind(first.ref());
     var result = resolveParams(params.drop(1), newCtx);
     return Tuple2.of(result._1.prepended(new Expr.Param(first, type)), result._2);
   }
 
+  /** Array dimensions may refer to constants, like {@code int a[N]}. */
+  private static @NotNull Type<Expr> resolveType(@NotNull Type<Expr> type, @NotNull Context context) {
+    return switch (type) {
+      case Type.Const<Expr> constType -> new Type.Const<>(resolveType(constType.type(), context));
+      case Type.Array<Expr> array -> {
+        var dimension = array.dimension() instanceof Type.DimExpr<?> dim
+          ? new Type.DimExpr<>(((Expr) dim.term()).resolve(context))
+          : array.dimension();
+        yield new Type.Array<>(resolveType(array.elementType(), context), dimension);
+      }
+      default -> type;
+    };
+  }
+
   private static @NotNull Tuple2<Stmt, Context> resolveStmt(@NotNull Stmt stmt, @NotNull Context context) {
     return switch (stmt) {
       case Stmt.WhileStmt whi -> {
@@ -69,7 +85,7 @@ public interface StmtResolver {
           ctx.value = local._2;
           return local._1;
         });
-        if (stmts.sameElements(block.block())) yield Tuple.of(block, context);
+        if (stmts.sameElements(block.block(), true)) yield Tuple.of(block, context);
         yield Tuple.of(new Stmt.BlockStmt(block.sourcePos(), stmts), context);
       }
       case Stmt.IfStmt ih -> {
@@ -94,6 +110,7 @@ public interface StmtResolver {
       case Stmt.BreakStmt ignored -> Tuple.of(ignored, context);
       case Decl.VarDecl decl -> {
         decl.context = context;
+        decl.result = resolveType(decl.result, context);
         decl.body = decl.body.map(e -> e.resolve(context));
         var newCtx = context.bind(decl.ref);
         yield Tuple.of(decl, newCtx);
@@ -147,23 +147,23 @@ public abstract sealed class Def implements Proclaim {
     }
 
     private static @NotNull Term.Param intT(@NotNull String name) {
-      return new Term.Param(new LocalVar(name), new Type.Int<>());
+      return new Term.Param(new LocalVar(name), Type.Int.of());
     }
 
     private static @NotNull Term.Param floatT(@NotNull String name) {
-      return new Term.Param(new LocalVar(name), new Type.Float<>());
+      return new Term.Param(new LocalVar(name), Type.Float.of());
     }
 
     private static @NotNull Term.Param stringT(@NotNull String name) {
-      return new Term.Param(new LocalVar(name), new Type.String<>());
+      return new Term.Param(new LocalVar(name), Type.String.of());
     }
 
     private static @NotNull Term.Param voidT() {
-      return new Term.Param(new LocalVar("_"), new Type.Void<>());
+      return new Term.Param(new LocalVar("_"), Type.Void.of());
     }
 
     private static @NotNull Term.Param arrayT(@NotNull Term.Param param) {
-      return new Term.Param(param, new Type.Array<>(param.type(), new Type.DimInferred()));
+      return new Term.Param(param, Type.Array.of(param.type(), new Type.DimInferred()));
     }
   }
   public record Signature(
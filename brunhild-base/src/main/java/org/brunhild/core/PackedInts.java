@@ -0,0 +1,148 @@
+package org.brunhild.core;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * An immutable sequence of 32-bit words, stored as segments of non-zero content
+ * with the zero runs between them left out, so a mostly empty table costs only
+ * what is written into it. {@link #slice Slices} share the segments of their parent.
+ *
+ * @see Term.PackedArray
+ */
+public final class PackedInts {
+  /** Zero runs shorter than this stay inside a segment, splitting it would cost more. */
+  private static final int GAP = 16;
+
+  /** Ascending, segment {@code i} covers {@code starts[i]} up to {@code starts[i] + segments[i].length}. */
+  private final int @NotNull [] starts;
+  private final int @NotNull [] @NotNull [] segments;
+  private final int from;
+  private final int size;
+
+  private PackedInts(int @NotNull [] starts, int @NotNull [] @NotNull [] segments, int from, int size) {
+    this.starts = starts;
+    this.segments = segments;
+    this.from = from;
+    this.size = size;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public int get(int index) {
+    Objects.checkIndex(index, size);
+    var at = from + index;
+    var segment = segmentOf(at);
+    if (segment < 0) return 0;
+    var offset = at - starts[segment];
+    return offset < segments[segment].length ? segments[segment][offset] : 0;
+  }
+
+  public @NotNull PackedInts slice(int offset, int length) {
+    Objects.checkFromIndexSize(offset, length, size);
+    return new PackedInts(starts, segments, from + offset, length);
+  }
+
+  /** @return the index of the last non-zero word, -1 if there is none */
+  public int lastNonZero() {
+    var end = from + size;
+    for (var segment = segmentOf(end - 1); segment >= 0; segment--) {
+      var start = starts[segment];
+      var words = segments[segment];
+      for (var at = Math.min(end, start + words.length) - 1; at >= Math.max(from, start); at--)
+        if (words[at - start] != 0) return at - from;
+      if (start <= from) break;
+    }
+    return -1;
+  }
+
+  public boolean isZero() {
+    return lastNonZero() < 0;
+  }
+
+  public int nonZeros() {
+    var count = new int[1];
+    forEachNonZero((index, word) -> count[0]++);
+    return count[0];
+  }
+
+  /** Visits the non-zero words in ascending order of their indices. */
+  public void forEachNonZero(@NotNull WordConsumer consumer) {
+    var end = from + size;
+    for (var segment = Math.max(0, segmentOf(from)); segment < starts.length && starts[segment] < end; segment++) {
+      var start = starts[segment];
+      var words = segments[segment];
+      for (var at = Math.max(from, start); at < Math.min(end, start + words.length); at++)
+        if (words[at - start] != 0) consumer.accept(at - from, words[at - start]);
+    }
+  }
+
+  /** @return the last segment starting at or before {@code at}, -1 if there is none */
+  private int segmentOf(int at) {
+    var i = Arrays.binarySearch(starts, at);
+    return i >= 0 ? i : -i - 2;
+  }
+
+  @Override public @NotNull String toString() {
+    var builder = new StringBuilder("[");
+    for (int i = 0, last = lastNonZero(); i <= last; i++) builder.append(i == 0 ? "" : ", ").append(get(i));
+    return builder.append(']').toString();
+  }
+
+  @FunctionalInterface
+  public interface WordConsumer {
+    void accept(int index, int word);
+  }
+
+  /** Words are {@linkplain #set set} in ascending order of indices, the ones never set are zeros. */
+  public static final class Builder {
+    private final int size;
+    private int @NotNull [] starts = new int[4];
+    private int @NotNull [] @NotNull [] segments = new int[4][];
+    private int count = 0;
+    private int @NotNull [] open = new int[16];
+    private int openStart = 0;
+    private int openLength = 0;
+    private int next = 0;
+
+    public Builder(int size) {
+      this.size = size;
+    }
+
+    public void set(int index, int word) {
+      Objects.checkIndex(index, size);
+      if (index < next) throw new IllegalArgumentException("words must be set in ascending order: " + index);
+      next = index + 1;
+      if (word == 0) return;
+      if (openLength == 0 || index - (openStart + openLength) >= GAP) {
+        close();
+        openStart = index;
+      }
+      var offset = index - openStart;
+      if (offset >= open.length) open = Arrays.copyOf(open, Math.max(offset + 1, 2 * open.length));
+      open[offset] = word;
+      openLength = offset + 1;
+    }
+
+    private void close() {
+      if (openLength == 0) return;
+      if (count == starts.length) {
+        starts = Arrays.copyOf(starts, 2 * count);
+        segments = Arrays.copyOf(segments, 2 * count);
+      }
+      starts[count] = openStart;
+      segments[count++] = Arrays.copyOf(open, openLength);
+      Arrays.fill(open, 0, openLength, 0);
+      openLength = 0;
+    }
+
+    public @NotNull PackedInts build() {
+      close();
+      return new PackedInts(Arrays.copyOf(starts, count), Arrays.copyOf(segments, count), 0, size);
+    }
+  }
+}
@@ -12,6 +12,12 @@ import org.brunhild.generic.Var;
 import org.brunhild.tyck.Gamma;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.ArrayList;
+
+/**
+ * Terms carry the type the checker gave them, so {@link #type()} never looks into the
+ * children. Rewrites of a term keep the type of the term they replace.
+ */
 public sealed interface Term {
   @NotNull Type<Term> type();
 
@@ -31,12 +37,11 @@ public sealed interface Term {
 
   record IndexTerm(
     @NotNull Term term,
-    @NotNull Term index
+    @NotNull Term index,
+    @Override @NotNull Type<Term> type
   ) implements Term {
-    @Override public @NotNull Type<Term> type() {
-      var arrayType = term.type();
-      assert arrayType instanceof Type.Array<Term> : "type checker bug?";
-      return ((Type.Array<Term>) arrayType).elementType();
+    public IndexTerm {
+      assert term.type() instanceof Type.Array<Term> : "type checker bug?";
     }
 
     @Override public @NotNull String toString() {
@@ -49,7 +54,11 @@ public sealed interface Term {
     @NotNull ImmutableSeq<Term> args
   ) implements CallTerm {
     @Override public @NotNull Type<Term> type() {
-      return fn.core.result();
+      // the callee may still be under checking when we are calling it recursively
+      if (fn.core != null) return fn.core.result();
+      var signature = fn.concrete.signature;
+      assert signature != null : "we need dependency graph now!";
+      return signature.result();
     }
 
     @Override public @NotNull String toString() {
@@ -70,13 +79,35 @@ public sealed interface Term {
     }
   }
 
+  /** Number literals of small integral values are shared, get them by {@link #of}. */
   record LitTerm(
     Either<Either<Integer, Float>, String> literal
   ) implements Term {
+    private static final int CACHE_LOW = -128, CACHE_HIGH = 1024;
+    private static final LitTerm[] INTS = new LitTerm[CACHE_HIGH - CACHE_LOW];
+    private static final LitTerm[] FLOATS = new LitTerm[CACHE_HIGH - CACHE_LOW];
+
+    public static @NotNull LitTerm of(int i) {
+      if (i < CACHE_LOW || i >= CACHE_HIGH) return new LitTerm(Either.left(Either.left(i)));
+      // racing threads may both fill a slot, either literal will do
+      var lit = INTS[i - CACHE_LOW];
+      if (lit == null) INTS[i - CACHE_LOW] = lit = new LitTerm(Either.left(Either.left(i)));
+      return lit;
+    }
+
+    public static @NotNull LitTerm of(float f) {
+      var i = (int) f;
+      if (i != f || i < CACHE_LOW || i >= CACHE_HIGH || Float.floatToRawIntBits(f) == Float.floatToRawIntBits(-0f))
+        return new LitTerm(Either.left(Either.right(f)));
+      var lit = FLOATS[i - CACHE_LOW];
+      if (lit == null) FLOATS[i - CACHE_LOW] = lit = new LitTerm(Either.left(Either.right(f)));
+      return lit;
+    }
+
     @Override public @NotNull Type<Term> type() {
-      if (literal.isRight()) return new Type.String<>();
-      if (literal.getLeftValue().isLeft()) return new Type.Int<>();
-      return new Type.Float<>();
+      if (literal.isRight()) return Type.String.of();
+      if (literal.getLeftValue().isLeft()) return Type.Int.of();
+      return Type.Float.of();
     }
 
     @Override public @NotNull String toString() {
@@ -93,6 +124,55 @@ public sealed interface Term {
     }
   }
 
+  /**
+   * An array initializer of number literals only, kept as words in row-major order
+   * instead of a term per element: {@code int} values, or {@link Float#floatToRawIntBits}
+   * when the scalar type is float. Words past the written ones are zeros.
+   */
+  record PackedArray(
+    @Override @NotNull Type.Array<Term> type,
+    @NotNull PackedInts values
+  ) implements ArrayTerm {
+    public int length() {
+      return ((Type.DimConst) type.dimension()).dimension();
+    }
+
+    public boolean isFloat() {
+      return type.scalarType() instanceof Type.Float<Term>;
+    }
+
+    /** @return a literal, or a sub-array sharing the words of this one */
+    public @NotNull Term get(int index) {
+      if (type.elementType().unconst() instanceof Type.Array<Term> sub) {
+        var stride = sub.flatSize();
+        return new PackedArray(sub, values.slice(index * stride, stride));
+      }
+      var word = values.get(index);
+      return isFloat() ? TermFold.litFloat(Float.intBitsToFloat(word)) : TermFold.litInt(word);
+    }
+
+    /** Prints like {@link InitializedArray} does, trailing zeros are left out. */
+    @Override public @NotNull String toString() {
+      var builder = new StringBuilder();
+      print(builder, type, 0, isFloat());
+      return builder.toString();
+    }
+
+    private void print(@NotNull StringBuilder builder, @NotNull Type.Array<Term> type, int offset, boolean isFloat) {
+      var sub = type.elementType().unconst() instanceof Type.Array<Term> array ? array : null;
+      var stride = sub == null ? 1 : sub.flatSize();
+      var last = values.slice(offset, type.flatSize()).lastNonZero();
+      builder.append('{');
+      for (int i = 0; last >= 0 && i <= last / stride; i++) {
+        if (i > 0) builder.append(", ");
+        if (sub != null) print(builder, sub, offset + i * stride, isFloat);
+        else if (isFloat) builder.append(Float.intBitsToFloat(values.get(offset + i)));
+        else builder.append(values.get(offset + i));
+      }
+      builder.append('}');
+    }
+  }
+
   record UninitializedArray(
     @Override @NotNull Type.Array<Term> type
   ) implements ArrayTerm {
@@ -101,29 +181,87 @@ public sealed interface Term {
     }
   }
 
+  /** The operators of {@link BinaryTerm}: those of the source, and the ones passes introduce. */
+  enum BinOP {
+    ADD("+"),
+    SUB("-"),
+    MUL("*"),
+    DIV("/"),
+    MOD("%"),
+    EQ("=="),
+    NE("!="),
+    LT("<"),
+    LE("<="),
+    GT(">"),
+    GE(">="),
+    LOGICAL_AND("&&"),
+    LOGICAL_OR("||"),
+    // the rest have no syntax, they are introduced by strength reduction on ints
+    SHL("<<"),
+    /** the arithmetic shift */
+    SHR(">>"),
+    /** the logical shift */
+    USHR(">>>"),
+    /** the high half of the 64-bit product */
+    MULHI("*hi");
+
+    public final @NotNull String symbol;
+
+    BinOP(@NotNull String symbol) {
+      this.symbol = symbol;
+    }
+
+    public static @NotNull BinOP of(@NotNull Expr.BinOP op) {
+      return switch (op) {
+        case ADD -> ADD;
+        case SUB -> SUB;
+        case MUL -> MUL;
+        case DIV -> DIV;
+        case MOD -> MOD;
+        case EQ -> EQ;
+        case NE -> NE;
+        case LT -> LT;
+        case LE -> LE;
+        case GT -> GT;
+        case GE -> GE;
+        case LOGICAL_AND -> LOGICAL_AND;
+        case LOGICAL_OR -> LOGICAL_OR;
+      };
+    }
+  }
+
   record BinaryTerm(
-    @NotNull Expr.BinOP op,
+    @NotNull BinOP op,
     @NotNull Term lhs,
-    @NotNull Term rhs
+    @NotNull Term rhs,
+    @Override @NotNull Type<Term> type
   ) implements Term {
-    @Override public @NotNull Type<Term> type() {
+    public BinaryTerm {
       assert lhs.type().equals(rhs.type()) : "type checker bug?";
-      return lhs.type();
     }
 
+    /** Prints the left spine of a chain in a loop, it may be as deep as the chain is long. */
     @Override public @NotNull String toString() {
-      return String.format("(%s %s %s)", lhs, op.symbol, rhs);
+      var spine = new ArrayList<BinaryTerm>();
+      Term left = this;
+      while (left instanceof BinaryTerm chain) {
+        spine.add(chain);
+        left = chain.lhs;
+      }
+      var builder = new StringBuilder("(".repeat(spine.size())).append(left);
+      for (int i = spine.size() - 1; i >= 0; i--) {
+        var chain = spine.get(i);
+        builder.append(' ').append(chain.op.symbol).append(' ').append(chain.rhs).append(')');
+      }
+      return builder.toString();
     }
   }
 
   record UnaryTerm(
     @NotNull Expr.UnaryOP op,
-    @NotNull Term term
+    @NotNull Term term,
+    @Override @NotNull Type<Term> type
   ) implements Term {
-    @Override public @NotNull Type<Term> type() {
-      return term().type();
-    }
-
     @Override public String toString() {
       return String.format("(%s %s)", op.symbol, term);
     }
@@ -0,0 +1,271 @@
+package org.brunhild.core.ops;
+
+import org.brunhild.concrete.Expr;
+import org.brunhild.core.Term;
+import org.brunhild.generic.Type;
+import org.brunhild.tyck.Gamma;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Folds a whole chain of one associative operator at once, like {@code 1 + x - 2 + y},
+ * instead of pair by pair, so literals apart from each other are combined too.
+ * Sums, which include subtractions, and products of ints are reordered, with the literals
+ * combined into one at the end, and rebuilt as balanced trees. Float ones only are with
+ * fast math, since rounding makes them not associative. Logical chains keep their order,
+ * they short-circuit, but literals in them are resolved.
+ * <p>
+ * Operands with calls are never reordered relative to each other, nor are the others
+ * moved across them. Pure operands are sorted into a canonical order, so equal chains
+ * come out the same whichever way they were written.
+ */
+final class Chain {
+  private enum Family {Sum, Product, And, Or}
+
+  /** An operand, subtracted if negated. */
+  private record Operand(@NotNull Term term, boolean negated) {}
+
+  private final @NotNull Family family;
+  private final @NotNull Type<Term> type;
+  private final boolean isFloat;
+
+  private Chain(@NotNull Family family, @NotNull Type<Term> type) {
+    this.family = family;
+    this.type = type;
+    this.isFloat = type instanceof Type.Float<Term>;
+  }
+
+  private static @Nullable Family family(@NotNull Term.BinOP op) {
+    return switch (op) {
+      case ADD, SUB -> Family.Sum;
+      case MUL -> Family.Product;
+      case LOGICAL_AND -> Family.And;
+      case LOGICAL_OR -> Family.Or;
+      default -> null;
+    };
+  }
+
+  /** @return the folded chain rooted at {@code bin}, or null if it is not one */
+  static @Nullable Term fold(@NotNull TermFold fold, @NotNull Term.BinaryTerm bin, @NotNull Gamma.ConstGamma gamma) {
+    var family = family(bin.op());
+    if (family == null) return null;
+    if ((family == Family.Sum || family == Family.Product)
+      && !(bin.type() instanceof Type.Int<Term> || fold.fastMath() && bin.type() instanceof Type.Float<Term>))
+      return null;
+    var chain = new Chain(family, bin.type());
+    var operands = chain.flatten(bin);
+    var folded = new ArrayList<Operand>(operands.size());
+    for (var operand : operands) folded.add(new Operand(fold.traverse(operand.term, gamma), operand.negated));
+    var result = switch (family) {
+      case Sum, Product -> chain.arithmetic(folded);
+      case And, Or -> chain.logical(folded);
+    };
+    return sameShape(bin, result) ? bin : result;
+  }
+
+  /** @return the operands from left to right, the chain may be balanced already */
+  private @NotNull List<Operand> flatten(@NotNull Term.BinaryTerm root) {
+    var operands = new ArrayList<Operand>();
+    var stack = new ArrayDeque<Operand>();
+    stack.push(new Operand(root, false));
+    while (!stack.isEmpty()) {
+      var operand = stack.pop();
+      if (operand.term instanceof Term.BinaryTerm bin && family(bin.op()) == family && bin.type().equals(type)) {
+        stack.push(new Operand(bin.rhs(), operand.negated ^ bin.op() == Term.BinOP.SUB));
+        stack.push(new Operand(bin.lhs(), operand.negated));
+      } else operands.add(operand);
+    }
+    return operands;
+  }
+
+  // region Sums and products
+
+  private @NotNull Term arithmetic(@NotNull List<Operand> operands) {
+    var product = family == Family.Product;
+    int intConst = product ? 1 : 0;
+    float floatConst = product ? 1 : 0;
+    var terms = new ArrayList<Operand>(operands.size());
+    for (var operand : operands) {
+      var term = operand.term;
+      if (isInt(term)) {
+        var value = intOf(term);
+        if (product) intConst *= value;
+        else intConst += operand.negated ? -value : value;
+      } else if (isFloat(term)) {
+        var value = floatOf(term);
+        if (product) floatConst *= value;
+        else floatConst += operand.negated ? -value : value;
+      } else terms.add(operand);
+    }
+    var isIdentity = isFloat ? floatConst == (product ? 1 : 0) : intConst == (product ? 1 : 0);
+    var constant = isFloat ? TermFold.litFloat(floatConst) : TermFold.litInt(intConst);
+    if (terms.isEmpty()) return constant;
+    Term result;
+    if (terms.stream().anyMatch(operand -> hasCalls(operand.term))) result = leftLeaning(terms);
+    else {
+      terms.sort(CANONICAL);
+      var added = terms.stream().filter(operand -> !operand.negated).map(Operand::term).toList();
+      var subtracted = terms.stream().filter(Operand::negated).map(Operand::term).toList();
+      var op = product ? Term.BinOP.MUL : Term.BinOP.ADD;
+      if (subtracted.isEmpty()) result = balanced(added, op);
+      else if (added.isEmpty()) {
+        if (!isIdentity) return new Term.BinaryTerm(Term.BinOP.SUB, constant, balanced(subtracted, op), type);
+        return new Term.UnaryTerm(Expr.UnaryOP.NEG, balanced(subtracted, op), type);
+      } else result = new Term.BinaryTerm(Term.BinOP.SUB, balanced(added, op), balanced(subtracted, op), type);
+    }
+    if (isIdentity) return result;
+    if (product) {
+      if (isFloat ? floatConst == -1 : intConst == -1) return new Term.UnaryTerm(Expr.UnaryOP.NEG, result, type);
+      return new Term.BinaryTerm(Term.BinOP.MUL, result, constant, type);
+    }
+    if (isFloat ? floatConst < 0 : intConst < 0 && intConst != Integer.MIN_VALUE)
+      return new Term.BinaryTerm(Term.BinOP.SUB, result, isFloat ? TermFold.litFloat(-floatConst) : TermFold.litInt(-intConst), type);
+    return new Term.BinaryTerm(Term.BinOP.ADD, result, constant, type);
+  }
+
+  /** In the order they were written, so the calls are made in it too. */
+  private @NotNull Term leftLeaning(@NotNull List<Operand> operands) {
+    var first = operands.get(0);
+    var result = first.negated ? new Term.UnaryTerm(Expr.UnaryOP.NEG, first.term, type) : first.term;
+    for (int i = 1; i < operands.size(); i++) {
+      var operand = operands.get(i);
+      var op = family == Family.Product ? Term.BinOP.MUL : operand.negated ? Term.BinOP.SUB : Term.BinOP.ADD;
+      result = new Term.BinaryTerm(op, result, operand.term, type);
+    }
+    return result;
+  }
+
+  /** Variables first, then array elements, then everything else, by name where there is one. */
+  private static final @NotNull Comparator<Operand> CANONICAL = Comparator
+    .<Operand>comparingInt(operand -> rank(operand.term))
+    .thenComparing(operand -> name(operand.term));
+
+  private static int rank(@NotNull Term term) {
+    return switch (term) {
+      case Term.RefTerm ref -> 0;
+      case Term.IndexTerm index -> 1;
+      case Term.UnaryTerm unary -> 2;
+      case Term.BinaryTerm binary -> 3;
+      case Term.CoerceTerm coerce -> 4;
+      default -> 5;
+    };
+  }
+
+  private static @NotNull String name(@NotNull Term term) {
+    while (term instanceof Term.IndexTerm index) term = index.term();
+    return term instanceof Term.RefTerm ref ? ref.var().name() : "";
+  }
+
+  // endregion
+
+  // region Logical chains
+
+  /**
+   * Operands after one that decides the result are never evaluated and are dropped. Those
+   * that do not decide it are dropped as well, unless that leaves a single operand, which
+   * is then compared against zero to keep the result zero or one.
+   */
+  private @NotNull Term logical(@NotNull List<Operand> operands) {
+    var and = family == Family.And;
+    var kept = new ArrayList<Term>(operands.size());
+    var dropped = false;
+    for (var operand : operands) {
+      var term = operand.term;
+      if (!isInt(term)) {
+        kept.add(term);
+        continue;
+      }
+      if ((intOf(term) != 0) == and) {
+        dropped = true;
+        continue;
+      }
+      var decided = TermFold.litInt(and ? 0 : 1);
+      if (kept.stream().noneMatch(Chain::hasCalls)) return decided;
+      kept.add(decided);
+      break;
+    }
+    if (kept.isEmpty()) return TermFold.litInt(and ? 1 : 0);
+    if (kept.size() == 1) {
+      if (!dropped) throw new IllegalStateException("unreachable");
+      return new Term.BinaryTerm(Term.BinOP.NE, kept.get(0), TermFold.litInt(0), type);
+    }
+    return balanced(kept, and ? Term.BinOP.LOGICAL_AND : Term.BinOP.LOGICAL_OR);
+  }
+
+  // endregion
+
+  /** Keeps the operands in order, so evaluation order is kept as well. */
+  private @NotNull Term balanced(@NotNull List<Term> terms, @NotNull Term.BinOP op) {
+    if (terms.size() == 1) return terms.get(0);
+    var half = terms.size() / 2;
+    return new Term.BinaryTerm(op, balanced(terms.subList(0, half), op), balanced(terms.subList(half, terms.size()), op), type);
+  }
+
+  private static boolean isInt(@NotNull Term term) {
+    return term instanceof Term.LitTerm lit && lit.literal().isLeft() && lit.literal().getLeftValue().isLeft();
+  }
+
+  private static boolean isFloat(@NotNull Term term) {
+    return term instanceof Term.LitTerm lit && lit.literal().isLeft() && lit.literal().getLeftValue().isRight();
+  }
+
+  private static int intOf(@NotNull Term term) {
+    return ((Term.LitTerm) term).literal().getLeftValue().getLeftValue();
+  }
+
+  private static float floatOf(@NotNull Term term) {
+    return ((Term.LitTerm) term).literal().getLeftValue().getRightValue();
+  }
+
+  static boolean hasCalls(@NotNull Term term) {
+    var stack = new ArrayDeque<Term>();
+    stack.push(term);
+    while (!stack.isEmpty()) {
+      switch (stack.pop()) {
+        case Term.CallTerm call -> {
+          return true;
+        }
+        case Term.CoerceTerm coerce -> stack.push(coerce.term());
+        case Term.UnaryTerm unary -> stack.push(unary.term());
+        case Term.BinaryTerm binary -> {
+          stack.push(binary.lhs());
+          stack.push(binary.rhs());
+        }
+        case Term.IndexTerm index -> {
+          stack.push(index.term());
+          stack.push(index.index());
+        }
+        case Term.InitializedArray array -> array.values().forEach(stack::push);
+        default -> {}
+      }
+    }
+    return false;
+  }
+
+  /** @return whether both trees have the same operators over the same operands */
+  private static boolean sameShape(@NotNull Term original, @NotNull Term result) {
+    var stack = new ArrayDeque<Term>();
+    stack.push(original);
+    stack.push(result);
+    while (!stack.isEmpty()) {
+      var b = stack.pop();
+      var a = stack.pop();
+      if (a == b || a instanceof Term.LitTerm && a.equals(b)) continue;
+      if (a instanceof Term.BinaryTerm l && b instanceof Term.BinaryTerm r && l.op() == r.op()) {
+        stack.push(l.lhs());
+        stack.push(r.lhs());
+        stack.push(l.rhs());
+        stack.push(r.rhs());
+      } else if (a instanceof Term.UnaryTerm l && b instanceof Term.UnaryTerm r && l.op() == r.op()) {
+        stack.push(l.term());
+        stack.push(r.term());
+      } else return false;
+    }
+    return true;
+  }
+}
@@ -1,134 +1,133 @@
 package org.brunhild.core.ops;
 
-import kala.control.Either;
-import kala.function.FloatFunction;
+import org.brunhild.concrete.Expr;
 import org.brunhild.core.Term;
 import org.brunhild.generic.Type;
 import org.brunhild.tyck.Gamma;
 import org.jetbrains.annotations.NotNull;
-
-import java.util.function.Function;
-import java.util.function.IntFunction;
+import org.jetbrains.annotations.Nullable;
 
 public interface TermFold extends TermOps<Gamma.ConstGamma> {
-  default @NotNull Term traverse(@NotNull Term term, @NotNull Gamma.ConstGamma gamma) {
+  /** Whether float sums and products may be reassociated, which changes how they round. */
+  default boolean fastMath() {
+    return false;
+  }
+
+  @Override default @Nullable Term pre(@NotNull Term term, @NotNull Gamma.ConstGamma gamma) {
     return switch (term) {
-      case Term.RefTerm ref -> gamma.getOption(ref.var()).map(v -> traverse(v, gamma)).getOrDefault(ref);
-      case Term.UnaryTerm unary -> switch (unary.op()) {
-        case POS -> tryFold(gamma, unary.term(),
-          t -> new Term.UnaryTerm(unary.op(), t),
-          i -> litInt(+i),
-          f -> litFloat(+f));
-        case NEG -> tryFold(gamma, unary.term(),
-          t -> new Term.UnaryTerm(unary.op(), t),
-          i -> litInt(-i),
-          f -> litFloat(-f));
-        case LOGICAL_NOT -> tryFold(gamma, unary.term(),
-          t -> new Term.UnaryTerm(unary.op(), t),
-          i -> litInt(i == 0 ? 1 : 0),
-          this::tyckerBug);
-      };
-      // TODO: flatten binary ops
-      case Term.BinaryTerm bin -> switch (bin.op()) {
-        case ADD -> tryFoldBin(gamma, bin, (l, r) -> litInt(l + r), (l, r) -> litFloat(l + r));
-        case SUB -> tryFoldBin(gamma, bin, (l, r) -> litInt(l - r), (l, r) -> litFloat(l - r));
-        case MUL -> tryFoldBin(gamma, bin, (l, r) -> litInt(l * r), (l, r) -> litFloat(l * r));
-        case DIV -> tryFoldBin(gamma, bin, (l, r) -> litInt(l / r), (l, r) -> litFloat(l / r));
-        case MOD -> tryFoldBin(gamma, bin, (l, r) -> litInt(l % r), this::tyckerBug);
-        case EQ -> tryFoldBin(gamma, bin, (l, r) -> litInt(l == r ? 1 : 0), this::tyckerBug);
-        case NE -> tryFoldBin(gamma, bin, (l, r) -> litInt(l != r ? 1 : 0), this::tyckerBug);
-        case LT -> tryFoldBin(gamma, bin, (l, r) -> litInt(l < r ? 1 : 0), this::tyckerBug);
-        case LE -> tryFoldBin(gamma, bin, (l, r) -> litInt(l <= r ? 1 : 0), this::tyckerBug);
-        case GT -> tryFoldBin(gamma, bin, (l, r) -> litInt(l > r ? 1 : 0), this::tyckerBug);
-        case GE -> tryFoldBin(gamma, bin, (l, r) -> litInt(l >= r ? 1 : 0), this::tyckerBug);
-        case LOGICAL_AND -> tryFoldBin(gamma, bin, (l, r) -> litInt(l == 1 && r == 1 ? 1 : 0), this::tyckerBug);
-        case LOGICAL_OR -> tryFoldBin(gamma, bin, (l, r) -> litInt(l == 1 || r == 1 ? 1 : 0), this::tyckerBug);
-      };
+      case Term.RefTerm ref -> {
+        var value = gamma.getOption(ref.var());
+        yield value.isDefined() ? traverse(value.get(), gamma) : ref;
+      }
+      case Term.BinaryTerm bin -> Chain.fold(this, bin, gamma);
+      default -> null;
+    };
+  }
+
+  @Override default @NotNull Term post(@NotNull Term term, @NotNull Traversal<Gamma.ConstGamma> children, @NotNull Gamma.ConstGamma gamma) {
+    return switch (term) {
+      case Term.UnaryTerm unary -> {
+        if (!(children.term(0) instanceof Term.LitTerm lit) || lit.literal().isRight()) yield children.rebuild(term);
+        var number = lit.literal().getLeftValue();
+        if (number.isLeft()) yield foldInt(unary.op(), number.getLeftValue());
+        yield foldFloat(unary.op(), number.getRightValue());
+      }
+      case Term.BinaryTerm bin -> {
+        if (!(children.term(0) instanceof Term.LitTerm lhs && children.term(1) instanceof Term.LitTerm rhs)
+          || lhs.literal().isRight() || rhs.literal().isRight()) yield children.rebuild(term);
+        var l = lhs.literal().getLeftValue();
+        var r = rhs.literal().getLeftValue();
+        if (l.isLeft() != r.isLeft()) throw new IllegalStateException("type checker bug?");
+        if (l.isLeft()) yield foldInt(bin.op(), l.getLeftValue(), r.getLeftValue());
+        yield foldFloat(bin.op(), l.getRightValue(), r.getRightValue());
+      }
       case Term.IndexTerm indexTerm -> {
-        var array = traverse(indexTerm.term(), gamma);
-        if (!(array instanceof Term.ArrayTerm arrayTerm))
-          yield new Term.IndexTerm(array, traverse(indexTerm.index(), gamma));
-        yield tryFold(gamma, indexTerm.index(), i -> {
-          if (arrayTerm instanceof Term.UninitializedArray) return defaultValueOf(arrayTerm.type().elementType());
-          if (arrayTerm instanceof Term.InitializedArray arr) {
-            // TODO: what if we are targeting JVM? We should throw an exception in that case.
-            if (i < 0 || i >= arr.values().size()) return defaultValueOf(arrayTerm.type().elementType());
-            else return arr.values().get(i);
-          } else throw new IllegalStateException("unreachable");
-        });
+        var array = children.term(0);
+        var index = children.term(1);
+        if (!(array instanceof Term.ArrayTerm arrayTerm)) yield children.rebuild(term);
+        // a dynamic index keeps the array as it was, not the folded literal which has no address
+        if (!(index instanceof Term.LitTerm lit) || lit.literal().isRight())
+          yield index == indexTerm.index() ? indexTerm : new Term.IndexTerm(indexTerm.term(), index, indexTerm.type());
+        var number = lit.literal().getLeftValue();
+        if (number.isRight()) throw new IllegalStateException("type checker bug?");
+        int i = number.getLeftValue();
+        yield switch (arrayTerm) {
+          case Term.UninitializedArray ignored -> defaultValueOf(arrayTerm.type().elementType());
+          // TODO: what if we are targeting JVM? We should throw an exception in that case.
+          case Term.InitializedArray arr -> i < 0 || i >= arr.values().size()
+            ? defaultValueOf(arrayTerm.type().elementType()) : arr.values().get(i);
+          case Term.PackedArray packed -> i < 0 || i >= packed.length()
+            ? defaultValueOf(arrayTerm.type().elementType()) : packed.get(i);
+        };
+      }
+      case Term.CoerceTerm c -> {
+        if (!(children.term(0) instanceof Term.LitTerm lit) || lit.literal().isRight()) yield children.rebuild(term);
+        var number = lit.literal().getLeftValue();
+        if (number.isLeft()) {
+          int i = number.getLeftValue();
+          yield c.toType() instanceof Type.Float<Term> ? litFloat((float) i) : litInt(i);
+        }
+        float f = number.getRightValue();
+        yield c.toType() instanceof Type.Int<Term> ? litInt((int) f) : litFloat(f);
       }
-      case Term.CoerceTerm c -> tryFold(gamma, c.term(),
-        t -> new Term.CoerceTerm(t, c.fromType(), c.toType()),
-        i -> {
-          if (c.toType() instanceof Type.Float<Term>) return litFloat((float) i);
-          return litInt(i);
-        },
-        f -> {
-          if (c.toType() instanceof Type.Int<Term>) return litInt((int) f);
-          return litFloat(f);
-        });
-      default -> TermOps.super.traverse(term, gamma);
+      default -> children.rebuild(term);
     };
   }
 
   static @NotNull Term litInt(int i) {
-    return new Term.LitTerm(Either.left(Either.left(i)));
+    return Term.LitTerm.of(i);
   }
 
   static @NotNull Term litFloat(float f) {
-    return new Term.LitTerm(Either.left(Either.right(f)));
+    return Term.LitTerm.of(f);
   }
 
-  private @NotNull Term tryFold(
-    @NotNull Gamma.ConstGamma gamma,
-    @NotNull Term term,
-    @NotNull Function<Term, Term> restore,
-    @NotNull IntFunction<Term> foldI,
-    @NotNull FloatFunction<Term> foldF
-  ) {
-    var folded = traverse(term, gamma);
-    if (folded instanceof Term.LitTerm lit) {
-      var literal = lit.literal();
-      if (literal.isRight()) return lit;
-      var left = literal.getLeftValue();
-      if (left.isLeft()) return foldI.apply(left.getLeftValue());
-      else return foldF.apply(left.getRightValue());
-    }
-    return restore.apply(folded);
-  }
-
-  private @NotNull Term tryFold(
-    @NotNull Gamma.ConstGamma gamma,
-    @NotNull Term term,
-    @NotNull IntFunction<Term> fold
-  ) {
-    return tryFold(gamma, term, t -> t, fold, this::tyckerBug);
+  private static @NotNull Term foldInt(@NotNull Expr.UnaryOP op, int i) {
+    return switch (op) {
+      case POS -> litInt(+i);
+      case NEG -> litInt(-i);
+      case LOGICAL_NOT -> litInt(i == 0 ? 1 : 0);
+    };
   }
 
-  private <R, T> R tyckerBug(T t) {
-    throw new IllegalStateException("type checker bug?");
+  private static @NotNull Term foldFloat(@NotNull Expr.UnaryOP op, float f) {
+    return switch (op) {
+      case POS -> litFloat(+f);
+      case NEG -> litFloat(-f);
+      case LOGICAL_NOT -> throw new IllegalStateException("type checker bug?");
+    };
   }
 
-  private <R, T1, T2> R tyckerBug(T1 t1, T2 t2) {
-    throw new IllegalStateException("type checker bug?");
+  private static @NotNull Term foldInt(@NotNull Term.BinOP op, int l, int r) {
+    return switch (op) {
+      case ADD -> litInt(l + r);
+      case SUB -> litInt(l - r);
+      case MUL -> litInt(l * r);
+      case DIV -> litInt(l / r);
+      case MOD -> litInt(l % r);
+      case EQ -> litInt(l == r ? 1 : 0);
+      case NE -> litInt(l != r ? 1 : 0);
+      case LT -> litInt(l < r ? 1 : 0);
+      case LE -> litInt(l <= r ? 1 : 0);
+      case GT -> litInt(l > r ? 1 : 0);
+      case GE -> litInt(l >= r ? 1 : 0);
+      case LOGICAL_AND -> litInt(l != 0 && r != 0 ? 1 : 0);
+      case LOGICAL_OR -> litInt(l != 0 || r != 0 ? 1 : 0);
+      case SHL -> litInt(l << r);
+      case SHR -> litInt(l >> r);
+      case USHR -> litInt(l >>> r);
+      case MULHI -> litInt((int) ((long) l * r >> 32));
+    };
   }
 
-  private @NotNull Term tryFoldBin(
-    @NotNull Gamma.ConstGamma gamma,
-    @NotNull Term.BinaryTerm bin,
-    @NotNull IntIntBiFunction<Term> foldInt,
-    @NotNull FloatFloatBiFunction<Term> foldFloat
-  ) {
-    var lhs = traverse(bin.lhs(), gamma);
-    var rhs = traverse(bin.rhs(), gamma);
-    if (lhs instanceof Term.LitTerm lhsLit && rhs instanceof Term.LitTerm rhsLit) {
-      return tryFold(gamma, lhsLit,
-        this::tyckerBug,
-        li -> tryFold(gamma, rhsLit, this::tyckerBug, ri -> foldInt.apply(li, ri), this::tyckerBug),
-        lf -> tryFold(gamma, rhsLit, this::tyckerBug, this::tyckerBug, rf -> foldFloat.apply(lf, rf)));
-    }
-    if (lhs == bin.lhs() && rhs == bin.rhs()) return bin;
-    return new Term.BinaryTerm(bin.op(), lhs, rhs);
+  private static @NotNull Term foldFloat(@NotNull Term.BinOP op, float l, float r) {
+    return switch (op) {
+      case ADD -> litFloat(l + r);
+      case SUB -> litFloat(l - r);
+      case MUL -> litFloat(l * r);
+      case DIV -> litFloat(l / r);
+      default -> throw new IllegalStateException("type checker bug?");
+    };
   }
 
   static @NotNull Term defaultValueOf(@NotNull Type<Term> type) {
@@ -140,15 +139,5 @@ public interface TermFold extends TermOps<Gamma.ConstGamma> {
     };
   }
 
-  @FunctionalInterface
-  interface IntIntBiFunction<R> {
-    R apply(int i1, int i2);
-  }
-
-  @FunctionalInterface
-  interface FloatFloatBiFunction<R> {
-    R apply(float i1, float i2);
-  }
-
   class DefaultFold implements TermFold {}
 }
@@ -0,0 +1,239 @@
+package org.brunhild.core.ops;
+
+import kala.collection.immutable.ImmutableSeq;
+import kala.control.Option;
+import org.brunhild.core.Def;
+import org.brunhild.core.Proclaim;
+import org.brunhild.core.Term;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+/**
+ * Walks a tree of terms and proclaims bottom-up on its own stacks instead of the call
+ * stack, so chains like {@code a + b + c + ...} of any length and blocks nested any deep
+ * can be rewritten. Every node is first offered to the {@code pre} hook of the ops, which
+ * may replace it without walking its children. Otherwise its children are walked in
+ * evaluation order and the {@code post} hook gets the node together with this walk,
+ * through which it reads the rewritten children until it returns.
+ * <p>
+ * Nodes whose children all came back as they were are kept, not copied.
+ *
+ * @see TermOps#traverse(Term, Object)
+ * @see ProclaimOps#traverse(Proclaim, Object)
+ */
+public final class Traversal<P> {
+  private final @NotNull TermOps<P> ops;
+  private final P param;
+
+  // region Stacks
+
+  /**
+   * The nodes whose children are being walked, innermost last. The stacks are allocated
+   * on the first push, most walks are of a leaf that {@code pre} replaces right away.
+   */
+  private @NotNull Object[] nodes = NO_OBJECTS;
+  private int @NotNull [] arities = NO_INTS;
+  /** The next child to walk of each node. */
+  private int @NotNull [] next = NO_INTS;
+  /** Where the rewritten children of each node start in {@link #values}. */
+  private int @NotNull [] bases = NO_INTS;
+  private boolean @NotNull [] changed = NO_BOOLEANS;
+  private int frames = 0;
+
+  private @NotNull Object[] values = NO_OBJECTS;
+  private int top = 0;
+
+  private static final Object[] NO_OBJECTS = new Object[0];
+  private static final int[] NO_INTS = new int[0];
+  private static final boolean[] NO_BOOLEANS = new boolean[0];
+
+  // endregion
+
+  /** The children visible to the {@code post} hook being called. */
+  private int base, size;
+  private boolean dirty;
+
+  Traversal(@NotNull TermOps<P> ops, P param) {
+    this.ops = ops;
+    this.param = param;
+  }
+
+  @NotNull Object walk(@NotNull Object root) {
+    var replaced = pre(root);
+    if (replaced != null) return replaced;
+    push(root);
+    while (true) {
+      var frame = frames - 1;
+      var node = nodes[frame];
+      var i = next[frame];
+      if (i < arities[frame]) {
+        next[frame] = i + 1;
+        var child = child(node, i);
+        replaced = pre(child);
+        if (replaced == null) push(child);
+        else emit(frame, child, replaced);
+        continue;
+      }
+      frames = frame;
+      base = bases[frame];
+      size = top - base;
+      dirty = changed[frame];
+      var result = post(node);
+      Arrays.fill(values, base, top, null);
+      top = base;
+      if (frame == 0) return result;
+      emit(frame - 1, node, result);
+    }
+  }
+
+  private void push(@NotNull Object node) {
+    if (frames == nodes.length) {
+      var length = Math.max(16, 2 * frames);
+      nodes = Arrays.copyOf(nodes, length);
+      arities = Arrays.copyOf(arities, length);
+      next = Arrays.copyOf(next, length);
+      bases = Arrays.copyOf(bases, length);
+      changed = Arrays.copyOf(changed, length);
+    }
+    nodes[frames] = node;
+    arities[frames] = arity(node);
+    next[frames] = 0;
+    bases[frames] = top;
+    changed[frames] = false;
+    frames++;
+  }
+
+  private void emit(int frame, @NotNull Object child, @NotNull Object result) {
+    if (top == values.length) values = Arrays.copyOf(values, Math.max(16, 2 * top));
+    values[top++] = result;
+    if (result != child) changed[frame] = true;
+  }
+
+  @SuppressWarnings("unchecked")
+  private Object pre(@NotNull Object node) {
+    return node instanceof Term term ? ops.pre(term, param) : ((ProclaimOps<P>) ops).pre((Proclaim) node, param);
+  }
+
+  @SuppressWarnings("unchecked")
+  private @NotNull Object post(@NotNull Object node) {
+    return node instanceof Term term ? ops.post(term, this, param) : ((ProclaimOps<P>) ops).post((Proclaim) node, this, param);
+  }
+
+  // region Children
+
+  private static int arity(@NotNull Object node) {
+    return switch (node) {
+      case Term.CoerceTerm coerce -> 1;
+      case Term.UnaryTerm unary -> 1;
+      case Term.BinaryTerm binary -> 2;
+      case Term.IndexTerm index -> 2;
+      case Term.FnCall call -> call.args().size();
+      case Term.PrimCall call -> call.args().size();
+      case Term.InitializedArray array -> array.values().size();
+      case Term term -> 0;
+      case Proclaim.VarAssignProclaim assign -> 1;
+      case Proclaim.IndexAssignProclaim assign -> 2;
+      case Proclaim.TermProclaim term -> 1;
+      case Proclaim.BlockProclaim block -> block.block().size();
+      case Proclaim.ReturnProclaim ret -> ret.term().size();
+      case Proclaim.IfProclaim ifProclaim -> 2 + ifProclaim.elseBranch().size();
+      case Proclaim.WhileProclaim whileProclaim -> 2;
+      case Def.VarDef varDef -> 1;
+      case Def.FnDef fnDef -> 1;
+      default -> 0;
+    };
+  }
+
+  /** The array of an {@link Proclaim.IndexAssignProclaim} is not a child, like the variable of a {@link Proclaim.VarAssignProclaim}. */
+  private static @NotNull Object child(@NotNull Object node, int i) {
+    return switch (node) {
+      case Term.CoerceTerm coerce -> coerce.term();
+      case Term.UnaryTerm unary -> unary.term();
+      case Term.BinaryTerm binary -> i == 0 ? binary.lhs() : binary.rhs();
+      case Term.IndexTerm index -> i == 0 ? index.term() : index.index();
+      case Term.FnCall call -> call.args().get(i);
+      case Term.PrimCall call -> call.args().get(i);
+      case Term.InitializedArray array -> array.values().get(i);
+      case Proclaim.VarAssignProclaim assign -> assign.rvalue();
+      case Proclaim.IndexAssignProclaim assign -> i == 0 ? assign.index() : assign.rvalue();
+      case Proclaim.TermProclaim term -> term.term();
+      case Proclaim.BlockProclaim block -> block.block().get(i);
+      case Proclaim.ReturnProclaim ret -> ret.term().get();
+      case Proclaim.IfProclaim ifProclaim -> i == 0 ? ifProclaim.cond() : i == 1 ? ifProclaim.thenBranch() : ifProclaim.elseBranch().get();
+      case Proclaim.WhileProclaim whileProclaim -> i == 0 ? whileProclaim.cond() : whileProclaim.body();
+      case Def.VarDef varDef -> varDef.body;
+      case Def.FnDef fnDef -> fnDef.body;
+      default -> throw new IllegalStateException("unreachable");
+    };
+  }
+
+  /** @return the number of rewritten children */
+  public int size() {
+    return size;
+  }
+
+  /** @return whether any child came back different from what it was */
+  public boolean changed() {
+    return dirty;
+  }
+
+  public @NotNull Term term(int i) {
+    return (Term) values[base + i];
+  }
+
+  public @NotNull Proclaim proclaim(int i) {
+    return (Proclaim) values[base + i];
+  }
+
+  @SuppressWarnings("unchecked")
+  private <T> @NotNull ImmutableSeq<T> seq() {
+    return ImmutableSeq.from((java.util.List<T>) Arrays.asList(values).subList(base, base + size));
+  }
+
+  // endregion
+
+  // region Rebuilding
+
+  /** @return {@code term} with the rewritten children, or itself if none changed */
+  public @NotNull Term rebuild(@NotNull Term term) {
+    if (!dirty) return term;
+    return switch (term) {
+      case Term.CoerceTerm coerce -> new Term.CoerceTerm(term(0), coerce.fromType(), coerce.toType());
+      case Term.UnaryTerm unary -> new Term.UnaryTerm(unary.op(), term(0), unary.type());
+      case Term.BinaryTerm binary -> new Term.BinaryTerm(binary.op(), term(0), term(1), binary.type());
+      case Term.IndexTerm index -> new Term.IndexTerm(term(0), term(1), index.type());
+      case Term.FnCall call -> new Term.FnCall(call.fn(), seq());
+      case Term.PrimCall call -> new Term.PrimCall(call.prim(), seq());
+      case Term.InitializedArray array -> new Term.InitializedArray(array.type(), seq());
+      default -> throw new IllegalStateException("unreachable");
+    };
+  }
+
+  /**
+   * @return {@code proclaim} with the rewritten children, or itself if none changed.
+   * Definitions are updated in place.
+   */
+  public @NotNull Proclaim rebuild(@NotNull Proclaim proclaim) {
+    switch (proclaim) {
+      case Def.VarDef varDef -> varDef.body = term(0);
+      case Def.FnDef fnDef -> fnDef.body = proclaim(0);
+      default -> {}
+    }
+    if (!dirty) return proclaim;
+    return switch (proclaim) {
+      case Def def -> def;
+      case Proclaim.VarAssignProclaim assign -> new Proclaim.VarAssignProclaim(assign.var(), term(0));
+      case Proclaim.IndexAssignProclaim assign -> new Proclaim.IndexAssignProclaim(assign.term(), term(0), term(1));
+      case Proclaim.TermProclaim term -> new Proclaim.TermProclaim(term(0));
+      case Proclaim.BlockProclaim block -> new Proclaim.BlockProclaim(seq());
+      case Proclaim.ReturnProclaim ret -> new Proclaim.ReturnProclaim(Option.some(term(0)));
+      case Proclaim.IfProclaim ifProclaim -> new Proclaim.IfProclaim(term(0), proclaim(1),
+        size == 3 ? Option.some(proclaim(2)) : Option.none());
+      case Proclaim.WhileProclaim whileProclaim -> new Proclaim.WhileProclaim(term(0), proclaim(1));
+      default -> throw new IllegalStateException("unreachable");
+    };
+  }
+
+  // endregion
+}
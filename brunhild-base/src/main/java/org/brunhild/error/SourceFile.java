@@ -5,6 +5,7 @@ import org.jetbrains.annotations.NotNull;
 
 import java.nio.file.Path;
 
-public record SourceFile(@NotNull String name, @NotNull String sourceCode, @NotNull Option<Path> path) {
+/** @param sourceCode usually a {@link String}, but possibly a view over the bytes of a mapped file */
+public record SourceFile(@NotNull String name, @NotNull CharSequence sourceCode, @NotNull Option<Path> path) {
   public static final @NotNull SourceFile NONE = new SourceFile("<unknown>", "", Option.none());
 }
@@ -33,6 +33,12 @@ public final class DefVar<Core extends Def, Concrete extends Decl> implements Va
     return new DefVar<>(null, core, name);
   }
 
+  /** A variable made up by the compiler, its core is set by the definition made for it. */
+  public static <Core extends Def, Concrete extends Decl>
+  @NotNull DefVar<Core, Concrete> fresh(@NotNull String name) {
+    return new DefVar<>(null, null, name);
+  }
+
   @Override public boolean equals(Object o) {
     return this == o;
   }
@@ -3,26 +3,62 @@ package org.brunhild.generic;
 import kala.collection.immutable.ImmutableSeq;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Checked types are canonical: the primitives are singletons obtained by {@code of()},
+ * and arrays and functions built by {@link Array#of} and {@link Fn#of} are interned,
+ * so comparing them is mostly an identity check. Types straight from the parser may
+ * still refer to expressions and are created as plain records.
+ */
 public sealed interface Type<Term> {
   default @NotNull Type<Term> coerced() {
     return this;
   }
 
+  /** @return the type with all {@link Const} wrappers stripped */
+  default @NotNull Type<Term> unconst() {
+    return this;
+  }
+
+  /** @return number of scalar elements in a value of this type, only meaningful after dimensions are checked */
+  default int flatSize() {
+    return 1;
+  }
+
   record Univ<Term>() implements Type<Term> {
+    @SuppressWarnings("rawtypes") private static final Univ INSTANCE = new Univ();
+
+    @SuppressWarnings("unchecked") public static <Term> @NotNull Univ<Term> of() {
+      return INSTANCE;
+    }
+
     @Override public @NotNull java.lang.String toString() {
       return "Type";
     }
   }
 
   record Void<Term>() implements Type<Term> {
+    @SuppressWarnings("rawtypes") private static final Void INSTANCE = new Void();
+
+    @SuppressWarnings("unchecked") public static <Term> @NotNull Void<Term> of() {
+      return INSTANCE;
+    }
+
     @Override public @NotNull java.lang.String toString() {
       return "void";
     }
   }
 
   record Int<Term>() implements Type<Term> {
+    @SuppressWarnings("rawtypes") private static final Int INSTANCE = new Int();
+
+    @SuppressWarnings("unchecked") public static <Term> @NotNull Int<Term> of() {
+      return INSTANCE;
+    }
+
     @Override public @NotNull Type<Term> coerced() {
-      return new Type.Float<>();
+      return Float.of();
     }
 
     @Override public @NotNull java.lang.String toString() {
@@ -31,8 +67,14 @@ public sealed interface Type<Term> {
   }
 
   record Float<Term>() implements Type<Term> {
+    @SuppressWarnings("rawtypes") private static final Float INSTANCE = new Float();
+
+    @SuppressWarnings("unchecked") public static <Term> @NotNull Float<Term> of() {
+      return INSTANCE;
+    }
+
     @Override public @NotNull Type<Term> coerced() {
-      return new Type.Int<>();
+      return Int.of();
     }
 
     @Override public @NotNull java.lang.String toString() {
@@ -41,18 +83,58 @@ public sealed interface Type<Term> {
   }
 
   record String<Term>() implements Type<Term> {
+    @SuppressWarnings("rawtypes") private static final String INSTANCE = new String();
+
+    @SuppressWarnings("unchecked") public static <Term> @NotNull String<Term> of() {
+      return INSTANCE;
+    }
+
     @Override public @NotNull java.lang.String toString() {
       return "String";
     }
   }
 
   record Const<Term>(@NotNull Type<Term> type) implements Type<Term> {
+    @Override public @NotNull Type<Term> unconst() {
+      return type.unconst();
+    }
+
+    @Override public int flatSize() {
+      return type.flatSize();
+    }
+
     @Override public @NotNull java.lang.String toString() {
       return "const " + type;
     }
   }
 
   record Array<Term>(@NotNull Type<Term> elementType, @NotNull Dimension dimension) implements Type<Term> {
+    private static final ConcurrentHashMap<Array<?>, Array<?>> INTERNED = new ConcurrentHashMap<>();
+
+    /** Dimensions that are still expressions are not interned, they belong to one declaration. */
+    @SuppressWarnings("unchecked")
+    public static <Term> @NotNull Array<Term> of(@NotNull Type<Term> elementType, @NotNull Dimension dimension) {
+      var array = new Array<>(elementType, dimension);
+      return dimension instanceof DimExpr<?> ? array : (Array<Term>) intern(INTERNED, array);
+    }
+
+    @Override public boolean equals(Object o) {
+      return this == o || o instanceof Array<?> that
+        && elementType.equals(that.elementType) && dimension.equals(that.dimension);
+    }
+
+    @Override public int flatSize() {
+      if (!(dimension instanceof DimConst dim))
+        throw new IllegalStateException("array dimension is not known: " + dimension);
+      return dim.dimension() * elementType.flatSize();
+    }
+
+    /** @return the innermost non-array element type */
+    public @NotNull Type<Term> scalarType() {
+      var elem = elementType.unconst();
+      return elem instanceof Array<Term> array ? array.scalarType() : elem;
+    }
+
     @Override public @NotNull java.lang.String toString() {
       return java.lang.String.format("Array<%s, %s>", elementType, dimension);
     }
@@ -62,11 +144,30 @@ public sealed interface Type<Term> {
     @NotNull ImmutableSeq<Type<Term>> paramTypes,
     @NotNull Type<Term> returnType
   ) implements Type<Term> {
+    private static final ConcurrentHashMap<Fn<?>, Fn<?>> INTERNED = new ConcurrentHashMap<>();
+
+    @SuppressWarnings("unchecked")
+    public static <Term> @NotNull Fn<Term> of(@NotNull ImmutableSeq<Type<Term>> paramTypes, @NotNull Type<Term> returnType) {
+      return (Fn<Term>) intern(INTERNED, new Fn<>(paramTypes, returnType));
+    }
+
+    @Override public boolean equals(Object o) {
+      return this == o || o instanceof Fn<?> that
+        && returnType.equals(that.returnType) && paramTypes.equals(that.paramTypes);
+    }
+
     @Override public @NotNull java.lang.String toString() {
       return java.lang.String.format("(%s) -> %s", paramTypes.joinToString(", "), returnType);
     }
   }
 
+  private static <T> @NotNull T intern(@NotNull ConcurrentHashMap<T, T> table, @NotNull T type) {
+    var interned = table.get(type);
+    if (interned != null) return interned;
+    interned = table.putIfAbsent(type, type);
+    return interned != null ? interned : type;
+  }
+
   sealed interface Dimension {}
   record DimInferred() implements Dimension {
     @Override public @NotNull java.lang.String toString() {
@@ -1,6 +1,7 @@
 package org.brunhild.tyck;
 
 import kala.collection.immutable.ImmutableSeq;
+import kala.collection.mutable.MutableList;
 import kala.control.Either;
 import kala.control.Option;
 import org.brunhild.concrete.Decl;
@@ -34,29 +35,28 @@ public record ExprTycker(
       case Expr.LitIntExpr lit -> new Result(TermFold.litInt(lit.value()));
       case Expr.LitFloatExpr lit -> new Result(TermFold.litFloat(lit.value()));
       case Expr.LitStringExpr lit -> new Result(new Term.LitTerm(Either.right(lit.value())));
-      case Expr.UnaryExpr unaryExpr -> switch (unaryExpr.op()) {
-        case POS, NEG -> {
-          var operand = infer(unaryExpr.expr());
-          yield new Result(new Term.UnaryTerm(unaryExpr.op(), operand.wellTyped));
+      case Expr.UnaryExpr unaryExpr -> {
+        var prefixes = MutableList.<Expr.UnaryExpr>create();
+        Expr operand = unaryExpr;
+        while (operand instanceof Expr.UnaryExpr prefix) {
+          prefixes.append(prefix);
+          operand = prefix.expr();
         }
-        case LOGICAL_NOT -> {
-          var operand = check(unaryExpr.expr(), new Type.Int<>());
-          yield new Result(new Term.UnaryTerm(unaryExpr.op(), operand.wellTyped));
-        }
-      };
-      case Expr.BinaryExpr binaryExpr -> switch (binaryExpr.op()) {
-        case ADD, SUB, MUL, DIV -> {
-          var lhs = infer(binaryExpr.lhs());
-          var rhs = infer(binaryExpr.rhs());
-          var result = unifyMaybeCoerce(binaryExpr.sourcePos(), lhs, rhs);
-          yield new Result(new Term.BinaryTerm(binaryExpr.op(), result.lhs.wellTyped, result.rhs.wellTyped));
-        }
-        case MOD, LOGICAL_AND, LOGICAL_OR, EQ, NE, LT, LE, GT, GE -> {
-          var lhs = check(binaryExpr.lhs(), new Type.Int<>());
-          var rhs = check(binaryExpr.rhs(), new Type.Int<>());
-          yield new Result(new Term.BinaryTerm(binaryExpr.op(), lhs.wellTyped, rhs.wellTyped));
+        var result = infer(operand);
+        for (int i = prefixes.size() - 1; i >= 0; i--) result = unary(prefixes.get(i), result);
+        yield result;
+      }
+      case Expr.BinaryExpr binaryExpr -> {
+        var spine = MutableList.<Expr.BinaryExpr>create();
+        Expr left = binaryExpr;
+        while (left instanceof Expr.BinaryExpr chain) {
+          spine.append(chain);
+          left = chain.lhs();
         }
-      };
+        var result = infer(left);
+        for (int i = spine.size() - 1; i >= 0; i--) result = binary(spine.get(i), result);
+        yield result;
+      }
       case Expr.AppExpr appExpr -> {
         var fnRes = infer(appExpr.fn());
         if (!(fnRes.type instanceof Type.Fn<Term> fnType)) yield fail(BadTypeError.fn(appExpr.fn(), fnRes.type));
@@ -80,8 +80,8 @@ public record ExprTycker(
         var array = infer(indexExpr.expr());
         if (!(array.type instanceof Type.Array<Term> arrayType))
           yield fail(BadTypeError.array(indexExpr.expr(), array.type));
-        var index = check(indexExpr.index(), new Type.Int<>()).wellTyped;
-        yield new Result(new Term.IndexTerm(array.wellTyped, index));
+        var index = check(indexExpr.index(), Type.Int.of()).wellTyped;
+        yield new Result(new Term.IndexTerm(array.wellTyped, index, arrayType.elementType()));
       }
       case Expr.RefExpr ref -> switch (ref.resolved()) {
         case LocalVar var -> {
@@ -93,7 +93,7 @@ public record ExprTycker(
             var signature = fnDecl.signature;
             assert signature != null : "we need dependency graph now!";
             var tele = signature.tele().map(Term.Param::type);
-            var type = new Type.Fn<>(tele, signature.result());
+            var type = Type.Fn.of(tele, signature.result());
             yield new Result(new Term.RefTerm(type, fnDecl.ref));
           }
           case Decl.VarDecl varDecl -> {
@@ -105,7 +105,7 @@ public record ExprTycker(
             // we are referencing primitives
             var prim = ((Def.PrimDef) defVar.core);
             var tele = prim.telescope().map(Term.Param::type);
-            var type = new Type.Fn<>(tele, prim.result());
+            var type = Type.Fn.of(tele, prim.result());
             yield new Result(new Term.RefTerm(type, prim.ref));
           }
           case default -> throw new IllegalStateException("Unknown concrete: " + defVar.concrete.getClass());
@@ -116,6 +116,38 @@ public record ExprTycker(
     };
   }
 
+  /** @param operand what {@code unaryExpr.expr()} was inferred to be */
+  private @NotNull Result unary(@NotNull Expr.UnaryExpr unaryExpr, @NotNull Result operand) {
+    return switch (unaryExpr.op()) {
+      case POS, NEG -> new Result(new Term.UnaryTerm(unaryExpr.op(), operand.wellTyped, operand.type));
+      case LOGICAL_NOT -> {
+        var checked = unifyMaybeCoerce(unaryExpr.expr().sourcePos(), operand, Type.Int.of()).lhs;
+        yield new Result(new Term.UnaryTerm(unaryExpr.op(), checked.wellTyped, checked.type));
+      }
+    };
+  }
+
+  /**
+   * Chains of binary operators lean left as deep as they are long, so they are checked
+   * from the innermost left operand up in a loop, like they are produced.
+   *
+   * @param lhs what {@code binaryExpr.lhs()} was inferred to be
+   */
+  private @NotNull Result binary(@NotNull Expr.BinaryExpr binaryExpr, @NotNull Result lhs) {
+    return switch (binaryExpr.op()) {
+      case ADD, SUB, MUL, DIV -> {
+        var rhs = infer(binaryExpr.rhs());
+        var result = unifyMaybeCoerce(binaryExpr.sourcePos(), lhs, rhs);
+        yield new Result(new Term.BinaryTerm(Term.BinOP.of(binaryExpr.op()), result.lhs.wellTyped, result.rhs.wellTyped, result.type));
+      }
+      case MOD, LOGICAL_AND, LOGICAL_OR, EQ, NE, LT, LE, GT, GE -> {
+        var checked = unifyMaybeCoerce(binaryExpr.lhs().sourcePos(), lhs, Type.Int.of()).lhs;
+        var rhs = check(binaryExpr.rhs(), Type.Int.of());
+        yield new Result(new Term.BinaryTerm(Term.BinOP.of(binaryExpr.op()), checked.wellTyped, rhs.wellTyped, checked.type));
+      }
+    };
+  }
+
   private @NotNull Result tyckPrimCall(@NotNull Expr.AppExpr appExpr, @NotNull Type.Fn<Term> fnType, @NotNull Def.PrimDef prim) {
     if (prim == Def.PrimFactory.StartTime.prim || prim == Def.PrimFactory.StopTime.prim) {
       var desugarPrim = prim == Def.PrimFactory.StartTime.prim
@@ -144,13 +176,8 @@ public record ExprTycker(
 
   public @NotNull Result check(@NotNull Expr expr, @NotNull Type<Term> type) {
     return switch (expr) {
-      case Expr.LitArrayExpr array -> {
-        if (!(type instanceof Type.Array<Term> arrayType))
-          yield fail(new CoerceError(array.sourcePos(), "array type", type, "to"));
-        // TODO: reorganize the array literal to fit the type
-        var values = array.values().map(v -> check(v, arrayType.elementType()).wellTyped);
-        yield new Result(new Term.InitializedArray(arrayType, values));
-      }
+      case Expr.LitArrayExpr array -> checkArray(array, type);
+      case Expr.LitPackedArrayExpr array -> checkArray(array, type);
       default -> {
         var infer = infer(expr);
         var result = unifyMaybeCoerce(expr.sourcePos(), infer, type);
@@ -159,6 +186,12 @@ public record ExprTycker(
     };
   }
 
+  private @NotNull Result checkArray(@NotNull Expr array, @NotNull Type<Term> type) {
+    if (!(type instanceof Type.Array<Term> arrayType))
+      return fail(new CoerceError(array.sourcePos(), "array type", type, "to"));
+    return new Result(Initializer.check(this, array, arrayType));
+  }
+
   public @NotNull Result check(@NotNull Option<Expr> expr, @NotNull Type<Term> type) {
     if (expr.isDefined()) return check(expr.get(), type);
     // fill it with a default value
@@ -181,7 +214,8 @@ public record ExprTycker(
   }
 
   private @NotNull UnifyResult unifyMaybeCoerce(@NotNull SourcePos sourcePos, @NotNull Result inferred, @NotNull Type<Term> against) {
-    if (inferred.type.equals(against)) return new UnifyResult(inferred, inferred, against);
+    if (inferred.type.equals(against) || decays(inferred.type, against))
+      return new UnifyResult(inferred, inferred, against);
     var type = inferred.type;
     var term = inferred.wellTyped;
     while (!type.equals(against)) {
@@ -197,6 +231,14 @@ public record ExprTycker(
     return new UnifyResult(coercedResult, coercedResult, against);
   }
 
+  /** Arrays are passed by reference, so the outermost dimension can be forgotten like C does. */
+  private static boolean decays(@NotNull Type<Term> from, @NotNull Type<Term> to) {
+    return from instanceof Type.Array<Term> fromArray
+      && to instanceof Type.Array<Term> toArray
+      && toArray.dimension() instanceof Type.DimInferred
+      && fromArray.elementType().equals(toArray.elementType());
+  }
+
   public <T> T fail(@NotNull Problem problem) {
     reporter.report(problem);
     throw new TyckInterrupted();
@@ -204,11 +246,11 @@ public record ExprTycker(
 
   public @NotNull ExprTycker.TResult infer(@NotNull Type<Expr> expr) {
     return switch (expr) {
-      case Type.Void ignored -> new TResult(new Type.Void<>(), new Type.Univ<>());
-      case Type.Float ignored -> new TResult(new Type.Float<>(), new Type.Univ<>());
-      case Type.Int ignored -> new TResult(new Type.Int<>(), new Type.Univ<>());
-      case Type.String ignored -> new TResult(new Type.String<>(), new Type.Univ<>());
-      case Type.Const<Expr> constType -> new TResult(infer(constType.type()).wellTyped(), new Type.Univ<>());
+      case Type.Void ignored -> new TResult(Type.Void.of(), Type.Univ.of());
+      case Type.Float ignored -> new TResult(Type.Float.of(), Type.Univ.of());
+      case Type.Int ignored -> new TResult(Type.Int.of(), Type.Univ.of());
+      case Type.String ignored -> new TResult(Type.String.of(), Type.Univ.of());
+      case Type.Const<Expr> constType -> new TResult(infer(constType.type()).wellTyped(), Type.Univ.of());
       case Type.Array<Expr> arrayType -> {
         var elem = infer(arrayType.elementType()).wellTyped();
         var dim = switch (arrayType.dimension()) {
@@ -216,7 +258,7 @@ public record ExprTycker(
           case Type.DimConst dimConst -> new Type.DimConst(dimConst.dimension());
           case Type.DimExpr dimExpr -> {
             var dimE = (Expr) dimExpr.term();
-            var term = check(dimE, new Type.Int<>()).wellTyped();
+            var term = check(dimE, Type.Int.of()).wellTyped();
             var folded = term.fold(constGamma);
             // Java's type inference sucks
             if (!(folded instanceof Term.LitTerm lit))
@@ -227,12 +269,12 @@ public record ExprTycker(
             yield new Type.DimConst(lit.literal().getLeftValue().getLeftValue());
           }
         };
-        yield new TResult(new Type.Array<>(elem, dim), new Type.Univ<>());
+        yield new TResult(Type.Array.of(elem, dim), Type.Univ.of());
       }
-      case Type.Fn<Expr> fn -> new TResult(new Type.Fn<>(
+      case Type.Fn<Expr> fn -> new TResult(Type.Fn.of(
         fn.paramTypes().map(p -> infer(p).wellTyped),
         infer(fn.returnType()).wellTyped),
-        new Type.Univ<>());
+        Type.Univ.of());
       case Type.Univ ignored -> throw new IllegalStateException("what do you think of this type system?");
     };
   }
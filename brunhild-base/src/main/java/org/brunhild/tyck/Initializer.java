@@ -0,0 +1,142 @@
+package org.brunhild.tyck;
+
+import kala.collection.mutable.MutableList;
+import org.brunhild.concrete.Expr;
+import org.brunhild.core.PackedInts;
+import org.brunhild.core.Term;
+import org.brunhild.core.ops.TermFold;
+import org.brunhild.generic.Type;
+import org.brunhild.tyck.problem.CoerceError;
+import org.brunhild.tyck.problem.ExcessElementsError;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Checks a brace list against an array type the way C does: scalars are laid out in
+ * row-major order, so inner braces may be elided, and a nested brace list initializes
+ * the largest sub-array starting at the current position. Elements that are, or fold
+ * to, number literals are packed into words, only the others become terms.
+ *
+ * @see Term.PackedArray
+ */
+final class Initializer {
+  /** An element that is not a literal, at a row-major offset. */
+  private record Dynamic(int offset, @NotNull Term term) {}
+
+  private final @NotNull ExprTycker tycker;
+  private final @NotNull Type<Term> scalarType;
+  private final boolean isFloat;
+  private final @NotNull PackedInts.Builder words;
+  private final @NotNull MutableList<Dynamic> dynamics = MutableList.create();
+  /** The first dynamic element not yet placed by {@link #build}. */
+  private int next = 0;
+
+  private Initializer(@NotNull ExprTycker tycker, @NotNull Type.Array<Term> type) {
+    this.tycker = tycker;
+    this.scalarType = type.scalarType();
+    this.isFloat = scalarType instanceof Type.Float<Term>;
+    this.words = new PackedInts.Builder(type.flatSize());
+  }
+
+  static @NotNull Term check(@NotNull ExprTycker tycker, @NotNull Expr list, @NotNull Type.Array<Term> type) {
+    var initializer = new Initializer(tycker, type);
+    initializer.list(list, type, 0);
+    var words = initializer.words.build();
+    if (initializer.dynamics.isEmpty()) return new Term.PackedArray(type, words);
+    return initializer.build(type, words, 0);
+  }
+
+  private void list(@NotNull Expr list, @NotNull Type.Array<Term> type, int base) {
+    var size = type.flatSize();
+    var cursor = 0;
+    switch (list) {
+      case Expr.LitPackedArrayExpr packed -> {
+        var values = packed.values();
+        if (values.length > size) tycker.fail(new ExcessElementsError(packed.sourcePos(), type));
+        for (int i = 0; i < values.length; i++) word(base + i, values[i], packed.floats().get(i));
+      }
+      case Expr.LitArrayExpr array -> {
+        for (var value : array.values()) {
+          if (cursor == size) tycker.fail(new ExcessElementsError(value.sourcePos(), type));
+          if (value instanceof Expr.LitArrayExpr || value instanceof Expr.LitPackedArrayExpr) {
+            var sub = aligned(type, cursor);
+            if (sub == null) tycker.fail(new CoerceError(value.sourcePos(), "array type", scalarType, "to"));
+            list(value, sub, base + cursor);
+            cursor += sub.flatSize();
+          } else scalar(value, base + cursor++);
+        }
+      }
+      default -> throw new IllegalStateException("unreachable");
+    }
+  }
+
+  /** @return the largest sub-array of {@code type} that starts at {@code cursor}, null at scalars */
+  private static @Nullable Type.Array<Term> aligned(@NotNull Type.Array<Term> type, int cursor) {
+    var element = type.elementType().unconst();
+    while (element instanceof Type.Array<Term> sub) {
+      var stride = sub.flatSize();
+      if (stride == 0 || cursor % stride == 0) return sub;
+      element = sub.elementType().unconst();
+    }
+    return null;
+  }
+
+  private void scalar(@NotNull Expr expr, int offset) {
+    switch (expr) {
+      case Expr.LitIntExpr lit -> word(offset, lit.value(), false);
+      case Expr.LitFloatExpr lit -> word(offset, Float.floatToRawIntBits(lit.value()), true);
+      default -> {
+        var term = tycker.check(expr, scalarType).wellTyped();
+        if (term.fold(tycker.constGamma()) instanceof Term.LitTerm lit && lit.literal().isLeft()) {
+          var number = lit.literal().getLeftValue();
+          if (number.isLeft()) word(offset, number.getLeftValue(), false);
+          else word(offset, Float.floatToRawIntBits(number.getRightValue()), true);
+        } else dynamics.append(new Dynamic(offset, term));
+      }
+    }
+  }
+
+  /** Coerces the literal to the scalar type like {@link Term.CoerceTerm} folds. */
+  private void word(int offset, int word, boolean fromFloat) {
+    if (isFloat && !fromFloat) word = Float.floatToRawIntBits((float) word);
+    else if (!isFloat && fromFloat) word = (int) Float.intBitsToFloat(word);
+    words.set(offset, word);
+  }
+
+  // region Mixed initializers
+
+  /**
+   * Sub-arrays without dynamic elements stay packed, the others are spelled out
+   * down to the scalars. Trailing zeros are left out, as they are in the source.
+   */
+  private @NotNull Term build(@NotNull Type.Array<Term> type, @NotNull PackedInts words, int base) {
+    var end = base + type.flatSize();
+    if (next == dynamics.size() || dynamics.get(next).offset >= end)
+      return new Term.PackedArray(type, words.slice(base, type.flatSize()));
+    var sub = type.elementType().unconst() instanceof Type.Array<Term> array ? array : null;
+    var stride = sub == null ? 1 : sub.flatSize();
+    var values = MutableList.<Term>create();
+    var last = -1;
+    for (int i = 0, length = ((Type.DimConst) type.dimension()).dimension(); i < length; i++) {
+      var offset = base + i * stride;
+      Term value;
+      if (sub != null) value = build(sub, words, offset);
+      else if (next < dynamics.size() && dynamics.get(next).offset == offset) value = dynamics.get(next++).term;
+      else value = isFloat ? TermFold.litFloat(Float.intBitsToFloat(words.get(offset))) : TermFold.litInt(words.get(offset));
+      values.append(value);
+      if (!isZero(value)) last = i;
+    }
+    return new Term.InitializedArray(type, values.take(last + 1).toImmutableSeq());
+  }
+
+  private static boolean isZero(@NotNull Term term) {
+    return switch (term) {
+      case Term.PackedArray packed -> packed.values().isZero();
+      case Term.LitTerm lit -> lit.literal().isLeft() && lit.literal().getLeftValue().fold(i -> i == 0,
+        f -> Float.floatToRawIntBits(f) == 0);
+      default -> false;
+    };
+  }
+
+  // endregion
+}
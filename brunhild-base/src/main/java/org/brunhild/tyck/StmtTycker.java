@@ -1,6 +1,7 @@
 package org.brunhild.tyck;
 
 import kala.collection.immutable.ImmutableSeq;
+import kala.collection.mutable.MutableList;
 import kala.control.Option;
 import org.brunhild.concrete.Decl;
 import org.brunhild.concrete.Expr;
@@ -8,28 +9,64 @@ import org.brunhild.concrete.Stmt;
 import org.brunhild.core.Def;
 import org.brunhild.core.Proclaim;
 import org.brunhild.core.Term;
+import org.brunhild.error.InterruptException;
+import org.brunhild.error.Problem;
 import org.brunhild.error.Reporter;
 import org.brunhild.generic.Type;
 import org.brunhild.tyck.problem.AssigningNonLvalue;
 import org.brunhild.tyck.problem.MissingReturnValue;
 import org.brunhild.tyck.problem.NotInLoop;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Objects;
+import java.util.stream.IntStream;
 
 public record StmtTycker(
   @NotNull Reporter reporter
 ) {
+  /** Below this many function bodies, forking costs more than it saves. */
+  private static final int PARALLEL_THRESHOLD = 8;
+
+  /**
+   * Signatures and global variables are checked first, in declaration order, since
+   * both may read the global constants declared before them. Function bodies only
+   * depend on those, so they are checked afterwards on the common fork-join pool, each
+   * with its own type environment and a child of the global constant environment,
+   * which is no longer written to at that point. Problems are replayed in declaration
+   * order, stopping at the first function that failed, like a sequential check would.
+   */
   public @NotNull ImmutableSeq<Proclaim> tyckStmts(@NotNull ImmutableSeq<Stmt> resolved, @NotNull ExprTycker tycker) {
-    return resolved.map(stmt -> tyckTopLevel(stmt, tycker));
+    var defs = new Def[resolved.size()];
+    for (int i = 0; i < defs.length; i++) {
+      switch (resolved.get(i)) {
+        case Decl.FnDecl decl -> tyckSignature(decl, tycker);
+        case Decl.VarDecl decl -> defs[i] = tyckTopLevel(decl, tycker);
+        default -> throw new IllegalStateException("Top level cannot have statements" + resolved.get(i));
+      }
+    }
+    var fns = IntStream.range(0, defs.length).filter(i -> defs[i] == null).toArray();
+    var stream = IntStream.of(fns);
+    if (fns.length >= PARALLEL_THRESHOLD) stream = stream.parallel();
+    var bodies = stream
+      .mapToObj(i -> tyckBody((Decl.FnDecl) resolved.get(i), tycker.constGamma()))
+      .toList();
+    for (int j = 0; j < fns.length; j++) {
+      var body = bodies.get(j);
+      body.problems.forEach(reporter::report);
+      if (body.interrupted != null) throw body.interrupted;
+      defs[fns[j]] = body.def;
+    }
+    return ImmutableSeq.from(defs);
   }
 
   public @NotNull Def tyckTopLevel(@NotNull Stmt stmt, @NotNull ExprTycker tycker) {
     return switch (stmt) {
       case Decl.FnDecl decl -> {
-        var tele = checkTele(tycker, decl.telescope);
-        var result = tycker.infer(decl.result).wellTyped();
-        decl.signature = new Def.Signature(tele, result);
-        var body = check(decl.body, result, false, tycker);
-        yield new Def.FnDef(decl.ref, tele, body, result);
+        var signature = tyckSignature(decl, tycker);
+        signature.tele().forEach(tycker.gamma()::put);
+        var body = check(decl.body, signature.result(), false, tycker);
+        yield new Def.FnDef(decl.ref, signature.tele(), body, signature.result());
       }
       case Decl.VarDecl decl -> {
         var result = tycker.infer(decl.result).wellTyped();
@@ -42,6 +79,33 @@ public record StmtTycker(
     };
   }
 
+  private @NotNull Def.Signature tyckSignature(@NotNull Decl.FnDecl decl, @NotNull ExprTycker tycker) {
+    var tele = checkTele(tycker, decl.telescope);
+    var result = tycker.infer(decl.result).wellTyped();
+    return decl.signature = new Def.Signature(tele, result);
+  }
+
+  /** Either the checked function, or the problems that interrupted it. */
+  private record Body(
+    @Nullable Def.FnDef def,
+    @NotNull ImmutableSeq<Problem> problems,
+    @Nullable InterruptException interrupted
+  ) {}
+
+  private @NotNull Body tyckBody(@NotNull Decl.FnDecl decl, @NotNull Gamma.ConstGamma globals) {
+    var problems = MutableList.<Problem>create();
+    var tycker = new ExprTycker(problems::append, new Gamma.TypeGamma(), globals.derive());
+    var signature = Objects.requireNonNull(decl.signature);
+    signature.tele().forEach(tycker.gamma()::put);
+    try {
+      var body = check(decl.body, signature.result(), false, tycker);
+      var def = new Def.FnDef(decl.ref, signature.tele(), body, signature.result());
+      return new Body(def, problems.toImmutableSeq(), null);
+    } catch (InterruptException e) {
+      return new Body(null, problems.toImmutableSeq(), e);
+    }
+  }
+
   private @NotNull Proclaim check(@NotNull Stmt stmt, @NotNull Type<Term> returnType, boolean insideLoop, @NotNull ExprTycker tycker) {
     return switch (stmt) {
       case Stmt.AssignStmt assignStmt -> {
@@ -56,7 +120,7 @@ public record StmtTycker(
         }
       }
       case Stmt.IfStmt ifStmt -> {
-        var cond = tycker.check(ifStmt.cond(), new Type.Int<>()).wellTyped();
+        var cond = tycker.check(ifStmt.cond(), Type.Int.of()).wellTyped();
         var then = check(ifStmt.thenBranch(), returnType, insideLoop, tycker);
         var elseBranch = ifStmt.elseBranch().map(s -> check(s, returnType, insideLoop, tycker));
         yield new Proclaim.IfProclaim(cond, then, elseBranch);
@@ -71,7 +135,7 @@ public record StmtTycker(
         yield new Proclaim.BlockProclaim(proclaim);
       }
       case Stmt.WhileStmt whileStmt -> {
-        var cond = tycker.check(whileStmt.cond(), new Type.Int<>()).wellTyped();
+        var cond = tycker.check(whileStmt.cond(), Type.Int.of()).wellTyped();
         var body = check(whileStmt.body(), returnType, true, tycker);
         yield new Proclaim.WhileProclaim(cond, body);
       }
@@ -103,9 +167,7 @@ public record StmtTycker(
   private @NotNull ImmutableSeq<Term.Param> checkTele(@NotNull ExprTycker tycker, @NotNull ImmutableSeq<Expr.Param> tele) {
     return tele.map(param -> {
       var paramTyped = tycker.infer(param.type()).wellTyped();
-      var newParam = new Term.Param(param, paramTyped);
-      tycker.gamma().put(newParam);
-      return newParam;
+      return new Term.Param(param, paramTyped);
     });
   }
 }
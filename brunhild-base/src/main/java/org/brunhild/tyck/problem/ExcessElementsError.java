@@ -0,0 +1,20 @@
+package org.brunhild.tyck.problem;
+
+import org.brunhild.core.Term;
+import org.brunhild.error.Problem;
+import org.brunhild.error.SourcePos;
+import org.brunhild.generic.Type;
+import org.jetbrains.annotations.NotNull;
+
+public record ExcessElementsError(
+  @Override @NotNull SourcePos sourcePos,
+  @NotNull Type<Term> type
+) implements Problem {
+  @Override public @NotNull Severity severity() {
+    return Severity.ERROR;
+  }
+
+  @Override public @NotNull String describe() {
+    return String.format("Excess elements in initializer of %s", type);
+  }
+}
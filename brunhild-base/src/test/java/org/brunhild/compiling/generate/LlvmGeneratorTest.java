@@ -0,0 +1,84 @@
+package org.brunhild.compiling.generate;
+
+import org.brunhild.compiling.ir.Lowering;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+
+import java.io.StringWriter;
+
+import static org.brunhild.test.Differential.check;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class LlvmGeneratorTest {
+  private static @NotNull String emit(@NotNull String code) {
+    var module = Lowering.Pass.perform(check(code), "test.sy");
+    return LlvmGenerator.Pass.perform(module, new StringWriter()).toString();
+  }
+
+  /** The definitions of the globals, up to the first function. */
+  private static @NotNull String globals(@NotNull String code) {
+    var llvm = emit(code);
+    var from = llvm.indexOf("\n\n") + 2;
+    return llvm.substring(from, llvm.indexOf("\ndefine ", from));
+  }
+
+  @Test public void nestedInitializers() {
+    assertEquals("""
+      @a = global [2 x [3 x i32]] [[3 x i32] [i32 1, i32 2, i32 0]
+        , [3 x i32] [i32 3, i32 0, i32 0]
+        ], align 4
+      @c = global [2 x [2 x i32]] [[2 x i32] [i32 1, i32 2]
+        , [2 x i32] [i32 3, i32 0]
+        ], align 4
+      @f = global [2 x [2 x [2 x float]]] [[2 x [2 x float]] [[2 x float] [float 0x3FF8000000000000, float 0x0000000000000000], [2 x float] zeroinitializer]
+        , [2 x [2 x float]] [[2 x float] [float 0x4000000000000000, float 0x4008000000000000], [2 x float] [float 0x4011000000000000, float 0x0000000000000000]]
+        ], align 4
+      @m = global [3 x [2 x i32]] [[2 x i32] zeroinitializer
+        , [2 x i32] [i32 0, i32 -7]
+        , [2 x i32] zeroinitializer
+        ], align 4
+      """, globals("""
+      int a[2][3] = {{1, 2}, {3}};
+      const int c[2][2] = {1, 2, 3};
+      float f[2][2][2] = {{{1.5}}, {2, 3, {4.25}}};
+      int m[3][2] = {{}, {0, -7}};
+      int main() {
+        return a[1][0] + c[1][0] + f[1][1][0] + m[1][1];
+      }
+      """));
+  }
+
+  @Test public void zerosAndScalars() {
+    assertEquals("""
+      @z = global [4 x [2 x i32]] zeroinitializer, align 4
+      @y = global [3 x i32] zeroinitializer, align 4
+      @e = global [2 x [2 x float]] zeroinitializer, align 4
+      @s = global i32 5, align 4
+      @t = global float 0x0000000000000000, align 4
+      @h = global float 0xBFE0000000000000, align 4
+      """, globals("""
+      int z[4][2];
+      int y[3] = {0, 0};
+      float e[2][2] = {{}, {0.0}};
+      int s = 5;
+      float t;
+      float h = -0.5;
+      int main() {
+        return z[0][0] + y[1] + e[1][1] + s + t + h;
+      }
+      """));
+  }
+
+  @Test public void arraysLongerThanALine() {
+    assertEquals("""
+      @big = global [40 x i32] [i32 1, i32 2, i32 3, i32 4, i32 5, i32 6, i32 7, i32 8, i32 9, i32 10, i32 11, i32 12, i32 13, i32 14, i32 15, i32 16
+        , i32 17, i32 18, i32 19, i32 20, i32 21, i32 0, i32 0, i32 0, i32 0, i32 0, i32 0, i32 0, i32 0, i32 0, i32 0, i32 0
+        , i32 0, i32 0, i32 0, i32 0, i32 0, i32 0, i32 0, i32 0], align 4
+      """, globals("""
+      int big[40] = {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17, 18, 19, 20, 21};
+      int main() {
+        return big[20];
+      }
+      """));
+  }
+}
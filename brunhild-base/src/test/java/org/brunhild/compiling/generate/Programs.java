@@ -0,0 +1,126 @@
+package org.brunhild.compiling.generate;
+
+import kala.collection.immutable.ImmutableSeq;
+import kala.tuple.Unit;
+import org.brunhild.compiling.Pipeline;
+import org.brunhild.compiling.Profiler;
+import org.brunhild.compiling.ir.Lowering;
+import org.brunhild.compiling.ir.Module;
+import org.brunhild.compiling.optimize.LoopInvariants;
+import org.brunhild.compiling.optimize.ValueNumbering;
+import org.brunhild.core.Proclaim;
+import org.jetbrains.annotations.NotNull;
+
+/** Programs the backends are tested on, with what they are run with. */
+public final class Programs {
+  private Programs() {}
+
+  /** What the compiler does before generating code. */
+  public static final @NotNull Pipeline<ImmutableSeq<Proclaim>, Module> LOWER = Pipeline.<ImmutableSeq<Proclaim>>identity()
+    .then(Lowering.Pass, "test.sy")
+    .then(ValueNumbering.Pass, Profiler.NONE)
+    .then(LoopInvariants.Pass, Unit.unit());
+
+  public static final @NotNull String ARGUMENTS = """
+    int many(int a, int b, int c, int d, int e, int f, int g, int h, int i, int j, float x, float y, int k) {
+      return a - h + i * 9 + j - x * y + k;
+    }
+    float mixed(float a, float b, float c, float d, float e, float f, float g, float h, float i, int n, float j) {
+      return a + b + c + d + e + f + g + h + i * j - n;
+    }
+    int main() {
+      int n = getint();
+      float f = n;
+      putint(many(1, 2, 3, 4, 5, 6, 7, 8, n, 10, 1.5, f, 11)); putch(32);
+      putfloat(mixed(1, 2, 3, 4, 5, 6, 7, 8, 9, n, f)); putch(32);
+      putint(many(n, n, n, n, n, n, n, n, n, n, f, f, many(n, 1, 1, 1, 1, 1, 1, 1, 1, 1, f, 2.0, n)));
+      return 0;
+    }
+    """;
+
+  public static final @NotNull String CONVERSIONS = """
+    int trunc(float f) {
+      return f;
+    }
+    float widen(int n) {
+      return n;
+    }
+    int near(int n) {
+      return n + 2047 - (n - 2048);
+    }
+    int far(int n) {
+      return n * 305419896 + 2048;
+    }
+    int edge(int n) {
+      return n - 2147483647 - 1;
+    }
+    float constant(float f) {
+      return f * 2.75;
+    }
+    int main() {
+      int n = getint();
+      putint(trunc(widen(n) * -1.5)); putch(32);
+      putint(near(n)); putch(32); putint(far(n)); putch(32); putint(edge(n)); putch(32);
+      putfloat(constant(n));
+      return trunc(-0.75) + 3;
+    }
+    """;
+
+  /** More values live at once than there are registers, and live across the calls reading them. */
+  public static final @NotNull String SPILLS = spills(30);
+
+  /** Values live across calls in a loop, and moves between them. */
+  public static final @NotNull String LOOPS = """
+    int g[8];
+    int step(int x, int y) {
+      return x * 3 + y;
+    }
+    int main() {
+      int n = getint();
+      int a = 1, b = 2, c = 3, i = 0;
+      float f = 0.5;
+      while (i < n) {
+        int t = a;
+        a = step(b, c);
+        b = c;
+        c = t;
+        g[i % 8] = a + b;
+        f = f * 1.5 + a;
+        i = i + 1;
+      }
+      putint(a); putch(32); putint(b); putch(32); putint(c); putch(32);
+      putint(g[1] + g[7]); putch(32); putfloat(f);
+      return a % 256;
+    }
+    """;
+
+  private static @NotNull String spills(int count) {
+    var code = new StringBuilder("int main() {\n");
+    for (int i = 0; i < count; i++) code.append("  int v").append(i).append(" = getint();\n");
+    for (int i = 0; i < count; i++) code.append("  float f").append(i).append(" = v").append(i).append(" * ").append(i).append(".5;\n");
+    code.append("  putint(0");
+    for (int i = 0; i < count; i++) code.append(" + v").append(i).append(" * v").append((i + 1) % count);
+    code.append("); putch(32);\n  putfloat(0.0");
+    for (int i = 0; i < count; i++) code.append(" + f").append(i).append(" * f").append((i + 7) % count);
+    return code.append(");\n  return v0;\n}\n").toString();
+  }
+
+  public static final @NotNull ImmutableSeq<String> ALL = ImmutableSeq.of(ARGUMENTS, CONVERSIONS, SPILLS, LOOPS);
+
+  /** The inputs of each program, for runs of the generated code. */
+  public static @NotNull ImmutableSeq<String> inputs(@NotNull String program) {
+    if (program.equals(SPILLS)) {
+      var input = new StringBuilder();
+      for (int i = 0; i < 30; i++) input.append(i * 37 - 400).append(' ');
+      return ImmutableSeq.of(input.toString());
+    }
+    if (program.equals(LOOPS)) return ImmutableSeq.of("0", "1", "12");
+    return ImmutableSeq.of("5", "-3");
+  }
+
+  /** @return the body of the function, from its label to its size directive */
+  public static @NotNull String function(@NotNull String assembly, @NotNull String name) {
+    var from = assembly.indexOf("\n" + name + ":\n") + name.length() + 3;
+    return assembly.substring(from, assembly.indexOf("  .size " + name + ",", from));
+  }
+}
@@ -0,0 +1,140 @@
+package org.brunhild.compiling.generate.aarch64;
+
+import org.brunhild.compiling.generate.machine.Allocations;
+import org.brunhild.compiling.generate.machine.IteratedCoalescing;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+
+import java.io.StringWriter;
+
+import static org.brunhild.compiling.generate.Programs.*;
+import static org.brunhild.test.Differential.assertSameNative;
+import static org.brunhild.test.Differential.check;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AArch64GeneratorTest {
+  /** A command assembling, linking with the runtime library and running the assembly it is given. */
+  private static final @NotNull String RUNNER = "BRUNHILD_AARCH64_RUNNER";
+
+  private static @NotNull String emit(@NotNull String code) {
+    return AArch64Generator.Pass.perform(LOWER.perform(check(code)), new StringWriter()).toString();
+  }
+
+  @Test public void argumentsOnTheStack() {
+    var assembly = emit(ARGUMENTS);
+    // integers and floats after the eighth of each are passed on the stack, 8 bytes each
+    assertEquals("""
+        ldr x13, [sp, #0]
+        ldr x12, [sp, #8]
+        ldr x11, [sp, #16]
+        sub w10, w0, w7
+        mov w9, #9
+        mul w9, w13, w9
+        add w9, w10, w9
+        add w9, w9, w12
+        scvtf s17, w9
+        fmul s16, s0, s1
+        fsub s17, s17, s16
+        scvtf s16, w11
+        fadd s16, s17, s16
+        fcvtzs w0, s16
+        ret
+      """, function(assembly, "many"));
+    assertEquals("""
+        ldr s19, [sp, #0]
+        ldr s18, [sp, #8]
+        fadd s16, s0, s1
+        fadd s16, s16, s2
+        fadd s16, s16, s3
+        fadd s16, s16, s4
+        fadd s16, s16, s5
+        fadd s16, s16, s6
+        fadd s17, s16, s7
+        fmul s16, s19, s18
+        fadd s17, s17, s16
+        scvtf s16, w0
+        fsub s0, s17, s16
+        ret
+      """, function(assembly, "mixed"));
+    var main = function(assembly, "main");
+    assertEquals("""
+        mov w0, #1
+        mov w1, #2
+        mov w2, #3
+        mov w3, #4
+        mov w4, #5
+        mov w5, #6
+        mov w6, #7
+        mov w7, #8
+        mov w10, #10
+        mov w9, #0
+        movk w9, #16320, lsl #16
+        fmov s0, w9
+        mov w9, #11
+        str x19, [sp, #0]
+        str x10, [sp, #8]
+        fmov s1, s8
+        str x9, [sp, #16]
+        bl many
+      """, main.substring(main.indexOf("  mov w0, #1\n"), main.indexOf("  bl many\n") + 10));
+  }
+
+  @Test public void conversionsAndImmediates() {
+    var assembly = emit(CONVERSIONS);
+    assertEquals("""
+        fcvtzs w0, s0
+        ret
+        scvtf s0, w0
+        ret
+      """, function(assembly, "trunc") + function(assembly, "widen"));
+    // 12-bit immediates fit into the instruction, others are built 16 bits at a time
+    assertEquals("""
+        add w10, w0, #2047
+        sub w9, w0, #2048
+        sub w0, w10, w9
+        ret
+      """, function(assembly, "near"));
+    assertEquals("""
+        mov w9, #22136
+        movk w9, #4660, lsl #16
+        mul w9, w0, w9
+        add w0, w9, #2048
+        ret
+        mov w9, #65535
+        movk w9, #32767, lsl #16
+        sub w9, w0, w9
+        sub w0, w9, #1
+        ret
+      """, function(assembly, "far") + function(assembly, "edge"));
+    assertEquals("""
+        mov w9, #0
+        movk w9, #16432, lsl #16
+        fmov s16, w9
+        fmul s0, s0, s16
+        ret
+      """, function(assembly, "constant"));
+  }
+
+  @Test public void spills() {
+    var module = LOWER.perform(check(SPILLS));
+    var fn = AArch64Selector.select(module, module.functions.get(module.indexOf("main")));
+    var allocation = IteratedCoalescing.allocate(fn, AArch64Registers.INSTANCE);
+    assertTrue(allocation.spillSlots() > 0);
+    Allocations.assertValid(fn, allocation, AArch64Registers.INSTANCE);
+  }
+
+  @Test public void allocationsAreValid() {
+    for (var code : ALL) {
+      var module = LOWER.perform(check(code));
+      for (var function : module.functions) {
+        var fn = AArch64Selector.select(module, function);
+        Allocations.assertValid(fn, IteratedCoalescing.allocate(fn, AArch64Registers.INSTANCE), AArch64Registers.INSTANCE);
+      }
+    }
+  }
+
+  @Test public void runs() {
+    for (var code : ALL) for (var input : inputs(code)) assertSameNative(code, input, LOWER, AArch64Generator.Pass, RUNNER);
+  }
+}
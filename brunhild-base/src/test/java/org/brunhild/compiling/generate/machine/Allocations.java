@@ -0,0 +1,51 @@
+package org.brunhild.compiling.generate.machine;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.BitSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Checks the result of a register allocator against the function it allocated. */
+public final class Allocations {
+  private Allocations() {}
+
+  /**
+   * Every virtual register is either spilled or in an allocatable register of its class,
+   * and no register is written while another value in it is still to be read, except by
+   * a move of that value.
+   */
+  public static void assertValid(@NotNull MFunction fn, @NotNull Allocation allocation, @NotNull RegisterFile registers) {
+    for (int reg = MFunction.FIRST_VIRTUAL; reg < fn.registerCount(); reg++) {
+      var physical = allocation.physical(reg);
+      if (physical < 0) continue;
+      assertFalse(allocation.isSpilled(reg), fn.name + ": v" + reg + " is both spilled and in a register");
+      var isFloat = fn.isFloat(reg);
+      var allowed = false;
+      for (var candidate : registers.allocatable(isFloat)) allowed |= candidate == physical;
+      assertTrue(allowed, fn.name + ": v" + reg + " in " + registers.name(physical));
+      if (registers.isCalleeSaved(physical))
+        assertTrue(allocation.usedCalleeSaved.get(physical), fn.name + ": " + registers.name(physical) + " is not saved");
+    }
+    var liveness = Liveness.of(fn, MFunction::isVirtual);
+    for (int b = 0; b < fn.blocks.size(); b++) {
+      var block = fn.blocks.get(b);
+      var live = (BitSet) liveness.liveOut[b].clone();
+      for (int i = block.instrs.size() - 1; i >= 0; i--) {
+        var instr = block.instrs.get(i);
+        for (var def : instr.defs) {
+          var written = MFunction.isVirtual(def) ? allocation.physical(def) : def;
+          if (written < 0) continue;
+          for (int other = live.nextSetBit(0); other >= 0; other = live.nextSetBit(other + 1)) {
+            if (other == def || allocation.physical(other) != written) continue;
+            if (instr.kind == MInstr.Kind.Move && instr.uses[0] == other) continue;
+            fail(fn.name + ": " + block.label + " #" + i + " " + instr + " writes " + registers.name(written)
+              + " holding v" + other);
+          }
+        }
+        for (var def : instr.defs) if (MFunction.isVirtual(def)) live.clear(def);
+        for (var use : instr.uses) if (MFunction.isVirtual(use)) live.set(use);
+      }
+    }
+  }
+}
@@ -0,0 +1,138 @@
+package org.brunhild.compiling.generate.riscv;
+
+import org.brunhild.compiling.generate.machine.Allocations;
+import org.brunhild.compiling.generate.machine.LinearScan;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+
+import java.io.StringWriter;
+
+import static org.brunhild.compiling.generate.Programs.*;
+import static org.brunhild.test.Differential.assertSameNative;
+import static org.brunhild.test.Differential.check;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RiscvGeneratorTest {
+  /** A command assembling, linking with the runtime library and running the assembly it is given. */
+  private static final @NotNull String RUNNER = "BRUNHILD_RISCV64_RUNNER";
+
+  private static @NotNull String emit(@NotNull String code) {
+    return RiscvGenerator.Pass.perform(LOWER.perform(check(code)), new StringWriter()).toString();
+  }
+
+  @Test public void argumentsOnTheStack() {
+    var assembly = emit(ARGUMENTS);
+    // integers after the eighth are passed on the stack, floats after the eighth in the
+    // integer registers left, and then on the stack
+    assertEquals("""
+        ld t0, 0(sp)
+        ld t1, 8(sp)
+        ld t2, 16(sp)
+        subw t3, a0, a7
+        li t4, 9
+        mulw t0, t0, t4
+        addw t0, t3, t0
+        addw t0, t0, t1
+        fcvt.s.w ft5, t0
+        fmul.s ft6, fa0, fa1
+        fsub.s ft5, ft5, ft6
+        fcvt.s.w ft6, t2
+        fadd.s ft5, ft5, ft6
+        fcvt.w.s a0, ft5, rtz
+        ret
+      """, function(assembly, "many"));
+    assertEquals("""
+        fmv.w.x ft5, a0
+        fmv.w.x ft6, a2
+        fadd.s ft7, fa0, fa1
+        fadd.s ft7, ft7, fa2
+        fadd.s ft7, ft7, fa3
+        fadd.s ft7, ft7, fa4
+        fadd.s ft7, ft7, fa5
+        fadd.s ft7, ft7, fa6
+        fadd.s ft7, ft7, fa7
+        fmul.s ft5, ft5, ft6
+        fadd.s ft5, ft7, ft5
+        fcvt.s.w ft6, a1
+        fsub.s fa0, ft5, ft6
+        ret
+      """, function(assembly, "mixed"));
+    var main = function(assembly, "main");
+    assertEquals("""
+        li a0, 1
+        li a1, 2
+        li a2, 3
+        li a3, 4
+        li a4, 5
+        li a5, 6
+        li a6, 7
+        li a7, 8
+        li t0, 10
+        li t1, 1069547520
+        fmv.w.x fa0, t1
+        li t1, 11
+        sd s0, 0(sp)
+        sd t0, 8(sp)
+        fmv.s fa1, fs0
+        sd t1, 16(sp)
+        call many
+      """, main.substring(main.indexOf("  li a0, 1\n"), main.indexOf("  call many\n") + 12));
+  }
+
+  @Test public void conversionsAndImmediates() {
+    var assembly = emit(CONVERSIONS);
+    assertEquals("""
+        fcvt.w.s a0, fa0, rtz
+        ret
+        fcvt.s.w fa0, a0
+        ret
+      """, function(assembly, "trunc") + function(assembly, "widen"));
+    // 12-bit immediates fit into the instruction, others are loaded first
+    assertEquals("""
+        addiw t0, a0, 2047
+        addiw t1, a0, -2048
+        subw a0, t0, t1
+        ret
+      """, function(assembly, "near"));
+    assertEquals("""
+        li t0, 305419896
+        mulw t0, a0, t0
+        li t1, 2048
+        addw a0, t0, t1
+        ret
+        li t0, 2147483647
+        subw t0, a0, t0
+        addiw a0, t0, -1
+        ret
+      """, function(assembly, "far") + function(assembly, "edge"));
+    assertEquals("""
+        li t0, 1076887552
+        fmv.w.x ft5, t0
+        fmul.s fa0, fa0, ft5
+        ret
+      """, function(assembly, "constant"));
+  }
+
+  @Test public void spills() {
+    var module = LOWER.perform(check(SPILLS));
+    var fn = RiscvSelector.select(module, module.functions.get(module.indexOf("main")));
+    var allocation = LinearScan.allocate(fn, RiscvRegisters.INSTANCE);
+    assertTrue(allocation.spillSlots() > 0);
+    Allocations.assertValid(fn, allocation, RiscvRegisters.INSTANCE);
+  }
+
+  @Test public void allocationsAreValid() {
+    for (var code : ALL) {
+      var module = LOWER.perform(check(code));
+      for (var function : module.functions) {
+        var fn = RiscvSelector.select(module, function);
+        Allocations.assertValid(fn, LinearScan.allocate(fn, RiscvRegisters.INSTANCE), RiscvRegisters.INSTANCE);
+      }
+    }
+  }
+
+  @Test public void runs() {
+    for (var code : ALL) for (var input : inputs(code)) assertSameNative(code, input, LOWER, RiscvGenerator.Pass, RUNNER);
+  }
+}
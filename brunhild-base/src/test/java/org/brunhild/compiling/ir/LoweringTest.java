@@ -0,0 +1,186 @@
+package org.brunhild.compiling.ir;
+
+import kala.collection.immutable.ImmutableSeq;
+import org.brunhild.compiling.Pipeline;
+import org.brunhild.core.Proclaim;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+
+import static org.brunhild.test.Differential.assertSameLowered;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LoweringTest {
+  private static final @NotNull Pipeline<ImmutableSeq<Proclaim>, Module> LOWER =
+    Pipeline.<ImmutableSeq<Proclaim>>identity().then(Lowering.Pass, "test");
+
+  private static @NotNull Function function(@NotNull Module module, @NotNull String name) {
+    return module.functions.get(module.indexOf(name));
+  }
+
+  private static int count(@NotNull Function fn, @NotNull Opcode op) {
+    var count = 0;
+    for (int block = 0; block < fn.blockCount(); block++) {
+      var instructions = fn.instructions(block);
+      for (int i = 0; i < instructions.size(); i++) if (fn.op(instructions.get(i)) == op) count++;
+    }
+    return count;
+  }
+
+  /** Every operand is defined in a block dominating where it is used, or where it flows in from. */
+  private static void assertDominated(@NotNull Function fn) {
+    var tree = DominatorTree.of(fn);
+    for (int block = 0; block < fn.blockCount(); block++) {
+      if (!tree.isReachable(block)) continue;
+      var instructions = fn.instructions(block);
+      for (int i = 0; i < instructions.size(); i++) {
+        var value = instructions.get(i);
+        for (int k = 0; k < fn.arity(value); k++) {
+          if (fn.isBlockOperand(value, k)) continue;
+          var operand = fn.operand(value, k);
+          if (fn.isConstant(operand) || fn.op(operand) == Opcode.Param) continue;
+          var use = fn.op(value) == Opcode.Phi ? fn.operand(value, k - 1) : block;
+          if (!tree.isReachable(use)) continue;
+          assertTrue(tree.dominates(fn.block(operand), use), fn.name + ": " + fn.valueName(operand) + " in " + fn.valueName(value));
+        }
+      }
+    }
+  }
+
+  private static int backEdges(@NotNull Function fn) {
+    var tree = DominatorTree.of(fn);
+    var edges = 0;
+    for (int block = 0; block < fn.blockCount(); block++) {
+      if (!tree.isReachable(block)) continue;
+      for (var successor : fn.successors(block)) if (tree.isBackEdge(block, successor)) edges++;
+    }
+    return edges;
+  }
+
+  @Test public void shortCircuits() {
+    var code = """
+      int calls;
+      int touch(int x) {
+        calls = calls + 1;
+        return x;
+      }
+      int main() {
+        int n = getint();
+        if (touch(n) > 0 && touch(n) < 10) putint(1);
+        if (touch(n) == 3 || touch(n) == 5 || touch(n) == 7) putint(2);
+        if (!touch(n) || touch(0) && touch(n - 5) || touch(n - 3) != 0) putint(3);
+        int v = 0;
+        if (touch(n) && touch(n - 3) || !touch(n - 5)) v = 1;
+        putch(32); putint(v);
+        int a[2] = {0, 0};
+        if (n >= 0 && n < 2 && a[n] == 0) putint(4);
+        putch(32); putint(calls);
+        return v;
+      }
+      """;
+    for (var input : ImmutableSeq.of("-1", "0", "1", "3", "5", "7", "12"))
+      assertSameLowered(code, input, LOWER);
+  }
+
+  @Test public void breaksAndContinues() {
+    var code = """
+      int main() {
+        int n = getint();
+        int i = 0, s = 0;
+        while (i < n) {
+          i = i + 1;
+          if (i % 3 == 0) continue;
+          int j = 0;
+          while (1) {
+            j = j + 1;
+            if (j > i) break;
+            if (j % 2) continue;
+            s = s + j;
+          }
+          if (s > 200) break;
+          s = s + i;
+        }
+        putint(i); putch(32); putint(s);
+        while (0) s = s + 1;
+        return s;
+      }
+      """;
+    for (var input : ImmutableSeq.of("0", "1", "7", "40"))
+      assertSameLowered(code, input, LOWER);
+    var main = function(assertSameLowered(code, "10", LOWER), "main");
+    assertDominated(main);
+    assertEquals(2, backEdges(main));
+  }
+
+  @Test public void variablesBecomePhis() {
+    var code = """
+      int g;
+      float half(float x) {
+        return x / 2;
+      }
+      int fib(int n) {
+        int a = 0, b = 1;
+        while (n > 0) {
+          int t = a + b;
+          a = b;
+          b = t;
+          n = n - 1;
+        }
+        return a;
+      }
+      int main() {
+        int n = getint();
+        int x = 1;
+        float f = 3;
+        if (n > 2) {
+          x = n * 2;
+          f = half(f);
+        } else if (n < 0) x = -n;
+        else g = x;
+        int swap = x;
+        x = n;
+        n = swap;
+        putint(x); putch(32); putint(n); putch(32); putint(fib(n)); putch(32);
+        putfloat(f); putch(32); putint(f); putch(32); putint(g);
+        return fib(x % 20);
+      }
+      """;
+    for (var input : ImmutableSeq.of("-4", "0", "2", "9"))
+      assertSameLowered(code, input, LOWER);
+    var module = assertSameLowered(code, "9", LOWER);
+    for (var fn : module.functions) {
+      assertDominated(fn);
+      // scalars live in registers, only arrays and globals are in memory
+      assertEquals(0, count(fn, Opcode.Alloca), fn.name);
+    }
+    assertEquals(0, count(function(module, "fib"), Opcode.Load));
+    assertTrue(count(function(module, "fib"), Opcode.Phi) >= 3);
+    assertTrue(count(function(module, "main"), Opcode.Phi) >= 2);
+  }
+
+  @Test public void arraysInMemory() {
+    var code = """
+      int g[3][2] = {{1, 2}, {3}};
+      int sum(int a[][2], int n) {
+        int i = 0, s = 0;
+        while (i < n) {
+          s = s + a[i][0] * 10 + a[i][1];
+          i = i + 1;
+        }
+        return s;
+      }
+      int main() {
+        int local[3][2] = {{4}, {5, 6}};
+        int n = getint();
+        local[2][n % 2] = n;
+        g[n % 3][1] = n + 1;
+        putint(sum(g, 3)); putch(32); putint(sum(local, 3)); putch(32);
+        int row[4];
+        row[0] = getarray(row);
+        putarray(row[0], row);
+        return local[2][1];
+      }
+      """;
+    for (var input : ImmutableSeq.of("0 2 7 8", "5 3 1 2 3", "4 0"))
+      assertSameLowered(code, input, LOWER);
+  }
+}
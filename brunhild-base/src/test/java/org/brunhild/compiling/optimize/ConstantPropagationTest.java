@@ -0,0 +1,168 @@
+package org.brunhild.compiling.optimize;
+
+import kala.collection.immutable.ImmutableSeq;
+import kala.tuple.Unit;
+import org.brunhild.compiling.Pipeline;
+import org.brunhild.core.Proclaim;
+import org.brunhild.core.Term;
+import org.brunhild.core.ops.ProclaimOps;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.junit.jupiter.api.Test;
+
+import static org.brunhild.test.Differential.assertSame;
+import static org.brunhild.test.Differential.function;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class ConstantPropagationTest {
+  private static final @NotNull Pipeline<ImmutableSeq<Proclaim>, ImmutableSeq<Proclaim>> PROPAGATE =
+    Pipeline.<ImmutableSeq<Proclaim>>identity().then(ConstantPropagation.Pass, Unit.unit());
+  private static final @NotNull Pipeline<ImmutableSeq<Proclaim>, ImmutableSeq<Proclaim>> PROPAGATE_DEAD_CODE =
+    PROPAGATE.then(DeadCode.Pass, Unit.unit());
+
+  private static void assertSameEverywhere(@NotNull String code, @NotNull String input) {
+    assertSame(code, input, PROPAGATE);
+    assertSame(code, input, PROPAGATE_DEAD_CODE);
+  }
+
+  @Test public void branchesNeverTaken() {
+    var code = """
+      int main() {
+        int n = getint();
+        int a = 3, b = 0;
+        if (a > 2) b = 10;
+        else b = 20;
+        int c = b * a;
+        if (n > 0) a = a + 0;
+        else a = 6 / 2;
+        int d = 0;
+        if (a != 3) d = 1 / d;
+        putint(a); putch(32); putint(b); putch(32); putint(c);
+        if (n > 5) b = n;
+        putch(32); putint(b);
+        return a + c;
+      }
+      """;
+    for (var input : ImmutableSeq.of("-1", "3", "9")) assertSameEverywhere(code, input);
+    // what is left to compute is the branch on the input
+    var optimized = assertSame(code, "3", PROPAGATE_DEAD_CODE);
+    var ifs = new int[1];
+    new ProclaimOps<Unit>() {
+      @Override public @Nullable Proclaim pre(@NotNull Proclaim proclaim, Unit unit) {
+        if (proclaim instanceof Proclaim.IfProclaim) ifs[0]++;
+        return null;
+      }
+    }.traverse(function(optimized, "main").body, Unit.unit());
+    assertEquals(1, ifs[0]);
+  }
+
+  @Test public void loopsMeetTheirBackEdges() {
+    assertSameEverywhere("""
+      int main() {
+        int n = getint();
+        int i = 0, k = 7, s = 0, flag = 0, j = 0;
+        while (i < n) {
+          s = s + k;
+          if (flag) k = k + 1;
+          if (i == 4) {
+            j = 5;
+            i = i + 1;
+            continue;
+          }
+          if (i > 100) break;
+          j = j + 1;
+          i = i + 1;
+        }
+        putint(s); putch(32); putint(k); putch(32); putint(j); putch(32); putint(i);
+        while (1) {
+          k = k + 1;
+          if (k > 20) break;
+        }
+        putch(32); putint(k);
+        return 0;
+      }
+      """, "10");
+  }
+
+  @Test public void globalsAndDivisionsByZero() {
+    assertSameEverywhere("""
+      int limit = 8;
+      int counter = 1;
+      const int scale = 3;
+      int bump() {
+        counter = counter + scale;
+        return counter;
+      }
+      int main() {
+        int zero = 0;
+        int n = getint();
+        if (n == limit) putint(1 / zero);
+        putint(bump() + limit * scale); putch(32);
+        putint(counter); putch(32);
+        int wrap = 2147483647;
+        wrap = wrap + limit;
+        putint(wrap); putch(32);
+        putint(-2147483647 - 1 / 1 - zero);
+        return counter % 256;
+      }
+      """, "5");
+  }
+
+  @Test public void constantsThroughInlinedParameters() {
+    var code = """
+      int mode = 2;
+      int apply(int op, int x, int y) {
+        if (op == 0) return x + y;
+        if (op == 1) return x - y;
+        if (op == 2) return x * y;
+        return x / y;
+      }
+      int pick(int flag, int a[]) {
+        if (flag) return a[0];
+        return a[1] / flag;
+      }
+      int main() {
+        int n = getint();
+        int l[2] = {4, 9};
+        putint(apply(0, n, 3)); putch(32);
+        putint(apply(1, n, 3)); putch(32);
+        putint(apply(3, n, 0 * n + 1)); putch(32);
+        putint(apply(mode, n, 3)); putch(32);
+        putint(pick(1, l));
+        if (n > 0) putint(apply(n, 6, 2));
+        return 0;
+      }
+      """;
+    var inline = Pipeline.<ImmutableSeq<Proclaim>>identity().then(Inliner.Pass, Inliner.Thresholds.DEFAULT);
+    var pipeline = inline.then(ConstantPropagation.Pass, Unit.unit()).then(DeadCode.Pass, Unit.unit());
+    for (var input : ImmutableSeq.of("-3", "0", "1", "2", "3", "7")) assertSame(code, input, pipeline);
+    // only the branches on the input are left, those the inlined calls on constants took are not
+    var optimized = assertSame(code, "3", pipeline);
+    var ifs = new int[1];
+    new ProclaimOps<Unit>() {
+      @Override public @Nullable Proclaim pre(@NotNull Proclaim proclaim, Unit unit) {
+        if (proclaim instanceof Proclaim.IfProclaim) ifs[0]++;
+        return null;
+      }
+    }.traverse(function(optimized, "main").body, Unit.unit());
+    assertEquals(1 + 3, ifs[0]);
+  }
+
+  @Test public void floatsAndConditions() {
+    assertSameEverywhere("""
+      int main() {
+        float f = 1.5;
+        int n = getint();
+        float g = f * 2.0;
+        int t = 0;
+        if (g > 2.5) t = 1;
+        if (t && n) putfloat(g);
+        else putfloat(f);
+        int z = 0.5;
+        if (z) putint(1);
+        if (!z) putint(2);
+        return z + t;
+      }
+      """, "1");
+  }
+}
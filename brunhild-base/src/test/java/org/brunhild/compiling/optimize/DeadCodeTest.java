@@ -0,0 +1,260 @@
+package org.brunhild.compiling.optimize;
+
+import kala.collection.immutable.ImmutableSeq;
+import kala.tuple.Unit;
+import org.brunhild.compiling.Pipeline;
+import org.brunhild.compiling.interpret.Interpreter;
+import org.brunhild.core.Proclaim;
+import org.brunhild.core.Term;
+import org.brunhild.core.ops.ProclaimOps;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.junit.jupiter.api.Test;
+
+import static org.brunhild.test.Differential.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class DeadCodeTest {
+  private static final @NotNull Pipeline<ImmutableSeq<Proclaim>, ImmutableSeq<Proclaim>> DEAD_CODE =
+    Pipeline.<ImmutableSeq<Proclaim>>identity().then(DeadCode.Pass, Unit.unit());
+
+  private static int statements(@NotNull ImmutableSeq<Proclaim> program, @NotNull String fn, @NotNull Class<? extends Proclaim> kind) {
+    var count = new int[1];
+    new ProclaimOps<Unit>() {
+      @Override public @Nullable Proclaim pre(@NotNull Proclaim proclaim, Unit unit) {
+        if (kind.isInstance(proclaim)) count[0]++;
+        return null;
+      }
+    }.traverse(function(program, fn).body, Unit.unit());
+    return count[0];
+  }
+
+  @Test public void deadDefinitionsStayInTheirScope() {
+    var code = """
+      int g[2];
+      int f() {
+        g[0] = g[0] + 1;
+        return 5;
+      }
+      int main() {
+        int x = f();
+        x = g[0] + 100;
+        int y = g[0] + 7;
+        putint(x); putch(10);
+        putint(y);
+        return 0;
+      }
+      """;
+    var optimized = assertSame(code, "", DEAD_CODE);
+    assertEquals("101\n8\nexit 0", run(optimized, Interpreter.Engine.Bytecode, ""));
+  }
+
+  @Test public void callsThatMayNotReturnAreKept() {
+    var spin = check("""
+      int spin(int n) {
+        while (1) {}
+        return n;
+      }
+      int main() {
+        spin(1);
+        putint(7);
+        return 0;
+      }
+      """);
+    DeadCode.Pass.perform(spin, Unit.unit());
+    assertEquals(1, calls(spin, "main", "spin"));
+    var counting = assertSame("""
+      int count(int n) {
+        int i = 0;
+        while (i < n) i = i + 1;
+        return i;
+      }
+      int twice(int n) {
+        return n + n;
+      }
+      int main() {
+        count(getint());
+        int unused = twice(3);
+        count(5);
+        putint(7);
+        return 0;
+      }
+      """, "4", DEAD_CODE);
+    assertEquals(2, calls(counting, "main", "count"));
+    assertEquals(0, calls(counting, "main", "twice"));
+  }
+
+  @Test public void deadStoresAndUnreadArrays() {
+    assertSame("""
+      int n;
+      int f(int x) {
+        n = n + x;
+        return x;
+      }
+      int main() {
+        int a = getint();
+        int b = a * 2;
+        int c = f(a);
+        b = f(b) + 1;
+        int t[4] = {1, 2, 3, 4};
+        int u[3][2];
+        t[f(1) % 4] = f(2);
+        u[f(1)][0] = 5;
+        int v[3];
+        v[a % 3] = a;
+        a = a + 1;
+        putint(v[2] + n);
+        return a;
+      }
+      """, "5", DEAD_CODE);
+  }
+
+  @Test public void unreachableCode() {
+    assertSame("""
+      int main() {
+        int a = getint();
+        int s = 0;
+        if (0) putint(1);
+        else s = s + 2;
+        while (0) putint(2);
+        while (a > 0) {
+          a = a - 1;
+          if (a == 3) continue;
+          s = s + a;
+          if (s > 20) break;
+          putint(a);
+          continue;
+          putint(100);
+        }
+        putch(10);
+        if (a) {
+          putint(s);
+          return 1;
+          putint(3);
+        }
+        return s;
+        putint(4);
+      }
+      """, "9", DEAD_CODE);
+  }
+
+  @Test public void livenessAroundLoops() {
+    assertSame("""
+      int main() {
+        int n = getint();
+        int i = 0, last = -1, prev = -2, unused = 0;
+        while (i < n) {
+          unused = unused + i;
+          prev = last;
+          if (i % 3 == 0) {
+            last = i;
+            i = i + 1;
+            continue;
+          }
+          if (i > 10) break;
+          i = i + 1;
+        }
+        putint(prev); putch(32); putint(last);
+        return i;
+      }
+      """, "14", DEAD_CODE);
+  }
+
+  @Test public void trivialDeadCode() {
+    var code = """
+      int main() {
+        int s = getint();
+        int n = getint();
+        int i = 0;
+        s = s;
+        while (i < n) i = i + 1;
+        int j = 10;
+        while (j > 0) j = j - 3;
+        int k = 0;
+        while (k <= 1000) k = k + 2;
+        int c = 0;
+        while (100 > c) c = c + 7;
+        int m = 0;
+        while (m <= n) m = m + 1;
+        putint(s);
+        return 0;
+      }
+      """;
+    var optimized = assertSame(code, "5 3", DEAD_CODE);
+    // what is left is the loop that may not end, with its step
+    assertEquals(1, statements(optimized, "main", Proclaim.WhileProclaim.class));
+    assertEquals(1, statements(optimized, "main", Proclaim.VarAssignProclaim.class));
+  }
+
+  @Test public void loopsAreOnlyRemovedIfTheyEnd() {
+    var program = check("""
+      int main() {
+        int n = getint();
+        int e = 0;
+        while (e <= 2147483645) e = e + 2;
+        int k = 0;
+        while (k <= 2147483646) k = k + 2;
+        int m = 0;
+        while (m <= n) m = m + 1;
+        int d = 10;
+        while (d > -2147483647) d = d - 3;
+        int u = 0;
+        while (u < n) u = u - 1;
+        int i = n;
+        while (i != 10) i = i - 2;
+        int j = n;
+        while (10 == j) j = j + 1;
+        return 0;
+      }
+      """);
+    DeadCode.Pass.perform(program, Unit.unit());
+    assertEquals(6, statements(program, "main", Proclaim.WhileProclaim.class));
+  }
+
+  @Test public void whatInliningLeaves() {
+    var code = """
+      int g[4];
+      int log[8];
+      int count;
+      int clamp(int x, int lo, int hi) {
+        int unused = x * hi;
+        if (x < lo) return lo;
+        if (x > hi) return hi;
+        return x;
+      }
+      int record(int a[], int v) {
+        count = count + 1;
+        a[count % 4] = v;
+        return v;
+      }
+      void scratch(int v) {
+        int tmp[4];
+        tmp[0] = v;
+        tmp[1] = tmp[0] * 2;
+      }
+      int main() {
+        int n = getint();
+        int i = 0, s = 0;
+        while (i < n) {
+          clamp(i, 2, 5);
+          s = s + clamp(i * 3, 2, 5);
+          record(log, i);
+          scratch(i);
+          i = i + 1;
+        }
+        int ignored = record(g, s);
+        putint(s); putch(32); putint(count); putch(32); putint(log[1] + g[1]);
+        return 0;
+      }
+      """;
+    var inline = Pipeline.<ImmutableSeq<Proclaim>>identity().then(Inliner.Pass, Inliner.Thresholds.DEFAULT);
+    for (var input : ImmutableSeq.of("0", "1", "6")) assertSame(code, input, inline.then(DeadCode.Pass, Unit.unit()));
+    var optimized = assertSame(code, "6", inline.then(DeadCode.Pass, Unit.unit()));
+    assertEquals(0, calls(optimized, "main", "scratch"));
+    // the loop the unused call to clamp became breaks out right away, the local array of
+    // scratch is only read to write into itself, so both leave nothing behind
+    assertEquals(2, statements(optimized, "main", Proclaim.IfProclaim.class));
+    assertEquals(2, statements(optimized, "main", Proclaim.WhileProclaim.class));
+    assertEquals(2, statements(optimized, "main", Proclaim.IndexAssignProclaim.class));
+  }
+}
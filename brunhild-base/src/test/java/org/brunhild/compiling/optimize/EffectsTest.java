@@ -0,0 +1,212 @@
+package org.brunhild.compiling.optimize;
+
+import kala.collection.immutable.ImmutableSeq;
+import kala.tuple.Unit;
+import org.brunhild.compiling.Pipeline;
+import org.brunhild.core.Def;
+import org.brunhild.core.Proclaim;
+import org.brunhild.core.Term;
+import org.brunhild.core.ops.ProclaimOps;
+import org.brunhild.generic.Var;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.junit.jupiter.api.Test;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.brunhild.test.Differential.assertSame;
+import static org.brunhild.test.Differential.calls;
+import static org.brunhild.test.Differential.check;
+import static org.brunhild.test.Differential.function;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class EffectsTest {
+  private static final @NotNull String PROGRAM = """
+    int g;
+    int arr[4];
+    int square(int x) {
+      return x * x;
+    }
+    int peek() {
+      return g + arr[1];
+    }
+    void poke(int v) {
+      g = v;
+    }
+    void store(int xs[], int v) {
+      xs[0] = v + square(v);
+    }
+    int load(int xs[][2]) {
+      return xs[1][1];
+    }
+    void into(int xs[]) {
+      store(xs, 3);
+    }
+    int local() {
+      int mine[2];
+      store(mine, 4);
+      return mine[0];
+    }
+    void global() {
+      store(arr, 5);
+    }
+    void read() {
+      getarray(arr);
+    }
+    int say(int x) {
+      putint(x);
+      return x;
+    }
+    int spin(int n) {
+      while (n > 0) n = n - 1;
+      return n;
+    }
+    int down(int n) {
+      if (n == 0) return 0;
+      return down(n - 1);
+    }
+    int even(int n) {
+      if (n == 0) return 1;
+      return odd(n - 1);
+    }
+    int odd(int n) {
+      if (n == 0) return 0;
+      return even(n - 1);
+    }
+    int main() {
+      int m[2][2];
+      global();
+      return load(m) + even(getint()) + square(3) + local();
+    }
+    """;
+
+  private final @NotNull ImmutableSeq<Proclaim> program = check(PROGRAM);
+  private final @NotNull Effects effects = Effects.of(program);
+
+  private @NotNull Effects.Summary of(@NotNull String fn) {
+    return effects.of(function(program, fn));
+  }
+
+  private @NotNull Var global(@NotNull String name) {
+    return global(program, name);
+  }
+
+  private static @NotNull Var global(@NotNull ImmutableSeq<Proclaim> program, @NotNull String name) {
+    return program.filterIsInstance(Def.VarDef.class).find(varDef -> varDef.ref.name().equals(name)).get().ref;
+  }
+
+  private static @NotNull BitSet bits(int... indices) {
+    var bits = new BitSet();
+    for (var index : indices) bits.set(index);
+    return bits;
+  }
+
+  @Test public void pureFunctions() {
+    assertTrue(of("square").isConstant());
+    assertTrue(of("peek").isPure());
+    assertFalse(of("peek").isConstant());
+    assertEquals(Set.of(global("g"), global("arr")), of("peek").reads());
+    assertTrue(of("load").isPure());
+    assertEquals(bits(0), of("load").readParams());
+  }
+
+  @Test public void writesThroughGlobalsAndParameters() {
+    assertEquals(Set.of(global("g")), of("poke").writes());
+    assertEquals(bits(0), of("store").writtenParams());
+    assertTrue(of("store").writes().isEmpty());
+    // passing the parameter on, or a global, or a local array no one else sees
+    assertEquals(bits(0), of("into").writtenParams());
+    assertEquals(Set.of(global("arr")), of("global").writes());
+    assertTrue(of("local").isConstant());
+    assertTrue(of("global").hasSideEffect());
+    assertFalse(of("global").io());
+  }
+
+  @Test public void primitives() {
+    assertTrue(of("say").io());
+    assertTrue(of("read").io());
+    assertEquals(Set.of(global("arr")), of("read").writes());
+    var calls = new HashSet<Term.CallTerm>();
+    new ProclaimOps<Unit>() {
+      @Override public @Nullable Term pre(@NotNull Term term, Unit unit) {
+        if (term instanceof Term.CallTerm call) calls.add(call);
+        return null;
+      }
+    }.traverse(function(program, "main").body, Unit.unit());
+    for (var call : calls) {
+      var isPrim = call instanceof Term.PrimCall;
+      var name = call instanceof Term.FnCall fn ? fn.fn().core.ref.name() : "";
+      assertEquals(isPrim || name.equals("global"), effects.hasSideEffect(call), name);
+      assertEquals(!isPrim && (name.equals("square") || name.equals("load") || name.equals("local")), effects.isPure(call), name);
+    }
+  }
+
+  @Test public void arraysDefinedAsOthers() {
+    var code = """
+      int garr[2] = {5};
+      void set(int a[], int v) {
+        a[0] = v;
+      }
+      void write(int v) {
+        set(garr, v);
+      }
+      void through(int xs[][2], int v) {
+        set(xs[1], v);
+      }
+      int main() {
+        int m[2][2];
+        write(getint());
+        through(m, 3);
+        putint(garr[0] + m[1][0]);
+        return 0;
+      }
+      """;
+    // what is inlined of set defines a local array as the one passed to it, and nothing
+    // is inlined into main, for its calls to be summarized
+    var inline = Pipeline.<ImmutableSeq<Proclaim>>identity()
+      .then(Inliner.Pass, new Inliner.Thresholds(32, 32, 16));
+    var inlined = assertSame(code, "7", inline);
+    assertEquals(0, calls(inlined, "write", "set"));
+    assertEquals(1, calls(inlined, "main", "write"));
+    var effects = Effects.of(inlined);
+    assertEquals(Set.of(global(inlined, "garr")), effects.of(function(inlined, "write")).writes());
+    assertEquals(bits(0), effects.of(function(inlined, "through")).writtenParams());
+    assertSame(code, "7", inline.then(DeadCode.Pass, Unit.unit()));
+  }
+
+  @Test public void functionsThatMayNotReturn() {
+    for (var fn : ImmutableSeq.of("spin", "down", "even", "odd")) {
+      assertTrue(of(fn).mayNotReturn(), fn);
+      assertFalse(of(fn).hasSideEffect(), fn);
+      assertFalse(of(fn).isPure(), fn);
+    }
+    assertTrue(of("main").mayNotReturn());
+    assertFalse(of("local").mayNotReturn());
+  }
+
+  @Test public void componentsAreCalleesFirst() {
+    var fns = program.filterIsInstance(Def.FnDef.class);
+    var callees = new HashMap<Def.FnDef, Set<Def.FnDef>>();
+    fns.forEach(fn -> {
+      var called = new HashSet<Def.FnDef>();
+      new ProclaimOps<Unit>() {
+        @Override public @Nullable Term pre(@NotNull Term term, Unit unit) {
+          if (term instanceof Term.FnCall call) called.add(call.fn().core);
+          return null;
+        }
+      }.traverse(fn.body, Unit.unit());
+      callees.put(fn, called);
+    });
+    var components = CallGraph.components(fns, callees);
+    assertEquals(fns.size() - 1, components.size());
+    var seen = new HashSet<Def.FnDef>();
+    for (var component : components) {
+      seen.addAll(component);
+      for (var fn : component) assertTrue(seen.containsAll(callees.get(fn)), fn.ref.name());
+    }
+    assertTrue(components.contains(Set.of(function(program, "even"), function(program, "odd"))));
+  }
+}
@@ -0,0 +1,161 @@
+package org.brunhild.compiling.optimize;
+
+import kala.collection.immutable.ImmutableSeq;
+import kala.tuple.Unit;
+import org.brunhild.compiling.Pipeline;
+import org.brunhild.core.Proclaim;
+import org.brunhild.core.Term;
+import org.brunhild.core.ops.ProclaimOps;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.junit.jupiter.api.Test;
+
+import static org.brunhild.test.Differential.assertSame;
+import static org.brunhild.test.Differential.function;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class InlinerTest {
+  private static @NotNull Pipeline<ImmutableSeq<Proclaim>, ImmutableSeq<Proclaim>> inline(@NotNull Inliner.Thresholds thresholds) {
+    return Pipeline.<ImmutableSeq<Proclaim>>identity().then(Inliner.Pass, thresholds);
+  }
+
+  private static int calls(@NotNull Proclaim body, @NotNull String callee) {
+    var calls = new int[1];
+    new ProclaimOps<Unit>() {
+      @Override public @Nullable Term pre(@NotNull Term term, Unit unit) {
+        if (term instanceof Term.FnCall call && call.fn().core.ref.name().equals(callee)) calls[0]++;
+        return null;
+      }
+    }.traverse(body, Unit.unit());
+    return calls[0];
+  }
+
+  private static void assertSameEverywhere(@NotNull String code, @NotNull String input) {
+    assertSame(code, input, inline(Inliner.Thresholds.DEFAULT));
+    assertSame(code, input, inline(new Inliner.Thresholds(1000, 1000, 100000)));
+    assertSame(code, input, inline(Inliner.Thresholds.NONE));
+  }
+
+  @Test public void parametersAndReturns() {
+    var code = """
+      int g;
+      int clamp(int x, int lo, int hi) {
+        if (x < lo) return lo;
+        if (x > hi) return hi;
+        return x;
+      }
+      int count(int n) {
+        int steps = 0;
+        while (n != 1) {
+          if (n % 2 == 0) n = n / 2;
+          else n = 3 * n + 1;
+          steps = steps + 1;
+          if (steps > 1000) return -1;
+        }
+        return steps;
+      }
+      void bump(int by) {
+        g = g + by;
+        if (g > 10) return;
+        g = g * 2;
+      }
+      int main() {
+        int n = getint();
+        int x = clamp(n, 0, 10) + clamp(-n, -5, 5);
+        putint(x); putch(10);
+        putint(count(n) + count(clamp(n, 1, 27))); putch(10);
+        bump(n); bump(x); bump(1);
+        putint(g);
+        return clamp(count(27), 0, 200);
+      }
+      """;
+    for (var input : ImmutableSeq.of("7", "-3", "100", "0"))
+      assertSameEverywhere(code, input);
+    var inlined = assertSame(code, "7", inline(new Inliner.Thresholds(1000, 1000, 100000)));
+    assertEquals(0, calls(function(inlined, "main").body, "clamp"));
+  }
+
+  @Test public void arraysAndGlobals() {
+    assertSameEverywhere("""
+      int total;
+      int a[10];
+      void fill(int xs[], int n, int v) {
+        int i = 0;
+        while (i < n) {
+          xs[i] = v + i;
+          i = i + 1;
+        }
+        total = total + n;
+      }
+      int sum(int xs[], int n) {
+        int i = 0, s = 0;
+        while (i < n) {
+          s = s + xs[i];
+          i = i + 1;
+        }
+        return s;
+      }
+      int row(int m[][3], int i) {
+        return m[i][0] + m[i][1] * 10 + m[i][2] * 100;
+      }
+      int main() {
+        int local[5];
+        int m[2][3] = {{1, 2, 3}, {4, 5, 6}};
+        int v = getint();
+        fill(a, 10, v);
+        fill(local, 5, sum(a, 10));
+        putint(sum(local, 5)); putch(10);
+        putint(row(m, 0) + row(m, 1) + total + a[total % 10]);
+        return 0;
+      }
+      """, "3");
+  }
+
+  @Test public void callsAreNotMovedAcrossWhatTheyWrite() {
+    assertSameEverywhere("""
+      int g;
+      int next() {
+        g = g + 1;
+        return g;
+      }
+      int twice(int x) {
+        return x + x;
+      }
+      int main() {
+        int a[3] = {10, 20, 30};
+        g = getint();
+        putint(g + next()); putch(10);
+        putint(a[next() % 3] + next() * 100); putch(10);
+        putint(twice(next()) - g + twice(twice(g))); putch(10);
+        if (g > 3 && next() > 4) putint(g);
+        return g;
+      }
+      """, "2");
+  }
+
+  @Test public void recursionIsKept() {
+    var code = """
+      int even(int n) {
+        if (n == 0) return 1;
+        return odd(n - 1);
+      }
+      int odd(int n) {
+        if (n == 0) return 0;
+        return even(n - 1);
+      }
+      int fib(int n) {
+        if (n < 2) return n;
+        return fib(n - 1) + fib(n - 2);
+      }
+      int main() {
+        int n = getint();
+        putint(even(n)); putint(odd(n)); putch(10);
+        putint(fib(n));
+        return 0;
+      }
+      """;
+    var inlined = assertSame(code, "15", inline(new Inliner.Thresholds(1000, 1000, 100000)));
+    assertTrue(calls(function(inlined, "fib").body, "fib") > 0);
+  }
+}
@@ -0,0 +1,159 @@
+package org.brunhild.compiling.optimize;
+
+import kala.collection.immutable.ImmutableSeq;
+import kala.tuple.Unit;
+import org.brunhild.compiling.Pipeline;
+import org.brunhild.compiling.Profiler;
+import org.brunhild.compiling.ir.Function;
+import org.brunhild.compiling.ir.IntList;
+import org.brunhild.compiling.ir.Lowering;
+import org.brunhild.compiling.ir.Module;
+import org.brunhild.compiling.ir.Opcode;
+import org.brunhild.core.Proclaim;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+
+import java.util.BitSet;
+
+import static org.brunhild.test.Differential.assertSameLowered;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class LoopInvariantsTest {
+  private static final @NotNull Pipeline<ImmutableSeq<Proclaim>, Module> LOWER =
+    Pipeline.<ImmutableSeq<Proclaim>>identity().then(Lowering.Pass, "test");
+  private static final @NotNull Pipeline<ImmutableSeq<Proclaim>, Module> HOIST =
+    LOWER.then(LoopInvariants.Pass, Unit.unit());
+  /** Like the compiler does it, numbering values first. */
+  private static final @NotNull Pipeline<ImmutableSeq<Proclaim>, Module> NUMBER_HOIST =
+    LOWER.then(ValueNumbering.Pass, Profiler.NONE).then(LoopInvariants.Pass, Unit.unit());
+
+  private static void assertSameEverywhere(@NotNull String code, @NotNull String input) {
+    assertSameLowered(code, input, HOIST);
+    assertSameLowered(code, input, NUMBER_HOIST);
+  }
+
+  /** @return how many of the instructions with the opcode are in blocks on a cycle */
+  private static int inLoops(@NotNull Module module, @NotNull String name, @NotNull Opcode op) {
+    var fn = module.functions.get(module.indexOf(name));
+    var count = 0;
+    for (int block = 0; block < fn.blockCount(); block++) {
+      if (!isInLoop(fn, block)) continue;
+      var instructions = fn.instructions(block);
+      for (int i = 0; i < instructions.size(); i++) if (fn.op(instructions.get(i)) == op) count++;
+    }
+    return count;
+  }
+
+  private static boolean isInLoop(@NotNull Function fn, int block) {
+    var seen = new BitSet();
+    var worklist = new IntList();
+    for (var succ : fn.successors(block)) worklist.add(succ);
+    while (!worklist.isEmpty()) {
+      var next = worklist.removeLast();
+      if (next == block) return true;
+      if (seen.get(next)) continue;
+      seen.set(next);
+      for (var succ : fn.successors(next)) worklist.add(succ);
+    }
+    return false;
+  }
+
+  @Test public void invariantsLeaveLoops() {
+    var code = """
+      int g[4] = {1, 2, 3, 4};
+      int sum(int a[], int n, int k) {
+        int i = 0, s = 0;
+        while (i < n) {
+          s = s + a[k] * (n / 3) + g[2];
+          i = i + 1;
+        }
+        return s;
+      }
+      int main() {
+        int l[3] = {5, 6, 7};
+        putint(sum(l, getint(), 1));
+        return 0;
+      }
+      """;
+    for (var input : ImmutableSeq.of("0", "1", "9")) assertSameEverywhere(code, input);
+    var hoisted = assertSameLowered(code, "9", HOIST);
+    assertEquals(0, inLoops(hoisted, "sum", Opcode.Load));
+    assertEquals(0, inLoops(hoisted, "sum", Opcode.Div));
+  }
+
+  @Test public void conditionalLoadsAndDivisions() {
+    var code = """
+      int g[2] = {1, 2};
+      int scan(int a[], int len, int k, int d, int n) {
+        int i = 0, s = 0;
+        while (i < n) {
+          if (k < len) s = s + a[k];
+          if (d != 0) s = s + 100 / d;
+          if (i > n) s = s + g[k];
+          i = i + 1;
+        }
+        return s;
+      }
+      int main() {
+        int l[2] = {3, 4};
+        int n = getint();
+        putint(scan(l, 2, 1, 7, n)); putch(32);
+        putint(scan(l, 2, 100000000, 0, n));
+        return 0;
+      }
+      """;
+    for (var input : ImmutableSeq.of("0", "2", "6")) assertSameEverywhere(code, input);
+  }
+
+  @Test public void writesInLoops() {
+    var code = """
+      int g[2] = {1, 2};
+      int count;
+      void tick() {
+        count = count + 1;
+        g[0] = g[0] + 1;
+      }
+      void inc(int a[]) {
+        a[0] = a[0] + 1;
+      }
+      int params(int a[], int n) {
+        int i = 0, s = 0;
+        while (i < n) {
+          s = s + g[0];
+          a[0] = a[0] + 1;
+          i = i + 1;
+        }
+        return s;
+      }
+      int calls(int n) {
+        int i = 0, s = 0;
+        while (i < n) {
+          s = s + g[0] + count;
+          tick();
+          i = i + 1;
+        }
+        return s;
+      }
+      int escaped(int n) {
+        int l[1] = {0};
+        int i = 0, s = 0;
+        while (i < n) {
+          s = s + l[0];
+          inc(l);
+          i = i + 1;
+        }
+        return s;
+      }
+      int main() {
+        int n = getint();
+        int l[2] = {0, 0};
+        putint(params(g, n)); putch(32);
+        putint(params(l, n)); putch(32);
+        putint(calls(n)); putch(32);
+        putint(escaped(n));
+        return g[0];
+      }
+      """;
+    for (var input : ImmutableSeq.of("0", "1", "5")) assertSameEverywhere(code, input);
+  }
+}
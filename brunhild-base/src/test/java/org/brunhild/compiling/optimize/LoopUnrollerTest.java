@@ -0,0 +1,212 @@
+package org.brunhild.compiling.optimize;
+
+import kala.collection.immutable.ImmutableSeq;
+import kala.tuple.Unit;
+import org.brunhild.compiling.Pipeline;
+import org.brunhild.core.Proclaim;
+import org.brunhild.core.ops.ProclaimOps;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.junit.jupiter.api.Test;
+
+import static org.brunhild.test.Differential.assertSame;
+import static org.brunhild.test.Differential.function;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class LoopUnrollerTest {
+  private static final @NotNull ImmutableSeq<LoopUnroller.Options> OPTIONS = ImmutableSeq.of(
+    LoopUnroller.Options.DEFAULT,
+    LoopUnroller.Options.NONE,
+    new LoopUnroller.Options(3, 7, 256),
+    new LoopUnroller.Options(8, 64, 1024));
+
+  private static @NotNull Pipeline<ImmutableSeq<Proclaim>, ImmutableSeq<Proclaim>> unroll(@NotNull LoopUnroller.Options options) {
+    return Pipeline.<ImmutableSeq<Proclaim>>identity().then(LoopUnroller.Pass, options);
+  }
+
+  private static void assertSameEverywhere(@NotNull String code, @NotNull String input) {
+    OPTIONS.forEach(options -> assertSame(code, input, unroll(options)));
+  }
+
+  private static int loops(@NotNull ImmutableSeq<Proclaim> program, @NotNull String fn) {
+    var loops = new int[1];
+    new ProclaimOps<Unit>() {
+      @Override public @Nullable Proclaim pre(@NotNull Proclaim proclaim, Unit unit) {
+        if (proclaim instanceof Proclaim.WhileProclaim) loops[0]++;
+        return null;
+      }
+    }.traverse(function(program, fn).body, Unit.unit());
+    return loops[0];
+  }
+
+  @Test public void constantTripCounts() {
+    var code = """
+      int a[20];
+      int main() {
+        int s = 0;
+        int i = 0;
+        while (i < 5) {
+          a[i] = i * i;
+          s = s + a[i];
+          i = i + 1;
+        }
+        i = 10;
+        while (i >= 0) {
+          int t = i * 2;
+          s = s * 3 + t;
+          i = i - 3;
+        }
+        putint(i); putch(32);
+        i = 5;
+        while (i < 5) {
+          s = s + 1000;
+          i = i + 1;
+        }
+        i = 0;
+        while (20 > i) {
+          a[i] = s + i;
+          i = i + 7;
+        }
+        putint(i); putch(32);
+        i = 3;
+        while (i <= 3) {
+          s = s - a[i] / (i - 2);
+          i = i + 1;
+        }
+        putint(s);
+        return i;
+      }
+      """;
+    assertSameEverywhere(code, "");
+    var unrolled = assertSame(code, "", unroll(new LoopUnroller.Options(1, 16, 1024)));
+    assertEquals(0, loops(unrolled, "main"));
+  }
+
+  @Test public void tripCountsFoundByPropagation() {
+    var code = """
+      int a[8];
+      int main() {
+        int n = 6, step = 2, from = n - 5;
+        int s = 0, i = from;
+        while (i < n) {
+          a[i] = s;
+          s = s + i * step;
+          i = i + step;
+        }
+        putint(s); putch(32); putint(i); putch(32);
+        int k = getint();
+        int j = 0;
+        while (j < k) {
+          s = s + j;
+          j = j + 1;
+        }
+        putint(s); putch(32);
+        return a[3];
+      }
+      """;
+    var pipeline = Pipeline.<ImmutableSeq<Proclaim>>identity()
+      .then(ConstantPropagation.Pass, Unit.unit())
+      .then(LoopUnroller.Pass, LoopUnroller.Options.DEFAULT)
+      .then(Simplify.Pass, Unit.unit())
+      .then(DeadCode.Pass, Unit.unit());
+    for (var input : ImmutableSeq.of("0", "1", "9")) assertSame(code, input, pipeline);
+    // the loop whose bounds and step are only known after propagation is gone, the other
+    // runs four iterations at a time and the rest as it was
+    assertEquals(2, loops(assertSame(code, "9", pipeline), "main"));
+  }
+
+  @Test public void tripCountsNearWrapAround() {
+    assertSameEverywhere("""
+      int main() {
+        int s = 0;
+        int i = 2147483640;
+        while (i < 2147483647) {
+          s = s + i;
+          i = i + 1;
+        }
+        putint(i); putch(32);
+        i = 2147483600;
+        while (i <= 2147483631) {
+          s = s + 1;
+          i = i + 16;
+        }
+        putint(i); putch(32);
+        i = -2147483640;
+        while (i > -2147483647 - 1) {
+          s = s - 1;
+          i = i - 2;
+        }
+        putint(i); putch(32);
+        i = -2147483647 - 1;
+        while (i <= -2147483647 + 5) {
+          s = s * 3 + i;
+          i = i + 3;
+        }
+        putint(i); putch(32);
+        putint(s);
+        return 0;
+      }
+      """, "");
+  }
+
+  @Test public void unknownTripCounts() {
+    var code = """
+      int up(int i, int n, int step) {
+        int s = 0, c = 0;
+        if (step == 1) while (i < n) {
+          s = s * 7 + i;
+          c = c + 1;
+          i = i + 1;
+        }
+        if (step == 3) while (i < n) {
+          s = s * 7 + i;
+          c = c + 1;
+          i = i + 3;
+        }
+        putint(c); putch(32);
+        return s;
+      }
+      int down(int i, int n) {
+        int s = 0, c = 0;
+        while (i >= n) {
+          s = s * 5 + i;
+          c = c + 1;
+          i = i - 2;
+        }
+        putint(c); putch(32);
+        return s;
+      }
+      int main() {
+        int k = getint();
+        while (k > 0) {
+          int i = getint();
+          int n = getint();
+          putint(up(i, n, 1)); putch(32);
+          putint(up(i, n, 3)); putch(32);
+          // down to the minimum, it would wrap around and never stop
+          if (i - n < 1000 && n - i < 1000 && i > -2147483647) {
+            putint(down(n, i));
+            putch(32);
+          }
+          putch(10);
+          k = k - 1;
+        }
+        return 0;
+      }
+      """;
+    assertSameEverywhere(code, """
+      11
+      0 0
+      0 1
+      0 4
+      0 5
+      0 17
+      5 -3
+      2147483638 2147483647
+      2147483631 2147483646
+      -2147483648 -2147483640
+      -2147483647 -2147483648
+      -2147483645 -2147483643
+      """);
+  }
+}
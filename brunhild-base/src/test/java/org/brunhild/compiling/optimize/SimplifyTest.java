@@ -0,0 +1,93 @@
+package org.brunhild.compiling.optimize;
+
+import kala.collection.immutable.ImmutableSeq;
+import kala.tuple.Unit;
+import org.brunhild.compiling.Pipeline;
+import org.brunhild.core.Proclaim;
+import org.brunhild.tyck.Gamma;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.brunhild.test.Differential.assertSame;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class SimplifyTest {
+  /** Literals written as expressions, {@link TreeFold} makes them literals first. */
+  private static final @NotNull ImmutableSeq<String> DIVISORS = ImmutableSeq.of(
+    "1", "-1", "2", "-2", "3", "-3", "4", "5", "6", "7", "-7", "8", "10", "25", "125", "641",
+    "1024", "-1024", "1073741824", "-1073741824", "2147483647", "-2147483647", "(-2147483647 - 1)");
+  private static final @NotNull String DIVIDENDS =
+    "16 0 1 -1 2 -2 3 -3 7 -7 100 -100 2147483647 -2147483647 -2147483648 1073741824 -1073741825";
+
+  private static final @NotNull Pipeline<ImmutableSeq<Proclaim>, ImmutableSeq<Proclaim>> SIMPLIFY =
+    Pipeline.<ImmutableSeq<Proclaim>>identity()
+      .then(TreeFold.Pass, new Gamma.ConstGamma())
+      .then(Simplify.Pass, Unit.unit());
+
+  /** @return a program printing {@code x op c} for every literal {@code c} and every {@code x} read */
+  private static @NotNull String table(@NotNull String op, @NotNull ImmutableSeq<String> constants) {
+    var code = new StringBuilder("int main() {\n  int n = getint();\n  while (n > 0) {\n    int x = getint();\n");
+    constants.forEach(c -> code.append("    putint(x ").append(op).append(' ').append(c).append("); putch(32);\n"));
+    return code.append("    putch(10);\n    n = n - 1;\n  }\n  return 0;\n}\n").toString();
+  }
+
+  @Test public void divisionByConstants() {
+    assertSame(table("/", DIVISORS), DIVIDENDS, SIMPLIFY);
+    assertSame(table("%", DIVISORS), DIVIDENDS, SIMPLIFY);
+  }
+
+  @Test public void multiplicationByConstants() {
+    assertSame(table("*", DIVISORS.appendedAll(ImmutableSeq.of("0", "9", "-9", "15", "17", "-15", "1536"))),
+      DIVIDENDS, SIMPLIFY);
+  }
+
+  @Test public void magicNumbersDivide() {
+    var random = new Random(42);
+    var dividends = new int[1000];
+    for (int i = 0; i < dividends.length; i++) dividends[i] = random.nextInt();
+    dividends[0] = Integer.MIN_VALUE;
+    dividends[1] = Integer.MAX_VALUE;
+    dividends[2] = -1;
+    dividends[3] = 0;
+    for (var d : new int[]{3, 5, 6, 7, 9, 10, 11, 12, 25, 100, 641, 1000, 65537, 0x40000001, 0x7ffffffe, Integer.MAX_VALUE}) {
+      var magic = Magic.of(d);
+      for (var n : dividends) {
+        int high = (int) ((long) n * magic.multiplier() >> 32);
+        if (magic.multiplier() < 0) high += n;
+        assertEquals(n / d, (high >> magic.shift()) + (n >>> 31), n + " / " + d);
+      }
+    }
+  }
+
+  @Test public void identities() {
+    assertSame("""
+      int f(int x) {
+        putint(x);
+        return x;
+      }
+      int main() {
+        int a = getint();
+        int b = getint();
+        float x = getint();
+        putint(a - a + b); putch(10);
+        putint(+a + 0 - -b * 1); putch(10);
+        if (a == a) putch(68);
+        if (a < a) putch(69);
+        if (a >= a) putch(70);
+        if (!!a) putch(65);
+        if (!(a - b)) putch(66);
+        if (!a == 0 || b != 0) putch(67);
+        putint(f(a) - f(a)); putch(10);
+        putint(f(b) * 0); putch(10);
+        putint(f(b) % 1); putch(10);
+        putfloat(x / 4.0); putch(32);
+        putfloat(x / 0.5); putch(32);
+        putfloat(x / 3.0); putch(32);
+        putfloat(x / -0.25);
+        return 0;
+      }
+      """, "-6 9 7", SIMPLIFY);
+  }
+}
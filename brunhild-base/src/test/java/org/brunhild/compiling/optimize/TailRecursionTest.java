@@ -0,0 +1,160 @@
+package org.brunhild.compiling.optimize;
+
+import kala.collection.immutable.ImmutableSeq;
+import kala.tuple.Unit;
+import org.brunhild.compiling.Pipeline;
+import org.brunhild.core.Proclaim;
+import org.brunhild.core.Term;
+import org.brunhild.core.ops.ProclaimOps;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.junit.jupiter.api.Test;
+
+import static org.brunhild.test.Differential.assertSame;
+import static org.brunhild.test.Differential.calls;
+import static org.brunhild.test.Differential.function;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class TailRecursionTest {
+  private static final @NotNull Pipeline<ImmutableSeq<Proclaim>, ImmutableSeq<Proclaim>> TAIL =
+    Pipeline.<ImmutableSeq<Proclaim>>identity().then(TailRecursion.Pass, Unit.unit());
+
+  private static int selfCalls(@NotNull ImmutableSeq<Proclaim> program, @NotNull String fn) {
+    var calls = new int[1];
+    new ProclaimOps<Unit>() {
+      @Override public @Nullable Term pre(@NotNull Term term, Unit unit) {
+        if (term instanceof Term.FnCall call && call.fn().core.ref.name().equals(fn)) calls[0]++;
+        return null;
+      }
+    }.traverse(function(program, fn).body, Unit.unit());
+    return calls[0];
+  }
+
+  @Test public void tailCallsAndAccumulators() {
+    var code = """
+      int gcd(int a, int b) {
+        if (b == 0) return a;
+        return gcd(b, a % b);
+      }
+      int sum(int n) {
+        if (n == 0) return 0;
+        return n + sum(n - 1);
+      }
+      int fact(int n) {
+        if (n <= 1) return 1;
+        return fact(n - 1) * n;
+      }
+      int pow(int b, int e) {
+        if (e == 0) return 1;
+        if (e % 2) return b * pow(b, e - 1);
+        return pow(b * b, e / 2);
+      }
+      void count(int from, int to) {
+        if (from > to) return;
+        putint(from); putch(32);
+        count(from + 1, to);
+      }
+      int main() {
+        int n = getint();
+        putint(gcd(1071, 462) + gcd(n, 0) + gcd(0, n)); putch(10);
+        putint(sum(n)); putch(32); putint(fact(n)); putch(32); putint(pow(3, n)); putch(10);
+        count(n - 3, n);
+        putch(10);
+        putint(sum(100000));
+        return fact(5);
+      }
+      """;
+    for (var input : ImmutableSeq.of("0", "1", "13", "40"))
+      assertSame(code, input, TAIL);
+    var turned = assertSame(code, "5", TAIL);
+    for (var fn : ImmutableSeq.of("gcd", "sum", "fact", "pow", "count"))
+      assertEquals(0, selfCalls(turned, fn), fn);
+  }
+
+  @Test public void loopsTheCallersInline() {
+    var code = """
+      int sum(int n, int acc) {
+        if (n == 0) return acc;
+        return sum(n - 1, acc + n);
+      }
+      int pow(int b, int e, int acc) {
+        if (e <= 0) return acc;
+        return pow(b, e - 1, acc * b);
+      }
+      void count(int from, int to) {
+        if (from > to) return;
+        putint(from); putch(32);
+        count(from + 1, to);
+      }
+      int main() {
+        int n = getint();
+        putint(sum(4, 0)); putch(32);
+        putint(sum(n, 1)); putch(32);
+        putint(pow(2, 10, 1)); putch(32);
+        putint(pow(n, 3, 1)); putch(10);
+        count(1, 3);
+        count(n, n + 2);
+        return 0;
+      }
+      """;
+    var pipeline = TAIL
+      .then(Inliner.Pass, Inliner.Thresholds.DEFAULT)
+      .then(ConstantPropagation.Pass, Unit.unit())
+      .then(LoopUnroller.Pass, LoopUnroller.Options.DEFAULT)
+      .then(DeadCode.Pass, Unit.unit());
+    for (var input : ImmutableSeq.of("0", "1", "7", "30")) assertSame(code, input, pipeline);
+    // the loops the calls became are inlined, so main calls none of them any more
+    var optimized = assertSame(code, "7", pipeline);
+    for (var fn : ImmutableSeq.of("sum", "pow", "count")) {
+      assertEquals(0, selfCalls(optimized, fn), fn);
+      assertEquals(0, calls(optimized, "main", fn), fn);
+    }
+  }
+
+  @Test public void callsThatAreNotTurned() {
+    var code = """
+      int g;
+      int a[4] = {1, 2, 3, 4};
+      int global(int n) {
+        if (n == 0) return 0;
+        return g + global(n - 1);
+      }
+      int bump(int n) {
+        g = g + n;
+        return n;
+      }
+      int order(int n) {
+        if (n == 0) return g;
+        return bump(n) + order(n - 1);
+      }
+      int looped(int n) {
+        while (n > 0) {
+          if (n % 5 == 0) return looped(n - 1) + 1;
+          n = n - 1;
+        }
+        return 0;
+      }
+      int shifted(int xs[], int n) {
+        if (n == 0) return xs[0];
+        return shifted(xs, n - 1) + xs[n];
+      }
+      int fib(int n) {
+        if (n < 2) return n;
+        return fib(n - 1) + fib(n - 2);
+      }
+      int main() {
+        int n = getint();
+        g = 3;
+        putint(global(n)); putch(32);
+        putint(order(n)); putch(32);
+        putint(looped(n * 4)); putch(32);
+        putint(shifted(a, 3)); putch(32);
+        putint(fib(n));
+        return 0;
+      }
+      """;
+    var turned = assertSame(code, "6", TAIL);
+    assertEquals(2, selfCalls(turned, "fib"));
+    assertEquals(1, selfCalls(turned, "looped"));
+  }
+}
@@ -0,0 +1,131 @@
+package org.brunhild.compiling.optimize;
+
+import kala.collection.immutable.ImmutableSeq;
+import org.brunhild.compiling.Pipeline;
+import org.brunhild.compiling.Profiler;
+import org.brunhild.compiling.ir.Lowering;
+import org.brunhild.compiling.ir.Module;
+import org.brunhild.core.Proclaim;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+
+import static org.brunhild.test.Differential.assertSameLowered;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class ValueNumberingTest {
+  private static @NotNull Pipeline<ImmutableSeq<Proclaim>, Module> number(@NotNull Profiler profiler) {
+    return Pipeline.<ImmutableSeq<Proclaim>>identity()
+      .then(Lowering.Pass, "test")
+      .then(ValueNumbering.Pass, profiler);
+  }
+
+  /** @return the number of instructions replaced */
+  private static long assertSameNumbered(@NotNull String code, @NotNull String input) {
+    var profiler = Profiler.create();
+    assertSameLowered(code, input, number(profiler));
+    return profiler.counter(ValueNumbering.REDUNDANT);
+  }
+
+  @Test public void redundantComputations() {
+    var code = """
+      int g[2] = {3, 4};
+      int main() {
+        int n = getint();
+        int a = n * 7 + g[1];
+        int b = 7 * n + g[1];
+        if (n > 0) a = a + (n * 7 + g[1]);
+        putint(a); putch(32); putint(b);
+        return a - b;
+      }
+      """;
+    for (var input : ImmutableSeq.of("-2", "5")) assertSameNumbered(code, input);
+    // b, and what is added to a, are what a is first
+    assertEquals(8, assertSameNumbered(code, "1"));
+  }
+
+  @Test public void storesThroughParametersToGlobals() {
+    var code = """
+      int g[4] = {1, 2, 3, 4};
+      int h[4];
+      int bump(int a[], int i) {
+        int x = g[i];
+        a[i] = x + 10;
+        int y = g[i];
+        a[0] = 7;
+        h[0] = 8;
+        return x * 100 + y + a[0] + g[0];
+      }
+      int twice(int a[], int b[]) {
+        a[1] = 1;
+        b[1] = 2;
+        return a[1];
+      }
+      int main() {
+        int i = getint();
+        int l[4];
+        putint(bump(g, i)); putch(32);
+        putint(bump(h, i)); putch(32);
+        putint(bump(l, i)); putch(32);
+        putint(twice(g, g)); putint(twice(g, h));
+        return g[i];
+      }
+      """;
+    for (var input : ImmutableSeq.of("0", "1", "3")) assertSameNumbered(code, input);
+  }
+
+  @Test public void callsBetweenLoads() {
+    var code = """
+      int g[2];
+      int s;
+      void set(int v) {
+        g[1] = v;
+        s = v;
+      }
+      void fill(int a[], int v) {
+        a[0] = v;
+      }
+      int peek() {
+        return g[0];
+      }
+      int main() {
+        int v = getint();
+        int x = g[1] + s;
+        set(v);
+        int y = g[1] + s;
+        int l[2] = {5};
+        int before = l[0];
+        fill(l, v);
+        int after = l[0];
+        int p = peek() + peek();
+        putint(x); putch(32); putint(y); putch(32);
+        putint(before); putch(32); putint(after); putch(32); putint(p);
+        return 0;
+      }
+      """;
+    for (var input : ImmutableSeq.of("0", "6")) assertSameNumbered(code, input);
+  }
+
+  @Test public void escapedArrays() {
+    var code = """
+      void swap(int a[], int i, int j) {
+        int t = a[i];
+        a[i] = a[j];
+        a[j] = t;
+      }
+      int main() {
+        int l[3] = {1, 2, 3};
+        int m[3] = {4, 5, 6};
+        int x = l[0] + m[0];
+        swap(l, 0, 2);
+        int y = l[0] + m[0];
+        m[0] = 9;
+        int z = l[0] + m[0];
+        getarray(m);
+        putint(x); putch(32); putint(y); putch(32); putint(z); putch(32);
+        putint(m[0] + l[0]);
+        return 0;
+      }
+      """;
+    for (var input : ImmutableSeq.of("1 20", "0")) assertSameNumbered(code, input);
+  }
+}
@@ -0,0 +1,96 @@
+package org.brunhild.core.ops;
+
+import kala.collection.immutable.ImmutableSeq;
+import org.brunhild.compiling.Pipeline;
+import org.brunhild.compiling.optimize.TreeFold;
+import org.brunhild.core.Proclaim;
+import org.brunhild.tyck.Gamma;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+
+import static org.brunhild.test.Differential.assertSame;
+
+public class ChainTest {
+  private static @NotNull Pipeline<ImmutableSeq<Proclaim>, ImmutableSeq<Proclaim>> fold(@NotNull TreeFold fold) {
+    return Pipeline.<ImmutableSeq<Proclaim>>identity().then(fold, new Gamma.ConstGamma());
+  }
+
+  @Test public void sumsAndProductsWrapAround() {
+    var code = """
+      int main() {
+        int a = getint();
+        int b = getint();
+        putint(1 + a - 2 + b + 3 - a + 2147483647); putch(10);
+        putint(a - (b - (4 - a)) - -5 + 0); putch(10);
+        putint(a * 3 * b * -2 * 2147483647 * 1); putch(10);
+        putint(2 * (a + 1) * 0 + b * 1); putch(10);
+        return (a - b + 7) % 256;
+      }
+      """;
+    for (var input : ImmutableSeq.of("5 -9", "0 0", "2147483647 -2147483648", "-2147483648 1")) {
+      assertSame(code, input, fold(TreeFold.Pass));
+      assertSame(code, input, fold(TreeFold.FastMath));
+    }
+  }
+
+  @Test public void callsKeepTheirOrder() {
+    assertSame("""
+      int n;
+      int f(int x) {
+        n = n * 10 + x;
+        return x;
+      }
+      int main() {
+        int a = getint();
+        putint(f(1) + a + f(2) - f(3) + 4 - a); putch(10);
+        putint(f(4) * 2 * f(5) * a); putch(10);
+        putint(n);
+        return 0;
+      }
+      """, "7", fold(TreeFold.Pass));
+  }
+
+  @Test public void logicalChainsShortCircuit() {
+    assertSame("""
+      int n;
+      int f(int x) {
+        n = n * 10 + x;
+        return x;
+      }
+      int main() {
+        int a = getint();
+        int b = getint();
+        if (a && 0 || b) putch(65);
+        if (2 && a || 0) putch(66);
+        if (0 && f(5)) putch(67);
+        if (1 || f(6)) putch(68);
+        if (a || f(7) && 1) putch(69);
+        if (1 && f(8) && -3 && b) putch(70);
+        if (!a && b != 0 || 0) putch(71);
+        putch(10);
+        putint(n);
+        return 0;
+      }
+      """, "0 3", fold(TreeFold.Pass));
+  }
+
+  @Test public void floatsAreNotReassociated() {
+    assertSame("""
+      int main() {
+        float x = 100000000.0;
+        float y = getint();
+        putfloat(x + 1.0 - x); putch(10);
+        putfloat(0.1 + y + 0.2 - 0.3); putch(10);
+        putfloat(y * 0.1 * 10.0);
+        return 0;
+      }
+      """, "3", fold(TreeFold.Pass));
+  }
+
+  @Test public void longChainsFold() {
+    var chain = new StringBuilder("a");
+    for (int i = 0; i < 5000; i++) chain.append(i % 3 == 0 ? " - " : " + ").append(i % 7 == 0 ? "b" : String.valueOf(i));
+    assertSame("int main() {\n  int a = getint();\n  int b = getint();\n  putint(" + chain + ");\n  return 0;\n}\n",
+      "11 -3", fold(TreeFold.Pass));
+  }
+}
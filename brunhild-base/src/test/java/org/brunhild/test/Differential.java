@@ -0,0 +1,172 @@
+package org.brunhild.test;
+
+import kala.collection.immutable.ImmutableSeq;
+import kala.control.Option;
+import kala.tuple.Unit;
+import org.brunhild.compiling.Pass;
+import org.brunhild.compiling.Pipeline;
+import org.brunhild.compiling.generate.Generator;
+import org.brunhild.compiling.interpret.Interpreter;
+import org.brunhild.compiling.interpret.PrimRuntime;
+import org.brunhild.compiling.ir.Module;
+import org.brunhild.concrete.resolve.context.EmptyContext;
+import org.brunhild.core.Def;
+import org.brunhild.core.Proclaim;
+import org.brunhild.core.Term;
+import org.brunhild.core.ops.ProclaimOps;
+import org.brunhild.error.Problem;
+import org.brunhild.error.Reporter;
+import org.brunhild.error.SourceFile;
+import org.brunhild.parser.BrunhildParserImpl;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.function.ToIntFunction;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.fail;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Differential testing of passes: a program is checked twice, since passes rewrite it in
+ * place, and what the tree interpreter does with it as checked is what both interpreters
+ * have to do with it optimized, its output and exit code alike.
+ */
+public final class Differential {
+  public static final @NotNull Reporter REPORTER = problem -> {
+    if (problem.severity() == Problem.Severity.ERROR) fail(problem.describe());
+  };
+
+  private Differential() {}
+
+  /** @return the program parsed, resolved and type checked, with the runtime library in scope */
+  public static @NotNull ImmutableSeq<Proclaim> check(@NotNull String code) {
+    var source = new SourceFile("Test.sy", code, Option.none());
+    var context = new EmptyContext(source, REPORTER).derive("Main");
+    Def.PrimFactory.install(context);
+    return Pipeline.Begin
+      .then(Pass.Parsing, new BrunhildParserImpl(REPORTER))
+      .then(Pass.Resolving, context)
+      .then(Pass.Tycking, REPORTER)
+      .perform(source);
+  }
+
+  /** @return what the program prints, followed by its exit code */
+  public static @NotNull String run(@NotNull ImmutableSeq<Proclaim> program, @NotNull Interpreter.Engine engine, @NotNull String input) {
+    return run(input, runtime -> Interpreter.run(program, runtime, engine));
+  }
+
+  /** @return what the lowered program prints, followed by its exit code */
+  public static @NotNull String run(@NotNull Module module, @NotNull String input) {
+    return run(input, runtime -> IrInterpreter.run(module, runtime));
+  }
+
+  private static @NotNull String run(@NotNull String input, @NotNull ToIntFunction<PrimRuntime> main) {
+    var out = new ByteArrayOutputStream();
+    var runtime = new PrimRuntime(
+      new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8)),
+      new PrintStream(out, false, StandardCharsets.UTF_8),
+      new PrintStream(OutputStream.nullOutputStream()));
+    var exit = main.applyAsInt(runtime);
+    return out.toString(StandardCharsets.UTF_8) + "\nexit " + exit;
+  }
+
+  /**
+   * Asserts the program does the same after {@code passes} as before them.
+   *
+   * @return the program optimized, for what it became to be checked as well
+   */
+  public static @NotNull ImmutableSeq<Proclaim> assertSame(
+    @NotNull String code, @NotNull String input,
+    @NotNull Pipeline<ImmutableSeq<Proclaim>, ImmutableSeq<Proclaim>> passes
+  ) {
+    var expected = run(check(code), Interpreter.Engine.Tree, input);
+    var optimized = passes.perform(check(code));
+    assertEquals(expected, run(optimized, Interpreter.Engine.Tree, input), "tree interpreter");
+    assertEquals(expected, run(optimized, Interpreter.Engine.Bytecode, input), "bytecode interpreter");
+    return optimized;
+  }
+
+  /**
+   * Asserts the program does the same lowered by {@code lowering}, and whatever passes on
+   * the IR follow it, as the tree interpreter does with it as checked.
+   *
+   * @return the module, for what it became to be checked as well
+   */
+  public static @NotNull Module assertSameLowered(
+    @NotNull String code, @NotNull String input,
+    @NotNull Pipeline<ImmutableSeq<Proclaim>, Module> lowering
+  ) {
+    var expected = run(check(code), Interpreter.Engine.Tree, input);
+    var module = lowering.perform(check(code));
+    assertEquals(expected, run(module, input), "IR interpreter");
+    return module;
+  }
+
+  /**
+   * Asserts the assembly generated from the lowered program does what the tree interpreter
+   * does with it, as run by the command in the environment variable {@code runner}. The
+   * command is given the path of the assembly and the input on its standard input, and is to
+   * print what the program prints and exit with its exit code, say by assembling it with the
+   * runtime library and running it under an emulator. Skipped if the variable is not set.
+   */
+  public static void assertSameNative(
+    @NotNull String code, @NotNull String input,
+    @NotNull Pipeline<ImmutableSeq<Proclaim>, Module> lowering,
+    @NotNull Generator<Module, Writer, Writer> generator, @NotNull String runner
+  ) {
+    var command = System.getenv(runner);
+    assumeTrue(command != null && !command.isBlank(), runner + " is not set");
+    var expected = run(check(code), Interpreter.Engine.Tree, input);
+    var assembly = generator.perform(lowering.perform(check(code)), new StringWriter()).toString();
+    try {
+      var file = Files.createTempFile("brunhild", ".s");
+      try {
+        Files.writeString(file, assembly);
+        var process = new ProcessBuilder("sh", "-c", command + " \"$1\"", "sh", file.toString())
+          .redirectError(ProcessBuilder.Redirect.INHERIT)
+          .start();
+        try (var stdin = process.getOutputStream()) {
+          stdin.write(input.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException ignored) {
+          // the program need not read all of its input
+        }
+        var out = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+        assertEquals(expected, out + "\nexit " + process.waitFor(), runner);
+      } finally {
+        Files.deleteIfExists(file);
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(e);
+    }
+  }
+
+  public static @NotNull Def.FnDef function(@NotNull ImmutableSeq<Proclaim> program, @NotNull String name) {
+    return program.filterIsInstance(Def.FnDef.class).find(fn -> fn.ref.name().equals(name))
+      .getOrThrow(() -> new AssertionError("no function " + name));
+  }
+
+  /** @return how many calls to {@code callee} the body of {@code fn} makes */
+  public static int calls(@NotNull ImmutableSeq<Proclaim> program, @NotNull String fn, @NotNull String callee) {
+    var calls = new int[1];
+    new ProclaimOps<Unit>() {
+      @Override public @Nullable Term pre(@NotNull Term term, Unit unit) {
+        if (term instanceof Term.FnCall call && call.fn().core.ref.name().equals(callee)) calls[0]++;
+        return null;
+      }
+    }.traverse(function(program, fn).body, Unit.unit());
+    return calls[0];
+  }
+}
@@ -0,0 +1,210 @@
+package org.brunhild.test;
+
+import kala.collection.immutable.ImmutableSeq;
+import org.brunhild.compiling.interpret.ArrayRef;
+import org.brunhild.compiling.interpret.Interpreter;
+import org.brunhild.compiling.interpret.PrimRuntime;
+import org.brunhild.compiling.ir.Function;
+import org.brunhild.compiling.ir.Module;
+import org.brunhild.compiling.ir.Opcode;
+import org.brunhild.compiling.ir.ValueType;
+import org.brunhild.core.Def;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+
+/**
+ * Runs a lowered module the way the native code generated from it would, for passes on
+ * the IR to be tested without a toolchain. Memory is a flat array of 4-byte words, which
+ * pointers index, globals first and the frames of the calls after them. Reading or writing
+ * outside of what is allocated traps, so does dividing by zero, so an instruction moved
+ * to where it is executed when it was not before shows.
+ */
+public final class IrInterpreter {
+  private final @NotNull Module module;
+  private final @NotNull PrimRuntime runtime;
+  private final int @NotNull [] globals;
+  private int[] memory = new int[1024];
+  private int top = 0;
+
+  private IrInterpreter(@NotNull Module module, @NotNull PrimRuntime runtime) {
+    this.module = module;
+    this.runtime = runtime;
+    globals = new int[module.globals.size()];
+    for (int i = 0; i < globals.length; i++) {
+      var global = module.globals.get(i);
+      globals[i] = allocate(global.size());
+      if (global.init() != null) System.arraycopy(global.init(), 0, memory, globals[i], global.init().length);
+    }
+  }
+
+  /** @return the exit code of {@code main}, truncated to a byte like {@link Interpreter#run} does */
+  public static int run(@NotNull Module module, @NotNull PrimRuntime runtime) {
+    var exit = new int[1];
+    var failure = new Throwable[1];
+    var thread = new Thread(null, () -> {
+      try {
+        var interpreter = new IrInterpreter(module, runtime);
+        exit[0] = interpreter.call(module.indexOf("main"), new int[0]);
+      } catch (Throwable e) {
+        failure[0] = e;
+      } finally {
+        runtime.exit();
+      }
+    }, "brunhild-ir-interpreter", Interpreter.STACK_SIZE);
+    thread.start();
+    try {
+      thread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(e);
+    }
+    if (failure[0] instanceof RuntimeException e) throw e;
+    if (failure[0] instanceof Error e) throw e;
+    return exit[0] & 0xFF;
+  }
+
+  private int allocate(int words) {
+    var ptr = top;
+    top += words;
+    if (top > memory.length) memory = Arrays.copyOf(memory, Math.max(top, memory.length * 2));
+    Arrays.fill(memory, ptr, top, 0);
+    return ptr;
+  }
+
+  private int address(int ptr) {
+    if (ptr < 0 || ptr >= top) throw new IllegalStateException("out of bounds: " + ptr);
+    return ptr;
+  }
+
+  private int call(int index, int @NotNull [] args) {
+    var fn = module.functions.get(index);
+    var frame = top;
+    var values = new int[fn.valueCount()];
+    var pred = -1;
+    var block = Function.ENTRY;
+    try {
+      while (true) {
+        var instructions = fn.instructions(block);
+        // the phis of a block read what flows in from the predecessor all at once
+        var phis = 0;
+        while (phis < instructions.size() && fn.op(instructions.get(phis)) == Opcode.Phi) phis++;
+        var incoming = new int[phis];
+        for (int i = 0; i < phis; i++) incoming[i] = value(fn, values, fn.phiValueFrom(instructions.get(i), pred));
+        for (int i = 0; i < phis; i++) values[instructions.get(i)] = incoming[i];
+        int next = -1;
+        for (int i = phis; i < instructions.size() && next < 0; i++) {
+          var value = instructions.get(i);
+          switch (fn.op(value)) {
+            case Jump -> next = fn.operand(value, 0);
+            case Branch -> next = fn.operand(value, value(fn, values, fn.operand(value, 0)) != 0 ? 1 : 2);
+            case Return -> {
+              return fn.arity(value) == 0 ? 0 : value(fn, values, fn.operand(value, 0));
+            }
+            default -> values[value] = execute(fn, values, value, args);
+          }
+        }
+        if (next < 0) throw new IllegalStateException("block without a terminator: bb" + block);
+        pred = block;
+        block = next;
+      }
+    } finally {
+      top = frame;
+    }
+  }
+
+  private int value(@NotNull Function fn, int @NotNull [] values, int value) {
+    if (value < 0) throw new IllegalStateException("no incoming value");
+    return switch (fn.op(value)) {
+      case IConst, FConst -> fn.imm(value);
+      case GlobalAddr -> globals[fn.imm(value)];
+      case Undef -> 0;
+      default -> values[value];
+    };
+  }
+
+  private int execute(@NotNull Function fn, int @NotNull [] values, int value, int @NotNull [] args) {
+    var operands = fn.operands(value);
+    for (int i = 0; i < operands.length; i++) operands[i] = value(fn, values, operands[i]);
+    var a = operands.length > 0 ? operands[0] : 0;
+    var b = operands.length > 1 ? operands[1] : 0;
+    var fa = Float.intBitsToFloat(a);
+    var fb = Float.intBitsToFloat(b);
+    return switch (fn.op(value)) {
+      case Param -> args[fn.imm(value)];
+      case Add -> a + b;
+      case Sub -> a - b;
+      case Mul -> a * b;
+      case Div -> a / b;
+      case Rem -> a % b;
+      case MulHi -> (int) ((long) a * b >> 32);
+      case Shl -> a << b;
+      case Sar -> a >> b;
+      case Shr -> a >>> b;
+      case Neg -> -a;
+      case FAdd -> bits(fa + fb);
+      case FSub -> bits(fa - fb);
+      case FMul -> bits(fa * fb);
+      case FDiv -> bits(fa / fb);
+      case FNeg -> bits(-fa);
+      case Eq -> a == b ? 1 : 0;
+      case Ne -> a != b ? 1 : 0;
+      case Lt -> a < b ? 1 : 0;
+      case Le -> a <= b ? 1 : 0;
+      case Gt -> a > b ? 1 : 0;
+      case Ge -> a >= b ? 1 : 0;
+      case FEq -> fa == fb ? 1 : 0;
+      case FNe -> fa != fb ? 1 : 0;
+      case FLt -> fa < fb ? 1 : 0;
+      case FLe -> fa <= fb ? 1 : 0;
+      case FGt -> fa > fb ? 1 : 0;
+      case FGe -> fa >= fb ? 1 : 0;
+      case IToF -> bits((float) a);
+      case FToI -> (int) fa;
+      case Alloca -> allocate(fn.imm(value));
+      case Load -> memory[address(a)];
+      case Store -> {
+        memory[address(a)] = b;
+        yield 0;
+      }
+      case Gep -> a + b * fn.imm(value);
+      case MemZero -> {
+        address(a + fn.imm(value) - 1);
+        Arrays.fill(memory, address(a), a + fn.imm(value), 0);
+        yield 0;
+      }
+      case Call -> call(fn.imm(value), operands);
+      case CallPrim -> prim(Def.PrimFactory.values()[fn.imm(value)], operands);
+      default -> throw new IllegalStateException("not an instruction: " + fn.op(value));
+    };
+  }
+
+  private static int bits(float f) {
+    return Float.floatToRawIntBits(f);
+  }
+
+  /** Arrays of ints are passed as views of the memory, those of floats are copied in and out. */
+  private int prim(@NotNull Def.PrimFactory prim, int @NotNull [] args) {
+    var params = prim.prim.telescope();
+    var boxed = new Object[args.length];
+    var floats = new float[args.length][];
+    for (int i = 0; i < args.length; i++) {
+      var type = ValueType.of(params.get(i).type());
+      if (type == ValueType.I32) boxed[i] = args[i];
+      else if (type == ValueType.F32) boxed[i] = Float.intBitsToFloat(args[i]);
+      else if (prim == Def.PrimFactory.GetFloatArray || prim == Def.PrimFactory.PutFloatArray) {
+        floats[i] = new float[top - address(args[i])];
+        for (int j = 0; j < floats[i].length; j++) floats[i][j] = Float.intBitsToFloat(memory[args[i] + j]);
+        boxed[i] = new ArrayRef(null, floats[i], 0);
+      } else boxed[i] = new ArrayRef(memory, null, address(args[i]));
+    }
+    var result = runtime.invoke(prim, ImmutableSeq.from(boxed));
+    for (int i = 0; i < args.length; i++)
+      if (floats[i] != null) for (int j = 0; j < floats[i].length; j++) memory[args[i] + j] = bits(floats[i][j]);
+    return switch (result) {
+      case Integer integer -> integer;
+      case Float f -> bits(f);
+      case null, default -> 0;
+    };
+  }
+}
@@ -0,0 +1,10 @@
+plugins { application }
+application.mainClass.set("org.openjdk.jmh.Main")
+
+dependencies {
+  val deps: java.util.Properties by rootProject.ext
+  implementation(project(":brunhild-base"))
+  implementation(project(":brunhild-cli"))
+  implementation("org.openjdk.jmh", "jmh-core", version = deps.getProperty("version.jmh"))
+  annotationProcessor("org.openjdk.jmh", "jmh-generator-annprocess", version = deps.getProperty("version.jmh"))
+}
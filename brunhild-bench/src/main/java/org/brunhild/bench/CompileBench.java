@@ -0,0 +1,47 @@
+package org.brunhild.bench;
+
+import kala.control.Option;
+import org.brunhild.cli.CompilerFlags;
+import org.brunhild.cli.SingleFileCompiler;
+import org.brunhild.compiling.optimize.Inliner;
+import org.brunhild.compiling.optimize.LoopUnroller;
+import org.brunhild.concrete.resolve.context.EmptyContext;
+import org.brunhild.error.SourceFile;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/** The whole compiler as the command line runs it, writing to a scratch file. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+public class CompileBench {
+  @Param public Corpus corpus;
+  @Param({"Core", "Riscv64"}) public CompilerFlags.Emit emit;
+  private SourceFile source;
+  private SingleFileCompiler compiler;
+  private CompilerFlags flags;
+  private Path output;
+
+  @Setup(Level.Trial) public void setup() throws IOException {
+    source = corpus.source();
+    compiler = new SingleFileCompiler(Corpus.reporter());
+    output = Files.createTempFile("brunhild-bench", ".out");
+    flags = new CompilerFlags(false, Option.none(), emit, Option.some(output), false, Option.none(), false, Inliner.Thresholds.DEFAULT,
+      LoopUnroller.Options.DEFAULT);
+  }
+
+  @TearDown(Level.Trial) public void tearDown() throws IOException {
+    Files.deleteIfExists(output);
+  }
+
+  @Benchmark public int compile() throws IOException {
+    return compiler.compile(source, reporter -> new EmptyContext(source, reporter).derive("Main"), flags);
+  }
+}
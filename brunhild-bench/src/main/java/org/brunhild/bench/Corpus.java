@@ -0,0 +1,110 @@
+package org.brunhild.bench;
+
+import kala.control.Option;
+import org.brunhild.concrete.resolve.context.EmptyContext;
+import org.brunhild.concrete.resolve.context.ModuleContext;
+import org.brunhild.core.Def;
+import org.brunhild.error.Problem;
+import org.brunhild.error.Reporter;
+import org.brunhild.error.SourceFile;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Deterministic synthetic SysY programs of scaling size, so that the numbers only
+ * move when the compiler does. Every program is well-typed, a benchmark hitting an
+ * error path would measure the wrong thing, hence {@link #reporter()} throws.
+ */
+public enum Corpus {
+  /** about a thousand lines of loops, branches, array accesses and calls */
+  Lines1k {
+    @Override @NotNull String generate() {
+      return functions(1_000);
+    }
+  },
+  Lines10k {
+    @Override @NotNull String generate() {
+      return functions(10_000);
+    }
+  },
+  Lines100k {
+    @Override @NotNull String generate() {
+      return functions(100_000);
+    }
+  },
+  /** a single expression with parentheses nested {@link #NESTING} levels deep */
+  DeepNesting {
+    @Override @NotNull String generate() {
+      var builder = new StringBuilder("int main() {\n  int a = getint();\n  return ");
+      builder.append("(".repeat(NESTING)).append('a');
+      for (int i = 0; i < NESTING; i++) {
+        builder.append(switch (i % 4) {
+          case 0 -> " + ";
+          case 1 -> " * ";
+          case 2 -> " - ";
+          default -> " / ";
+        }).append(i % 9 + 1).append(')');
+      }
+      return builder.append(";\n}\n").toString();
+    }
+  },
+  /** a flat and a two-dimensional constant array with a few hundred thousand elements in total */
+  HugeConstArray {
+    @Override @NotNull String generate() {
+      var builder = new StringBuilder("const int T[100000] = {");
+      for (int i = 0; i < 100_000; i++) builder.append(i == 0 ? "" : ", ").append(i * 7 % 1000);
+      builder.append("};\nconst int M[300][300] = {");
+      for (int i = 0; i < 300; i++) {
+        builder.append(i == 0 ? "{" : ",\n  {");
+        for (int j = 0; j < 300; j++) builder.append(j == 0 ? "" : ", ").append((i * 31 + j) % 127);
+        builder.append('}');
+      }
+      return builder.append("};\nint main() {\n  return T[99] + M[2][3] + T[getint()];\n}\n").toString();
+    }
+  };
+
+  public static final int NESTING = 512;
+
+  abstract @NotNull String generate();
+
+  public @NotNull SourceFile source() {
+    return new SourceFile(name() + ".sy", generate(), Option.none());
+  }
+
+  /** A fresh module context with the runtime library in scope, like the compiler sets up. */
+  public static @NotNull ModuleContext context(@NotNull SourceFile source, @NotNull Reporter reporter) {
+    var context = new EmptyContext(source, reporter).derive("Main");
+    Def.PrimFactory.install(context);
+    return context;
+  }
+
+  public static @NotNull Reporter reporter() {
+    return problem -> {
+      if (problem.severity() == Problem.Severity.ERROR)
+        throw new IllegalStateException("corpus does not compile: " + problem.describe());
+    };
+  }
+
+  /** Chains of functions calling the previous one, until the program has {@code lines} lines. */
+  private static @NotNull String functions(int lines) {
+    var builder = new StringBuilder("int g[8];\nfloat h[4] = {1.0, 2.5, 3.75};\n");
+    int count = 0;
+    // two lines of globals, twelve per function and four for main
+    for (var written = 6; written < lines; written += 12) {
+      builder.append("int f").append(count).append("(int a, int b[]) {\n")
+        .append("  int s = a;\n")
+        .append("  int j = 0;\n")
+        .append("  while (j < 8) {\n")
+        .append("    if (j % 3 == 0) s = s + b[j] * ").append(count % 7 + 1).append(";\n")
+        .append("    else s = s - (a + j) / ").append(count % 5 + 1).append(";\n")
+        .append("    j = j + 1;\n")
+        .append("  }\n")
+        .append("  float x = s * h[").append(count % 4).append("];\n")
+        .append("  if (x > 100.0 && s != 0) s = s % 97;\n");
+      if (count > 0) builder.append("  return s + f").append(count - 1).append("(a - 1, b);\n");
+      else builder.append("  return s;\n");
+      builder.append("}\n");
+      count++;
+    }
+    return builder.append("int main() {\n  return f").append(count - 1).append("(getint(), g);\n}\n").toString();
+  }
+}
@@ -0,0 +1,79 @@
+package org.brunhild.bench;
+
+import kala.collection.immutable.ImmutableSeq;
+import kala.control.Option;
+import org.brunhild.concrete.Stmt;
+import org.brunhild.core.Proclaim;
+import org.brunhild.error.Reporter;
+import org.brunhild.error.SourceFile;
+import org.brunhild.parser.BrunhildParserImpl;
+import org.jetbrains.annotations.NotNull;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single expressions of the sizes code generators emit, produced from the parse tree
+ * alone and also resolved and checked. Chains are walked without recursion all the way,
+ * parentheses are not, the parser recurses into them, so the fork gets a stack deep
+ * enough for {@link Shape#Deep}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--enable-preview", "-Xss16m"})
+public class ExprBench {
+  public enum Shape {
+    /** {@link #TERMS} terms in one left-leaning chain of every binary operator level */
+    Wide {
+      @Override @NotNull String generate() {
+        var builder = new StringBuilder("int main() {\n  int a = getint();\n  int b = a + 1;\n  int s = a");
+        for (int i = 1; i < TERMS; i++) {
+          builder.append(i % 2 == 0 ? " + " : " - ").append(switch (i % 3) {
+            case 0 -> "a";
+            case 1 -> "b * " + (i % 7 + 1);
+            default -> "a / " + (i % 5 + 1) + " % 3";
+          });
+        }
+        builder.append(";\n  if (a < b");
+        for (int i = 1; i < TERMS / 10; i++)
+          builder.append(i % 4 == 0 ? " || " : " && ").append(i % 2 == 0 ? "a <= b + " : "b != a - ").append(i % 9);
+        return builder.append(") s = s + 1;\n  return s;\n}\n").toString();
+      }
+    },
+    /** parentheses and prefix operators nested {@link #NESTING} levels deep */
+    Deep {
+      @Override @NotNull String generate() {
+        var builder = new StringBuilder("int main() {\n  int a = getint();\n  return ");
+        for (int i = 0; i < NESTING; i++) builder.append(i % 3 == 0 ? "-(" : i % 3 == 1 ? "!(" : "+(");
+        builder.append('a');
+        for (int i = 0; i < NESTING; i++) builder.append(" + ").append(i % 9 + 1).append(')');
+        return builder.append(";\n}\n").toString();
+      }
+    };
+
+    public static final int TERMS = 50_000;
+    public static final int NESTING = 4_096;
+
+    abstract @NotNull String generate();
+  }
+
+  @Param public Shape shape;
+  private SourceFile source;
+  private final @NotNull Reporter reporter = Corpus.reporter();
+
+  @Setup(Level.Trial) public void generate() {
+    source = new SourceFile(shape.name() + ".sy", shape.generate(), Option.none());
+  }
+
+  @Benchmark public ImmutableSeq<Stmt> parse() {
+    return new BrunhildParserImpl(reporter).program(source);
+  }
+
+  @Benchmark public ImmutableSeq<Proclaim> tyck() {
+    var resolved = Stmt.resolve(new BrunhildParserImpl(reporter).program(source), Corpus.context(source, reporter));
+    return Stmt.tyck(resolved, reporter);
+  }
+}
@@ -0,0 +1,84 @@
+package org.brunhild.bench;
+
+import kala.collection.immutable.ImmutableSeq;
+import org.brunhild.compiling.optimize.TreeFold;
+import org.brunhild.concrete.Stmt;
+import org.brunhild.concrete.resolve.context.ModuleContext;
+import org.brunhild.core.Proclaim;
+import org.brunhild.error.Reporter;
+import org.brunhild.error.SourceFile;
+import org.brunhild.parser.BrunhildParserImpl;
+import org.brunhild.tyck.Gamma;
+import org.jetbrains.annotations.NotNull;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One benchmark per front-end stage. Resolving, tycking and folding update the trees
+ * they are given in place, so their input is rebuilt before every invocation by the
+ * state classes below, outside of the measured region.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+public class StageBench {
+  @State(Scope.Thread)
+  public static class Source {
+    @Param public Corpus corpus;
+    public SourceFile source;
+    public final @NotNull Reporter reporter = Corpus.reporter();
+
+    @Setup(Level.Trial) public void generate() {
+      source = corpus.source();
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class Parsed extends Source {
+    public ImmutableSeq<Stmt> stmts;
+    public ModuleContext context;
+
+    @Setup(Level.Invocation) public void parse() {
+      stmts = new BrunhildParserImpl(reporter).program(source);
+      context = Corpus.context(source, reporter);
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class Resolved extends Source {
+    public ImmutableSeq<Stmt> stmts;
+
+    @Setup(Level.Invocation) public void resolve() {
+      stmts = Stmt.resolve(new BrunhildParserImpl(reporter).program(source), Corpus.context(source, reporter));
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class Tycked extends Source {
+    public ImmutableSeq<Proclaim> proclaims;
+
+    @Setup(Level.Invocation) public void tyck() {
+      var resolved = Stmt.resolve(new BrunhildParserImpl(reporter).program(source), Corpus.context(source, reporter));
+      proclaims = Stmt.tyck(resolved, reporter);
+    }
+  }
+
+  @Benchmark public ImmutableSeq<Stmt> parse(Source state) {
+    return new BrunhildParserImpl(state.reporter).program(state.source);
+  }
+
+  @Benchmark public ImmutableSeq<Stmt> resolve(Parsed state) {
+    return Stmt.resolve(state.stmts, state.context);
+  }
+
+  @Benchmark public ImmutableSeq<Proclaim> tyck(Resolved state) {
+    return Stmt.tyck(state.stmts, state.reporter);
+  }
+
+  @Benchmark public ImmutableSeq<Proclaim> fold(Tycked state) {
+    return TreeFold.Pass.perform(state.proclaims, new Gamma.ConstGamma());
+  }
+}
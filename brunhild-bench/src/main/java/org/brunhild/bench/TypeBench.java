@@ -0,0 +1,43 @@
+package org.brunhild.bench;
+
+import org.brunhild.concrete.Expr;
+import org.brunhild.core.Term;
+import org.brunhild.core.ops.TermFold;
+import org.brunhild.generic.LocalVar;
+import org.brunhild.generic.Type;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Asks a left-leaning chain of {@code depth} binary, unary and index terms for its type,
+ * like {@code -a[0] + 1 - 2 + ...}. Terms carry their type, so the time should not grow
+ * with the depth.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "--enable-preview")
+public class TypeBench {
+  @Param({"10", "1000", "10000"}) public int depth;
+  private Term chain;
+
+  @Setup(Level.Trial) public void build() {
+    var intType = Type.Int.<Term>of();
+    var arrayType = Type.Array.of(intType, new Type.DimConst(depth));
+    var array = new Term.RefTerm(arrayType, new LocalVar("a"));
+    Term term = new Term.IndexTerm(array, TermFold.litInt(0), intType);
+    for (int i = 0; i < depth; i++) {
+      term = i % 3 == 0
+        ? new Term.UnaryTerm(Expr.UnaryOP.NEG, term, intType)
+        : new Term.BinaryTerm(i % 3 == 1 ? Term.BinOP.ADD : Term.BinOP.SUB, term, TermFold.litInt(i), intType);
+    }
+    chain = term;
+  }
+
+  @Benchmark public Type<Term> type() {
+    return chain.type();
+  }
+}
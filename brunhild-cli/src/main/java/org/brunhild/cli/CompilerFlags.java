@@ -1,6 +1,38 @@
 package org.brunhild.cli;
 
+import kala.control.Option;
+import org.brunhild.compiling.interpret.Interpreter;
+import org.brunhild.compiling.optimize.Inliner;
+import org.brunhild.compiling.optimize.LoopUnroller;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.file.Path;
+
 public record CompilerFlags(
-  boolean interruptedTrace
+  boolean interruptedTrace,
+  @NotNull Option<Interpreter.Engine> interpret,
+  @NotNull Emit emit,
+  @NotNull Option<Path> output,
+  boolean timePasses,
+  @NotNull Option<Path> timePassesJson,
+  boolean fastMath,
+  @NotNull Inliner.Thresholds inline,
+  @NotNull LoopUnroller.Options unroll
 ) {
+  public boolean profiling() {
+    return timePasses || timePassesJson.isDefined();
+  }
+
+  public enum Emit {
+    /** the checked and folded core */
+    Core,
+    /** the SSA intermediate representation */
+    Ir,
+    /** textual LLVM IR */
+    Llvm,
+    /** RV64GC assembly */
+    Riscv64,
+    /** AArch64 assembly */
+    AArch64,
+  }
 }
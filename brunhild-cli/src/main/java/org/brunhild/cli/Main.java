@@ -1,19 +1,99 @@
 package org.brunhild.cli;
 
+import kala.control.Option;
+import org.brunhild.compiling.interpret.Interpreter;
+import org.brunhild.compiling.optimize.Inliner;
+import org.brunhild.compiling.optimize.LoopUnroller;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.IOException;
 import java.nio.file.Path;
 
 public class Main {
+  private static final String USAGE = """
+    Usage: brunhild [options] <input-file>
+    Options:
+      --interpret[=bytecode|tree]  run the program instead of printing it
+      --emit=<format>              the representation to print: core (default), ir,
+                                   llvm, riscv64 or aarch64
+      -o <file>                    write the output to a file instead of stdout
+      --time-passes                print the time and memory spent in each pass
+      --time-passes-json=<file>    write the same numbers to a file as JSON
+      --fast-math                  reassociate float sums and products, which may
+                                   change how they round
+      --inline-size=<n>            inline callees of at most this many nodes (32)
+      --inline-hot-size=<n>        the same in loops and at only call sites (128)
+      --inline-caller-size=<n>     stop inlining into functions this big (4096)
+      --no-inline                  keep every call
+      --unroll=<n>                 run loops of unknown trip count n iterations at
+                                   a time (4)
+      --unroll-trips=<n>           replace loops of at most n iterations by copies
+                                   of their bodies (16)
+      --unroll-budget=<n>          copy at most this many nodes of a loop body (256)
+      --no-unroll                  keep every loop as it is
+    """;
+
   public static void main(String @NotNull [] args) throws IOException {
-    if (args.length < 1) {
-      System.out.println("Usage: brunhild <input-file>");
-      System.exit(1);
+    String input = null;
+    Option<Interpreter.Engine> interpret = Option.none();
+    var emit = CompilerFlags.Emit.Core;
+    Option<Path> output = Option.none();
+    var timePasses = false;
+    Option<Path> timePassesJson = Option.none();
+    var fastMath = false;
+    var inline = Inliner.Thresholds.DEFAULT;
+    var unroll = LoopUnroller.Options.DEFAULT;
+    for (int i = 0; i < args.length; i++) {
+      var arg = args[i];
+      if (arg.equals("--interpret") || arg.equals("--interpret=bytecode")) interpret = Option.some(Interpreter.Engine.Bytecode);
+      else if (arg.equals("--interpret=tree")) interpret = Option.some(Interpreter.Engine.Tree);
+      else if (arg.equals("--emit=core")) emit = CompilerFlags.Emit.Core;
+      else if (arg.equals("--emit=ir")) emit = CompilerFlags.Emit.Ir;
+      else if (arg.equals("--emit=llvm")) emit = CompilerFlags.Emit.Llvm;
+      else if (arg.equals("--emit=riscv64")) emit = CompilerFlags.Emit.Riscv64;
+      else if (arg.equals("--emit=aarch64")) emit = CompilerFlags.Emit.AArch64;
+      else if (arg.equals("-o") && i + 1 < args.length) output = Option.some(Path.of(args[++i]));
+      else if (arg.equals("--time-passes")) timePasses = true;
+      else if (arg.startsWith("--time-passes-json=")) timePassesJson = Option.some(Path.of(arg.substring("--time-passes-json=".length())));
+      else if (arg.equals("--fast-math")) fastMath = true;
+      else if (arg.startsWith("--inline-size="))
+        inline = new Inliner.Thresholds(number(arg), inline.hotSize(), inline.callerSize());
+      else if (arg.startsWith("--inline-hot-size="))
+        inline = new Inliner.Thresholds(inline.size(), number(arg), inline.callerSize());
+      else if (arg.startsWith("--inline-caller-size="))
+        inline = new Inliner.Thresholds(inline.size(), inline.hotSize(), number(arg));
+      else if (arg.equals("--no-inline")) inline = Inliner.Thresholds.NONE;
+      else if (arg.startsWith("--unroll="))
+        unroll = new LoopUnroller.Options(number(arg), unroll.trips(), unroll.budget());
+      else if (arg.startsWith("--unroll-trips="))
+        unroll = new LoopUnroller.Options(unroll.factor(), number(arg), unroll.budget());
+      else if (arg.startsWith("--unroll-budget="))
+        unroll = new LoopUnroller.Options(unroll.factor(), unroll.trips(), number(arg));
+      else if (arg.equals("--no-unroll")) unroll = LoopUnroller.Options.NONE;
+      else if (arg.startsWith("--") || input != null) usage();
+      else input = arg;
     }
+    if (input == null) usage();
 
     var compiler = new SingleFileCompiler(CliReporter.stdio());
-    int exit = compiler.compile(Path.of(args[0]), new CompilerFlags(true));
+    var flags = new CompilerFlags(true, interpret, emit, output, timePasses, timePassesJson, fastMath, inline, unroll);
+    int exit = compiler.compile(Path.of(input), flags);
     System.exit(exit);
   }
+
+  /** @return the non-negative number after the {@code =} of {@code arg} */
+  private static int number(@NotNull String arg) {
+    try {
+      var n = Integer.parseInt(arg.substring(arg.indexOf('=') + 1));
+      if (n >= 0) return n;
+    } catch (NumberFormatException ignored) {
+    }
+    usage();
+    return 0;
+  }
+
+  private static void usage() {
+    System.out.print(USAGE);
+    System.exit(1);
+  }
 }
@@ -1,22 +1,45 @@
 package org.brunhild.cli;
 
-import kala.control.Option;
+import kala.collection.immutable.ImmutableSeq;
 import kala.function.CheckedSupplier;
+import kala.tuple.Unit;
 import org.brunhild.compiling.Pass;
 import org.brunhild.compiling.Pipeline;
-import org.brunhild.compiling.generate.Generator;
+import org.brunhild.compiling.Profiler;
+import org.brunhild.compiling.generate.LlvmGenerator;
+import org.brunhild.compiling.generate.aarch64.AArch64Generator;
+import org.brunhild.compiling.generate.riscv.RiscvGenerator;
+import org.brunhild.compiling.interpret.Interpreter;
+import org.brunhild.compiling.interpret.PrimRuntime;
+import org.brunhild.compiling.ir.Lowering;
+import org.brunhild.compiling.ir.Module;
+import org.brunhild.compiling.optimize.ConstantPropagation;
+import org.brunhild.compiling.optimize.DeadCode;
+import org.brunhild.compiling.optimize.Inliner;
+import org.brunhild.compiling.optimize.LoopInvariants;
+import org.brunhild.compiling.optimize.LoopUnroller;
+import org.brunhild.compiling.optimize.Simplify;
+import org.brunhild.compiling.optimize.TailRecursion;
 import org.brunhild.compiling.optimize.TreeFold;
+import org.brunhild.compiling.optimize.ValueNumbering;
 import org.brunhild.concrete.resolve.context.EmptyContext;
 import org.brunhild.concrete.resolve.context.ModuleContext;
 import org.brunhild.core.Def;
+import org.brunhild.core.Proclaim;
 import org.brunhild.error.InterruptException;
 import org.brunhild.error.Reporter;
 import org.brunhild.error.SourceFile;
 import org.brunhild.parser.BrunhildParserImpl;
+import org.brunhild.parser.MappedSource;
 import org.brunhild.tyck.Gamma;
 import org.jetbrains.annotations.NotNull;
 
+import java.io.FilterWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.function.Function;
@@ -28,7 +51,7 @@ public record SingleFileCompiler(
     @NotNull Path sourceFile,
     @NotNull CompilerFlags flags
   ) throws IOException {
-    var source = new SourceFile(sourceFile.getFileName().toString(), Files.readString(sourceFile), Option.some(sourceFile));
+    var source = MappedSource.read(sourceFile);
     return compile(source, reporter -> new EmptyContext(source, reporter).derive("Main"), flags);
   }
 
@@ -38,20 +61,68 @@ public record SingleFileCompiler(
     @NotNull CompilerFlags flags
   ) throws IOException {
     var ctx = context.apply(reporter);
-    return catching(reporter, flags, () -> {
-      Def.PrimFactory.install(ctx);
+    var profiler = flags.profiling() ? Profiler.create() : Profiler.NONE;
+    try {
+      return catching(reporter, flags, () -> {
+        Def.PrimFactory.install(ctx);
+
+        var artifact = Pipeline.Begin
+          .then("Parsing", Pass.Parsing, new BrunhildParserImpl(reporter, profiler), profiler)
+          .then("Resolving", Pass.Resolving, ctx, profiler)
+          .then("Tycking", Pass.Tycking, reporter, profiler)
+          .then("TreeFold", flags.fastMath() ? TreeFold.FastMath : TreeFold.Pass, new Gamma.ConstGamma(), profiler)
+          .then("TailRecursion", TailRecursion.Pass, Unit.unit(), profiler)
+          .then("Inliner", Inliner.Pass, flags.inline(), profiler)
+          .then("ConstantPropagation", ConstantPropagation.Pass, Unit.unit(), profiler)
+          .then("LoopUnroller", LoopUnroller.Pass, flags.unroll(), profiler)
+          .then("Simplify", Simplify.Pass, Unit.unit(), profiler)
+          .then("DeadCode", DeadCode.Pass, Unit.unit(), profiler)
+          .perform(sourceFile);
+
+        if (flags.interpret().isDefined())
+          return Interpreter.run(artifact, PrimRuntime.stdio(), flags.interpret().get());
+        try (var out = output(flags)) {
+          switch (flags.emit()) {
+            case Core -> out.append(artifact.joinToString("\n")).append('\n');
+            case Ir -> out.append(lowering(sourceFile.name(), profiler).perform(artifact).toString());
+            case Llvm -> lowering(sourceFile.name(), profiler)
+              .then("Llvm", LlvmGenerator.Pass, out, profiler)
+              .perform(artifact);
+            case Riscv64 -> lowering(sourceFile.name(), profiler)
+              .then("Riscv64", RiscvGenerator.Pass, out, profiler)
+              .perform(artifact);
+            case AArch64 -> lowering(sourceFile.name(), profiler)
+              .then("AArch64", AArch64Generator.Pass, out, profiler)
+              .perform(artifact);
+          }
+        } catch (UncheckedIOException e) {
+          throw e.getCause();
+        }
+        return 0;
+      });
+    } finally {
+      // also for interrupted compilations, the passes that did run are still of interest
+      if (flags.timePasses()) System.err.print(profiler.report());
+      if (flags.timePassesJson().isDefined()) Files.writeString(flags.timePassesJson().get(), profiler.toJson());
+    }
+  }
 
-      var artifact = Pipeline.Begin
-        .then(Pass.Parsing, new BrunhildParserImpl(reporter))
-        .then(Pass.Resolving, ctx)
-        .then(Pass.Tycking, reporter)
-        .then(TreeFold.Pass, new Gamma.ConstGamma())
-        .then(Generator.justForFun())
-        .peek(s -> System.out.println(s.joinToString("\n")))
-        .perform(sourceFile);
+  /** The checked program in SSA, optimized. */
+  private static @NotNull Pipeline<ImmutableSeq<Proclaim>, Module> lowering(@NotNull String name, @NotNull Profiler profiler) {
+    return Pipeline.<ImmutableSeq<Proclaim>>identity()
+      .then("Lowering", Lowering.Pass, name, profiler)
+      .then("ValueNumbering", ValueNumbering.Pass, profiler, profiler)
+      .then("LoopInvariants", LoopInvariants.Pass, Unit.unit(), profiler);
+  }
 
-      return 0;
-    });
+  private static @NotNull Writer output(@NotNull CompilerFlags flags) throws IOException {
+    if (flags.output().isDefined()) return Files.newBufferedWriter(flags.output().get());
+    return new FilterWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8)) {
+      /** Standard output is flushed, it stays open for whatever writes to it next. */
+      @Override public void close() throws IOException {
+        flush();
+      }
+    };
   }
 
   public static int catching(
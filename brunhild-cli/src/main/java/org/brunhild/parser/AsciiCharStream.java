@@ -0,0 +1,78 @@
+package org.brunhild.parser;
+
+import org.antlr.v4.runtime.CharStream;
+import org.antlr.v4.runtime.IntStream;
+import org.antlr.v4.runtime.misc.Interval;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A {@link CharStream} reading ASCII bytes in place, the same as
+ * {@link org.antlr.v4.runtime.CodePointCharStream} does for its {@code int[]}
+ * but without decoding or copying the input first.
+ */
+public final class AsciiCharStream implements CharStream {
+  private final @NotNull ByteBuffer bytes;
+  private final @NotNull String name;
+  private final int size;
+  private int position = 0;
+  /** Token text is copied out of the buffer through here, so only the string allocates. */
+  private byte @NotNull [] scratch = new byte[64];
+
+  public AsciiCharStream(@NotNull ByteBuffer bytes, @NotNull String name) {
+    this.bytes = bytes;
+    this.name = name;
+    this.size = bytes.limit();
+  }
+
+  @Override public void consume() {
+    if (position >= size) throw new IllegalStateException("cannot consume EOF");
+    position++;
+  }
+
+  @Override public int LA(int i) {
+    if (i == 0) return 0; // undefined
+    var index = i > 0 ? position + i - 1 : position + i;
+    if (index < 0 || index >= size) return IntStream.EOF;
+    return bytes.get(index);
+  }
+
+  /** The whole input is in memory, marks are not needed. */
+  @Override public int mark() {
+    return -1;
+  }
+
+  @Override public void release(int marker) {
+  }
+
+  @Override public int index() {
+    return position;
+  }
+
+  @Override public void seek(int index) {
+    position = index;
+  }
+
+  @Override public int size() {
+    return size;
+  }
+
+  @Override public String getSourceName() {
+    return name.isEmpty() ? IntStream.UNKNOWN_SOURCE_NAME : name;
+  }
+
+  @Override public String getText(Interval interval) {
+    var start = Math.min(interval.a, size);
+    var length = Math.min(interval.b - interval.a + 1, size - start);
+    if (length <= 0) return "";
+    if (length > scratch.length) scratch = new byte[Math.max(length, 2 * scratch.length)];
+    bytes.get(start, scratch, 0, length);
+    return new String(scratch, 0, length, StandardCharsets.ISO_8859_1);
+  }
+
+  @Override public String toString() {
+    return getText(Interval.of(0, size - 1));
+  }
+}
@@ -1,40 +1,73 @@
 package org.brunhild.parser;
 
 import kala.collection.immutable.ImmutableSeq;
+import org.antlr.v4.runtime.BailErrorStrategy;
 import org.antlr.v4.runtime.CodePointBuffer;
 import org.antlr.v4.runtime.CodePointCharStream;
 import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.DefaultErrorStrategy;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
+import org.brunhild.compiling.Profiler;
 import org.brunhild.concrete.Stmt;
 import org.brunhild.concrete.parse.GenericBrunhildParser;
 import org.brunhild.error.Reporter;
 import org.brunhild.error.SourceFile;
-import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
 
 import java.nio.IntBuffer;
 
-public record BrunhildParserImpl(@NotNull Reporter reporter) implements GenericBrunhildParser {
-  private static @NotNull BrunhildLexer lexer(@NotNull String text) {
-    var intBuffer = IntBuffer.wrap(text.codePoints().toArray());
+/**
+ * Parses in two stages: first with {@link PredictionMode#SLL}, which is enough for
+ * nearly every input and much cheaper, bailing out at the first syntax error; only then
+ * the input is parsed again in full {@link PredictionMode#LL} with error reporting, which
+ * either succeeds where SLL was too weak or reports the actual error. The generated
+ * parser keeps its DFA in static fields, so what one file warms up is reused by the
+ * next one in the same JVM, in both stages.
+ *
+ * @param profiler counts the parses finished by SLL in {@link #SLL}, and the ones falling back to LL in {@link #LL}
+ */
+public record BrunhildParserImpl(@NotNull Reporter reporter, @NotNull Profiler profiler) implements GenericBrunhildParser {
+  public static final @NotNull String SLL = "parse.sll";
+  public static final @NotNull String LL = "parse.ll";
+
+  public BrunhildParserImpl(@NotNull Reporter reporter) {
+    this(reporter, Profiler.NONE);
+  }
+
+  private static @NotNull BrunhildLexer lexer(@NotNull SourceFile sourceFile) {
+    if (sourceFile.sourceCode() instanceof MappedSource.Ascii ascii)
+      return new BrunhildLexer(new AsciiCharStream(ascii.bytes(), sourceFile.name()));
+    var intBuffer = IntBuffer.wrap(sourceFile.sourceCode().codePoints().toArray());
     var codePointBuffer = CodePointBuffer.withInts(intBuffer);
     var charStream = CodePointCharStream.fromBuffer(codePointBuffer);
     return new BrunhildLexer(charStream);
   }
 
-  @Contract("_, _ -> new")
-  private static @NotNull BrunhildParser parser(@NotNull SourceFile sourceFile, @NotNull Reporter reporter) {
-    var lexer = lexer(sourceFile.sourceCode());
-    lexer.removeErrorListeners();
+  @Override public @NotNull ImmutableSeq<Stmt> program(@NotNull SourceFile sourceFile) {
     var listener = new ReporterErrorListener(sourceFile, reporter);
+    var lexer = lexer(sourceFile);
+    lexer.removeErrorListeners();
     lexer.addErrorListener(listener);
-    var parser = new BrunhildParser(new CommonTokenStream(lexer));
+    var tokens = new CommonTokenStream(lexer);
+    var parser = new BrunhildParser(tokens);
+    parser.addParseListener(PackedInitVal.PACKER);
     parser.removeErrorListeners();
-    parser.addErrorListener(listener);
-    return parser;
-  }
-
-  @Override public @NotNull ImmutableSeq<Stmt> program(@NotNull SourceFile sourceFile) {
-    var program = parser(sourceFile, reporter);
-    return new BrunhildProducer(sourceFile, reporter).program(program.program());
+    parser.setErrorHandler(new BailErrorStrategy());
+    parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+    BrunhildParser.ProgramContext program;
+    try {
+      program = parser.program();
+      profiler.count(SLL);
+    } catch (ParseCancellationException e) {
+      profiler.count(LL);
+      // the tokens are buffered already, lexer errors were reported the first time
+      parser.reset();
+      parser.addErrorListener(listener);
+      parser.setErrorHandler(new DefaultErrorStrategy());
+      parser.getInterpreter().setPredictionMode(PredictionMode.LL);
+      program = parser.program();
+    }
+    return new BrunhildProducer(sourceFile, reporter).program(program);
   }
 }
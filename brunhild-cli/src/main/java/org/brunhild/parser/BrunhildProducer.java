@@ -1,6 +1,7 @@
 package org.brunhild.parser;
 
 import kala.collection.immutable.ImmutableSeq;
+import kala.collection.mutable.MutableList;
 import kala.control.Option;
 import org.antlr.v4.runtime.ParserRuleContext;
 import org.antlr.v4.runtime.tree.TerminalNode;
@@ -15,7 +16,9 @@ import org.brunhild.generic.Type;
 import org.brunhild.parser.problem.ConstNotInitializedProblem;
 import org.brunhild.parser.problem.ParsingInterrupted;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
+import java.util.function.Function;
 import java.util.stream.Stream;
 
 public record BrunhildProducer(
@@ -42,7 +45,7 @@ public record BrunhildProducer(
 
   private @NotNull Stmt varDeclItem(@NotNull BrunhildParser.VarDeclItemContext ctx, boolean isConst, @NotNull Type<Expr> type) {
     var id = ctx.ID().getText();
-    var maybeArray = arrayType(ctx.arrayTypeSuffix().stream(), type);
+    var maybeArray = arrayType(ctx.arrayTypeSuffix().stream().map(c -> expr(c.expr())), type);
     var maybeConst = isConst ? new Type.Const<>(maybeArray) : maybeArray;
     if (isConst && ctx.ASSIGN() == null) {
       reporter.report(new ConstNotInitializedProblem(sourcePosOf(ctx), id));
@@ -60,8 +63,20 @@ public record BrunhildProducer(
   private @NotNull Expr varInitVal(@NotNull BrunhildParser.VarInitValContext ctx) {
     var expr = ctx.expr();
     if (expr != null) return expr(expr);
-    var values = ctx.varInitVal().stream().map(this::varInitVal).collect(ImmutableSeq.factory());
-    return new Expr.LitArrayExpr(sourcePosOf(ctx), values);
+    var sourcePos = sourcePosOf(ctx);
+    var items = ctx.varInitVal();
+    var packed = PackedInitVal.of(ctx);
+    if (packed == null) {
+      var values = items.stream().map(this::varInitVal).collect(ImmutableSeq.factory());
+      return new Expr.LitArrayExpr(sourcePos, values);
+    }
+    if (items.isEmpty()) return packed.toExpr(sourcePos);
+    // the literals were taken out of the tree, they only know the position of the list
+    var rest = items.iterator();
+    var values = MutableList.<Expr>create();
+    for (int i = 0, literal = 0; i < packed.items(); i++)
+      values.append(packed.isLiteral(i) ? packed.literal(literal++, sourcePos) : varInitVal(rest.next()));
+    return new Expr.LitArrayExpr(sourcePos, values.toImmutableSeq());
   }
 
   private @NotNull Stmt fnDecl(@NotNull BrunhildParser.FnDeclContext ctx) {
@@ -94,30 +109,25 @@ public record BrunhildProducer(
 
   private @NotNull Type<Expr> arrayParamType(@NotNull BrunhildParser.ArrayParamTypeSuffixContext arrayType, @NotNull Type<Expr> elementType) {
     // first dimension is always inferred according to Brunhild.g4
-    var type = new Type.Array<>(elementType, new Type.DimInferred());
-    return arrayType.expr().stream()
-      .map(this::expr)
-      .map(Type.DimExpr::new)
-      .collect(ImmutableSeq.factory())
-      .foldRight(type, (dim, arr) -> new Type.Array<>(arr, dim));
+    var inner = arrayType(arrayType.expr().stream().map(this::expr), elementType);
+    return new Type.Array<>(inner, new Type.DimInferred());
   }
 
-  private @NotNull Type<Expr> arrayType(@NotNull Stream<BrunhildParser.ArrayTypeSuffixContext> arrayType, @NotNull Type<Expr> elementType) {
-    return arrayType
-      .map(c -> expr(c.expr()))
+  private @NotNull Type<Expr> arrayType(@NotNull Stream<Expr> dimensions, @NotNull Type<Expr> elementType) {
+    return dimensions
       .map(Type.DimExpr::new)
       .collect(ImmutableSeq.factory())
       .foldRight(elementType, (dim, arr) -> new Type.Array<>(arr, dim));
   }
 
   private @NotNull Type<Expr> returnType(@NotNull BrunhildParser.ReturnTypeContext ctx) {
-    if (ctx.KW_VOID() != null) return new Type.Void<>();
+    if (ctx.KW_VOID() != null) return Type.Void.of();
     return primitiveType(ctx.primitiveType());
   }
 
   private @NotNull Type<Expr> primitiveType(@NotNull BrunhildParser.PrimitiveTypeContext ctx) {
-    if (ctx.KW_INT() != null) return new Type.Int<>();
-    if (ctx.KW_FLOAT() != null) return new Type.Float<>();
+    if (ctx.KW_INT() != null) return Type.Int.of();
+    if (ctx.KW_FLOAT() != null) return Type.Float.of();
     return unreachable();
   }
 
@@ -159,53 +169,86 @@ public record BrunhildProducer(
   }
 
   private @NotNull Expr addExpr(@NotNull BrunhildParser.AddExprContext ctx) {
-    var sourcePos = sourcePosOf(ctx);
-    var mulExpr = mulExpr(ctx.mulExpr());
-    if (ctx.ADD() != null) return new Expr.BinaryExpr(sourcePos, Expr.BinOP.ADD, addExpr(ctx.addExpr()), mulExpr);
-    if (ctx.SUB() != null) return new Expr.BinaryExpr(sourcePos, Expr.BinOP.SUB, addExpr(ctx.addExpr()), mulExpr);
-    return mulExpr;
+    return chain(ctx, BrunhildParser.AddExprContext::addExpr, c -> mulExpr(c.mulExpr()),
+      c -> c.ADD() != null ? Expr.BinOP.ADD : Expr.BinOP.SUB);
   }
 
   private @NotNull Expr mulExpr(@NotNull BrunhildParser.MulExprContext ctx) {
-    var sourcePos = sourcePosOf(ctx);
-    var unaryExpr = unaryExpr(ctx.unaryExpr());
-    if (ctx.MUL() != null) return new Expr.BinaryExpr(sourcePos, Expr.BinOP.MUL, mulExpr(ctx.mulExpr()), unaryExpr);
-    if (ctx.DIV() != null) return new Expr.BinaryExpr(sourcePos, Expr.BinOP.DIV, mulExpr(ctx.mulExpr()), unaryExpr);
-    if (ctx.MOD() != null) return new Expr.BinaryExpr(sourcePos, Expr.BinOP.MOD, mulExpr(ctx.mulExpr()), unaryExpr);
-    return unaryExpr;
+    return chain(ctx, BrunhildParser.MulExprContext::mulExpr, c -> unaryExpr(c.unaryExpr()),
+      c -> c.MUL() != null ? Expr.BinOP.MUL : c.DIV() != null ? Expr.BinOP.DIV : Expr.BinOP.MOD);
+  }
+
+  /**
+   * The left-recursive rules nest their contexts as deep as the chain is long, like
+   * {@code ((a + b) - c) + d}, so they are walked down the left spine first and built
+   * back up in a loop, as left-leaning as they were parsed.
+   *
+   * @param left    the context of the left operand, null at the end of the chain
+   * @param operand the right operand, or the only one at the end of the chain
+   */
+  private <C extends ParserRuleContext> @NotNull Expr chain(
+    @NotNull C ctx, @NotNull Function<C, @Nullable C> left,
+    @NotNull Function<C, Expr> operand, @NotNull Function<C, Expr.BinOP> op
+  ) {
+    var spine = MutableList.<C>create();
+    for (var next = left.apply(ctx); next != null; next = left.apply(ctx)) {
+      spine.append(ctx);
+      ctx = next;
+    }
+    var expr = operand.apply(ctx);
+    for (int i = spine.size() - 1; i >= 0; i--) {
+      var binary = spine.get(i);
+      expr = new Expr.BinaryExpr(sourcePosOf(binary), op.apply(binary), expr, operand.apply(binary));
+    }
+    return expr;
   }
 
+  /** Prefix operators are applied innermost first, so {@code - - - x} does not recurse either. */
   private @NotNull Expr unaryExpr(@NotNull BrunhildParser.UnaryExprContext ctx) {
-    if (ctx.primaryExpr() != null) return primaryExpr(ctx.primaryExpr());
-    if (ctx.ID() != null) {
-      var sourcePos = sourcePosOf(ctx);
-      var id = ctx.ID().getText();
-      var appArg = ctx.appArg();
-      var args = appArg == null ? ImmutableSeq.<Expr>empty() : appArg.expr().stream().map(this::expr).collect(ImmutableSeq.factory());
-      return new Expr.AppExpr(sourcePos, new Expr.UnresolvedExpr(sourcePosOf(ctx.ID()), id), args);
-    } else {
-      var sourcePos = sourcePosOf(ctx);
-      if (ctx.ADD() != null) return new Expr.UnaryExpr(sourcePos, Expr.UnaryOP.POS, unaryExpr(ctx.unaryExpr()));
-      if (ctx.SUB() != null) return new Expr.UnaryExpr(sourcePos, Expr.UnaryOP.NEG, unaryExpr(ctx.unaryExpr()));
-      if (ctx.LOGICAL_NOT() != null)
-        return new Expr.UnaryExpr(sourcePos, Expr.UnaryOP.LOGICAL_NOT, unaryExpr(ctx.unaryExpr()));
-      return unreachable();
+    var prefixes = MutableList.<BrunhildParser.UnaryExprContext>create();
+    while (ctx.unaryExpr() != null) {
+      prefixes.append(ctx);
+      ctx = ctx.unaryExpr();
+    }
+    var expr = ctx.primaryExpr() != null ? primaryExpr(ctx.primaryExpr()) : appExpr(ctx);
+    for (int i = prefixes.size() - 1; i >= 0; i--) {
+      var prefix = prefixes.get(i);
+      var op = prefix.ADD() != null ? Expr.UnaryOP.POS
+        : prefix.SUB() != null ? Expr.UnaryOP.NEG
+        : prefix.LOGICAL_NOT() != null ? Expr.UnaryOP.LOGICAL_NOT
+        : this.<Expr.UnaryOP>unreachable();
+      expr = new Expr.UnaryExpr(sourcePosOf(prefix), op, expr);
     }
+    return expr;
+  }
+
+  private @NotNull Expr appExpr(@NotNull BrunhildParser.UnaryExprContext ctx) {
+    if (ctx.ID() == null) return unreachable();
+    var id = ctx.ID().getText();
+    var appArg = ctx.appArg();
+    var args = appArg == null ? ImmutableSeq.<Expr>empty() : appArg.expr().stream().map(this::expr).collect(ImmutableSeq.factory());
+    return new Expr.AppExpr(sourcePosOf(ctx), new Expr.UnresolvedExpr(sourcePosOf(ctx.ID()), id), args);
   }
 
   private @NotNull Expr primaryExpr(@NotNull BrunhildParser.PrimaryExprContext ctx) {
     if (ctx.expr() != null) return expr(ctx.expr());
     if (ctx.lval() != null) return lval(ctx.lval());
     if (ctx.number() != null) {
-      var number = ctx.number();
-      if (number.INT_LITERAL() != null)
-        return new Expr.LitIntExpr(sourcePosOf(number), Integer.parseInt(number.INT_LITERAL().getText()));
-      if (number.FLOAT_LITERAL() != null)
-        return new Expr.LitFloatExpr(sourcePosOf(number), Float.parseFloat(number.FLOAT_LITERAL().getText()));
+      var sourcePos = sourcePosOf(ctx.number());
+      var number = number(ctx.number());
+      return number instanceof Float f
+        ? new Expr.LitFloatExpr(sourcePos, f)
+        : new Expr.LitIntExpr(sourcePos, number.intValue());
     }
     return unreachable();
   }
 
+  static @NotNull Number number(@NotNull BrunhildParser.NumberContext ctx) {
+    if (ctx.INT_LITERAL() != null) return Integer.parseInt(ctx.INT_LITERAL().getText());
+    if (ctx.FLOAT_LITERAL() != null) return Float.parseFloat(ctx.FLOAT_LITERAL().getText());
+    throw new IllegalStateException("unreachable");
+  }
+
   private @NotNull Expr lval(@NotNull BrunhildParser.LvalContext ctx) {
     var id = ctx.ID().getText();
     var sourcePos = sourcePosOf(ctx);
@@ -223,33 +266,21 @@ public record BrunhildProducer(
   }
 
   private @NotNull Expr lOrExpr(@NotNull BrunhildParser.LOrExprContext ctx) {
-    var lAnd = lAndExpr(ctx.lAndExpr());
-    if (ctx.LOGICAL_OR() != null)
-      return new Expr.BinaryExpr(sourcePosOf(ctx), Expr.BinOP.LOGICAL_OR, lOrExpr(ctx.lOrExpr()), lAnd);
-    return lAnd;
+    return chain(ctx, BrunhildParser.LOrExprContext::lOrExpr, c -> lAndExpr(c.lAndExpr()), c -> Expr.BinOP.LOGICAL_OR);
   }
 
   private @NotNull Expr lAndExpr(@NotNull BrunhildParser.LAndExprContext ctx) {
-    var eq = eqExpr(ctx.eqExpr());
-    if (ctx.LOGICAL_AND() != null)
-      return new Expr.BinaryExpr(sourcePosOf(ctx), Expr.BinOP.LOGICAL_AND, lAndExpr(ctx.lAndExpr()), eq);
-    return eq;
+    return chain(ctx, BrunhildParser.LAndExprContext::lAndExpr, c -> eqExpr(c.eqExpr()), c -> Expr.BinOP.LOGICAL_AND);
   }
 
   private @NotNull Expr eqExpr(@NotNull BrunhildParser.EqExprContext ctx) {
-    var rel = relExpr(ctx.relExpr());
-    if (ctx.EQ() != null) return new Expr.BinaryExpr(sourcePosOf(ctx), Expr.BinOP.EQ, eqExpr(ctx.eqExpr()), rel);
-    if (ctx.NE() != null) return new Expr.BinaryExpr(sourcePosOf(ctx), Expr.BinOP.NE, eqExpr(ctx.eqExpr()), rel);
-    return rel;
+    return chain(ctx, BrunhildParser.EqExprContext::eqExpr, c -> relExpr(c.relExpr()),
+      c -> c.EQ() != null ? Expr.BinOP.EQ : Expr.BinOP.NE);
   }
 
   private @NotNull Expr relExpr(@NotNull BrunhildParser.RelExprContext ctx) {
-    var add = addExpr(ctx.addExpr());
-    if (ctx.LT() != null) return new Expr.BinaryExpr(sourcePosOf(ctx), Expr.BinOP.LT, relExpr(ctx.relExpr()), add);
-    if (ctx.LE() != null) return new Expr.BinaryExpr(sourcePosOf(ctx), Expr.BinOP.LE, relExpr(ctx.relExpr()), add);
-    if (ctx.GT() != null) return new Expr.BinaryExpr(sourcePosOf(ctx), Expr.BinOP.GT, relExpr(ctx.relExpr()), add);
-    if (ctx.GE() != null) return new Expr.BinaryExpr(sourcePosOf(ctx), Expr.BinOP.GE, relExpr(ctx.relExpr()), add);
-    return add;
+    return chain(ctx, BrunhildParser.RelExprContext::relExpr, c -> addExpr(c.addExpr()),
+      c -> c.LT() != null ? Expr.BinOP.LT : c.LE() != null ? Expr.BinOP.LE : c.GT() != null ? Expr.BinOP.GT : Expr.BinOP.GE);
   }
 
   private <T> T unreachable() {
@@ -0,0 +1,55 @@
+package org.brunhild.parser;
+
+import kala.control.Option;
+import org.brunhild.error.SourceFile;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Source files read by memory-mapping them. ASCII files, which is nearly all of them,
+ * are never copied: the source code is a {@link Ascii} view over the mapped bytes,
+ * which the lexer reads through {@link AsciiCharStream}. Anything else is decoded
+ * as UTF-8 and goes through code points as usual.
+ */
+public interface MappedSource {
+  static @NotNull SourceFile read(@NotNull Path path) throws IOException {
+    ByteBuffer bytes;
+    try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+    CharSequence sourceCode = isAscii(bytes) ? new Ascii(bytes) : StandardCharsets.UTF_8.decode(bytes).toString();
+    return new SourceFile(path.getFileName().toString(), sourceCode, Option.some(path));
+  }
+
+  private static boolean isAscii(@NotNull ByteBuffer bytes) {
+    for (int i = 0, size = bytes.limit(); i < size; i++) if (bytes.get(i) < 0) return false;
+    return true;
+  }
+
+  /** Characters backed by bytes that are all below {@code 0x80}, indexed absolutely. */
+  record Ascii(@NotNull ByteBuffer bytes) implements CharSequence {
+    @Override public int length() {
+      return bytes.limit();
+    }
+
+    @Override public char charAt(int index) {
+      return (char) bytes.get(index);
+    }
+
+    @Override public @NotNull CharSequence subSequence(int start, int end) {
+      return new Ascii(bytes.slice(start, end - start));
+    }
+
+    @Override public @NotNull String toString() {
+      var chars = new byte[bytes.limit()];
+      bytes.get(0, chars);
+      return new String(chars, StandardCharsets.US_ASCII);
+    }
+  }
+}
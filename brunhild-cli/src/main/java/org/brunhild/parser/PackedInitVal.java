@@ -0,0 +1,120 @@
+package org.brunhild.parser;
+
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.tree.ErrorNode;
+import org.antlr.v4.runtime.tree.ParseTreeListener;
+import org.antlr.v4.runtime.tree.TerminalNode;
+import org.brunhild.concrete.Expr;
+import org.brunhild.error.SourcePos;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * The number literal items of a brace list, taken out of the parse tree by {@link #PACKER}
+ * as soon as each of them is parsed. A big lookup table would otherwise keep a chain of
+ * half a dozen contexts per element alive until the whole file is parsed. It is the
+ * first child of its list, the items that are not literals stay where they were.
+ */
+final class PackedInitVal extends ParserRuleContext {
+  /** Stateless, everything it learns is kept in the tree. */
+  static final @NotNull ParseTreeListener PACKER = new ParseTreeListener() {
+    @Override public void exitEveryRule(ParserRuleContext ctx) {
+      if (!(ctx instanceof BrunhildParser.VarInitValContext item)
+        || !(item.getParent() instanceof BrunhildParser.VarInitValContext list)) return;
+      var packed = of(list);
+      var number = item.expr() == null ? null : literal(item.expr());
+      if (number == null) {
+        if (packed != null) packed.items++;
+        return;
+      }
+      list.removeLastChild();
+      if (list.getChild(list.getChildCount() - 1) instanceof TerminalNode comma
+        && ",".equals(comma.getText())) list.removeLastChild();
+      if (packed == null) {
+        packed = new PackedInitVal(list, list.getRuleContexts(BrunhildParser.VarInitValContext.class).size());
+        list.children.add(0, packed);
+      }
+      packed.add(number);
+    }
+
+    @Override public void visitTerminal(TerminalNode node) {}
+
+    @Override public void visitErrorNode(ErrorNode node) {}
+
+    @Override public void enterEveryRule(ParserRuleContext ctx) {}
+  };
+
+  private int @NotNull [] values = new int[16];
+  private final @NotNull BitSet floats = new BitSet();
+  private final @NotNull BitSet literals = new BitSet();
+  /** Items seen so far, literal or not. */
+  private int items;
+  private int count = 0;
+
+  private PackedInitVal(@NotNull ParserRuleContext list, int items) {
+    super(list, -1);
+    this.items = items;
+  }
+
+  static @Nullable PackedInitVal of(@NotNull BrunhildParser.VarInitValContext list) {
+    return list.getChildCount() > 0 && list.getChild(0) instanceof PackedInitVal packed ? packed : null;
+  }
+
+  private void add(@NotNull Number number) {
+    if (count == values.length) values = Arrays.copyOf(values, 2 * count);
+    if (number instanceof Float f) {
+      values[count] = Float.floatToRawIntBits(f);
+      floats.set(count);
+    } else values[count] = number.intValue();
+    literals.set(items++);
+    count++;
+  }
+
+  /**
+   * @return null unless {@code ctx} is a number literal, possibly signed. Rules are also
+   * exited when the parser bails out, so the contexts may be incomplete.
+   */
+  private static @Nullable Number literal(@NotNull BrunhildParser.ExprContext ctx) {
+    var add = ctx.addExpr();
+    if (add == null || add.addExpr() != null) return null;
+    var mul = add.mulExpr();
+    if (mul == null || mul.mulExpr() != null || mul.unaryExpr() == null) return null;
+    return literal(mul.unaryExpr());
+  }
+
+  private static @Nullable Number literal(@NotNull BrunhildParser.UnaryExprContext ctx) {
+    var primary = ctx.primaryExpr();
+    if (primary != null) {
+      var number = primary.number();
+      if (number == null || number.INT_LITERAL() == null && number.FLOAT_LITERAL() == null) return null;
+      return BrunhildProducer.number(number);
+    }
+    if (ctx.unaryExpr() == null || ctx.LOGICAL_NOT() != null) return null;
+    var number = literal(ctx.unaryExpr());
+    if (number == null || ctx.SUB() == null) return number;
+    return number instanceof Float f ? (Number) (-f) : (Number) (-number.intValue());
+  }
+
+  int items() {
+    return items;
+  }
+
+  boolean isLiteral(int item) {
+    return literals.get(item);
+  }
+
+  /** @return the literals in order, when the list has nothing else */
+  @NotNull Expr.LitPackedArrayExpr toExpr(@NotNull SourcePos sourcePos) {
+    return new Expr.LitPackedArrayExpr(sourcePos, Arrays.copyOf(values, count), floats);
+  }
+
+  /** @return the {@code index}-th literal as an expression at {@code sourcePos} */
+  @NotNull Expr literal(int index, @NotNull SourcePos sourcePos) {
+    return floats.get(index)
+      ? new Expr.LitFloatExpr(sourcePos, Float.intBitsToFloat(values[index]))
+      : new Expr.LitIntExpr(sourcePos, values[index]);
+  }
+}
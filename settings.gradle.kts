@@ -10,4 +10,5 @@ dependencyResolutionManagement {
 include(
   "brunhild-base",
   "brunhild-cli",
+  "brunhild-bench",
 )